@@ -0,0 +1,24 @@
+-- Indexes for the foreign key columns used to list the children of a resource.
+--
+-- New installations get these automatically when the tables are created.
+-- Existing installations have to apply this script once, while Opencast is stopped.
+-- The statements are plain SQL and work with MariaDB/MySQL as well as PostgreSQL.
+
+CREATE INDEX IX_xannotations_annotation_track ON xannotations_annotation (track_id, deleted_at);
+
+CREATE INDEX IX_xannotations_track_video ON xannotations_track (video_id, deleted_at);
+
+CREATE INDEX IX_xannotations_category_video ON xannotations_category (video_id);
+CREATE INDEX IX_xannotations_category_series ON xannotations_category (series_extid, deleted_at);
+CREATE INDEX IX_xannotations_category_series_category ON xannotations_category (series_category_id, deleted_at);
+
+CREATE INDEX IX_xannotations_label_category ON xannotations_label (category_id);
+
+CREATE INDEX IX_xannotations_comment_annotation ON xannotations_comment (annotation_id, reply_to_id, deleted_at);
+CREATE INDEX IX_xannotations_comment_reply_to ON xannotations_comment (reply_to_id, deleted_at);
+
+CREATE INDEX IX_xannotations_scale_video ON xannotations_scale (video_id);
+
+CREATE INDEX IX_xannotations_scale_value_scale ON xannotations_scale_value (scale_id);
+
+CREATE INDEX IX_xannotations_questionnaire_video ON xannotations_questionnaire (video_id);
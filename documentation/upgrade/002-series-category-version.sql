@@ -0,0 +1,8 @@
+-- Version stamp of master series categories, used to only update their copies when they changed.
+--
+-- New installations get this column automatically when the tables are created.
+-- Existing installations have to apply this script once, while Opencast is stopped.
+-- The statements are plain SQL and work with MariaDB/MySQL as well as PostgreSQL.
+-- Existing copies of series categories are brought up to date once after the upgrade.
+
+ALTER TABLE xannotations_category ADD COLUMN series_version BIGINT;
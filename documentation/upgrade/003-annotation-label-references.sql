@@ -0,0 +1,23 @@
+-- References from annotations to the labels and scale values used in their content,
+-- so that the labels of annotations can be found without parsing the content.
+--
+-- New installations get this table and column automatically when the tables are created.
+-- Existing installations have to apply this script once, while Opencast is stopped.
+-- The statements are plain SQL and work with MariaDB/MySQL as well as PostgreSQL.
+-- The references of existing annotations are extracted in the background after the upgrade,
+-- on every node at the same time; each annotation is claimed by one node before its references are extracted.
+-- Until this is finished, their content is parsed whenever their labels are needed.
+
+ALTER TABLE xannotations_annotation ADD COLUMN labels_extracted BOOLEAN;
+
+CREATE TABLE xannotations_annotation_label (
+  annotation_id BIGINT NOT NULL,
+  label_id BIGINT NOT NULL,
+  scale_value_id BIGINT,
+  CONSTRAINT UNQ_xannotations_annotation_label UNIQUE (annotation_id, label_id, scale_value_id),
+  CONSTRAINT FK_xannotations_annotation_label_annotation_id FOREIGN KEY (annotation_id)
+    REFERENCES xannotations_annotation (id)
+);
+
+CREATE INDEX IX_xannotations_annotation_label_annotation ON xannotations_annotation_label (annotation_id);
+CREATE INDEX IX_xannotations_annotation_label_label ON xannotations_annotation_label (label_id);
@@ -0,0 +1,18 @@
+-- Revision counters of all resources, counted up with every change,
+-- so that the entity tags of the REST responses change with every change of a resource.
+--
+-- New installations get these columns automatically when the tables are created.
+-- Existing installations have to apply this script once, while Opencast is stopped.
+-- The statements are plain SQL and work with MariaDB/MySQL as well as PostgreSQL.
+-- Existing resources start with revision 0.
+
+ALTER TABLE xannotations_annotation ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_category ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_comment ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_label ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_questionnaire ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_scale ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_scale_value ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_track ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_user ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE xannotations_video ADD COLUMN revision BIGINT DEFAULT 0 NOT NULL;
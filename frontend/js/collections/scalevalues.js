@@ -62,10 +62,14 @@ define(
              * @return {object} The part of the given data related to the scalevalues
              */
             parse: function (data, options) {
-                if (options.data.length) {
+                if (options.data && options.data.length) {
                     return options.data;
                 }
 
+                if (_.isArray(data)) {
+                    return data;
+                }
+
                 if (data.scaleValues.length) {
                     return data.scaleValues;
                 }
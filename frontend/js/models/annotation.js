@@ -20,6 +20,7 @@
 define(
     [
         "underscore",
+        "jquery",
         "util",
         "collections/comments",
         "collections/annotation-content",
@@ -27,7 +28,7 @@ define(
         "models/resource",
         "i18next"
     ],
-    function (_, util, Comments, AnnotationContent, ContentItem, Resource, i18next) {
+    function (_, $, util, Comments, AnnotationContent, ContentItem, Resource, i18next) {
 
         "use strict";
 
@@ -70,20 +71,44 @@ define(
             },
 
             /**
-             * (Re-)Fetch the comments once our ID changes.
+             * Fetch the comments and their replies, unless that already happened.
+             * Annotations are loaded with the number of their comments only,
+             * so the comments themselves are fetched once somebody wants to see them.
+             * The whole discussion is fetched at once, with the replies nested in the comments.
              * 1) Questionnaire: Cancelling freshly created annotation leads to: 'Uncaught Error: A "url" property or function must be specified'.
              *    Collection exists only until 'destroy', but not here - so no URL can be found. Guess: keepDeleted behaviour?
              * @todo CC | Review: Same issue fixed here appears in other deletion places too (e.g. deleting a track). Fix all?
-             * @todo CC | Review: Fix/Workaround for questionnaire annotation, eventually remove warning (added for convenience/understanding).
+             * @alias module:models-annotation.Annotation#fetchComments
+             * @return {Promise} Resolved once all the comments and replies are there
              */
-            fetchChildren: function () {
+            fetchComments: function () {
                 // 1) Should -only- occur on questionnaire annotation deletion!
-                if (!this.collection) {
-                    console.warn("Annotation collection not found, skip fetching children");
-                    return;
+                if (!this.collection || this.isNew()) {
+                    return $.when();
                 }
 
-                this.attributes.comments.fetch();
+                if (!this.commentsFetched) {
+                    this.commentsFetched = this.attributes.comments.fetch({
+                        data: { thread: "full" },
+                        prefetched: true
+                    }).then(_.bind(function () {
+                        this.commentsLoaded = true;
+                    }, this), _.bind(function () {
+                        delete this.commentsFetched;
+                    }, this));
+                }
+                return this.commentsFetched;
+            },
+
+            /**
+             * @alias module:models-annotation.Annotation#countComments
+             * @return {number} The number of comments and replies,
+             *     as sent with the annotation until the comments themselves are fetched
+             */
+            countComments: function () {
+                return this.commentsLoaded || this.isNew()
+                    ? this.attributes.comments.countCommentsAndReplies()
+                    : this.get("comment_count") || 0;
             },
 
             /**
@@ -139,6 +164,7 @@ define(
                 json.end = json.start + json.duration;
 
                 delete json.comments;
+                delete json.comment_count;
 
                 json.content = json.content.toJSON.apply(json.content, arguments);
                 if (options && options.stringifySub) {
@@ -59,6 +59,13 @@ define(
                     annotation: this.collection.annotation,
                     replyTo: this
                 });
+                // Replies might have been loaded together with the whole discussion,
+                // see {@link module:models-annotation.Annotation#fetchComments}
+                var replies = this.attributes.replies;
+                delete this.attributes.replies;
+                if (replies) {
+                    this.replies.reset(replies, { parse: true, prefetched: true });
+                }
 
                 Resource.prototype.initialize.apply(this, arguments);
 
@@ -47,8 +47,11 @@ var Resource = Backbone.Model.extend({
 
     /**
      * Constructor
+     * @param {object} attributes The initial attributes of the resource
+     * @param {object} options Pass <code>prefetched: true</code> if the children
+     *     of the resource were already loaded together with it
      */
-    initialize: function () {
+    initialize: function (attributes, options) {
         if (this.attributes.tags) {
             this.set("tags", util.parseJSONString(this.attributes.tags));
         }
@@ -59,7 +62,7 @@ var Resource = Backbone.Model.extend({
 
         // TODO This is unnecessary
         function fetchChildren() {
-            if (this.id) {
+            if (this.id && !(options && options.prefetched)) {
                 this.fetchChildren();
             }
         }
@@ -21,6 +21,7 @@
 define(
     [
         "underscore",
+        "backbone",
         "access",
         "collections/tracks",
         "collections/categories",
@@ -30,6 +31,7 @@ define(
     ],
     function (
         _,
+        Backbone,
         ACCESS,
         Tracks,
         Categories,
@@ -87,12 +89,35 @@ define(
 
             /**
              * (Re-)Fetch all the other data once our ID changes.
+             * Everything but the comments is loaded with a single request to the video bundle.
+             * Note that we can not go through <code>this.sync</code> here,
+             * since that fetches the children again.
              */
             fetchChildren: function () {
-                this.get("categories").fetch({ async: false });
-                this.get("tracks").fetch({ async: false });
-                this.get("scales").fetch({ async: false });
-                this.get("questionnaires").fetch({ async: false });
+                var seriesExtId = this.get("categories").seriesExtId;
+                Backbone.sync("read", this, {
+                    url: _.result(this, "url") + "/bundle"
+                        + (seriesExtId ? "?series-extid=" + seriesExtId : ""),
+                    async: false,
+                    success: _.bind(this.resetChildren, this)
+                });
+            },
+
+            /**
+             * Replace all the other data with the given video bundle.
+             * @param {object} bundle The response of the video bundle endpoint
+             */
+            resetChildren: function (bundle) {
+                resetNested(this.get("tracks"), bundle.tracks, "annotations", function (track) {
+                    return track.annotations;
+                });
+                resetNested(this.get("categories"), bundle.categories, "labels", function (category) {
+                    return category.get("labels");
+                });
+                resetNested(this.get("scales"), bundle.scales, "scaleValues", function (scale) {
+                    return scale.get("scaleValues");
+                });
+                this.get("questionnaires").reset(bundle.questionnaires, { parse: true });
             },
 
             /**
@@ -194,6 +219,22 @@ define(
                 return json;
             }
         });
+        /**
+         * Reset a collection of resources whose children were loaded along with them.
+         * @param {Backbone.Collection} collection The collection to reset
+         * @param {object[]} resources The JSON of the resources including their children
+         * @param {string} key The attribute of each resource containing its children
+         * @param {function} children Get the collection of children of one resource
+         */
+        function resetNested(collection, resources, key, children) {
+            collection.reset(_.map(resources, function (resource) {
+                return _.omit(resource, key);
+            }), { parse: true, prefetched: true });
+            _.each(resources, function (resource) {
+                children(collection.get(resource.id)).reset(resource[key], { parse: true });
+            });
+        }
+
         return Video;
     }
 );
@@ -27,9 +27,7 @@ require.config({
         "mediaelement/lang": "libs/mediaelement/lang",
         "sortable": "libs/Sortable.min",
         "goldenlayout": "libs/goldenlayout",
-        "xlsx": "libs/xlsx.full.min",
         "vis-timeline": "libs/vis-timeline/vis-timeline-graph2d.min",
-        "papaparse": "libs/papaparse.min",
         "filesaver": "libs/FileSaver.min"
     },
 
@@ -331,7 +331,7 @@ define(
                 modelJSON.duration = (modelJSON.duration || 0.0);
                 modelJSON.textHeight = this.$el.find("span.freetext").height();
 
-                modelJSON.numberOfComments = this.model.get("comments").countCommentsAndReplies();
+                modelJSON.numberOfComments = this.model.countComments();
                 modelJSON.state = this.getState().id;
                 modelJSON.end = modelJSON.start + modelJSON.duration;
 
@@ -397,7 +397,9 @@ define(
                 }
 
                 if (this.getState().withComments) {
-                    if (this.getState() === ListAnnotation.STATES.COMMENTS || this.model.get("comments").length > 0) {
+                    if (this.getState() === ListAnnotation.STATES.COMMENTS || this.model.countComments() > 0) {
+                        // Re-renders once the comments are there
+                        this.model.fetchComments();
                         this.$el.find(".comments").append(
                             commentsContainerHeader(),
                             this.commentContainer.render().$el
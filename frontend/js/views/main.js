@@ -868,22 +868,12 @@ define(
                     .get("categories").filter(function (category) {
                         return category.get("visible");
                     });
-                switch (format) {
-                case "csv":
-                    annotationTool.exportCSV(
-                        tracksToExport,
-                        categoriesToExport,
-                        annotationTool.freeTextVisible
-                    );
-                    break;
-                case "xlsx":
-                    annotationTool.exportXLSX(
-                        tracksToExport,
-                        categoriesToExport,
-                        annotationTool.freeTextVisible
-                    );
-                    break;
-                }
+                annotationTool.exportAnnotations(
+                    format,
+                    tracksToExport,
+                    categoriesToExport,
+                    annotationTool.freeTextVisible
+                );
             },
 
             /**
@@ -899,16 +889,27 @@ define(
             print: function () {
                 window.focus();
                 if (document.readyState === "complete") {
-                    var printView = new PrintView(annotationTool);
-                    printView.render();
-                    window.print();
-                    printView.remove();
-
-                    // If is Chrome, we need to refresh the window
-                    // TODO WHY??!?!
-                    if (/chrome/i.test(navigator.userAgent)) {
-                        document.location.reload(false);
-                    }
+                    // The comments are printed, too, but they are only loaded on demand
+                    var commentsFetched = annotationTool.video.get("tracks").chain()
+                        .map(_.property(["annotations", "models"]))
+                        .flatten()
+                        .filter(function (annotation) {
+                            return annotation.countComments() > 0;
+                        })
+                        .invoke("fetchComments")
+                        .value();
+                    $.when.apply($, commentsFetched).then(function () {
+                        var printView = new PrintView(annotationTool);
+                        printView.render();
+                        window.print();
+                        printView.remove();
+
+                        // If is Chrome, we need to refresh the window
+                        // TODO WHY??!?!
+                        if (/chrome/i.test(navigator.userAgent)) {
+                            document.location.reload(false);
+                        }
+                    });
                 } else {
                     setTimeout(this.print, 1000);
                 }
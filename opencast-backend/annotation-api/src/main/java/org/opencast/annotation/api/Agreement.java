@@ -0,0 +1,47 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.api;
+
+import org.opencastproject.util.data.Option;
+
+import java.util.List;
+
+/**
+ * How much the annotators of a video agree in the labels they assigned to the same moments of the video.
+ * Every annotator is represented by one of their tracks.
+ * The measures are computed over the time during which at least one of the tracks has an annotation with a label,
+ * with the set of labels a track assigns at a moment being its value at that moment.
+ */
+public interface Agreement {
+
+  /** The ids of the compared tracks */
+  List<Long> getTrackIds();
+
+  /** The time in seconds during which at least one of the tracks has an annotation with a label */
+  double getDuration();
+
+  /** The share of that time during which all tracks assign the same labels */
+  Option<Double> getObservedAgreement();
+
+  /** Cohen's kappa; only defined for two tracks */
+  Option<Double> getCohensKappa();
+
+  /** Fleiss' kappa */
+  Option<Double> getFleissKappa();
+
+  /** Krippendorff's alpha for nominal values, with every second of the compared time counting as one unit */
+  Option<Double> getKrippendorffsAlpha();
+}
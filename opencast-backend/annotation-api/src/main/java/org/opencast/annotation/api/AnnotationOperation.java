@@ -0,0 +1,125 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.api;
+
+import static org.opencastproject.util.data.Option.none;
+import static org.opencastproject.util.data.Option.some;
+
+import org.opencast.annotation.api.ExtendedAnnotationException.Cause;
+
+import org.opencastproject.util.data.Option;
+
+/**
+ * An operation on a single annotation, applied as part of a batch.
+ *
+ * @see ExtendedAnnotationService#applyAnnotationOperations(long, java.util.List)
+ */
+public final class AnnotationOperation {
+
+  /**
+   * Possible operations
+   */
+  public enum Type {
+    CREATE, UPDATE, DELETE
+  }
+
+  private final Type type;
+  private final long id;
+  private final Option<Annotation> annotation;
+
+  private AnnotationOperation(Type type, long id, Option<Annotation> annotation) {
+    this.type = type;
+    this.id = id;
+    this.annotation = annotation;
+  }
+
+  /**
+   * Create the given annotation. Its id is ignored.
+   */
+  public static AnnotationOperation create(Annotation annotation) {
+    return new AnnotationOperation(Type.CREATE, annotation.getId(), some(annotation));
+  }
+
+  /**
+   * Update the annotation with the id of the given one. The logging information of the given annotation is ignored.
+   */
+  public static AnnotationOperation update(Annotation annotation) {
+    return new AnnotationOperation(Type.UPDATE, annotation.getId(), some(annotation));
+  }
+
+  /**
+   * Delete the annotation with the given id.
+   */
+  public static AnnotationOperation delete(long id) {
+    return new AnnotationOperation(Type.DELETE, id, none());
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  /**
+   * Return the new state of the annotation, if this is not a deletion.
+   */
+  public Option<Annotation> getAnnotation() {
+    return annotation;
+  }
+
+  /**
+   * The outcome of a single operation.
+   */
+  public static final class Result {
+    private final Option<Annotation> annotation;
+    private final Option<Cause> error;
+
+    private Result(Option<Annotation> annotation, Option<Cause> error) {
+      this.annotation = annotation;
+      this.error = error;
+    }
+
+    /**
+     * The operation succeeded and left the annotation in the given state.
+     */
+    public static Result success(Annotation annotation) {
+      return new Result(some(annotation), none());
+    }
+
+    /**
+     * The operation could not be applied for the given reason.
+     */
+    public static Result failure(Cause cause) {
+      return new Result(none(), some(cause));
+    }
+
+    /**
+     * Return the created, updated or deleted annotation, if the operation succeeded.
+     */
+    public Option<Annotation> getAnnotation() {
+      return annotation;
+    }
+
+    /**
+     * Return the reason why the operation failed, if it did.
+     */
+    public Option<Cause> getError() {
+      return error;
+    }
+  }
+}
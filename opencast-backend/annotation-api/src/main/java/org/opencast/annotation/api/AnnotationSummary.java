@@ -0,0 +1,39 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.api;
+
+import org.opencastproject.util.data.Option;
+
+import java.util.List;
+
+/**
+ * The parts of an {@link Annotation} needed to place it on a timeline,
+ * without its content, settings and metadata.
+ */
+public interface AnnotationSummary {
+
+  /** The annotation id */
+  long getId();
+
+  /** The annotation entry timepoint in seconds. */
+  double getStart();
+
+  /** The duration of the annotation in seconds. */
+  Option<Double> getDuration();
+
+  /** The ids of the labels the content of the annotation refers to */
+  List<Long> getLabelIds();
+}
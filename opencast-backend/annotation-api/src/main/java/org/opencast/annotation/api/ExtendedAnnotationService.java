@@ -18,6 +18,8 @@ package org.opencast.annotation.api;
 import org.opencastproject.mediapackage.MediaPackage;
 import org.opencastproject.util.data.Option;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
@@ -82,6 +84,15 @@ public interface ExtendedAnnotationService {
    */
   Option<User> getUser(long id) throws ExtendedAnnotationException;
 
+  /**
+   * Get several users by id at once.
+   *
+   * @param ids the users' internal ids
+   * @return the users that could be found; ids without a (non-deleted) user are skipped
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  Stream<User> getUsers(Collection<Long> ids) throws ExtendedAnnotationException;
+
   /**
    * Get a user by his external id, which is the id he has in the surrounding video portal.
    *
@@ -117,7 +128,7 @@ public interface ExtendedAnnotationService {
   void updateVideo(Video v) throws ExtendedAnnotationException;
 
   /**
-   * Delete a video.
+   * Delete a video together with its tracks, annotations, comments, categories, labels, scales and scale values.
    *
    * @param v
    *          the video
@@ -180,7 +191,7 @@ public interface ExtendedAnnotationService {
   void updateTrack(Track track) throws ExtendedAnnotationException;
 
   /**
-   * Delete a track.
+   * Delete a track together with its annotations and their comments.
    *
    * @param track
    *          the track to delete
@@ -201,6 +212,19 @@ public interface ExtendedAnnotationService {
    */
   Option<Track> getTrack(long id) throws ExtendedAnnotationException;
 
+  /**
+   * Get a track of a video.
+   *
+   * @param videoId
+   *          the id of the video the track has to belong to
+   * @param id
+   *          the track id
+   * @return the requested track, or none if it does not exist or belongs to another video
+   * @throws ExtendedAnnotationException
+   *           if an error occurs while storing/retrieving from persistence storage
+   */
+  Option<Track> getTrack(long videoId, long id) throws ExtendedAnnotationException;
+
   /**
    * Get all tracks from a video.
    *
@@ -278,6 +302,21 @@ public interface ExtendedAnnotationService {
    */
   Option<Annotation> getAnnotation(long id) throws ExtendedAnnotationException;
 
+  /**
+   * Get an annotation by its path, checking that it belongs to the given track of the given video.
+   *
+   * @param videoId
+   *          the id of the video
+   * @param trackId
+   *          the id of the track
+   * @param id
+   *          the annotation id
+   * @return the requested annotation, or none if any part of the path does not exist or they do not belong together
+   * @throws ExtendedAnnotationException
+   *           if an error occurs while storing/retrieving from persistence storage
+   */
+  Option<Annotation> getAnnotation(long videoId, long trackId, long id) throws ExtendedAnnotationException;
+
   /**
    * Get annotations of a track.
    *
@@ -287,6 +326,98 @@ public interface ExtendedAnnotationService {
    */
   Stream<Annotation> getAnnotations(long trackId) throws ExtendedAnnotationException;
 
+  /**
+   * Get the annotations of a track which are displayed in the given time window, sorted by their start time.
+   * Annotations without a duration are displayed at their start time only.
+   * <p>
+   * The offset and limit are applied after the annotations of inaccessible categories are filtered out,
+   * so only the last page contains fewer annotations than the limit.
+   * The annotations are loaded while the stream is consumed, as many as it takes to fill the page.
+   *
+   * @param trackId the track id
+   * @param from only return annotations which are still displayed at or after this time
+   * @param to only return annotations which start at or before this time
+   * @param offset the number of annotations to skip
+   * @param limit the maximum number of annotations to return
+   * @return the annotation list or an empty list if no annotation has been found
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  Stream<Annotation> getAnnotations(long trackId, Option<Double> from, Option<Double> to, Option<Integer> offset,
+          Option<Integer> limit) throws ExtendedAnnotationException;
+
+  /**
+   * Like {@link #getAnnotations(long, Option, Option, Option, Option)}, but only load what is needed to place
+   * the annotations on a timeline. This is a lot cheaper for tracks with many annotations.
+   *
+   * @param trackId the track id
+   * @param from only return annotations which are still displayed at or after this time
+   * @param to only return annotations which start at or before this time
+   * @param offset the number of annotations to skip
+   * @param limit the maximum number of annotations to return
+   * @return the annotation summaries or an empty list if no annotation has been found
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  Stream<AnnotationSummary> getAnnotationSummaries(long trackId, Option<Double> from, Option<Double> to,
+          Option<Integer> offset, Option<Integer> limit) throws ExtendedAnnotationException;
+
+  /**
+   * Create, update and delete annotations of a track in a single transaction.
+   * Operations on annotations which do not exist or belong to another track fail with {@link ExtendedAnnotationException.Cause#NOT_FOUND},
+   * operations on annotations the current user has no access to with {@link ExtendedAnnotationException.Cause#UNAUTHORIZED}.
+   * Failing operations do not prevent the others from being applied.
+   *
+   * @param trackId the track id
+   * @param operations the operations to apply, in order
+   * @return the result of each operation, in the same order as the operations
+   * @throws ExtendedAnnotationException if the track does not exist
+   *           or an error occurs while storing/retrieving from persistence storage
+   */
+  List<AnnotationOperation.Result> applyAnnotationOperations(long trackId, List<AnnotationOperation> operations)
+          throws ExtendedAnnotationException;
+
+  /**
+   * Get the annotations of all tracks of a video at once.
+   *
+   * @param videoId the video id
+   * @return the annotation list or an empty list if no annotation has been found
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  Stream<Annotation> getVideoAnnotations(long videoId) throws ExtendedAnnotationException;
+
+  /**
+   * Get the annotations of all tracks of a video ordered by id.
+   * Unlike {@link #getVideoAnnotations(long)}, the annotations are loaded page by page while the stream is consumed,
+   * so that arbitrarily many annotations can be processed in constant memory.
+   *
+   * @param videoId the video id
+   * @return the annotations of the video
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  Stream<Annotation> streamVideoAnnotations(long videoId) throws ExtendedAnnotationException;
+
+  /**
+   * Count how often and for how long each label has been used in the annotations of a video,
+   * broken down by track and by the user who created the annotations.
+   * Only tracks and categories the current user has access to are included.
+   *
+   * @param videoId the video id
+   * @return the usage of the labels or an empty list if no labels have been used
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  Stream<LabelUsage> getLabelUsage(long videoId) throws ExtendedAnnotationException;
+
+  /**
+   * Compute how much the given tracks of a video agree in the labels of their annotations over time.
+   * Annotations without duration, and labels of categories the current user has no access to, are ignored.
+   *
+   * @param videoId the video id
+   * @param trackIds the ids of the tracks to compare
+   * @return the agreement of the tracks
+   * @throws ExtendedAnnotationException if one of the tracks is not a track of the video the current user
+   *           has access to, or if an error occurs while storing/retrieving from persistence storage
+   */
+  Agreement getAgreement(long videoId, List<Long> trackIds) throws ExtendedAnnotationException;
+
   /**
    * Create a scale
    *
@@ -388,6 +519,15 @@ public interface ExtendedAnnotationService {
    */
   Stream<ScaleValue> getScaleValues(long scaleId) throws ExtendedAnnotationException;
 
+  /**
+   * Get the scale values of all scales of a video at once.
+   *
+   * @param videoId the video id
+   * @return the scale value list or an empty list if no scale values has been found
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  Stream<ScaleValue> getVideoScaleValues(long videoId) throws ExtendedAnnotationException;
+
   /**
    * Update a scale value
    *
@@ -598,6 +738,16 @@ public interface ExtendedAnnotationService {
    */
   Stream<Label> getLabels(long categoryId) throws ExtendedAnnotationException;
 
+  /**
+   * Get the labels of all categories of a video at once.
+   * Like {@link #getLabels(long)}, this brings outdated copies of series categories up to date first.
+   *
+   * @param videoId the video id
+   * @return the label list or an empty list if no labels have been found
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  Stream<Label> getVideoLabels(long videoId) throws ExtendedAnnotationException;
+
   /**
    * Update a label.
    *
@@ -643,6 +793,21 @@ public interface ExtendedAnnotationService {
    */
   Option<Comment> getComment(long id);
 
+  /**
+   * Get a comment by its path, checking that it belongs to the given annotation of the given track and video.
+   *
+   * @param videoId
+   *          the id of the video
+   * @param trackId
+   *          the id of the track
+   * @param annotationId
+   *          the id of the annotation
+   * @param id
+   *          the comment id
+   * @return the comment, or none if any part of the path does not exist or they do not belong together
+   */
+  Option<Comment> getComment(long videoId, long trackId, long annotationId, long id);
+
   /**
    * Get all comments from an annotation
    *
@@ -652,6 +817,34 @@ public interface ExtendedAnnotationService {
    */
   Stream<Comment> getComments(long annotationId, Option<Long> replyToId);
 
+  /**
+   * Get the whole discussion of an annotation at once: its comments, the replies to them, the replies to those and so on.
+   *
+   * @param annotationId the annotation id
+   * @param after only get the top level comments with a larger id, to continue where a previous part of the
+   *          discussion ended
+   * @param limit get at most one more than this many top level comments, so that the caller can tell whether
+   *          there are more; none for all of them
+   * @return the top level comments ordered by id, followed by all replies to them in no particular order
+   */
+  Stream<Comment> getCommentThread(long annotationId, Option<Long> after, Option<Integer> limit);
+
+  /**
+   * Get all comments and replies of several annotations at once.
+   *
+   * @param annotationIds the annotation ids
+   * @return the comments ordered by annotation and id, so that replies follow the comments they reply to
+   */
+  Stream<Comment> getComments(Collection<Long> annotationIds);
+
+  /**
+   * Count the comments and replies on each of the given annotations.
+   *
+   * @param annotationIds the annotation ids
+   * @return the number of comments by annotation id; annotations without comments are left out
+   */
+  Map<Long, Long> countComments(List<Long> annotationIds);
+
   /**
    * Update a comment
    *
@@ -717,6 +910,50 @@ public interface ExtendedAnnotationService {
    */
   Resource deleteResource(Resource resource);
 
+  /**
+   * Get the version of a collection of resources.
+   * The version changes whenever a resource is added to, changed in or deleted from the collection,
+   * so that clients can tell whether a copy of the collection they already have is still up to date.
+   *
+   * @param collection
+   *          the kind of collection
+   * @param id
+   *          the id of the resource the collection belongs to
+   * @return the version of the collection
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  String getVersion(ResourceCollection collection, Object id) throws ExtendedAnnotationException;
+
+  /**
+   * Get the version of the nicknames and other details of all users,
+   * which are embedded in the representations of the resources they created.
+   *
+   * @return the version of the users
+   * @throws ExtendedAnnotationException if an error occurs while storing/retrieving from persistence storage
+   */
+  String getUsersVersion() throws ExtendedAnnotationException;
+
+  /**
+   * Get the version of what the current user has access to, which changes with the user and their roles.
+   *
+   * @param videoId
+   *          the video whose annotate admins can access more resources, if any
+   * @return the version of the access of the current user
+   */
+  String getAccessVersion(Option<Long> videoId);
+
+  /**
+   * Begin a unit of work on the current thread.
+   * Until it is ended, all calls to this service on this thread share one entity manager and transaction,
+   * instead of running in a transaction of their own each.
+   * Beginning a unit of work while another one is still active on the thread rolls back the other one.
+   *
+   * @return the unit of work, to be ended on the current thread
+   * @throws ExtendedAnnotationException
+   *           if the transaction could not be started
+   */
+  UnitOfWork beginUnitOfWork() throws ExtendedAnnotationException;
+
   /**
    * Checks if the current user has access to the given resource
    *
@@ -750,4 +987,13 @@ public interface ExtendedAnnotationService {
    * @return the media package corresponding to the given id, if it can be found
    */
   Option<MediaPackage> findMediaPackage(String id);
+
+  /**
+   * Find the Opencast media packages of a series in the current organization
+   *
+   * @param seriesId
+   *          the Opencast-level id of a series
+   * @return the media packages of the series; empty if there is no such series
+   */
+  List<MediaPackage> findSeriesMediaPackages(String seriesId);
 }
@@ -0,0 +1,39 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.api;
+
+import org.opencastproject.util.data.Option;
+
+/**
+ * How often and for how long a label has been used in the annotations one user created on one track.
+ */
+public interface LabelUsage {
+
+  /** The label id */
+  long getLabelId();
+
+  /** The track id */
+  long getTrackId();
+
+  /** The id of the user who created the annotations */
+  Option<Long> getUserId();
+
+  /** The number of times the label is used by the annotations */
+  long getCount();
+
+  /** The total duration of the annotations using the label in seconds */
+  double getDuration();
+}
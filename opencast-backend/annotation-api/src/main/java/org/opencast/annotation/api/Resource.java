@@ -55,6 +55,9 @@ public interface Resource {
   /** The deletion date */
   Option<Date> getDeletedAt();
 
+  /** The number of changes of the resource, counted up with every change that is stored */
+  long getRevision();
+
   /** The tags */
   Map<String, String> getTags();
 }
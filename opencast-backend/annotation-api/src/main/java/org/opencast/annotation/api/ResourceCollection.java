@@ -0,0 +1,52 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.api;
+
+/**
+ * The collections of resources whose version can be looked up with
+ * {@link ExtendedAnnotationService#getVersion(ResourceCollection, Object)}.
+ * Each collection is identified by the id of the resource it belongs to.
+ */
+public enum ResourceCollection {
+  /** The tracks of a video, by video id */
+  TRACKS_OF_VIDEO,
+  /** The annotations of a track, by track id */
+  ANNOTATIONS_OF_TRACK,
+  /** The annotations of all tracks of a video, by video id */
+  ANNOTATIONS_OF_VIDEO,
+  /** The categories of a video, by video id */
+  CATEGORIES_OF_VIDEO,
+  /** The master series categories of a series and their copies, by series id */
+  CATEGORIES_OF_SERIES,
+  /** The labels of a category and of its master series category, by category id */
+  LABELS_OF_CATEGORY,
+  /** The labels of the categories of a video and of their master series categories, by video id */
+  LABELS_OF_VIDEO,
+  /** The scales of a video, by video id */
+  SCALES_OF_VIDEO,
+  /** The values of a scale, by scale id */
+  SCALE_VALUES_OF_SCALE,
+  /** The values of the scales of a video, by video id */
+  SCALE_VALUES_OF_VIDEO,
+  /** The questionnaires of a video, by video id */
+  QUESTIONNAIRES_OF_VIDEO,
+  /** The comments and replies on an annotation, by annotation id */
+  COMMENTS_OF_ANNOTATION,
+  /** The comments and replies on the annotations of a track, by track id */
+  COMMENTS_OF_TRACK,
+  /** The comments and replies on the annotations of all tracks of a video, by video id */
+  COMMENTS_OF_VIDEO
+}
@@ -0,0 +1,39 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.api;
+
+/**
+ * A scope in which all calls to the {@link ExtendedAnnotationService} made on one thread
+ * share a single entity manager and transaction.
+ * It has to be ended on the thread that began it, by either committing or rolling it back.
+ *
+ * @see ExtendedAnnotationService#beginUnitOfWork()
+ */
+public interface UnitOfWork {
+  /**
+   * Commit the changes made in the unit of work and end it.
+   * If the transaction has been marked for rollback by an earlier error, it is rolled back instead.
+   *
+   * @throws ExtendedAnnotationException
+   *           if the changes could not be committed
+   */
+  void commit() throws ExtendedAnnotationException;
+
+  /**
+   * Discard the changes made in the unit of work and end it.
+   */
+  void rollback();
+}
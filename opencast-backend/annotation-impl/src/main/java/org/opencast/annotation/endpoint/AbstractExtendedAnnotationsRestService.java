@@ -41,7 +41,15 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.DELETE;
 import javax.ws.rs.FormParam;
@@ -51,8 +59,11 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 // no @Path annotation here since this class cannot be created by JAX-RS. Put it on implementations.
 public abstract class AbstractExtendedAnnotationsRestService {
@@ -66,6 +77,8 @@ public abstract class AbstractExtendedAnnotationsRestService {
 
   protected abstract String getEndpointBaseUrl();
 
+  protected abstract ExportJobs getExportJobs();
+
   // shorthand
   private ExtendedAnnotationService eas() {
     return getExtendedAnnotationsService();
@@ -167,7 +180,7 @@ public abstract class AbstractExtendedAnnotationsRestService {
   @GET
   @Produces(MediaType.APPLICATION_JSON)
   @Path("/users/{id}")
-  public Response getUser(@PathParam("id") final long id) {
+  public Response getUser(@PathParam("id") final long id, @Context final Request request) {
     return run(nil, new Function0<>() {
       @Override
       public Response apply() {
@@ -178,7 +191,8 @@ public abstract class AbstractExtendedAnnotationsRestService {
               return UNAUTHORIZED;
             }
 
-            return Response.ok(UserDto.toJson.apply(eas(), u).toString()).build();
+            return ETags.conditional(request, ETags.tag(eas(), Option.<Long> none(), ETags.version(u)),
+                () -> Response.ok(UserDto.toJson.apply(eas(), u).toString()).build());
           }
 
           @Override
@@ -274,9 +288,144 @@ public abstract class AbstractExtendedAnnotationsRestService {
     });
   }
 
+  /**
+   * Start exporting the annotations of several videos in the background.
+   * The videos can be given by their media package ids and/or by their series.
+   * Videos that are not annotated yet or that the user has no access to are skipped.
+   */
+  @POST
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("/exports")
+  public Response postExport(@FormParam("video_extid") final List<String> videoExtIds,
+          @FormParam("series_extid") final String seriesExtId) {
+    return run(nil, new Function0<>() {
+      @Override
+      public Response apply() {
+        // By media package id
+        final Map<String, MediaPackage> mediaPackages = new LinkedHashMap<>();
+        for (String mediaPackageId : videoExtIds) {
+          for (MediaPackage mediaPackage : eas().findMediaPackage(mediaPackageId)) {
+            mediaPackages.put(mediaPackageId, mediaPackage);
+          }
+        }
+        for (String seriesId : trimToNone(seriesExtId)) {
+          for (MediaPackage mediaPackage : eas().findSeriesMediaPackages(seriesId)) {
+            mediaPackages.putIfAbsent(mediaPackage.getIdentifier().toString(), mediaPackage);
+          }
+        }
+        if (videoExtIds.isEmpty() && mediaPackages.isEmpty()) {
+          return BAD_REQUEST;
+        }
+        return getExportJobs().submit(getAnnotatedVideos(mediaPackages.values())).fold(new Option.Match<>() {
+          @Override
+          public Response some(ExportJobs.Job job) {
+            return Response.status(Response.Status.ACCEPTED).header(LOCATION, exportLocationUri(job))
+                    .entity(job.toJson().toString()).build();
+          }
+
+          @Override
+          public Response none() {
+            return TOO_MANY_REQUESTS;
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Get the progress of an export.
+   */
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("/exports/{id}")
+  public Response getExport(@PathParam("id") final String id) {
+    return getExportJobs().get(id).fold(new Option.Match<>() {
+      @Override
+      public Response some(ExportJobs.Job job) {
+        return Response.ok(job.toJson().toString()).build();
+      }
+
+      @Override
+      public Response none() {
+        return NOT_FOUND;
+      }
+    });
+  }
+
+  /**
+   * Download the result of a finished export.
+   */
+  @GET
+  @Produces("application/zip")
+  @Path("/exports/{id}/file")
+  public Response getExportFile(@PathParam("id") final String id) {
+    return getExportJobs().get(id).fold(new Option.Match<>() {
+      @Override
+      public Response some(ExportJobs.Job job) {
+        if (job.getStatus() != ExportJobs.Status.FINISHED) {
+          return CONFLICT;
+        }
+        final Option<InputStream> file;
+        try {
+          file = job.openFile();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        if (file.isNone()) {
+          return NOT_FOUND;
+        }
+        // The archive is kept until it has been read completely
+        final StreamingOutput download = out -> {
+          try (InputStream in = file.get()) {
+            in.transferTo(out);
+          }
+        };
+        return Response.ok(download)
+                .header("Content-Disposition", "attachment; filename=\"export.zip\"").build();
+      }
+
+      @Override
+      public Response none() {
+        return NOT_FOUND;
+      }
+    });
+  }
+
+  /**
+   * Count how often and for how long the labels have been used in the annotations of all videos of a series.
+   */
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("/series/{seriesExtId}/statistics")
+  public Response getSeriesStatistics(@PathParam("seriesExtId") final String seriesExtId) {
+    return run(nil, new Function0<>() {
+      @Override
+      public Response apply() {
+        return Response.ok(LabelStatistics.of(eas(), getAnnotatedVideos(eas().findSeriesMediaPackages(seriesExtId)),
+                true).toString()).build();
+      }
+    });
+  }
+
+  /**
+   * Get the videos of the given media packages the current user may annotate.
+   * Media packages which have not been annotated yet are skipped.
+   */
+  private List<Video> getAnnotatedVideos(Collection<MediaPackage> mediaPackages) {
+    final List<Video> videos = new ArrayList<>();
+    for (MediaPackage mediaPackage : mediaPackages) {
+      for (Video video : eas().getVideoByExtId(mediaPackage.getIdentifier().toString())) {
+        if (eas().hasVideoAccess(mediaPackage, ANNOTATE_ACTION) && eas().hasResourceAccess(video)) {
+          videos.add(video);
+        }
+      }
+    }
+    return videos;
+  }
+
   @Path("/videos/{id}")
-  public VideoEndpoint video(@PathParam("id") final long id) {
-    return new VideoEndpoint(id, this, eas());
+  public VideoEndpoint video(@PathParam("id") final long id, @Context final Request request) {
+    return new VideoEndpoint(id, this, eas(), request);
   }
 
   // --
@@ -286,6 +435,7 @@ public abstract class AbstractExtendedAnnotationsRestService {
   static final Response FORBIDDEN = Response.status(Response.Status.FORBIDDEN).build();
   static final Response BAD_REQUEST = Response.status(Response.Status.BAD_REQUEST).build();
   static final Response CONFLICT = Response.status(Response.Status.CONFLICT).build();
+  static final Response TOO_MANY_REQUESTS = Response.status(Response.Status.TOO_MANY_REQUESTS).build();
   static final Response SERVER_ERROR = Response.serverError().build();
   static final Response NO_CONTENT = Response.noContent().build();
 
@@ -321,4 +471,8 @@ public abstract class AbstractExtendedAnnotationsRestService {
   private URI videoLocationUri(Video v) {
     return uri(getEndpointBaseUrl(), "videos", v.getId());
   }
+
+  private URI exportLocationUri(ExportJobs.Job job) {
+    return uri(getEndpointBaseUrl(), "exports", job.getId());
+  }
 }
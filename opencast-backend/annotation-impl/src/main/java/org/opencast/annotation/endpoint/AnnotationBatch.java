@@ -0,0 +1,172 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.opencast.annotation.impl.Jsons.jA;
+import static org.opencast.annotation.impl.Jsons.jO;
+import static org.opencast.annotation.impl.Jsons.p;
+import static org.opencastproject.util.data.Option.none;
+import static org.opencastproject.util.data.Option.option;
+import static org.opencastproject.util.data.Option.some;
+import static org.opencastproject.util.data.functions.Strings.trimToNone;
+
+import org.opencast.annotation.api.Annotation;
+import org.opencast.annotation.api.AnnotationOperation;
+import org.opencast.annotation.api.ExtendedAnnotationException.Cause;
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.impl.AnnotationImpl;
+import org.opencast.annotation.impl.persistence.AnnotationDto;
+import org.opencast.annotation.impl.persistence.UserResolver;
+
+import org.opencastproject.util.data.Option;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+
+/**
+ * Conversion of annotation batches from and to JSON.
+ * A batch is an array of operations like
+ * <code>{"action": "create" | "update" | "delete", "id": ..., "start": ..., "duration": ..., "content": ...,
+ * "createdFromQuestionnaire": ..., "settings": ...}</code>,
+ * where the id is only needed for updates and deletions, and the rest only for creations and updates.
+ */
+final class AnnotationBatch {
+  private AnnotationBatch() {
+  }
+
+  /**
+   * Parse a batch of annotation operations.
+   *
+   * @param resource
+   *          the logging information of the annotations to create
+   * @return the operations or none if the batch is malformed
+   */
+  static Option<List<AnnotationOperation>> parse(String json, long trackId, Resource resource) {
+    final Object parsed;
+    try {
+      parsed = new JSONParser().parse(json);
+    } catch (ParseException e) {
+      return none();
+    }
+    if (!(parsed instanceof JSONArray)) {
+      return none();
+    }
+    final List<AnnotationOperation> operations = new ArrayList<>();
+    for (Object item : (JSONArray) parsed) {
+      if (!(item instanceof JSONObject)) {
+        return none();
+      }
+      final JSONObject operation = (JSONObject) item;
+      final Option<Number> id = number(operation, "id");
+      final Option<Number> start = number(operation, "start");
+      final String action = String.valueOf(operation.get("action"));
+      if ("create".equals(action) && start.isSome()) {
+        operations.add(AnnotationOperation.create(annotation(operation, 0, trackId, resource)));
+      } else if ("update".equals(action) && id.isSome() && start.isSome()) {
+        operations.add(AnnotationOperation.update(annotation(operation, id.get().longValue(), trackId, resource)));
+      } else if ("delete".equals(action) && id.isSome()) {
+        operations.add(AnnotationOperation.delete(id.get().longValue()));
+      } else {
+        return none();
+      }
+    }
+    return some(operations);
+  }
+
+  /**
+   * Serialize the results of a batch as an object with a <code>results</code> array.
+   * Each result contains the HTTP status the corresponding single request would have gotten,
+   * and the annotation, unless it was deleted or the operation failed.
+   */
+  static JSONObject toJson(ExtendedAnnotationService eas, List<AnnotationOperation> operations,
+          List<AnnotationOperation.Result> results) {
+    final List<Annotation> annotations = new ArrayList<>();
+    for (AnnotationOperation.Result result : results) {
+      for (Annotation a : result.getAnnotation()) {
+        annotations.add(a);
+      }
+    }
+    final UserResolver users = UserResolver.of(eas, annotations);
+    final List<JSONObject> json = new ArrayList<>();
+    for (int i = 0; i < results.size(); i++) {
+      final AnnotationOperation.Result result = results.get(i);
+      if (result.getError().isSome()) {
+        json.add(jO(p("status", status(result.getError().get()).getStatusCode())));
+        continue;
+      }
+      switch (operations.get(i).getType()) {
+        case CREATE:
+          json.add(jO(p("status", Response.Status.CREATED.getStatusCode()),
+                  p("annotation", AnnotationDto.toJson(eas, users, result.getAnnotation().get()))));
+          break;
+        case UPDATE:
+          json.add(jO(p("status", Response.Status.OK.getStatusCode()),
+                  p("annotation", AnnotationDto.toJson(eas, users, result.getAnnotation().get()))));
+          break;
+        default:
+          json.add(jO(p("status", Response.Status.NO_CONTENT.getStatusCode())));
+      }
+    }
+    return jO(p("results", jA(json.toArray())));
+  }
+
+  private static Response.Status status(Cause cause) {
+    switch (cause) {
+      case NOT_FOUND:
+        return Response.Status.NOT_FOUND;
+      case UNAUTHORIZED:
+        return Response.Status.UNAUTHORIZED;
+      case DUPLICATE:
+        return Response.Status.CONFLICT;
+      default:
+        return Response.Status.INTERNAL_SERVER_ERROR;
+    }
+  }
+
+  /** Create the annotation described by the given operation, which must have a start. */
+  private static Annotation annotation(JSONObject operation, long id, long trackId, Resource resource) {
+    final Option<Number> duration = number(operation, "duration");
+    final Option<Number> createdFromQuestionnaire = number(operation, "createdFromQuestionnaire");
+    return new AnnotationImpl(id, trackId, number(operation, "start").get().doubleValue(),
+            duration.isSome() ? some(duration.get().doubleValue()) : Option.<Double> none(),
+            string(operation, "content").getOrElse("[]"),
+            createdFromQuestionnaire.isSome() ? createdFromQuestionnaire.get().longValue() : 0L,
+            string(operation, "settings").bind(trimToNone), resource);
+  }
+
+  private static Option<Number> number(JSONObject operation, String key) {
+    final Object value = operation.get(key);
+    return value instanceof Number ? some((Number) value) : Option.<Number> none();
+  }
+
+  /** Strings are taken as they are, other values like the content array are passed on as JSON. */
+  private static Option<String> string(JSONObject operation, String key) {
+    final Object value = operation.get(key);
+    if (value == null) {
+      return none();
+    }
+    return option(value instanceof String ? (String) value : JSONValue.toJSONString(value));
+  }
+}
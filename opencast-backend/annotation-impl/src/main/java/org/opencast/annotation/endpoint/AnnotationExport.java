@@ -0,0 +1,291 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.opencastproject.util.data.Option.none;
+
+import org.opencast.annotation.api.Annotation;
+import org.opencast.annotation.api.Category;
+import org.opencast.annotation.api.Comment;
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Label;
+import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.api.Scale;
+import org.opencast.annotation.api.ScaleValue;
+import org.opencast.annotation.api.Track;
+import org.opencast.annotation.api.User;
+import org.opencast.annotation.impl.persistence.UserResolver;
+
+import org.opencastproject.util.data.Option;
+
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * The annotations of a video as a spreadsheet, with one row per content item and comment of each annotation.
+ * The tracks, categories, labels and scales are loaded up front to look up the names in the rows,
+ * but the annotations are read and written page by page, so that the export runs in constant memory.
+ */
+final class AnnotationExport implements StreamingOutput {
+  /** How many annotations are written before the comments of the next ones are loaded */
+  private static final int PAGE_SIZE = 1000;
+
+  private static final List<String> HEADER = Arrays.asList(
+          "ID", "Creation date", "Last update", "Author nickname", "Author mail",
+          "Track name", "Leadin", "Leadout", "Duration", "Text",
+          "Category name", "Label name", "Label abbreviation", "Scale name", "Scale value name", "Scale value value",
+          "Comment ID", "Comment creation date", "Last update of comment", "Comment author nickname",
+          "Comment author mail", "Comment text", "Comment replies to", "Type");
+  private static final int COLUMNS = HEADER.size();
+
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+          .withZone(ZoneOffset.UTC);
+
+  private final ExtendedAnnotationService eas;
+  private final UserResolver users;
+  private final Spreadsheet.Format format;
+  private final long videoId;
+  private final Map<Long, Track> tracks;
+  private final Map<Long, Category> categories;
+  private final Map<Long, Label> labels;
+  private final Map<Long, Scale> scales;
+  private final Map<Long, ScaleValue> scaleValues;
+  private final Option<Set<Long>> categoryFilter;
+  private final boolean freeText;
+
+  private AnnotationExport(ExtendedAnnotationService eas, Spreadsheet.Format format, long videoId,
+          Map<Long, Track> tracks, Map<Long, Category> categories, Map<Long, Label> labels, Map<Long, Scale> scales,
+          Map<Long, ScaleValue> scaleValues, Option<Set<Long>> categoryFilter, boolean freeText) {
+    this.eas = eas;
+    this.users = UserResolver.of(eas);
+    this.format = format;
+    this.videoId = videoId;
+    this.tracks = tracks;
+    this.categories = categories;
+    this.labels = labels;
+    this.scales = scales;
+    this.scaleValues = scaleValues;
+    this.categoryFilter = categoryFilter;
+    this.freeText = freeText;
+  }
+
+  /**
+   * Prepare the export of the annotations of the given video.
+   *
+   * @param trackFilter
+   *          the tracks to export, or none for all tracks the user has access to
+   * @param categoryFilter
+   *          the categories whose annotations to export, or none for all of them
+   * @param freeText
+   *          whether to export annotations without labels
+   */
+  static AnnotationExport load(ExtendedAnnotationService eas, Spreadsheet.Format format, long videoId,
+          Option<Set<Long>> trackFilter, Option<Set<Long>> categoryFilter, boolean freeText) {
+    final Map<Long, Track> tracks = byId(eas.getTracks(videoId)
+            .filter(track -> trackFilter.isNone() || trackFilter.get().contains(track.getId()))
+            .collect(Collectors.toList()));
+    final List<Category> categories = eas.getCategories(none(), videoId).collect(Collectors.toList());
+    final Map<Long, Category> categoriesById = byId(categories);
+    final Map<Long, Label> labels = byId(eas.getVideoLabels(videoId)
+            .filter(label -> categoriesById.containsKey(label.getCategoryId()))
+            .collect(Collectors.toList()));
+    return new AnnotationExport(eas, format, videoId, tracks, categoriesById, labels,
+            byId(eas.getScales(videoId).collect(Collectors.toList())),
+            byId(eas.getVideoScaleValues(videoId).collect(Collectors.toList())), categoryFilter, freeText);
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    final Spreadsheet sheet = Spreadsheet.open(format, output);
+    sheet.writeRow(HEADER);
+    final Iterator<Annotation> annotations = eas.streamVideoAnnotations(videoId)
+            .filter(annotation -> tracks.containsKey(annotation.getTrackId()))
+            .iterator();
+    final List<Annotation> page = new ArrayList<>(PAGE_SIZE);
+    while (annotations.hasNext()) {
+      page.add(annotations.next());
+      if (page.size() == PAGE_SIZE || !annotations.hasNext()) {
+        writePage(sheet, page);
+        page.clear();
+      }
+    }
+    sheet.finish();
+  }
+
+  private void writePage(Spreadsheet sheet, List<Annotation> page) throws IOException {
+    final Map<Long, List<Comment>> comments = eas.getComments(page.stream().map(Annotation::getId)
+            .collect(Collectors.toList()))
+            .collect(Collectors.groupingBy(Comment::getAnnotationId));
+    for (Annotation annotation : page) {
+      final List<ContentItem> content = parseContent(annotation);
+      if (!isExported(content)) {
+        continue;
+      }
+
+      final List<Object> annotationRow = newRow();
+      setResource(annotationRow, 0, annotation, user(annotation.getCreatedBy()));
+      annotationRow.set(5, tracks.get(annotation.getTrackId()).getName());
+      final double duration = annotation.getDuration().getOrElse(0D);
+      annotationRow.set(6, formatTime(annotation.getStart()));
+      annotationRow.set(7, formatTime(annotation.getStart() + duration));
+      annotationRow.set(8, formatTime(duration));
+
+      for (ContentItem item : content) {
+        final List<Object> row = new ArrayList<>(annotationRow);
+        row.set(9, item.text);
+        for (Label label : item.label) {
+          final Category category = categories.get(label.getCategoryId());
+          row.set(10, category != null ? category.getName() : "");
+          row.set(11, label.getValue());
+          row.set(12, label.getAbbreviation());
+        }
+        for (ScaleValue scaleValue : item.scaleValue) {
+          final Scale scale = scales.get(scaleValue.getScaleId());
+          row.set(13, scale != null ? scale.getName() : "");
+          row.set(14, scaleValue.getName());
+          row.set(15, scaleValue.getValue());
+        }
+        row.set(23, item.scaleValue.isSome() ? "content-scale" : "content");
+        sheet.writeRow(row);
+      }
+
+      for (Comment comment : comments.getOrDefault(annotation.getId(), List.of())) {
+        final List<Object> row = new ArrayList<>(annotationRow);
+        setResource(row, 16, comment, user(comment.getUpdatedBy()));
+        row.set(20, "");
+        row.set(21, comment.getText());
+        row.set(22, comment.getReplyToId().getOrElseNull());
+        row.set(23, "comment");
+        sheet.writeRow(row);
+      }
+    }
+  }
+
+  /** Whether annotations with the given content pass the category and free text filters */
+  private boolean isExported(List<ContentItem> content) {
+    boolean hasLabel = false;
+    for (ContentItem item : content) {
+      for (Label label : item.label) {
+        hasLabel = true;
+        if (categoryFilter.isNone() || categoryFilter.get().contains(label.getCategoryId())) {
+          return true;
+        }
+      }
+    }
+    return !hasLabel && freeText;
+  }
+
+  private List<ContentItem> parseContent(Annotation annotation) {
+    final List<ContentItem> items = new ArrayList<>();
+    final Object content;
+    try {
+      content = new JSONParser().parse(annotation.getContent());
+    } catch (ParseException e) {
+      return items;
+    }
+    if (!(content instanceof List)) {
+      return items;
+    }
+    for (Object element : (List<?>) content) {
+      if (!(element instanceof Map)) {
+        continue;
+      }
+      final Map<?, ?> item = (Map<?, ?>) element;
+      final Object value = item.get("value");
+      final Object type = item.get("type");
+      if ("text".equals(type)) {
+        items.add(new ContentItem(String.valueOf(value), Option.none(), Option.none()));
+      } else if ("label".equals(type)) {
+        final Option<Label> label = lookUp(labels, value);
+        items.add(new ContentItem(label.isSome() ? label.get().getValue() : "", label, Option.none()));
+      } else if ("scaling".equals(type) && value instanceof Map) {
+        final Option<Label> label = lookUp(labels, ((Map<?, ?>) value).get("label"));
+        final Option<ScaleValue> scaleValue = lookUp(scaleValues, ((Map<?, ?>) value).get("scaling"));
+        final String text = label.isSome() && scaleValue.isSome()
+                ? label.get().getAbbreviation() + " (" + scaleValue.get().getName() + ")"
+                : "";
+        items.add(new ContentItem(text, label, scaleValue));
+      }
+    }
+    return items;
+  }
+
+  private Option<User> user(Option<Long> id) {
+    return id.isSome() ? users.getUser(id.get()) : Option.none();
+  }
+
+  private static <A> Option<A> lookUp(Map<Long, A> values, Object id) {
+    return id instanceof Number ? Option.option(values.get(((Number) id).longValue())) : Option.none();
+  }
+
+  private static List<Object> newRow() {
+    return new ArrayList<>(Arrays.asList(new Object[COLUMNS]));
+  }
+
+  /** Fill in the id, dates and author of a resource starting at the given column. */
+  private static void setResource(List<Object> row, int column, Resource resource, Option<User> author) {
+    row.set(column, resource.getId());
+    row.set(column + 1, formatDate(resource.getCreatedAt()));
+    row.set(column + 2, formatDate(resource.getUpdatedAt()));
+    row.set(column + 3, author.isSome() ? author.get().getNickname() : null);
+    row.set(column + 4, author.isSome() ? author.get().getEmail().getOrElseNull() : null);
+  }
+
+  private static String formatDate(Option<Date> date) {
+    return date.isSome() ? DATE_FORMAT.format(date.get().toInstant()) : null;
+  }
+
+  /** Format a time in seconds like <code>1:02:03</code> */
+  static String formatTime(double seconds) {
+    final long time = (long) Math.floor(seconds);
+    return String.format("%d:%02d:%02d", time / 3600, time / 60 % 60, time % 60);
+  }
+
+  private static <A extends Resource> Map<Long, A> byId(List<A> resources) {
+    return resources.stream().collect(Collectors.toMap(Resource::getId, Function.identity()));
+  }
+
+  /**
+   * A content item of an annotation with its label and scale value looked up
+   */
+  private static final class ContentItem {
+    private final String text;
+    private final Option<Label> label;
+    private final Option<ScaleValue> scaleValue;
+
+    ContentItem(String text, Option<Label> label, Option<ScaleValue> scaleValue) {
+      this.text = text;
+      this.label = label;
+      this.scaleValue = scaleValue;
+    }
+  }
+}
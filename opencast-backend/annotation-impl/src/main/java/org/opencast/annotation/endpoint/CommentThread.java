@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.opencast.annotation.impl.Jsons.conc;
+import static org.opencast.annotation.impl.Jsons.jA;
+import static org.opencast.annotation.impl.Jsons.jO;
+import static org.opencast.annotation.impl.Jsons.p;
+import static org.opencastproject.util.data.Option.none;
+import static org.opencastproject.util.data.Option.some;
+
+import org.opencast.annotation.api.Comment;
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.impl.persistence.CommentDto;
+import org.opencast.annotation.impl.persistence.UserResolver;
+
+import org.opencastproject.util.data.Option;
+
+import org.json.simple.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The discussion of an annotation as a tree, with the replies to every comment nested in it like
+ * <code>{"comments": [{..., "replies": [{..., "replies": [...]}]}], "next": ...}</code>.
+ * Long discussions are split into pages of top level comments;
+ * <code>next</code> is the id to continue after, if there are more.
+ */
+final class CommentThread {
+  private final ExtendedAnnotationService eas;
+  private final UserResolver users;
+  private final List<Comment> comments = new ArrayList<>();
+  private final Map<Long, List<Comment>> replies = new HashMap<>();
+  private Option<Long> next = none();
+
+  private CommentThread(ExtendedAnnotationService eas, List<Comment> thread, Option<Integer> limit) {
+    this.eas = eas;
+    // First the top level comments of this page, then the replies, since these might be older than their parents
+    final Map<Long, List<Comment>> repliesTo = new HashMap<>();
+    for (Comment comment : thread) {
+      final Option<Long> replyToId = comment.getReplyToId();
+      if (replyToId.isNone()) {
+        if (limit.isSome() && comments.size() == limit.get()) {
+          next = some(comments.get(comments.size() - 1).getId());
+        } else {
+          comments.add(comment);
+        }
+      } else {
+        repliesTo.computeIfAbsent(replyToId.get(), id -> new ArrayList<>()).add(comment);
+      }
+    }
+    // Replies to comments which are not part of this page, e.g. because they were on a previous one, are left out
+    final List<Comment> included = new ArrayList<>();
+    final Deque<Comment> pending = new ArrayDeque<>(comments);
+    while (!pending.isEmpty()) {
+      final Comment comment = pending.pop();
+      final List<Comment> children = repliesTo.getOrDefault(comment.getId(), new ArrayList<>());
+      children.sort(Comparator.comparing(Comment::getId));
+      replies.put(comment.getId(), children);
+      included.add(comment);
+      pending.addAll(children);
+    }
+    this.users = UserResolver.of(eas, included);
+  }
+
+  /**
+   * Put the given comments together into a tree.
+   *
+   * @param thread
+   *          the top level comments of an annotation ordered by id and the replies to them, see
+   *          {@link ExtendedAnnotationService#getCommentThread(long, Option, Option)}
+   * @param limit
+   *          how many top level comments to include, or none for all of them
+   */
+  static CommentThread of(ExtendedAnnotationService eas, List<Comment> thread, Option<Integer> limit) {
+    return new CommentThread(eas, thread, limit);
+  }
+
+  JSONObject toJson() {
+    return jO(p("comments", toJson(comments)), p("next", next));
+  }
+
+  private Object toJson(List<Comment> comments) {
+    return jA(comments.stream()
+            .map(comment -> conc(CommentDto.toJson(eas, users, comment),
+                    jO(p("replies", toJson(replies.get(comment.getId()))))))
+            .toArray());
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Resource;
+
+import org.opencastproject.util.data.Option;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+/**
+ * Conditional GET requests.
+ * The entity tag of a response is derived from the versions of everything it was built from,
+ * so that it can be checked against the <code>If-None-Match</code> header of a request
+ * without loading and serializing the resources themselves.
+ */
+final class ETags {
+
+  /** Clients may keep responses, but have to check with us whether they are still up to date before using them */
+  private static final CacheControl CACHE_CONTROL = new CacheControl();
+
+  static {
+    CACHE_CONTROL.setPrivate(true);
+    CACHE_CONTROL.setNoCache(true);
+    CACHE_CONTROL.setNoTransform(false);
+  }
+
+  private ETags() {
+  }
+
+  /**
+   * Derive a strong entity tag from the given versions of the resources of a response.
+   * Since the response also contains the nicknames of users and only what the current user has access to,
+   * the versions of these are included, too.
+   *
+   * @param videoId
+   *          the video the resources belong to, if any
+   */
+  static EntityTag tag(ExtendedAnnotationService eas, Option<Long> videoId, String... versions) {
+    final List<String> all = new ArrayList<>(Arrays.asList(versions));
+    all.add(eas.getUsersVersion());
+    all.add(eas.getAccessVersion(videoId));
+    try {
+      final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      for (String version : all) {
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+      }
+      final StringBuilder tag = new StringBuilder();
+      for (byte b : Arrays.copyOf(digest.digest(), 16)) {
+        tag.append(String.format("%02x", b));
+      }
+      return new EntityTag(tag.toString());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** The version of a single resource */
+  static String version(Resource resource) {
+    return resource.getId() + ":" + resource.getRevision();
+  }
+
+  /**
+   * Answer with <code>304 Not Modified</code> if the client already has the response with the given tag,
+   * and build the response otherwise.
+   */
+  static Response conditional(Request request, EntityTag tag, Supplier<Response> response) {
+    final Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+    if (notModified != null) {
+      return notModified.tag(tag).cacheControl(CACHE_CONTROL).build();
+    }
+    final Response ok = response.get();
+    if (ok.getStatus() != Response.Status.OK.getStatusCode()) {
+      return ok;
+    }
+    return Response.fromResponse(ok).tag(tag).cacheControl(CACHE_CONTROL).build();
+  }
+}
@@ -0,0 +1,335 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.opencast.annotation.impl.Jsons.jA;
+import static org.opencast.annotation.impl.Jsons.jO;
+import static org.opencast.annotation.impl.Jsons.p;
+import static org.opencast.annotation.impl.persistence.AbstractResourceDto.getDateAsUtc;
+import static org.opencastproject.util.data.Option.none;
+import static org.opencastproject.util.data.Option.some;
+
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Video;
+
+import org.opencastproject.security.api.Organization;
+import org.opencastproject.security.api.SecurityService;
+import org.opencastproject.security.api.User;
+import org.opencastproject.security.util.SecurityUtil;
+import org.opencastproject.util.data.Option;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports of the annotations of many videos at once, running in the background.
+ * Every video is exported as a CSV file by {@link AnnotationExport}, in parallel on a bounded number of threads.
+ * The files are then zipped together with a <code>videos.json</code> manifest into a file on the local disk,
+ * which is kept for a while after the export finished.
+ * Every user can only have a few exports waiting or running at the same time.
+ */
+final class ExportJobs {
+  private static final Logger logger = LoggerFactory.getLogger(ExportJobs.class);
+
+  /** How long finished exports can be downloaded */
+  private static final Duration RETENTION = Duration.ofDays(1);
+
+  /** How often expired exports are deleted */
+  private static final Duration CLEANUP_INTERVAL = Duration.ofHours(1);
+
+  /** How many exports a user can have queued or running at the same time */
+  private static final int MAX_ACTIVE_JOBS_PER_USER = 3;
+
+  /**
+   * States of an export
+   */
+  enum Status {
+    QUEUED, RUNNING, FINISHED, FAILED
+  }
+
+  private final SecurityService securityService;
+  private final ExtendedAnnotationService eas;
+  private final Path directory;
+  // Exports are run one after the other, so that a single export can use all the workers
+  private final ExecutorService jobs = Executors.newSingleThreadExecutor();
+  private final ScheduledExecutorService cleanup = Executors.newSingleThreadScheduledExecutor();
+  private final int parallelism;
+  private final Map<String, Job> exports = new ConcurrentHashMap<>();
+
+  /**
+   * @param directory
+   *          where to put the exported files
+   * @param parallelism
+   *          how many videos are exported at the same time
+   */
+  ExportJobs(SecurityService securityService, ExtendedAnnotationService eas, Path directory, int parallelism) {
+    this.securityService = securityService;
+    this.eas = eas;
+    this.directory = directory;
+    this.parallelism = parallelism;
+    cleanup.scheduleAtFixedRate(this::removeExpired, CLEANUP_INTERVAL.toMillis(), CLEANUP_INTERVAL.toMillis(),
+            TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Start exporting the given videos on behalf of the current user.
+   * The user must have access to all of them.
+   *
+   * @return the new export, or none if the user already has too many exports that are not done yet
+   */
+  synchronized Option<Job> submit(List<Video> videos) {
+    final Organization organization = securityService.getOrganization();
+    final User user = securityService.getUser();
+    final long active = exports.values().stream()
+            .filter(job -> job.belongsTo(organization, user) && !job.isDone())
+            .count();
+    if (active >= MAX_ACTIVE_JOBS_PER_USER) {
+      return none();
+    }
+    final Job job = new Job(UUID.randomUUID().toString(), organization, user, videos);
+    exports.put(job.id, job);
+    jobs.execute(() -> runAs(job, () -> run(job)));
+    return some(job);
+  }
+
+  /** Return the export with the given id, if it belongs to the current user. */
+  Option<Job> get(String id) {
+    final Job job = exports.get(id);
+    if (job == null || !job.belongsTo(securityService.getOrganization(), securityService.getUser())) {
+      return none();
+    }
+    return some(job);
+  }
+
+  /** Stop all exports and delete their files. */
+  void shutdown() {
+    cleanup.shutdownNow();
+    jobs.shutdownNow();
+    awaitTermination(jobs);
+    delete(directory);
+  }
+
+  private void run(Job job) {
+    job.status = Status.RUNNING;
+    final Path parts = directory.resolve(job.id);
+    // Every export gets its own workers, so that they can be stopped when it fails
+    final ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+    try {
+      Files.createDirectories(parts);
+      final List<Future<?>> videos = new ArrayList<>();
+      for (Video video : job.videos) {
+        videos.add(workers.submit(() -> runAs(job, () -> {
+          try (OutputStream out = Files.newOutputStream(parts.resolve(video.getId() + ".csv"))) {
+            AnnotationExport.load(eas, Spreadsheet.Format.CSV, video.getId(), none(), none(), true).write(out);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          job.exported.incrementAndGet();
+        })));
+      }
+      for (Future<?> video : videos) {
+        video.get();
+      }
+      zip(job, parts);
+      job.status = Status.FINISHED;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      job.status = Status.FAILED;
+    } catch (IOException | ExecutionException | RuntimeException e) {
+      logger.error("Exporting the annotations of {} videos failed", job.videos.size(), e);
+      job.status = Status.FAILED;
+    } finally {
+      // Cancel the videos that are not exported yet and wait for the running ones before deleting their files
+      workers.shutdownNow();
+      awaitTermination(workers);
+      if (job.status != Status.FINISHED) {
+        delete(job.file);
+      }
+      delete(parts);
+      job.finishedAt = System.currentTimeMillis();
+    }
+  }
+
+  private static void awaitTermination(ExecutorService executor) {
+    try {
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        logger.warn("Exports did not stop within a minute");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Put the files of all videos of the export and a manifest into a single archive. */
+  private void zip(Job job, Path parts) throws IOException {
+    final List<JSONObject> manifest = new ArrayList<>();
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(job.file), StandardCharsets.UTF_8)) {
+      for (Video video : job.videos) {
+        final String name = entryName(video);
+        zip.putNextEntry(new ZipEntry(name));
+        Files.copy(parts.resolve(video.getId() + ".csv"), zip);
+        zip.closeEntry();
+        manifest.add(jO(p("id", video.getId()), p("video_extid", video.getExtId()), p("file", name)));
+      }
+      zip.putNextEntry(new ZipEntry("videos.json"));
+      zip.write(jA(manifest.toArray()).toJSONString().getBytes(StandardCharsets.UTF_8));
+      zip.closeEntry();
+    }
+  }
+
+  /** Name the file of a video after its media package, which is what users know it by. */
+  private static String entryName(Video video) {
+    return video.getExtId().replaceAll("[^A-Za-z0-9._-]", "_") + "-" + video.getId() + ".csv";
+  }
+
+  private void runAs(Job job, Runnable action) {
+    SecurityUtil.runAs(securityService, job.organization, job.user, action);
+  }
+
+  private void removeExpired() {
+    final long now = System.currentTimeMillis();
+    // Exports that are being downloaded are kept until the next cleanup after their downloads ended
+    exports.values().removeIf(job -> job.finishedBefore(now - RETENTION.toMillis()) && job.deleteUnlessDownloaded());
+  }
+
+  private static void delete(Path path) {
+    if (!Files.exists(path)) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(path)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    } catch (IOException e) {
+      logger.warn("Could not delete {}", path, e);
+    }
+  }
+
+  /**
+   * A single export
+   */
+  final class Job {
+    private final String id;
+    private final Organization organization;
+    private final User user;
+    private final List<Video> videos;
+    private final Date createdAt = new Date();
+    private final Path file;
+    private final AtomicInteger exported = new AtomicInteger();
+    private volatile Status status = Status.QUEUED;
+    private volatile long finishedAt = Long.MAX_VALUE;
+    // Guarded by the job
+    private int downloads = 0;
+    private boolean deleted = false;
+
+    private Job(String id, Organization organization, User user, List<Video> videos) {
+      this.id = id;
+      this.organization = organization;
+      this.user = user;
+      this.videos = videos;
+      this.file = directory.resolve(id + ".zip");
+    }
+
+    String getId() {
+      return id;
+    }
+
+    Status getStatus() {
+      return status;
+    }
+
+    /**
+     * Open the archive containing a {@link Status#FINISHED finished} export.
+     * It is not deleted before the returned stream is closed, even if the export expires in the meantime.
+     *
+     * @return the archive, or none if it has been deleted already
+     */
+    synchronized Option<InputStream> openFile() throws IOException {
+      if (deleted) {
+        return none();
+      }
+      final InputStream in = Files.newInputStream(file);
+      downloads++;
+      return some(new FilterInputStream(in) {
+        private boolean closed = false;
+
+        @Override
+        public void close() throws IOException {
+          synchronized (Job.this) {
+            if (!closed) {
+              closed = true;
+              downloads--;
+            }
+          }
+          super.close();
+        }
+      });
+    }
+
+    /** @return whether the archive has been deleted, which it is not while it is downloaded */
+    private synchronized boolean deleteUnlessDownloaded() {
+      if (downloads > 0) {
+        return false;
+      }
+      deleted = true;
+      delete(file);
+      return true;
+    }
+
+    private boolean belongsTo(Organization organization, User user) {
+      return this.organization.getId().equals(organization.getId()) && this.user.getUsername().equals(user.getUsername());
+    }
+
+    private boolean isDone() {
+      return status == Status.FINISHED || status == Status.FAILED;
+    }
+
+    private boolean finishedBefore(long time) {
+      return finishedAt < time;
+    }
+
+    JSONObject toJson() {
+      return jO(p("id", id), p("status", status.name().toLowerCase()), p("videos", videos.size()),
+              p("exported", exported.get()), p("created_at", getDateAsUtc.apply(createdAt)));
+    }
+  }
+}
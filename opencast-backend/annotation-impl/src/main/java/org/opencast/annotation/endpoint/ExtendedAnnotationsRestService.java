@@ -20,6 +20,7 @@ import static org.opencastproject.util.RestUtil.getEndpointUrl;
 
 import org.opencast.annotation.api.ExtendedAnnotationService;
 
+import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.util.UrlSupport;
 import org.opencastproject.util.data.Tuple;
 import org.opencastproject.util.doc.rest.RestService;
@@ -27,8 +28,12 @@ import org.opencastproject.util.doc.rest.RestService;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 
+import java.io.IOException;
+import java.nio.file.Files;
+
 import javax.ws.rs.Path;
 
 @Path("/")
@@ -45,14 +50,27 @@ import javax.ws.rs.Path;
         "opencast.service.path=/extended-annotations"})
 public class ExtendedAnnotationsRestService extends AbstractExtendedAnnotationsRestService {
 
+  /** How many videos of an export are exported at the same time */
+  private static final int EXPORT_PARALLELISM = 4;
+
   private ExtendedAnnotationService extendedAnnotationService;
+  private SecurityService securityService;
   private String endpointBaseUrl;
+  private ExportJobs exportJobs;
 
   @SuppressWarnings("unused")
   @Activate
-  public void activate(ComponentContext cc) {
+  public void activate(ComponentContext cc) throws IOException {
     final Tuple<String, String> endpointUrl = getEndpointUrl(cc);
     endpointBaseUrl = UrlSupport.concat(endpointUrl.getA(), endpointUrl.getB());
+    exportJobs = new ExportJobs(securityService, extendedAnnotationService,
+            Files.createTempDirectory("annotation-tool-exports"), EXPORT_PARALLELISM);
+  }
+
+  @SuppressWarnings("unused")
+  @Deactivate
+  public void deactivate() {
+    exportJobs.shutdown();
   }
 
   @SuppressWarnings("unused")
@@ -61,6 +79,12 @@ public class ExtendedAnnotationsRestService extends AbstractExtendedAnnotationsR
     this.extendedAnnotationService = extendedAnnotationService;
   }
 
+  @SuppressWarnings("unused")
+  @Reference
+  public void setSecurityService(SecurityService securityService) {
+    this.securityService = securityService;
+  }
+
   @Override
   protected ExtendedAnnotationService getExtendedAnnotationsService() {
     return extendedAnnotationService;
@@ -70,4 +94,9 @@ public class ExtendedAnnotationsRestService extends AbstractExtendedAnnotationsR
   protected String getEndpointBaseUrl() {
     return endpointBaseUrl;
   }
+
+  @Override
+  protected ExportJobs getExportJobs() {
+    return exportJobs;
+  }
 }
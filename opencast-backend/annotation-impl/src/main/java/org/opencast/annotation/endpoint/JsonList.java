@@ -0,0 +1,136 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.impl.persistence.UserResolver;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * A list of resources wrapped in an object like <code>{"tracks": [...]}</code>.
+ * The resources are serialized one by one while they are written to the client,
+ * so the JSON of the whole list never has to be held in memory.
+ */
+final class JsonList<A> implements StreamingOutput {
+  /** How many resources of a {@link #streamed streamed} list are serialized together */
+  static final int CHUNK_SIZE = 1000;
+
+  private final String name;
+  private final Stream<A> resources;
+  private final Function<List<A>, Function<A, JSONObject>> prepare;
+
+  private JsonList(String name, Stream<A> resources, Function<List<A>, Function<A, JSONObject>> prepare) {
+    this.name = name;
+    this.resources = resources;
+    this.prepare = prepare;
+  }
+
+  /**
+   * Load the given resources and the users they reference.
+   *
+   * @param name
+   *          the name of the property containing the list
+   * @param toJson
+   *          serializes a single resource
+   */
+  static <A extends Resource> JsonList<A> of(ExtendedAnnotationService eas, String name, Stream<A> resources,
+          BiFunction<UserResolver, A, JSONObject> toJson) {
+    List<A> list = resources.collect(Collectors.toList());
+    UserResolver users = UserResolver.of(eas, list);
+    return new JsonList<>(name, list.stream(), chunk -> resource -> toJson.apply(users, resource));
+  }
+
+  /**
+   * Load the given values, which do not reference any users.
+   *
+   * @param name
+   *          the name of the property containing the list
+   * @param toJson
+   *          serializes a single value
+   */
+  static <A> JsonList<A> of(String name, Stream<A> values, Function<A, JSONObject> toJson) {
+    return new JsonList<>(name, values.collect(Collectors.toList()).stream(), chunk -> toJson);
+  }
+
+  /**
+   * Load the given resources only while they are written, in chunks of {@link #CHUNK_SIZE},
+   * so that long lists are never held in memory as a whole.
+   *
+   * @param name
+   *          the name of the property containing the list
+   * @param prepare
+   *          looks up whatever a chunk of resources references, like their users,
+   *          and returns how to serialize a single resource of that chunk
+   */
+  static <A> JsonList<A> streamed(String name, Stream<A> resources,
+          Function<List<A>, Function<A, JSONObject>> prepare) {
+    return new JsonList<>(name, resources, prepare);
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    out.write("{\"");
+    out.write(JSONValue.escape(name));
+    out.write("\":[");
+    Iterator<A> iterator = resources.iterator();
+    boolean first = true;
+    while (iterator.hasNext()) {
+      List<A> chunk = new ArrayList<>();
+      while (iterator.hasNext() && chunk.size() < CHUNK_SIZE) {
+        chunk.add(iterator.next());
+      }
+      if (!first) {
+        out.write(",");
+      }
+      first = false;
+      writeAll(out, chunk, prepare.apply(chunk));
+    }
+    out.write("]}");
+    out.flush();
+  }
+
+  /** Write the JSON of the given resources one by one, separated by commas. */
+  static <A> void writeAll(Writer out, Iterable<A> resources, Function<A, JSONObject> toJson) throws IOException {
+    boolean first = true;
+    for (A resource : resources) {
+      if (!first) {
+        out.write(",");
+      }
+      first = false;
+      toJson.apply(resource).writeJSONString(out);
+    }
+  }
+}
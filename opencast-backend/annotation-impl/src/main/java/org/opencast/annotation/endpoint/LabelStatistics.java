@@ -0,0 +1,170 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.opencast.annotation.impl.Jsons.conc;
+import static org.opencast.annotation.impl.Jsons.jA;
+import static org.opencast.annotation.impl.Jsons.jO;
+import static org.opencast.annotation.impl.Jsons.p;
+
+import org.opencast.annotation.api.Category;
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Label;
+import org.opencast.annotation.api.LabelUsage;
+import org.opencast.annotation.api.Track;
+import org.opencast.annotation.api.User;
+import org.opencast.annotation.api.Video;
+import org.opencast.annotation.impl.persistence.UserResolver;
+
+import org.opencastproject.util.data.Option;
+
+import org.json.simple.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * How often and for how long the labels have been used in the annotations of one or more videos,
+ * in total and broken down by video, track and user.
+ * The counting is done by the database, this only sums up the counts of the videos and looks up the names.
+ */
+final class LabelStatistics {
+  private final ExtendedAnnotationService eas;
+  private final UserResolver users;
+  // By label id
+  private final Map<Long, LabelTotals> labels = new TreeMap<>();
+  private final Map<Long, Video> videos = new LinkedHashMap<>();
+  private final Map<Long, Track> tracks = new LinkedHashMap<>();
+  private final Map<Long, Label> labelsById = new HashMap<>();
+  private final Map<Long, Category> categories = new HashMap<>();
+
+  private LabelStatistics(ExtendedAnnotationService eas) {
+    this.eas = eas;
+    this.users = UserResolver.of(eas);
+  }
+
+  /**
+   * Sum up the usage of the labels in the given videos.
+   *
+   * @param byVideo
+   *          whether to break down the usage by video, which is only useful for more than one video
+   */
+  static JSONObject of(ExtendedAnnotationService eas, List<Video> videos, boolean byVideo) {
+    final LabelStatistics statistics = new LabelStatistics(eas);
+    for (Video video : videos) {
+      statistics.videos.put(video.getId(), video);
+      final List<LabelUsage> usage = eas.getLabelUsage(video.getId()).collect(Collectors.toList());
+      if (usage.isEmpty()) {
+        continue;
+      }
+      eas.getTracks(video.getId()).forEach(track -> statistics.tracks.put(track.getId(), track));
+      eas.getVideoLabels(video.getId()).forEach(label -> statistics.labelsById.put(label.getId(), label));
+      eas.getCategories(Option.none(), video.getId())
+              .forEach(category -> statistics.categories.put(category.getId(), category));
+      usage.forEach(u -> statistics.labels.computeIfAbsent(u.getLabelId(), LabelTotals::new).add(video, u));
+    }
+    final List<JSONObject> labels = new ArrayList<>();
+    for (LabelTotals totals : statistics.labels.values()) {
+      labels.add(statistics.toJson(totals, byVideo));
+    }
+    return jO(p("labels", jA(labels.toArray())));
+  }
+
+  private JSONObject toJson(LabelTotals label, boolean byVideo) {
+    final Option<Label> l = lookUp(labelsById, label.labelId, id -> eas.getLabel(id, true));
+    final Option<Category> category = l.isSome()
+            ? lookUp(categories, l.get().getCategoryId(), id -> eas.getCategory(id, true))
+            : Option.none();
+    final List<JSONObject> videos = new ArrayList<>();
+    for (Map.Entry<Long, Totals> video : label.videos.entrySet()) {
+      videos.add(video.getValue().toJson(jO(p("id", video.getKey()),
+              p("video_extid", this.videos.get(video.getKey()).getExtId()))));
+    }
+    final List<JSONObject> tracks = new ArrayList<>();
+    for (Map.Entry<Long, Totals> track : label.tracks.entrySet()) {
+      tracks.add(track.getValue().toJson(jO(p("id", track.getKey()),
+              p("name", this.tracks.get(track.getKey()).getName()))));
+    }
+    final List<JSONObject> users = new ArrayList<>();
+    for (Map.Entry<Long, Totals> user : label.users.entrySet()) {
+      final Option<User> u = user.getKey() != null ? this.users.getUser(user.getKey()) : Option.none();
+      users.add(user.getValue().toJson(jO(p("id", user.getKey()),
+              p("nickname", u.isSome() ? u.get().getNickname() : null))));
+    }
+    final JSONObject json = label.total.toJson(jO(p("id", label.labelId),
+            p("value", l.isSome() ? l.get().getValue() : null),
+            p("abbreviation", l.isSome() ? l.get().getAbbreviation() : null),
+            p("category_id", l.isSome() ? l.get().getCategoryId() : null),
+            p("category", category.isSome() ? category.get().getName() : null),
+            p("tracks", jA(tracks.toArray())), p("users", jA(users.toArray()))));
+    if (byVideo) {
+      return conc(json, jO(p("videos", jA(videos.toArray()))));
+    }
+    return json;
+  }
+
+  /** Look up a label or category that was not loaded with its video, like a deleted one, on its own. */
+  private static <A> Option<A> lookUp(Map<Long, A> loaded, long id, LongFunction<Option<A>> load) {
+    final A resource = loaded.get(id);
+    return resource != null ? Option.some(resource) : load.apply(id);
+  }
+
+  /**
+   * The usage of one label
+   */
+  private static final class LabelTotals {
+    private final long labelId;
+    private final Totals total = new Totals();
+    private final Map<Long, Totals> videos = new LinkedHashMap<>();
+    private final Map<Long, Totals> tracks = new LinkedHashMap<>();
+    private final Map<Long, Totals> users = new LinkedHashMap<>();
+
+    LabelTotals(long labelId) {
+      this.labelId = labelId;
+    }
+
+    void add(Video video, LabelUsage usage) {
+      total.add(usage);
+      videos.computeIfAbsent(video.getId(), id -> new Totals()).add(usage);
+      tracks.computeIfAbsent(usage.getTrackId(), id -> new Totals()).add(usage);
+      users.computeIfAbsent(usage.getUserId().getOrElseNull(), id -> new Totals()).add(usage);
+    }
+  }
+
+  /**
+   * A number of uses of a label and their total duration
+   */
+  private static final class Totals {
+    private long count;
+    private double duration;
+
+    void add(LabelUsage usage) {
+      count += usage.getCount();
+      duration += usage.getDuration();
+    }
+
+    /** Add the totals to the given JSON object */
+    JSONObject toJson(JSONObject json) {
+      return conc(json, jO(p("count", count), p("duration", duration)));
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * A single sheet of tabular data that is written row by row, so that it never has to be held in memory.
+ * Numbers are written as numbers, <code>null</code> as an empty cell and everything else as text.
+ * Values like <code>NaN</code> and infinity that spreadsheets cannot represent as numbers are written as text.
+ */
+abstract class Spreadsheet {
+
+  /** Start writing a sheet in the given format to the given stream. */
+  static Spreadsheet open(Format format, OutputStream out) throws IOException {
+    switch (format) {
+      case CSV:
+        return new Csv(out);
+      case XLSX:
+        return new Xlsx(out);
+      default:
+        throw new IllegalArgumentException("Unknown format " + format);
+    }
+  }
+
+  /**
+   * Supported file formats
+   */
+  enum Format {
+    CSV("text/csv; charset=utf-8", "csv"),
+    XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "xlsx");
+
+    private final String mediaType;
+    private final String extension;
+
+    Format(String mediaType, String extension) {
+      this.mediaType = mediaType;
+      this.extension = extension;
+    }
+
+    String getMediaType() {
+      return mediaType;
+    }
+
+    String getExtension() {
+      return extension;
+    }
+  }
+
+  abstract void writeRow(List<?> cells) throws IOException;
+
+  /** Finish the sheet. The underlying stream is flushed, but not closed. */
+  abstract void finish() throws IOException;
+
+  /** Whether a number can be stored as a number, which <code>NaN</code> and infinity cannot. */
+  static boolean isFinite(Number number) {
+    return !(number instanceof Double || number instanceof Float) || Double.isFinite(number.doubleValue());
+  }
+
+  /** Format numbers without a fractional part as integers, like spreadsheet applications do. */
+  static String formatNumber(Number number) {
+    final double value = number.doubleValue();
+    if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return number.toString();
+  }
+
+  /**
+   * Comma separated values as described by RFC 4180
+   */
+  private static final class Csv extends Spreadsheet {
+    private final Writer out;
+
+    Csv(OutputStream out) {
+      this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    void writeRow(List<?> cells) throws IOException {
+      for (int i = 0; i < cells.size(); i++) {
+        if (i > 0) {
+          out.write(',');
+        }
+        final Object cell = cells.get(i);
+        if (cell instanceof Number) {
+          out.write(formatNumber((Number) cell));
+        } else if (cell != null) {
+          out.write(quote(cell.toString()));
+        }
+      }
+      out.write("\r\n");
+    }
+
+    @Override
+    void finish() throws IOException {
+      out.flush();
+    }
+
+    private static String quote(String value) {
+      if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+              && value.indexOf('\r') < 0) {
+        return value;
+      }
+      return '"' + value.replace("\"", "\"\"") + '"';
+    }
+  }
+
+  /**
+   * A minimal Office Open XML workbook with a single sheet using inline strings.
+   * The sheet is the last entry of the archive, so its rows can be written directly into the compressed stream.
+   */
+  private static final class Xlsx extends Spreadsheet {
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+    private static final String RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    private static final String DOCUMENT_RELATIONSHIPS =
+            "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    private static final String SPREADSHEET = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+    private final ZipOutputStream zip;
+    private final Writer out;
+    private int rows = 0;
+
+    Xlsx(OutputStream out) throws IOException {
+      this.zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+      this.out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+
+      writeEntry("[Content_Types].xml", "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+              + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+              + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+              + "<Override PartName=\"/xl/workbook.xml\" "
+              + "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+              + "<Override PartName=\"/xl/worksheets/sheet1.xml\" "
+              + "ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>"
+              + "</Types>");
+      writeEntry("_rels/.rels", "<Relationships xmlns=\"" + RELATIONSHIPS + "\">"
+              + "<Relationship Id=\"rId1\" Type=\"" + DOCUMENT_RELATIONSHIPS + "/officeDocument\" "
+              + "Target=\"xl/workbook.xml\"/>"
+              + "</Relationships>");
+      writeEntry("xl/workbook.xml", "<workbook xmlns=\"" + SPREADSHEET + "\" xmlns:r=\"" + DOCUMENT_RELATIONSHIPS + "\">"
+              + "<sheets><sheet name=\"Sheet 1\" sheetId=\"1\" r:id=\"rId1\"/></sheets>"
+              + "</workbook>");
+      writeEntry("xl/_rels/workbook.xml.rels", "<Relationships xmlns=\"" + RELATIONSHIPS + "\">"
+              + "<Relationship Id=\"rId1\" Type=\"" + DOCUMENT_RELATIONSHIPS + "/worksheet\" "
+              + "Target=\"worksheets/sheet1.xml\"/>"
+              + "</Relationships>");
+
+      zip.putNextEntry(new ZipEntry("xl/worksheets/sheet1.xml"));
+      this.out.write(XML_DECLARATION);
+      this.out.write("<worksheet xmlns=\"" + SPREADSHEET + "\"><sheetData>");
+    }
+
+    private void writeEntry(String name, String xml) throws IOException {
+      zip.putNextEntry(new ZipEntry(name));
+      out.write(XML_DECLARATION);
+      out.write(xml);
+      out.flush();
+      zip.closeEntry();
+    }
+
+    @Override
+    void writeRow(List<?> cells) throws IOException {
+      rows++;
+      out.write("<row r=\"" + rows + "\">");
+      for (int i = 0; i < cells.size(); i++) {
+        final Object cell = cells.get(i);
+        final String reference = column(i) + rows;
+        if (cell instanceof Number && isFinite((Number) cell)) {
+          out.write("<c r=\"" + reference + "\"><v>" + formatNumber((Number) cell) + "</v></c>");
+        } else if (cell != null) {
+          out.write("<c r=\"" + reference + "\" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+          out.write(escape(cell.toString()));
+          out.write("</t></is></c>");
+        }
+      }
+      out.write("</row>");
+    }
+
+    @Override
+    void finish() throws IOException {
+      out.write("</sheetData></worksheet>");
+      out.flush();
+      zip.closeEntry();
+      zip.finish();
+    }
+
+    /** Name of the column with the given zero based index, e.g. <code>A</code>, <code>Z</code>, <code>AA</code> */
+    private static String column(int index) {
+      final StringBuilder name = new StringBuilder();
+      for (int i = index + 1; i > 0; i = (i - 1) / 26) {
+        name.insert(0, (char) ('A' + (i - 1) % 26));
+      }
+      return name.toString();
+    }
+
+    /** Escape XML markup and drop the control characters XML cannot represent. */
+    private static String escape(String value) {
+      final StringBuilder escaped = new StringBuilder(value.length());
+      for (int i = 0; i < value.length(); i++) {
+        final char c = value.charAt(i);
+        switch (c) {
+          case '<':
+            escaped.append("&lt;");
+            break;
+          case '>':
+            escaped.append("&gt;");
+            break;
+          case '&':
+            escaped.append("&amp;");
+            break;
+          default:
+            if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+              escaped.append(c);
+            }
+        }
+      }
+      return escaped.toString();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import org.opencast.annotation.api.ExtendedAnnotationException;
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.UnitOfWork;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+/**
+ * Handles every request in a {@link UnitOfWork}, so that all the calls to the {@link ExtendedAnnotationService}
+ * it takes share one entity manager and transaction, and thus one database connection.
+ * The unit of work is begun before the request is matched, since looking up the video of a request is part of it.
+ * It ends once the response is ready: {@link JsonList JSON lists} and {@link VideoBundle bundles} still look up
+ * resources while they are written, so they are written inside of it,
+ * while other streamed responses like exports and downloads run outside of it.
+ * Failed requests are rolled back as a whole.
+ * This is opt-in: register this filter with the JAX-RS runtime serving the annotation tool endpoint to use it.
+ */
+@Provider
+@PreMatching
+public class UnitOfWorkFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+  private static final Logger logger = LoggerFactory.getLogger(UnitOfWorkFilter.class);
+
+  private static final String UNIT_OF_WORK = UnitOfWork.class.getName();
+
+  private final ExtendedAnnotationService eas;
+
+  public UnitOfWorkFilter(ExtendedAnnotationService eas) {
+    this.eas = eas;
+  }
+
+  @Override
+  public void filter(ContainerRequestContext request) {
+    request.setProperty(UNIT_OF_WORK, eas.beginUnitOfWork());
+  }
+
+  @Override
+  public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+    final Object unitOfWork = request.getProperty(UNIT_OF_WORK);
+    if (!(unitOfWork instanceof UnitOfWork)) {
+      return;
+    }
+    if (response.getStatus() >= Response.Status.BAD_REQUEST.getStatusCode()) {
+      request.removeProperty(UNIT_OF_WORK);
+      ((UnitOfWork) unitOfWork).rollback();
+      return;
+    }
+    final Object entity = response.getEntity();
+    if ((entity instanceof JsonList || entity instanceof VideoBundle) && !HttpMethod.HEAD.equals(request.getMethod())) {
+      // Ended once the list is written
+      return;
+    }
+    request.removeProperty(UNIT_OF_WORK);
+    try {
+      ((UnitOfWork) unitOfWork).commit();
+    } catch (ExtendedAnnotationException e) {
+      final boolean conflict = e.getCauseCode() == ExtendedAnnotationException.Cause.DUPLICATE;
+      if (!conflict) {
+        logger.error("Committing the changes of a request failed", e);
+      }
+      response.setStatus((conflict ? Response.Status.CONFLICT : Response.Status.INTERNAL_SERVER_ERROR)
+              .getStatusCode());
+      response.setEntity(null);
+      response.getHeaders().remove(HttpHeaders.LOCATION);
+    }
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    final Object unitOfWork = context.getProperty(UNIT_OF_WORK);
+    if (!(unitOfWork instanceof UnitOfWork)) {
+      context.proceed();
+      return;
+    }
+    context.removeProperty(UNIT_OF_WORK);
+    boolean written = false;
+    try {
+      context.proceed();
+      written = true;
+    } finally {
+      if (written) {
+        // Parts of the response have already been sent, so it is too late to report a failure to the client
+        try {
+          ((UnitOfWork) unitOfWork).commit();
+        } catch (ExtendedAnnotationException e) {
+          logger.error("Committing the changes of a request failed", e);
+        }
+      } else {
+        ((UnitOfWork) unitOfWork).rollback();
+      }
+    }
+  }
+}
@@ -0,0 +1,185 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.opencast.annotation.impl.Jsons.conc;
+import static org.opencast.annotation.impl.Jsons.jA;
+import static org.opencast.annotation.impl.Jsons.jO;
+import static org.opencast.annotation.impl.Jsons.p;
+
+import org.opencast.annotation.api.Annotation;
+import org.opencast.annotation.api.Category;
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Label;
+import org.opencast.annotation.api.Questionnaire;
+import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.api.Scale;
+import org.opencast.annotation.api.ScaleValue;
+import org.opencast.annotation.api.Track;
+import org.opencast.annotation.api.Video;
+import org.opencast.annotation.impl.persistence.AnnotationDto;
+import org.opencast.annotation.impl.persistence.CategoryDto;
+import org.opencast.annotation.impl.persistence.LabelDto;
+import org.opencast.annotation.impl.persistence.QuestionnaireDto;
+import org.opencast.annotation.impl.persistence.ScaleDto;
+import org.opencast.annotation.impl.persistence.ScaleValueDto;
+import org.opencast.annotation.impl.persistence.TrackDto;
+import org.opencast.annotation.impl.persistence.UserResolver;
+import org.opencast.annotation.impl.persistence.VideoDto;
+
+import org.opencastproject.util.data.Option;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Everything the tool needs to display a video: the video itself, its tracks with their annotations
+ * and how many comments these have, its categories with their labels, its scales with their values and its questionnaires.
+ * All the data is loaded up front by {@link #load}, but it is only serialized while it is written to the client.
+ */
+final class VideoBundle implements StreamingOutput {
+  private final ExtendedAnnotationService eas;
+  private final UserResolver users;
+
+  private final Video video;
+  private final List<Track> tracks;
+  private final Map<Long, List<Annotation>> annotations;
+  private final Map<Long, Long> comments;
+  private final List<Category> categories;
+  private final Map<Long, List<Label>> labels;
+  private final List<Scale> scales;
+  private final Map<Long, List<ScaleValue>> scaleValues;
+  private final List<Questionnaire> questionnaires;
+
+  private VideoBundle(ExtendedAnnotationService eas, Video video, List<Track> tracks,
+          Map<Long, List<Annotation>> annotations, Map<Long, Long> comments, List<Category> categories,
+          Map<Long, List<Label>> labels, List<Scale> scales, Map<Long, List<ScaleValue>> scaleValues,
+          List<Questionnaire> questionnaires) {
+    this.eas = eas;
+    this.video = video;
+    this.tracks = tracks;
+    this.annotations = annotations;
+    this.comments = comments;
+    this.categories = categories;
+    this.labels = labels;
+    this.scales = scales;
+    this.scaleValues = scaleValues;
+    this.questionnaires = questionnaires;
+
+    List<Resource> resources = new ArrayList<>();
+    resources.add(video);
+    resources.addAll(tracks);
+    annotations.values().forEach(resources::addAll);
+    resources.addAll(categories);
+    labels.values().forEach(resources::addAll);
+    resources.addAll(scales);
+    scaleValues.values().forEach(resources::addAll);
+    resources.addAll(questionnaires);
+    this.users = UserResolver.of(eas, resources);
+  }
+
+  /**
+   * Load the bundle of the given video.
+   *
+   * @param seriesExtId
+   *          the series of the video, to synchronize the series categories with
+   */
+  static VideoBundle load(ExtendedAnnotationService eas, Video video, Option<String> seriesExtId) {
+    final long videoId = video.getId();
+
+    List<Track> tracks = eas.getTracks(videoId).collect(Collectors.toList());
+    // Only keep the annotations of the tracks the user has access to
+    Map<Long, List<Annotation>> annotations = new HashMap<>();
+    for (Track track : tracks) {
+      annotations.put(track.getId(), new ArrayList<>());
+    }
+    eas.getVideoAnnotations(videoId).forEach(annotation -> {
+      List<Annotation> trackAnnotations = annotations.get(annotation.getTrackId());
+      if (trackAnnotations != null) {
+        trackAnnotations.add(annotation);
+      }
+    });
+
+    Map<Long, Long> comments = eas.countComments(annotations.values().stream().flatMap(List::stream)
+            .map(Annotation::getId).collect(Collectors.toList()));
+
+    List<Category> categories = eas.getCategories(seriesExtId, videoId).collect(Collectors.toList());
+    // Only keep the labels of the categories the user has access to
+    Map<Long, List<Label>> labels = new HashMap<>();
+    for (Category category : categories) {
+      labels.put(category.getId(), new ArrayList<>());
+    }
+    eas.getVideoLabels(videoId).forEach(label -> {
+      List<Label> categoryLabels = labels.get(label.getCategoryId());
+      if (categoryLabels != null) {
+        categoryLabels.add(label);
+      }
+    });
+
+    List<Scale> scales = eas.getScales(videoId).collect(Collectors.toList());
+    Map<Long, List<ScaleValue>> scaleValues = eas.getVideoScaleValues(videoId)
+            .collect(Collectors.groupingBy(ScaleValue::getScaleId));
+
+    List<Questionnaire> questionnaires = eas.getQuestionnaires(videoId).collect(Collectors.toList());
+
+    return new VideoBundle(eas, video, tracks, annotations, comments, categories, labels, scales, scaleValues,
+            questionnaires);
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    Writer out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    out.write("{\"video\":");
+    VideoDto.toJson(eas, users, video).writeJSONString(out);
+
+    out.write(",\"tracks\":[");
+    JsonList.writeAll(out, tracks, track -> conc(TrackDto.toJson(eas, users, track),
+            jO(p("annotations", jA(children(annotations, track.getId()).stream()
+                    .map(annotation -> AnnotationDto.toJson(eas, users, annotation,
+                            comments.getOrDefault(annotation.getId(), 0L))).toArray())))));
+
+    out.write("],\"categories\":[");
+    JsonList.writeAll(out, categories, category -> conc(CategoryDto.toJson(eas, users, category),
+            jO(p("labels", jA(children(labels, category.getId()).stream()
+                    .map(label -> LabelDto.toJson(eas, users, label, category)).toArray())))));
+
+    out.write("],\"scales\":[");
+    JsonList.writeAll(out, scales, scale -> conc(ScaleDto.toJson(eas, users, scale),
+            jO(p("scaleValues", jA(children(scaleValues, scale.getId()).stream()
+                    .map(scaleValue -> ScaleValueDto.toJson(eas, users, scaleValue, scale)).toArray())))));
+
+    out.write("],\"questionnaires\":[");
+    JsonList.writeAll(out, questionnaires, questionnaire -> QuestionnaireDto.toJson(eas, users, questionnaire));
+
+    out.write("]}");
+    out.flush();
+  }
+
+  private static <A> List<A> children(Map<Long, List<A>> children, long parentId) {
+    return children.getOrDefault(parentId, List.of());
+  }
+}
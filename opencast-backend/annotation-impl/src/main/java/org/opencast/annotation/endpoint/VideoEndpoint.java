@@ -1,6 +1,20 @@
 package org.opencast.annotation.endpoint;
 
 import static org.opencast.annotation.api.ExtendedAnnotationService.ANNOTATE_ACTION;
+import static org.opencast.annotation.api.ResourceCollection.ANNOTATIONS_OF_TRACK;
+import static org.opencast.annotation.api.ResourceCollection.ANNOTATIONS_OF_VIDEO;
+import static org.opencast.annotation.api.ResourceCollection.CATEGORIES_OF_SERIES;
+import static org.opencast.annotation.api.ResourceCollection.CATEGORIES_OF_VIDEO;
+import static org.opencast.annotation.api.ResourceCollection.COMMENTS_OF_ANNOTATION;
+import static org.opencast.annotation.api.ResourceCollection.COMMENTS_OF_TRACK;
+import static org.opencast.annotation.api.ResourceCollection.COMMENTS_OF_VIDEO;
+import static org.opencast.annotation.api.ResourceCollection.LABELS_OF_CATEGORY;
+import static org.opencast.annotation.api.ResourceCollection.LABELS_OF_VIDEO;
+import static org.opencast.annotation.api.ResourceCollection.QUESTIONNAIRES_OF_VIDEO;
+import static org.opencast.annotation.api.ResourceCollection.SCALES_OF_VIDEO;
+import static org.opencast.annotation.api.ResourceCollection.SCALE_VALUES_OF_SCALE;
+import static org.opencast.annotation.api.ResourceCollection.SCALE_VALUES_OF_VIDEO;
+import static org.opencast.annotation.api.ResourceCollection.TRACKS_OF_VIDEO;
 import static org.opencast.annotation.endpoint.AbstractExtendedAnnotationsRestService.BAD_REQUEST;
 import static org.opencast.annotation.endpoint.AbstractExtendedAnnotationsRestService.FORBIDDEN;
 import static org.opencast.annotation.endpoint.AbstractExtendedAnnotationsRestService.LOCATION;
@@ -9,6 +23,10 @@ import static org.opencast.annotation.endpoint.AbstractExtendedAnnotationsRestSe
 import static org.opencast.annotation.endpoint.AbstractExtendedAnnotationsRestService.UNAUTHORIZED;
 import static org.opencast.annotation.endpoint.AbstractExtendedAnnotationsRestService.nil;
 import static org.opencast.annotation.endpoint.AbstractExtendedAnnotationsRestService.run;
+import static org.opencast.annotation.endpoint.ETags.version;
+import static org.opencast.annotation.impl.Jsons.jA;
+import static org.opencast.annotation.impl.Jsons.jO;
+import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.UrlSupport.uri;
 import static org.opencastproject.util.data.Arrays.array;
 import static org.opencastproject.util.data.Option.none;
@@ -16,7 +34,9 @@ import static org.opencastproject.util.data.Option.option;
 import static org.opencastproject.util.data.Option.some;
 import static org.opencastproject.util.data.functions.Strings.trimToNone;
 
+import org.opencast.annotation.api.Agreement;
 import org.opencast.annotation.api.Annotation;
+import org.opencast.annotation.api.AnnotationOperation;
 import org.opencast.annotation.api.Category;
 import org.opencast.annotation.api.Comment;
 import org.opencast.annotation.api.ExtendedAnnotationException;
@@ -37,6 +57,7 @@ import org.opencast.annotation.impl.ScaleImpl;
 import org.opencast.annotation.impl.ScaleValueImpl;
 import org.opencast.annotation.impl.TrackImpl;
 import org.opencast.annotation.impl.persistence.AnnotationDto;
+import org.opencast.annotation.impl.persistence.AnnotationSummaryDto;
 import org.opencast.annotation.impl.persistence.CategoryDto;
 import org.opencast.annotation.impl.persistence.CommentDto;
 import org.opencast.annotation.impl.persistence.LabelDto;
@@ -44,6 +65,7 @@ import org.opencast.annotation.impl.persistence.QuestionnaireDto;
 import org.opencast.annotation.impl.persistence.ScaleDto;
 import org.opencast.annotation.impl.persistence.ScaleValueDto;
 import org.opencast.annotation.impl.persistence.TrackDto;
+import org.opencast.annotation.impl.persistence.UserResolver;
 import org.opencast.annotation.impl.persistence.VideoDto;
 
 import org.opencastproject.mediapackage.MediaPackage;
@@ -51,8 +73,19 @@ import org.opencastproject.util.data.Function;
 import org.opencastproject.util.data.Function0;
 import org.opencastproject.util.data.Option;
 
-import java.net.URI;
+import org.json.simple.JSONObject;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.FormParam;
@@ -65,6 +98,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 public class VideoEndpoint {
@@ -75,11 +109,15 @@ public class VideoEndpoint {
   private final long videoId;
   private final Option<Video> videoOpt;
 
+  /** The request, to evaluate the conditions of GET requests against */
+  private final Request request;
+
   VideoEndpoint(final long videoId, final AbstractExtendedAnnotationsRestService host,
-          final ExtendedAnnotationService eas) {
+          final ExtendedAnnotationService eas, final Request request) {
     this.videoId = videoId;
     this.host = host;
     this.eas = eas;
+    this.request = request;
 
     this.videoOpt = this.eas.getVideo(videoId);
 
@@ -103,7 +141,183 @@ public class VideoEndpoint {
             if (!eas.hasResourceAccess(v)) {
               return UNAUTHORIZED;
             }
-            return Response.ok(VideoDto.toJson.apply(eas, v).toString()).build();
+            return conditional(() -> Response.ok(VideoDto.toJson.apply(eas, v).toString()).build(),
+                    version(v));
+          }
+
+          @Override
+          public Response none() {
+            return NOT_FOUND;
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Get the video together with all its tracks, annotations, categories, labels, scales, scale values and
+   * questionnaires in one document, so that the tool can load everything with one request.
+   */
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("bundle")
+  public Response getBundle(@QueryParam("series-extid") final String seriesExtId) {
+    return run(nil, new Function0<>() {
+      @Override
+      public Response apply() {
+        return videoOpt.fold(new Option.Match<>() {
+          @Override
+          public Response some(Video v) {
+            if (!eas.hasResourceAccess(v)) {
+              return UNAUTHORIZED;
+            }
+            final Option<String> series = trimToNone(seriesExtId);
+            return conditional(() -> Response.ok(VideoBundle.load(eas, v, series)).build(),
+                    version(v), eas.getVersion(TRACKS_OF_VIDEO, videoId),
+                    eas.getVersion(ANNOTATIONS_OF_VIDEO, videoId), eas.getVersion(CATEGORIES_OF_VIDEO, videoId),
+                    seriesVersion(series), eas.getVersion(LABELS_OF_VIDEO, videoId),
+                    eas.getVersion(SCALES_OF_VIDEO, videoId), eas.getVersion(SCALE_VALUES_OF_VIDEO, videoId),
+                    eas.getVersion(QUESTIONNAIRES_OF_VIDEO, videoId), eas.getVersion(COMMENTS_OF_VIDEO, videoId));
+          }
+
+          @Override
+          public Response none() {
+            return NOT_FOUND;
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Count how often and for how long the labels have been used in the annotations of the video.
+   */
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("statistics")
+  public Response getStatistics() {
+    return run(nil, new Function0<>() {
+      @Override
+      public Response apply() {
+        return videoOpt.fold(new Option.Match<>() {
+          @Override
+          public Response some(Video v) {
+            if (!eas.hasResourceAccess(v)) {
+              return UNAUTHORIZED;
+            }
+            return Response.ok(LabelStatistics.of(eas, List.of(v), false).toString()).build();
+          }
+
+          @Override
+          public Response none() {
+            return NOT_FOUND;
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Compute how much the annotators of the video, represented by their tracks, agree in the labels they assigned.
+   *
+   * @param tracks
+   *          comma separated ids of at least two tracks to compare
+   */
+  @GET
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("agreement")
+  public Response getAgreement(@QueryParam("tracks") final String tracks) {
+    final Option<Set<Long>> trackIds = parseIds(tracks);
+    if (trackIds.isNone() || trackIds.get().size() < 2) {
+      return BAD_REQUEST;
+    }
+    return run(nil, new Function0<>() {
+      @Override
+      public Response apply() {
+        return videoOpt.fold(new Option.Match<>() {
+          @Override
+          public Response some(Video v) {
+            if (!eas.hasResourceAccess(v)) {
+              return UNAUTHORIZED;
+            }
+            final List<Long> ids = new ArrayList<>(trackIds.get());
+            Collections.sort(ids);
+            return Response.ok(toJson(eas.getAgreement(videoId, ids)).toString()).build();
+          }
+
+          @Override
+          public Response none() {
+            return NOT_FOUND;
+          }
+        });
+      }
+    });
+  }
+
+  private static JSONObject toJson(Agreement agreement) {
+    return jO(p("tracks", jA(new ArrayList<Object>(agreement.getTrackIds()))),
+            p("duration", agreement.getDuration()),
+            p("observed_agreement", agreement.getObservedAgreement()),
+            p("cohens_kappa", agreement.getCohensKappa()),
+            p("fleiss_kappa", agreement.getFleissKappa()),
+            p("krippendorffs_alpha", agreement.getKrippendorffsAlpha()));
+  }
+
+  /**
+   * Export the annotations of the video as comma separated values.
+   *
+   * @see #getExport(Spreadsheet.Format, String, String, boolean)
+   */
+  @GET
+  @Produces("text/csv")
+  @Path("export.csv")
+  public Response getCsvExport(@QueryParam("tracks") final String tracks,
+          @QueryParam("categories") final String categories,
+          @QueryParam("freetext") @DefaultValue("true") final boolean freeText) {
+    return getExport(Spreadsheet.Format.CSV, tracks, categories, freeText);
+  }
+
+  /**
+   * Export the annotations of the video as an Excel workbook.
+   *
+   * @see #getExport(Spreadsheet.Format, String, String, boolean)
+   */
+  @GET
+  @Produces("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+  @Path("export.xlsx")
+  public Response getXlsxExport(@QueryParam("tracks") final String tracks,
+          @QueryParam("categories") final String categories,
+          @QueryParam("freetext") @DefaultValue("true") final boolean freeText) {
+    return getExport(Spreadsheet.Format.XLSX, tracks, categories, freeText);
+  }
+
+  /**
+   * Stream the annotations of the video to the client as a spreadsheet file.
+   *
+   * @param tracks
+   *          comma separated ids of the tracks to export; all tracks if missing
+   * @param categories
+   *          comma separated ids of the categories whose annotations to export; all categories if missing
+   * @param freeText
+   *          whether to export annotations without labels
+   */
+  private Response getExport(final Spreadsheet.Format format, final String tracks, final String categories,
+          final boolean freeText) {
+    final Option<Set<Long>> trackFilter = parseIds(tracks);
+    final Option<Set<Long>> categoryFilter = parseIds(categories);
+    return run(nil, new Function0<>() {
+      @Override
+      public Response apply() {
+        return videoOpt.fold(new Option.Match<>() {
+          @Override
+          public Response some(Video v) {
+            if (!eas.hasResourceAccess(v)) {
+              return UNAUTHORIZED;
+            }
+            return Response.ok(AnnotationExport.load(eas, format, videoId, trackFilter, categoryFilter, freeText))
+                    .type(format.getMediaType())
+                    .header("Content-Disposition", "attachment; filename=\"export." + format.getExtension() + "\"")
+                    .build();
           }
 
           @Override
@@ -115,6 +329,42 @@ public class VideoEndpoint {
     });
   }
 
+  /** Parse a comma separated list of field names. */
+  private static Set<String> parseFields(String fields) {
+    final Set<String> parsed = new HashSet<>();
+    for (String field : fields.split(",")) {
+      if (!field.isBlank()) {
+        parsed.add(field.trim());
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Parse a comma separated list of ids.
+   *
+   * @return the ids or none if there is no list at all
+   * @throws WebApplicationException
+   *           with a bad request response if any of the ids is no number
+   */
+  private static Option<Set<Long>> parseIds(String ids) {
+    if (ids == null) {
+      return none();
+    }
+    final Set<Long> parsed = new HashSet<>();
+    for (String id : ids.split(",")) {
+      if (id.isBlank()) {
+        continue;
+      }
+      try {
+        parsed.add(Long.parseLong(id.trim()));
+      } catch (NumberFormatException e) {
+        throw new WebApplicationException(BAD_REQUEST);
+      }
+    }
+    return some(parsed);
+  }
+
   @DELETE
   public Response deleteVideo() {
     return run(nil, new Function0<>() {
@@ -174,7 +424,7 @@ public class VideoEndpoint {
       public Response apply() {
         // check if video exists
         if (videoOpt.isSome()) {
-          return eas.getTrack(id).fold(new Option.Match<>() {
+          return eas.getTrack(videoId, id).fold(new Option.Match<>() {
             // update track
             @Override
             public Response some(Track track) {
@@ -209,12 +459,11 @@ public class VideoEndpoint {
   @DELETE
   @Path("tracks/{trackId}")
   public Response deleteTrack(@PathParam("trackId") final long trackId) {
-    // TODO optimize querying for the existence of video and track
     if (videoOpt.isSome()) {
       return run(nil, new Function0<>() {
         @Override
         public Response apply() {
-          return eas.getTrack(trackId).fold(new Option.Match<>() {
+          return eas.getTrack(videoId, trackId).fold(new Option.Match<>() {
             @Override
             public Response some(Track t) {
               if (!eas.hasResourceAccess(t)) {
@@ -243,13 +492,14 @@ public class VideoEndpoint {
       @Override
       public Response apply() {
         if (videoOpt.isSome()) {
-          return eas.getTrack(id).fold(new Option.Match<>() {
+          return eas.getTrack(videoId, id).fold(new Option.Match<>() {
             @Override
             public Response some(Track t) {
               if (!eas.hasResourceAccess(t)) {
                 return UNAUTHORIZED;
               }
-              return Response.ok(TrackDto.toJson.apply(eas, t).toString()).build();
+              return conditional(() -> Response.ok(TrackDto.toJson.apply(eas, t).toString()).build(),
+                      version(t));
             }
 
             @Override
@@ -274,7 +524,9 @@ public class VideoEndpoint {
         if (videoOpt.isNone()) {
           return BAD_REQUEST;
         } else {
-          return Response.ok(TrackDto.toJson(eas, eas.getTracks(videoId)).toString()).build();
+          return conditional(() -> Response.ok(JsonList.of(eas, "tracks", eas.getTracks(videoId),
+                  (users, t) -> TrackDto.toJson(eas, users, t))).build(),
+                  eas.getVersion(TRACKS_OF_VIDEO, videoId));
         }
       }
     });
@@ -290,7 +542,7 @@ public class VideoEndpoint {
     return run(array(start), new Function0<>() {
       @Override
       public Response apply() {
-        if (videoOpt.isSome() && eas.getTrack(trackId).isSome()) {
+        if (videoOpt.isSome() && eas.getTrack(videoId, trackId).isSome()) {
           Resource resource = eas.createResource();
           final Annotation a = eas.createAnnotation(trackId, start, option(duration), content, createdFromQuestionnaire,
               trimToNone(settings), resource);
@@ -302,6 +554,28 @@ public class VideoEndpoint {
     });
   }
 
+  @POST
+  @Consumes(MediaType.APPLICATION_JSON)
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("tracks/{trackId}/annotations/batch")
+  public Response postAnnotationBatch(@PathParam("trackId") final long trackId, final String batch) {
+    return run(array(batch), new Function0<>() {
+      @Override
+      public Response apply() {
+        if (videoOpt.isNone() || eas.getTrack(videoId, trackId).isNone()) {
+          return BAD_REQUEST;
+        }
+        final Option<List<AnnotationOperation>> operations = AnnotationBatch.parse(batch, trackId,
+                eas.createResource());
+        if (operations.isNone()) {
+          return BAD_REQUEST;
+        }
+        final List<AnnotationOperation.Result> results = eas.applyAnnotationOperations(trackId, operations.get());
+        return Response.ok(AnnotationBatch.toJson(eas, operations.get(), results).toString()).build();
+      }
+    });
+  }
+
   @PUT
   @Produces(MediaType.APPLICATION_JSON)
   @Path("tracks/{trackId}/annotations/{id}")
@@ -313,9 +587,8 @@ public class VideoEndpoint {
     return run(array(start), new Function0<>() {
       @Override
       public Response apply() {
-        // check if video and track exist
-        if (videoOpt.isSome() && eas.getTrack(trackId).isSome()) {
-          return eas.getAnnotation(id).fold(new Option.Match<>() {
+        if (videoOpt.isSome()) {
+          return eas.getAnnotation(videoId, trackId, id).fold(new Option.Match<>() {
             // update annotation
             @Override
             public Response some(Annotation annotation) {
@@ -333,10 +606,9 @@ public class VideoEndpoint {
               return Response.ok(AnnotationDto.toJson.apply(eas, annotation).toString()).header(LOCATION, annotationLocationUri(videoId, updated)).build();
             }
 
-            // create a new one
             @Override
             public Response none() {
-              return NOT_FOUND;
+              return annotationNotFound(trackId);
             }
           });
         } else {
@@ -350,11 +622,11 @@ public class VideoEndpoint {
   @DELETE
   @Path("tracks/{trackId}/annotations/{id}")
   public Response deleteAnnotation(@PathParam("trackId") final long trackId, @PathParam("id") final long id) {
-    if (videoOpt.isSome() && eas.getTrack(trackId).isSome()) {
+    if (videoOpt.isSome()) {
       return run(nil, new Function0<>() {
         @Override
         public Response apply() {
-          return eas.getAnnotation(id).fold(new Option.Match<>() {
+          return eas.getAnnotation(videoId, trackId, id).fold(new Option.Match<>() {
             @Override
             public Response some(Annotation a) {
               if (!eas.hasResourceAccess(a)) {
@@ -365,7 +637,7 @@ public class VideoEndpoint {
 
             @Override
             public Response none() {
-              return NOT_FOUND;
+              return annotationNotFound(trackId);
             }
           });
         }
@@ -379,47 +651,72 @@ public class VideoEndpoint {
   @Produces(MediaType.APPLICATION_JSON)
   @Path("tracks/{trackId}/annotations/{id}")
   public Response getAnnotation(@PathParam("trackId") final long trackId, @PathParam("id") final long id) {
-    // TODO optimize querying for the existence of video and track
-    if (videoOpt.isSome() && eas.getTrack(trackId).isSome()) {
+    if (videoOpt.isSome()) {
       return run(nil, new Function0<>() {
         @Override
         public Response apply() {
-          return eas.getAnnotation(id).fold(new Option.Match<>() {
+          return eas.getAnnotation(videoId, trackId, id).fold(new Option.Match<>() {
             @Override
             public Response some(Annotation a) {
               if (!eas.hasResourceAccess(a)) {
                 return UNAUTHORIZED;
               }
-              return Response.ok(AnnotationDto.toJson.apply(eas, a).toString()).build();
+              return conditional(() -> Response.ok(AnnotationDto.toJson.apply(eas, a).toString()).build(),
+                      version(a), eas.getVersion(CATEGORIES_OF_VIDEO, videoId));
             }
 
             @Override
             public Response none() {
-              return NOT_FOUND;
+              return annotationNotFound(trackId);
             }
           });
         }
       });
     } else {
-      // track and/or video do not exist
       return BAD_REQUEST;
     }
   }
 
-  // TODO Is this even used?
   @GET
   @Produces(MediaType.APPLICATION_JSON)
   @Path("tracks/{trackId}/annotations")
-  public Response getAnnotations(@PathParam("trackId") final long trackId) {
+  public Response getAnnotations(@PathParam("trackId") final long trackId, @QueryParam("start") final Double start,
+          @QueryParam("end") final Double end, @QueryParam("at") final Double at,
+          @QueryParam("offset") final Integer offset, @QueryParam("limit") final Integer limit,
+          @QueryParam("fields") final String fields) {
     return run(nil, new Function0<>() {
       @Override
       public Response apply() {
-        if (videoOpt.isSome()) {
-          return Response.ok(AnnotationDto.toJson(eas,
-                  eas.getAnnotations(trackId)).toString()).build();
-        } else {
+        if (videoOpt.isNone()) {
           return NOT_FOUND;
         }
+        if (eas.getTrack(videoId, trackId).isNone() || offset != null && offset < 0 || limit != null && limit < -1
+                || at != null && (start != null || end != null)) {
+          return BAD_REQUEST;
+        }
+        // The annotations active at a point in time are those overlapping an empty interval
+        final Option<Double> from = at != null ? some(at) : option(start);
+        final Option<Double> to = at != null ? some(at) : option(end);
+        // A limit of -1 means no limit at all
+        final Option<Integer> limitOpt = limit == null || limit == -1 ? Option.<Integer> none() : some(limit);
+        if (fields != null) {
+          final Set<String> fieldSet = parseFields(fields);
+          if (!AnnotationSummaryDto.FIELDS.containsAll(fieldSet)) {
+            return BAD_REQUEST;
+          }
+          return conditional(() -> Response.ok(JsonList.streamed("annotations",
+                  eas.getAnnotationSummaries(trackId, from, to, option(offset), limitOpt),
+                  summaries -> a -> AnnotationSummaryDto.toJson(a, fieldSet))).build(),
+                  annotationsVersion(trackId));
+        }
+        return conditional(() -> Response.ok(JsonList.streamed("annotations",
+                eas.getAnnotations(trackId, from, to, option(offset), limitOpt), annotations -> {
+                  // The comments themselves are only loaded when they are looked at
+                  final Map<Long, Long> comments = eas.countComments(annotations.stream().map(Annotation::getId)
+                          .collect(Collectors.toList()));
+                  final UserResolver users = UserResolver.of(eas, annotations);
+                  return a -> AnnotationDto.toJson(eas, users, a, comments.getOrDefault(a.getId(), 0L));
+                })).build(), annotationsVersion(trackId));
       }
     });
   }
@@ -494,7 +791,8 @@ public class VideoEndpoint {
             if (!eas.hasResourceAccess(s)) {
               return UNAUTHORIZED;
             }
-            return Response.ok(ScaleDto.toJson.apply(eas, s).toString()).build();
+            return conditional(() -> Response.ok(ScaleDto.toJson.apply(eas, s).toString()).build(),
+                    version(s));
           }
 
           @Override
@@ -516,7 +814,9 @@ public class VideoEndpoint {
         if (eas.getVideo(videoId).isNone()) {
           return BAD_REQUEST;
         } else {
-          return Response.ok(ScaleDto.toJson(eas, eas.getScales(videoId)).toString()).build();
+          return conditional(() -> Response.ok(JsonList.of(eas, "scales", eas.getScales(videoId),
+                  (users, scale) -> ScaleDto.toJson(eas, users, scale))).build(),
+                  eas.getVersion(SCALES_OF_VIDEO, videoId));
         }
       }
     });
@@ -561,7 +861,7 @@ public class VideoEndpoint {
     return run(array(name), new Function0<>() {
       @Override
       public Response apply() {
-        if (eas.getVideo(videoId).isNone() || eas.getScale(scaleId, false).isNone()) {
+        if (eas.getVideo(videoId).isNone() || findScale(scaleId, false).isNone()) {
           return BAD_REQUEST;
         }
 
@@ -582,11 +882,11 @@ public class VideoEndpoint {
     return run(array(name), new Function0<>() {
       @Override
       public Response apply() {
-        if (eas.getVideo(videoId).isNone() || eas.getScale(scaleId, false).isNone()) {
+        if (eas.getVideo(videoId).isNone() || findScale(scaleId, false).isNone()) {
           return BAD_REQUEST;
         }
 
-        return eas.getScaleValue(id, true).fold(new Option.Match<>() {
+        return findScaleValue(scaleId, id, true).fold(new Option.Match<>() {
           @Override
           public Response some(ScaleValue s) {
             if (!eas.hasResourceAccess(s)) {
@@ -614,19 +914,20 @@ public class VideoEndpoint {
   @Produces(MediaType.APPLICATION_JSON)
   @Path("scales/{scaleId}/scalevalues/{scaleValueId}")
   public Response getScaleValue(@PathParam("scaleId") final long scaleId, @PathParam("scaleValueId") final long id) {
-    if (eas.getVideo(videoId).isNone() || eas.getScale(scaleId, false).isNone())
+    if (eas.getVideo(videoId).isNone() || findScale(scaleId, false).isNone())
       return BAD_REQUEST;
 
     return run(nil, new Function0<>() {
       @Override
       public Response apply() {
-        return eas.getScaleValue(id, false).fold(new Option.Match<>() {
+        return findScaleValue(scaleId, id, false).fold(new Option.Match<>() {
           @Override
           public Response some(ScaleValue s) {
             if (!eas.hasResourceAccess(s)) {
               return UNAUTHORIZED;
             }
-            return Response.ok(ScaleValueDto.toJson.apply(eas, s).toString()).build();
+            return conditional(() -> Response.ok(ScaleValueDto.toJson.apply(eas, s).toString()).build(),
+                    version(s));
           }
 
           @Override
@@ -645,11 +946,14 @@ public class VideoEndpoint {
     return run(nil, new Function0<>() {
       @Override
       public Response apply() {
-        if (eas.getVideo(videoId).isNone() || eas.getScale(scaleId, true).isNone()) {
+        final Option<Scale> scale = findScale(scaleId, true);
+        if (eas.getVideo(videoId).isNone() || scale.isNone()) {
           return BAD_REQUEST;
         }
 
-        return Response.ok(ScaleValueDto.toJson(eas, eas.getScaleValues(scaleId)).toString()).build();
+        return conditional(() -> Response.ok(JsonList.of(eas, "scaleValues", eas.getScaleValues(scaleId),
+                (users, sv) -> ScaleValueDto.toJson(eas, users, sv, scale.get()))).build(),
+                eas.getVersion(SCALE_VALUES_OF_SCALE, scaleId));
       }
     });
   }
@@ -657,13 +961,13 @@ public class VideoEndpoint {
   @DELETE
   @Path("scales/{scaleId}/scalevalues/{scaleValueId}")
   public Response deleteScaleValue(@PathParam("scaleId") final long scaleId, @PathParam("scaleValueId") final long id) {
-    if (eas.getVideo(videoId).isNone() || eas.getScale(scaleId, false).isNone())
+    if (eas.getVideo(videoId).isNone() || findScale(scaleId, false).isNone())
       return BAD_REQUEST;
 
     return run(nil, new Function0<>() {
       @Override
       public Response apply() {
-        return eas.getScaleValue(id, true).fold(new Option.Match<>() {
+        return findScaleValue(scaleId, id, true).fold(new Option.Match<>() {
           @Override
           public Response some(ScaleValue s) {
             if (!eas.hasResourceAccess(s)) {
@@ -789,7 +1093,8 @@ public class VideoEndpoint {
             if (!eas.hasResourceAccess(c)) {
               return UNAUTHORIZED;
             }
-            return Response.ok(CategoryDto.toJson.apply(eas, c).toString()).build();
+            return conditional(() -> Response.ok(CategoryDto.toJson.apply(eas, c).toString()).build(),
+                    version(c));
           }
 
           @Override
@@ -813,7 +1118,9 @@ public class VideoEndpoint {
         if (eas.getVideo(videoId).isNone()) {
           return BAD_REQUEST;
         } else {
-          return Response.ok(CategoryDto.toJson(eas, eas.getCategories(seriesExtIdm, videoId)).toString()).build();
+          return conditional(() -> Response.ok(JsonList.of(eas, "categories", eas.getCategories(seriesExtIdm, videoId),
+                  (users, c) -> CategoryDto.toJson(eas, users, c))).build(),
+                  eas.getVersion(CATEGORIES_OF_VIDEO, videoId), seriesVersion(seriesExtIdm));
         }
       }
     });
@@ -822,7 +1129,7 @@ public class VideoEndpoint {
   @DELETE
   @Path("categories/{categoryId}")
   public Response deleteCategory(@PathParam("categoryId") final long categoryId) {
-    if (eas.getVideo(videoId).isNone() || eas.getCategory(categoryId, false).isNone())
+    if (eas.getVideo(videoId).isNone() || findCategory(categoryId, false).isNone())
       return BAD_REQUEST;
 
     return run(nil, new Function0<>() {
@@ -857,7 +1164,7 @@ public class VideoEndpoint {
     return run(array(value, abbreviation), new Function0<>() {
       @Override
       public Response apply() {
-        if (eas.getVideo(videoId).isNone() || eas.getCategory(categoryId, false).isNone()) {
+        if (eas.getVideo(videoId).isNone() || findCategory(categoryId, false).isNone()) {
           return BAD_REQUEST;
         }
 
@@ -879,11 +1186,11 @@ public class VideoEndpoint {
     return run(array(value, abbreviation), new Function0<>() {
       @Override
       public Response apply() {
-        if (eas.getVideo(videoId).isNone() || eas.getCategory(categoryId, false).isNone()) {
+        if (eas.getVideo(videoId).isNone() || findCategory(categoryId, false).isNone()) {
           return BAD_REQUEST;
         }
 
-        return eas.getLabel(id, true).fold(new Option.Match<>() {
+        return findLabel(categoryId, id, true).fold(new Option.Match<>() {
           @Override
           public Response some(Label l) {
             if (!eas.hasResourceAccess(l)) {
@@ -912,19 +1219,20 @@ public class VideoEndpoint {
   @Produces(MediaType.APPLICATION_JSON)
   @Path("categories/{categoryId}/labels/{labelId}")
   public Response getLabel(@PathParam("categoryId") final long categoryId, @PathParam("labelId") final long id) {
-    if (eas.getVideo(videoId).isNone() || eas.getCategory(categoryId, false).isNone())
+    if (eas.getVideo(videoId).isNone() || findCategory(categoryId, false).isNone())
       return BAD_REQUEST;
 
     return run(nil, new Function0<>() {
       @Override
       public Response apply() {
-        return eas.getLabel(id, false).fold(new Option.Match<>() {
+        return findLabel(categoryId, id, false).fold(new Option.Match<>() {
           @Override
           public Response some(Label l) {
             if (!eas.hasResourceAccess(l)) {
               return UNAUTHORIZED;
             }
-            return Response.ok(LabelDto.toJson.apply(eas, l).toString()).build();
+            return conditional(() -> Response.ok(LabelDto.toJson.apply(eas, l).toString()).build(),
+                    version(l));
           }
 
           @Override
@@ -943,11 +1251,14 @@ public class VideoEndpoint {
     return run(nil, new Function0<>() {
       @Override
       public Response apply() {
-        if (eas.getVideo(videoId).isNone() || eas.getCategory(categoryId, true).isNone()) {
+        final Option<Category> category = findCategory(categoryId, true);
+        if (eas.getVideo(videoId).isNone() || category.isNone()) {
           return BAD_REQUEST;
         }
 
-        return Response.ok(LabelDto.toJson(eas, eas.getLabels(categoryId)).toString()).build();
+        return conditional(() -> Response.ok(JsonList.of(eas, "labels", eas.getLabels(categoryId),
+                (users, l) -> LabelDto.toJson(eas, users, l, category.get()))).build(),
+                version(category.get()), eas.getVersion(LABELS_OF_CATEGORY, categoryId));
       }
     });
   }
@@ -955,13 +1266,13 @@ public class VideoEndpoint {
   @DELETE
   @Path("categories/{categoryId}/labels/{labelId}")
   public Response deleteLabel(@PathParam("categoryId") final long categoryId, @PathParam("labelId") final long id) {
-    if (eas.getVideo(videoId).isNone() || eas.getCategory(categoryId, false).isNone())
+    if (eas.getVideo(videoId).isNone() || findCategory(categoryId, false).isNone())
       return BAD_REQUEST;
 
     return run(nil, new Function0<>() {
       @Override
       public Response apply() {
-        return eas.getLabel(id, true).fold(new Option.Match<>() {
+        return findLabel(categoryId, id, true).fold(new Option.Match<>() {
           @Override
           public Response some(Label l) {
             if (!eas.hasResourceAccess(l)) {
@@ -1019,7 +1330,8 @@ public class VideoEndpoint {
             if (!eas.hasResourceAccess(c)) {
               return UNAUTHORIZED;
             }
-            return Response.ok(QuestionnaireDto.toJson.apply(eas, c).toString()).build();
+            return conditional(() -> Response.ok(QuestionnaireDto.toJson.apply(eas, c).toString()).build(),
+                    version(c));
           }
 
           @Override
@@ -1041,8 +1353,9 @@ public class VideoEndpoint {
         if (eas.getVideo(videoId).isNone()) {
           return BAD_REQUEST;
         } else {
-          return Response.ok(QuestionnaireDto.toJson(eas, eas.getQuestionnaires(videoId)).toString())
-                  .build();
+          return conditional(() -> Response.ok(JsonList.of(eas, "questionnaires", eas.getQuestionnaires(videoId),
+                  (users, q) -> QuestionnaireDto.toJson(eas, users, q))).build(),
+                  eas.getVersion(QUESTIONNAIRES_OF_VIDEO, videoId));
         }
       }
     });
@@ -1109,26 +1422,26 @@ public class VideoEndpoint {
   @Path("tracks/{trackId}/annotations/{annotationId}/comments")
   public Response postComment(@PathParam("trackId") final long trackId,
           @PathParam("annotationId") final long annotationId, @FormParam("text") final String text) {
-    return postCommentResponse(trackId, annotationId, none(), text);
+    if (videoOpt.isSome() && eas.getAnnotation(videoId, trackId, annotationId).isSome()) {
+      return postCommentResponse(trackId, annotationId, none(), text);
+    } else {
+      // track, video and/or annotation does not exist
+      return BAD_REQUEST;
+    }
   }
 
+  /** Create a comment once the caller made sure that the path to it is valid. */
   private Response postCommentResponse(final long trackId, final long annotationId, final Option<Long> replyToId,
           final String text) {
-    if (videoOpt.isSome() && eas.getTrack(trackId).isSome()
-            && eas.getAnnotation(annotationId).isSome()) {
-      return run(array(text), new Function0<>() {
-        @Override
-        public Response apply() {
-          Resource resource = eas.createResource();
-          final Comment comment = eas.createComment(annotationId, replyToId, text, resource);
+    return run(array(text), new Function0<>() {
+      @Override
+      public Response apply() {
+        Resource resource = eas.createResource();
+        final Comment comment = eas.createComment(annotationId, replyToId, text, resource);
 
-          return Response.created(commentLocationUri(comment, videoId, trackId)).entity(CommentDto.toJson.apply(eas, comment).toString()).build();
-        }
-      });
-    } else {
-      // track, video and/or annotation does not exist
-      return BAD_REQUEST;
-    }
+        return Response.created(commentLocationUri(comment, videoId, trackId)).entity(CommentDto.toJson.apply(eas, comment).toString()).build();
+      }
+    });
   }
 
   @PUT
@@ -1137,12 +1450,11 @@ public class VideoEndpoint {
   public Response putComment(@PathParam("trackId") final long trackId,
           @PathParam("annotationId") final long annotationId, @PathParam("commentId") final long commentId,
           @FormParam("text") final String text) {
-    if (videoOpt.isSome() && eas.getTrack(trackId).isSome()
-            && eas.getAnnotation(annotationId).isSome()) {
+    if (videoOpt.isSome()) {
       return run(array(text), new Function0<>() {
         @Override
         public Response apply() {
-          return eas.getComment(commentId).fold(new Option.Match<>() {
+          return eas.getComment(videoId, trackId, annotationId, commentId).fold(new Option.Match<>() {
             @Override
             public Response some(Comment c) {
               if (!eas.hasResourceAccess(c)) {
@@ -1159,13 +1471,12 @@ public class VideoEndpoint {
 
             @Override
             public Response none() {
-              return NOT_FOUND;
+              return commentNotFound(trackId, annotationId);
             }
           });
         }
       });
     } else {
-      // track, video and/or annotation does not exist
       return BAD_REQUEST;
     }
   }
@@ -1174,12 +1485,11 @@ public class VideoEndpoint {
   @Path("tracks/{trackId}/annotations/{annotationId}/comments/{id}")
   public Response deleteComment(@PathParam("trackId") final long trackId,
           @PathParam("annotationId") final long annotationId, @PathParam("id") final long commentId) {
-    if (videoOpt.isSome() && eas.getTrack(trackId).isSome()
-            && eas.getAnnotation(annotationId).isSome()) {
+    if (videoOpt.isSome()) {
       return run(nil, new Function0<>() {
         @Override
         public Response apply() {
-          return eas.getComment(commentId).fold(new Option.Match<>() {
+          return eas.getComment(videoId, trackId, annotationId, commentId).fold(new Option.Match<>() {
             @Override
             public Response some(Comment c) {
               if (!eas.hasResourceAccess(c)) {
@@ -1190,13 +1500,12 @@ public class VideoEndpoint {
 
             @Override
             public Response none() {
-              return NOT_FOUND;
+              return commentNotFound(trackId, annotationId);
             }
           });
         }
       });
     } else {
-      // track, video and/or annotation does not exist
       return BAD_REQUEST;
     }
   }
@@ -1206,29 +1515,28 @@ public class VideoEndpoint {
   @Path("tracks/{trackId}/annotations/{annotationId}/comments/{id}")
   public Response getComment(@PathParam("trackId") final long trackId,
           @PathParam("annotationId") final long annotationId, @PathParam("id") final long id) {
-    if (videoOpt.isSome() && eas.getTrack(trackId).isSome()
-            && eas.getAnnotation(annotationId).isSome()) {
+    if (videoOpt.isSome()) {
       return run(nil, new Function0<>() {
         @Override
         public Response apply() {
-          return eas.getComment(id).fold(new Option.Match<>() {
+          return eas.getComment(videoId, trackId, annotationId, id).fold(new Option.Match<>() {
             @Override
             public Response some(Comment c) {
               if (!eas.hasResourceAccess(c)) {
                 return UNAUTHORIZED;
               }
-              return Response.ok(CommentDto.toJson.apply(eas, c).toString()).build();
+              return conditional(() -> Response.ok(CommentDto.toJson.apply(eas, c).toString()).build(),
+                      version(c));
             }
 
             @Override
             public Response none() {
-              return NOT_FOUND;
+              return commentNotFound(trackId, annotationId);
             }
           });
         }
       });
     } else {
-      // track, video and/or annotation does not exist
       return BAD_REQUEST;
     }
   }
@@ -1237,17 +1545,25 @@ public class VideoEndpoint {
   @Produces(MediaType.APPLICATION_JSON)
   @Path("tracks/{trackId}/annotations/{annotationId}/comments")
   public Response getComments(@PathParam("trackId") final long trackId,
-          @PathParam("annotationId") final long annotationId) {
-    return getCommentsResponse(trackId, annotationId, none());
-  }
-
-  private Response getCommentsResponse(final long trackId, final long annotationId, final Option<Long> replyToId) {
-    if (videoOpt.isSome() && eas.getTrack(trackId).isSome()
-            && eas.getAnnotation(annotationId).isSome()) {
+          @PathParam("annotationId") final long annotationId, @QueryParam("thread") final String thread,
+          @QueryParam("after") final Long after, @QueryParam("limit") final Integer limit) {
+    if (thread == null && after == null && limit == null) {
+      if (videoOpt.isNone() || eas.getAnnotation(videoId, trackId, annotationId).isNone()) {
+        return BAD_REQUEST;
+      }
+      return getCommentsResponse(annotationId, none());
+    }
+    if (!"full".equals(thread) || limit != null && limit < 1) {
+      return BAD_REQUEST;
+    }
+    if (videoOpt.isSome() && eas.getAnnotation(videoId, trackId, annotationId).isSome()) {
       return run(nil, new Function0<>() {
         @Override
         public Response apply() {
-          return Response.ok(CommentDto.toJson(eas, eas.getComments(annotationId, replyToId)).toString()).build();
+          return conditional(() -> Response.ok(CommentThread.of(eas,
+                  eas.getCommentThread(annotationId, option(after), option(limit)).collect(Collectors.toList()),
+                  option(limit)).toJson().toString()).build(),
+                  eas.getVersion(COMMENTS_OF_ANNOTATION, annotationId));
         }
       });
     } else {
@@ -1256,15 +1572,28 @@ public class VideoEndpoint {
     }
   }
 
+  /** List comments once the caller made sure that the path to them is valid. */
+  private Response getCommentsResponse(final long annotationId, final Option<Long> replyToId) {
+    return run(nil, new Function0<>() {
+      @Override
+      public Response apply() {
+        return conditional(() -> Response.ok(JsonList.of(eas, "comments", eas.getComments(annotationId, replyToId),
+                (users, c) -> CommentDto.toJson(eas, users, c))).build(),
+                eas.getVersion(COMMENTS_OF_ANNOTATION, annotationId));
+      }
+    });
+  }
+
   @POST
   @Produces(MediaType.APPLICATION_JSON)
   @Path("tracks/{trackId}/annotations/{annotationId}/comments/{commentId}/replies")
   public Response postReply(@PathParam("trackId") final long trackId,
           @PathParam("annotationId") final long annotationId, @PathParam("commentId") final long commentId,
           @FormParam("text") final String text) {
-    Option<Comment> comment = eas.getComment(commentId);
-    if (comment.isNone()) return BAD_REQUEST;
-    return postCommentResponse(trackId, annotationId, Option.some(comment.get().getId()), text);
+    if (videoOpt.isNone() || eas.getComment(videoId, trackId, annotationId, commentId).isNone()) {
+      return BAD_REQUEST;
+    }
+    return postCommentResponse(trackId, annotationId, some(commentId), text);
   }
 
   @GET
@@ -1272,9 +1601,47 @@ public class VideoEndpoint {
   @Path("tracks/{trackId}/annotations/{annotationId}/comments/{commentId}/replies")
   public Response getReplies(@PathParam("trackId") final long trackId,
           @PathParam("annotationId") final long annotationId, @PathParam("commentId") final long commentId) {
-    Option<Comment> comment = eas.getComment(commentId);
-    if (comment.isNone()) return BAD_REQUEST;
-    return getCommentsResponse(trackId, annotationId, some(commentId));
+    if (videoOpt.isNone() || eas.getComment(videoId, trackId, annotationId, commentId).isNone()) {
+      return BAD_REQUEST;
+    }
+    return getCommentsResponse(annotationId, some(commentId));
+  }
+
+  /**
+   * Answer a GET request with the given response, unless the client already has it.
+   *
+   * @param versions
+   *          the versions of the resources the response is built from
+   */
+  private Response conditional(Supplier<Response> response, String... versions) {
+    return ETags.conditional(request, ETags.tag(eas, some(videoId), versions), response);
+  }
+
+  /**
+   * Tell a missing annotation from a missing or mismatched track, after looking the annotation up by its path failed.
+   * This costs another query, but only on the error path.
+   */
+  private Response annotationNotFound(long trackId) {
+    return eas.getTrack(videoId, trackId).isSome() ? NOT_FOUND : BAD_REQUEST;
+  }
+
+  /** Tell a missing comment from a missing or mismatched annotation, like {@link #annotationNotFound}. */
+  private Response commentNotFound(long trackId, long annotationId) {
+    return eas.getAnnotation(videoId, trackId, annotationId).isSome() ? NOT_FOUND : BAD_REQUEST;
+  }
+
+  /**
+   * The annotations of a track depend on the access to the track and to the categories of their labels,
+   * and on the number of their comments.
+   */
+  private String[] annotationsVersion(long trackId) {
+    return new String[] { eas.getVersion(ANNOTATIONS_OF_TRACK, trackId), eas.getVersion(TRACKS_OF_VIDEO, videoId),
+            eas.getVersion(CATEGORIES_OF_VIDEO, videoId), eas.getVersion(COMMENTS_OF_TRACK, trackId) };
+  }
+
+  /** Listing the categories of a video synchronizes them with the master series categories of its series. */
+  private String seriesVersion(Option<String> seriesExtId) {
+    return seriesExtId.isSome() ? eas.getVersion(CATEGORIES_OF_SERIES, seriesExtId.get()) : "";
   }
 
   private URI trackLocationUri(Track t) {
@@ -1302,6 +1669,31 @@ public class VideoEndpoint {
     return uri(host.getEndpointBaseUrl(), "videos", c.getVideoId(), "categories", c.getId());
   }
 
+  /** The category with the given id, if it belongs to the video */
+  private Option<Category> findCategory(long categoryId, boolean includeDeleted) {
+    final Option<Category> category = eas.getCategory(categoryId, includeDeleted);
+    return category.isSome() && category.get().getVideoId() == videoId ? category : Option.<Category> none();
+  }
+
+  /** The label with the given id, if it belongs to the given category */
+  private Option<Label> findLabel(long categoryId, long id, boolean includeDeleted) {
+    final Option<Label> label = eas.getLabel(id, includeDeleted);
+    return label.isSome() && label.get().getCategoryId() == categoryId ? label : Option.<Label> none();
+  }
+
+  /** The scale with the given id, if it belongs to the video */
+  private Option<Scale> findScale(long scaleId, boolean includeDeleted) {
+    final Option<Scale> scale = eas.getScale(scaleId, includeDeleted);
+    return scale.isSome() && scale.get().getVideoId() == videoId ? scale : Option.<Scale> none();
+  }
+
+  /** The scale value with the given id, if it belongs to the given scale */
+  private Option<ScaleValue> findScaleValue(long scaleId, long id, boolean includeDeleted) {
+    final Option<ScaleValue> scaleValue = eas.getScaleValue(id, includeDeleted);
+    return scaleValue.isSome() && scaleValue.get().getScaleId() == scaleId ? scaleValue
+            : Option.<ScaleValue> none();
+  }
+
   private URI labelLocationUri(Label l) {
     return uri(host.getEndpointBaseUrl(), "videos", videoId, "categories", l.getCategoryId(), "labels", l.getId());
   }
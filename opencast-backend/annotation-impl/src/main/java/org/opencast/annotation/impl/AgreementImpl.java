@@ -0,0 +1,221 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl;
+
+import org.opencast.annotation.api.Agreement;
+import org.opencast.annotation.api.AnnotationSummary;
+
+import org.opencastproject.util.data.Option;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The business model implementation of {@link org.opencast.annotation.api.Agreement}.
+ * <p>
+ * The annotations of all tracks are swept once in the order of their start and end times.
+ * Between two consecutive times every track assigns a fixed set of labels,
+ * so the time line falls into segments which are rated the same by all tracks.
+ * Segments with the same ratings are merged, weighted by their length,
+ * and the agreement measures are computed from these weighted ratings.
+ */
+public final class AgreementImpl implements Agreement {
+  /** Expected agreements this close to 1 leave nothing to correct for chance */
+  private static final double EPSILON = 1e-9;
+
+  private final List<Long> trackIds;
+  private final double duration;
+  private final Option<Double> observedAgreement;
+  private final Option<Double> cohensKappa;
+  private final Option<Double> fleissKappa;
+  private final Option<Double> krippendorffsAlpha;
+
+  public AgreementImpl(List<Long> trackIds, double duration, Option<Double> observedAgreement,
+          Option<Double> cohensKappa, Option<Double> fleissKappa, Option<Double> krippendorffsAlpha) {
+    this.trackIds = trackIds;
+    this.duration = duration;
+    this.observedAgreement = observedAgreement;
+    this.cohensKappa = cohensKappa;
+    this.fleissKappa = fleissKappa;
+    this.krippendorffsAlpha = krippendorffsAlpha;
+  }
+
+  /**
+   * Compute the agreement of tracks.
+   *
+   * @param trackIds
+   *          the ids of the compared tracks
+   * @param annotations
+   *          the annotations of each of the tracks, in the same order as the ids
+   */
+  public static Agreement of(List<Long> trackIds, List<List<AnnotationSummary>> annotations) {
+    final int raters = trackIds.size();
+    final List<Event> events = new ArrayList<>();
+    for (int rater = 0; rater < raters; rater++) {
+      for (AnnotationSummary annotation : annotations.get(rater)) {
+        final double length = annotation.getDuration().getOrElse(0D);
+        if (length > 0 && !annotation.getLabelIds().isEmpty()) {
+          events.add(new Event(annotation.getStart(), rater, annotation.getLabelIds(), 1));
+          events.add(new Event(annotation.getStart() + length, rater, annotation.getLabelIds(), -1));
+        }
+      }
+    }
+    events.sort(Comparator.comparingDouble(event -> event.time));
+
+    // The labels each track assigns at the current time, with how many of its annotations assign them
+    final List<Map<Long, Integer>> active = new ArrayList<>();
+    final List<List<Long>> ratings = new ArrayList<>();
+    for (int rater = 0; rater < raters; rater++) {
+      active.add(new TreeMap<>());
+      ratings.add(List.of());
+    }
+    final Map<List<List<Long>>, Double> weights = new HashMap<>();
+    int labelled = 0;
+    double time = 0;
+    for (Event event : events) {
+      if (event.time > time && labelled > 0) {
+        weights.merge(new ArrayList<>(ratings), event.time - time, Double::sum);
+      }
+      time = event.time;
+      final Map<Long, Integer> labels = active.get(event.rater);
+      final boolean wasLabelled = !labels.isEmpty();
+      for (Long labelId : event.labelIds) {
+        labels.merge(labelId, event.change, (count, change) -> count + change == 0 ? null : count + change);
+      }
+      ratings.set(event.rater, List.copyOf(labels.keySet()));
+      labelled += (labels.isEmpty() ? 0 : 1) - (wasLabelled ? 1 : 0);
+    }
+    return compute(trackIds, weights);
+  }
+
+  private static Agreement compute(List<Long> trackIds, Map<List<List<Long>>, Double> weights) {
+    final int raters = trackIds.size();
+    double total = 0;
+    double unanimous = 0;
+    double pairwise = 0;
+    // How long each track assigns each set of labels, and how long all tracks together do so
+    final List<Map<List<Long>, Double>> marginals = new ArrayList<>();
+    for (int rater = 0; rater < raters; rater++) {
+      marginals.add(new HashMap<>());
+    }
+    final Map<List<Long>, Double> pooled = new HashMap<>();
+    for (Map.Entry<List<List<Long>>, Double> unit : weights.entrySet()) {
+      final List<List<Long>> ratings = unit.getKey();
+      final double weight = unit.getValue();
+      total += weight;
+      final Map<List<Long>, Integer> counts = new HashMap<>();
+      for (int rater = 0; rater < raters; rater++) {
+        counts.merge(ratings.get(rater), 1, Integer::sum);
+        marginals.get(rater).merge(ratings.get(rater), weight, Double::sum);
+        pooled.merge(ratings.get(rater), weight, Double::sum);
+      }
+      if (counts.size() == 1) {
+        unanimous += weight;
+      }
+      double agreeingPairs = 0;
+      for (int count : counts.values()) {
+        agreeingPairs += count * (count - 1);
+      }
+      pairwise += weight * agreeingPairs / (raters * (raters - 1));
+    }
+    if (total == 0 || raters < 2) {
+      return new AgreementImpl(trackIds, total, Option.none(), Option.none(), Option.none(), Option.none());
+    }
+
+    final Option<Double> cohensKappa;
+    if (raters == 2) {
+      double expected = 0;
+      for (Map.Entry<List<Long>, Double> rating : marginals.get(0).entrySet()) {
+        expected += rating.getValue() / total * marginals.get(1).getOrDefault(rating.getKey(), 0D) / total;
+      }
+      cohensKappa = kappa(unanimous / total, expected);
+    } else {
+      cohensKappa = Option.none();
+    }
+
+    double expected = 0;
+    for (double weight : pooled.values()) {
+      expected += Math.pow(weight / (raters * total), 2);
+    }
+    final Option<Double> fleissKappa = kappa(pairwise / total, expected);
+
+    // Every second rated by every track is one value; the expected disagreement is corrected for the sample size
+    final double values = raters * total;
+    final double expectedDisagreement = values > 1 ? (1 - expected) * values / (values - 1) : 0;
+    final Option<Double> krippendorffsAlpha = expectedDisagreement > EPSILON
+            ? Option.some(1 - (1 - pairwise / total) / expectedDisagreement)
+            : Option.none();
+
+    return new AgreementImpl(trackIds, total, Option.some(unanimous / total), cohensKappa, fleissKappa,
+            krippendorffsAlpha);
+  }
+
+  /** Chance corrected agreement; undefined if agreement is expected by chance anyway */
+  private static Option<Double> kappa(double observed, double expected) {
+    return expected < 1 - EPSILON ? Option.some((observed - expected) / (1 - expected)) : Option.none();
+  }
+
+  @Override
+  public List<Long> getTrackIds() {
+    return trackIds;
+  }
+
+  @Override
+  public double getDuration() {
+    return duration;
+  }
+
+  @Override
+  public Option<Double> getObservedAgreement() {
+    return observedAgreement;
+  }
+
+  @Override
+  public Option<Double> getCohensKappa() {
+    return cohensKappa;
+  }
+
+  @Override
+  public Option<Double> getFleissKappa() {
+    return fleissKappa;
+  }
+
+  @Override
+  public Option<Double> getKrippendorffsAlpha() {
+    return krippendorffsAlpha;
+  }
+
+  /**
+   * The start or the end of an annotation of a track
+   */
+  private static final class Event {
+    private final double time;
+    private final int rater;
+    private final List<Long> labelIds;
+    private final int change;
+
+    Event(double time, int rater, List<Long> labelIds, int change) {
+      this.time = time;
+      this.rater = rater;
+      this.labelIds = labelIds;
+      this.change = change;
+    }
+  }
+}
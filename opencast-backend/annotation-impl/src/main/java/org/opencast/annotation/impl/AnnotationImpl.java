@@ -41,7 +41,8 @@ public class AnnotationImpl extends ResourceImpl implements Annotation {
   public AnnotationImpl(long id, long trackId, double start, Option<Double> duration,
           String content, long createdFromQuestionnaire, Option<String> settings, Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(), resource
-            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null);
+            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null,
+            resource.getRevision());
     this.id = id;
     this.trackId = trackId;
     this.start = start;
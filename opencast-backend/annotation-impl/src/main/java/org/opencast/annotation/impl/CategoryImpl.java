@@ -42,7 +42,8 @@ public class CategoryImpl extends ResourceImpl implements Category {
   public CategoryImpl(long id, Option<String> seriesExtId, Option<Long> seriesCategoryId, long videoId,
           Option<Long> scaleId, String name, Option<String> description, Option<String> settings, Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(),
-            resource.getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null);
+            resource.getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null,
+            resource.getRevision());
     this.id = id;
     this.seriesExtId = seriesExtId;
     this.seriesCategoryId = seriesCategoryId;
@@ -37,7 +37,8 @@ public final class CommentImpl extends ResourceImpl implements Comment {
 
   public CommentImpl(long id, long annotationId, String text, Option<Long> replyToId, Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(), resource
-            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null);
+            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null,
+            resource.getRevision());
     this.id = id;
     this.annotationId = annotationId;
     this.text = text;
@@ -41,7 +41,8 @@ public final class LabelImpl extends ResourceImpl implements Label {
   public LabelImpl(long id, Option<Long> seriesLabelId, long categoryId, String value, String abbreviation,
           Option<String> description, Option<String> settings, Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(),
-            resource.getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null);
+            resource.getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null,
+            resource.getRevision());
     this.id = id;
     this.seriesLabelId = seriesLabelId;
     this.categoryId = categoryId;
@@ -24,7 +24,7 @@ public final class QuestionnaireImpl extends ResourceImpl implements Questionnai
   public QuestionnaireImpl(long id, long videoId, String title, String content, Option<String> settings, Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(),
             resource.getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(),
-            null);
+            null, resource.getRevision());
     this.id = id;
     this.videoId = videoId;
     this.title = title;
@@ -41,10 +41,18 @@ public class ResourceImpl implements Resource {
   private final Option<Long> updatedBy;
   private final Option<Long> deletedBy;
 
+  private final long revision;
+
   private Map<String, String> tags = new HashMap<>();
 
   public ResourceImpl(Option<Integer> access, Option<Long> createdBy, Option<Long> updatedBy, Option<Long> deletedBy,
           Option<Date> createdAt, Option<Date> updatedAt, Option<Date> deletedAt, Map<String, String> tags) {
+    this(access, createdBy, updatedBy, deletedBy, createdAt, updatedAt, deletedAt, tags, 0);
+  }
+
+  public ResourceImpl(Option<Integer> access, Option<Long> createdBy, Option<Long> updatedBy, Option<Long> deletedBy,
+          Option<Date> createdAt, Option<Date> updatedAt, Option<Date> deletedAt, Map<String, String> tags,
+          long revision) {
 
     this.access = access.getOrElse(PRIVATE);
 
@@ -54,6 +62,7 @@ public class ResourceImpl implements Resource {
     this.createdAt = createdAt;
     this.updatedAt = updatedAt;
     this.deletedAt = deletedAt;
+    this.revision = revision;
 
     if (tags != null)
       this.tags = tags;
@@ -104,6 +113,11 @@ public class ResourceImpl implements Resource {
     return deletedAt;
   }
 
+  @Override
+  public long getRevision() {
+    return revision;
+  }
+
   @Override
   public Map<String, String> getTags() {
     return tags;
@@ -37,7 +37,8 @@ public class ScaleImpl extends ResourceImpl implements Scale {
 
   public ScaleImpl(long id, long videoId, String name, Option<String> description, Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(), resource
-            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null);
+            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null,
+            resource.getRevision());
     this.id = id;
     this.videoId = videoId;
     this.name = name;
@@ -38,7 +38,8 @@ public class ScaleValueImpl extends ResourceImpl implements ScaleValue {
 
   public ScaleValueImpl(long id, long scaleId, String name, double value, int order, Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(), resource
-            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null);
+            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null,
+            resource.getRevision());
     this.id = id;
     this.scaleId = scaleId;
     this.name = name;
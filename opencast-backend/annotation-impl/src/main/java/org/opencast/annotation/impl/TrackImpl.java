@@ -39,7 +39,8 @@ public final class TrackImpl extends ResourceImpl implements Track {
   public TrackImpl(long id, long videoId, String name, Option<String> description, Option<String> settings,
           Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(), resource
-            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null);
+            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null,
+            resource.getRevision());
     this.id = id;
     this.videoId = videoId;
     this.name = name;
@@ -34,7 +34,8 @@ public final class UserImpl extends ResourceImpl implements User {
 
   public UserImpl(long id, String extId, String nickname, Option<String> email, Resource resource) {
     super(Option.option(resource.getAccess()), resource.getCreatedBy(), resource.getUpdatedBy(), resource
-            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null);
+            .getDeletedBy(), resource.getCreatedAt(), resource.getUpdatedAt(), resource.getDeletedAt(), null,
+            resource.getRevision());
     this.id = id;
     this.extId = extId;
     this.nickname = nickname;
@@ -41,6 +41,14 @@ import javax.persistence.TemporalType;
 @MappedSuperclass
 public abstract class AbstractResourceDto {
 
+  /**
+   * Condition for queries over resources <code>a</code> that skips those the user with the id <code>:userId</code>
+   * can certainly not see, i.e. private resources of other users.
+   * Resources shared with the admins of their video still have to be checked against the user's permissions.
+   */
+  static final String ACCESSIBLE = "(a.access in (" + Resource.PUBLIC + ", " + Resource.SHARED_WITH_EVERYONE + ", "
+          + Resource.SHARED_WITH_ADMIN + ") or a.createdBy = :userId)";
+
   @Column(name = "access")
   protected Integer access = Resource.PRIVATE;
 
@@ -65,7 +73,12 @@ public abstract class AbstractResourceDto {
   @Temporal(TemporalType.TIMESTAMP)
   protected Date deletedAt;
 
+  // Counts the changes of the resource, so that its version and the versions of its lists change with every change
+  @Column(name = "revision", nullable = false)
+  protected long revision;
+
   public AbstractResourceDto update(Resource resource) {
+    this.revision++;
     this.access = resource.getAccess();
     this.createdBy = resource.getCreatedBy().getOrElseNull();
     this.updatedBy = resource.getUpdatedBy().getOrElseNull();
@@ -79,29 +92,38 @@ public abstract class AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, Resource, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService s, Resource resource) {
-      String createdAt = resource.getCreatedAt().map(getDateAsUtc).getOrElseNull();
-      String updatedAt = resource.getUpdatedAt().map(getDateAsUtc).getOrElseNull();
-      String deletedAt = resource.getDeletedAt().map(getDateAsUtc).getOrElseNull();
-
-      Long createdBy = resource.getCreatedBy().getOrElseNull();
-      Long updatedBy = resource.getUpdatedBy().getOrElseNull();
-      Long deletedBy = resource.getDeletedBy().getOrElseNull();
-
-      String createdByNickname = resource.getCreatedBy().map(getUserNickname.curry(s)).getOrElseNull();
-      String updatedByNickname = resource.getUpdatedBy().map(getUserNickname.curry(s)).getOrElseNull();
-      String deletedByNickname = resource.getDeletedBy().map(getUserNickname.curry(s)).getOrElseNull();
-
-      String createdByEmail = resource.getCreatedBy().flatMap(getUserEmail.curry(s)).getOrElse("");
-      return conc(
-              jO(p("access", resource.getAccess()), p("created_by", createdBy), p("updated_by", updatedBy),
-                      p("deleted_by", deletedBy), p("created_at", createdAt), p("updated_at", updatedAt),
-                      p("deleted_at", deletedAt), p("created_by_nickname", createdByNickname),
-                      p("created_by_email", createdByEmail),
-                      p("updated_by_nickname", updatedByNickname), p("deleted_by_nickname", deletedByNickname)),
-              jOTags(resource.getTags()));
+      return toJson(UserResolver.of(s), resource);
     }
   };
 
+  /**
+   * Serialize the common resource fields, looking up the referenced users through the given resolver.
+   * Use a resolver created for the whole list when serializing several resources.
+   */
+  public static JSONObject toJson(UserResolver users, Resource resource) {
+    String createdAt = resource.getCreatedAt().map(getDateAsUtc).getOrElseNull();
+    String updatedAt = resource.getUpdatedAt().map(getDateAsUtc).getOrElseNull();
+    String deletedAt = resource.getDeletedAt().map(getDateAsUtc).getOrElseNull();
+
+    Long createdBy = resource.getCreatedBy().getOrElseNull();
+    Long updatedBy = resource.getUpdatedBy().getOrElseNull();
+    Long deletedBy = resource.getDeletedBy().getOrElseNull();
+
+    Option<User> creator = createdBy != null ? users.getUser(createdBy) : Option.none();
+    String createdByNickname = creator.isSome() ? creator.get().getNickname() : null;
+    String updatedByNickname = getUserNickname(users, updatedBy);
+    String deletedByNickname = getUserNickname(users, deletedBy);
+
+    String createdByEmail = creator.isSome() ? creator.get().getEmail().getOrElse("") : "";
+    return conc(
+            jO(p("access", resource.getAccess()), p("created_by", createdBy), p("updated_by", updatedBy),
+                    p("deleted_by", deletedBy), p("created_at", createdAt), p("updated_at", updatedAt),
+                    p("deleted_at", deletedAt), p("created_by_nickname", createdByNickname),
+                    p("created_by_email", createdByEmail),
+                    p("updated_by_nickname", updatedByNickname), p("deleted_by_nickname", deletedByNickname)),
+            jOTags(resource.getTags()));
+  }
+
   public static final Function<Date, String> getDateAsUtc = new Function<>() {
     @Override
     public String apply(Date date) {
@@ -109,26 +131,14 @@ public abstract class AbstractResourceDto {
     }
   };
 
-  public static final Function2<ExtendedAnnotationService, Long, String> getUserNickname = new Function2<>() {
-    @Override
-    public String apply(ExtendedAnnotationService s, Long userId) {
-      Option<User> user = s.getUser(userId);
-      if (user.isNone())
-        return null;
+  private static String getUserNickname(UserResolver users, Long userId) {
+    if (userId == null)
+      return null;
 
-      return user.get().getNickname();
-    }
-  };
+    Option<User> user = users.getUser(userId);
+    if (user.isNone())
+      return null;
 
-  private static final Function2<ExtendedAnnotationService, Long, Option<String>> getUserEmail = new Function2<>() {
-    @Override
-    public Option<String> apply(ExtendedAnnotationService s, Long userId) {
-      return s.getUser(userId).flatMap(new Function<>() {
-        @Override
-        public Option<String> apply(User user) {
-          return user.getEmail();
-        }
-      });
-    }
-  };
+    return user.get().getNickname();
+  }
 }
@@ -16,7 +16,6 @@
 package org.opencast.annotation.impl.persistence;
 
 import static org.opencast.annotation.impl.Jsons.conc;
-import static org.opencast.annotation.impl.Jsons.jA;
 import static org.opencast.annotation.impl.Jsons.jO;
 import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.data.Option.option;
@@ -32,25 +31,87 @@ import org.opencastproject.util.data.Function2;
 import org.opencastproject.util.data.Option;
 
 import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
 
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import javax.persistence.CollectionTable;
 import javax.persistence.Column;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 /** JPA/JSON link to {@link org.opencast.annotation.api.Annotation}. */
 @Entity(name = "Annotation")
-@Table(name = "xannotations_annotation")
+@Table(name = "xannotations_annotation", indexes = {
+        @Index(name = "IX_xannotations_annotation_track", columnList = "track_id, deleted_at") })
 @NamedQueries({
         @NamedQuery(name = "Annotation.findById", query = "select a from Annotation a where a.id = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.findByPath", query = "select a from Annotation a, Track t where a.id = :id "
+                + "and a.trackId = t.id and t.id = :trackId and t.videoId = :videoId "
+                + "and a.deletedAt IS NULL and t.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.findAllById", query = "select a from Annotation a where a.id IN :ids"),
         @NamedQuery(name = "Annotation.findAllOfTrack", query = "select a from Annotation a where a.trackId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.findAllOfTrackInInterval", query = "select a from Annotation a where a.trackId = :id "
+                + "and a.deletedAt IS NULL and a.start <= :to and a.start + COALESCE(a.duration, 0) >= :from "
+                + "order by a.start, a.id"),
+        @NamedQuery(name = "Annotation.findAllOfTrackAfter", query = "select a from Annotation a where a.trackId = :id "
+                + "and a.deletedAt IS NULL and (a.start > :start or a.start = :start and a.id > :after) "
+                + "order by a.start, a.id"),
+        @NamedQuery(name = "Annotation.findSummariesOfTrackAfter", query = "select new "
+                + "org.opencast.annotation.impl.persistence.AnnotationSummaryDto(a.id, a.start, a.duration, "
+                + "a.labelsExtracted) from Annotation a where a.trackId = :id "
+                + "and a.deletedAt IS NULL and (a.start > :start or a.start = :start and a.id > :after) "
+                + "order by a.start, a.id"),
+        @NamedQuery(name = "Annotation.findIntervalsOfTrack", query = "select a.id, a.start, a.duration "
+                + "from Annotation a where a.trackId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.findAllOfTrackById", query = "select a from Annotation a "
+                + "where a.trackId = :id and a.id IN :ids and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.findSummariesOfTrackById", query = "select new "
+                + "org.opencast.annotation.impl.persistence.AnnotationSummaryDto(a.id, a.start, a.duration, "
+                + "a.labelsExtracted) from Annotation a where a.trackId = :id and a.id IN :ids and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.findAllOfVideo", query = "select a from Annotation a where a.trackId IN "
+                + "(select t.id from Track t where t.videoId = :id and t.deletedAt IS NULL) and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.findAllOfVideoAfter", query = "select a from Annotation a where a.trackId IN "
+                + "(select t.id from Track t where t.videoId = :id and t.deletedAt IS NULL) and a.deletedAt IS NULL "
+                + "and a.id > :after order by a.id"),
+        @NamedQuery(name = "Annotation.findLabelIds", query = "select a.id, r.labelId from Annotation a "
+                + "join a.labelReferences r where a.id IN :ids"),
+        @NamedQuery(name = "Annotation.countLabelUsageOfVideo", query = "select new "
+                + "org.opencast.annotation.impl.persistence.LabelUsageDto(r.labelId, a.trackId, a.createdBy, "
+                + "count(a), sum(COALESCE(a.duration, 0))) from Annotation a join a.labelReferences r "
+                + "where a.trackId IN (select t.id from Track t where t.videoId = :id and t.deletedAt IS NULL) "
+                + "and a.deletedAt IS NULL group by r.labelId, a.trackId, a.createdBy"),
+        @NamedQuery(name = "Annotation.findContents", query = "select a.id, a.content from Annotation a "
+                + "where a.id IN :ids"),
+        @NamedQuery(name = "Annotation.findWithoutLabelReferences", query = "select a.id from Annotation a "
+                + "where a.labelsExtracted IS NULL and a.id > :after order by a.id"),
+        @NamedQuery(name = "Annotation.claimLabelReferences", query = "update Annotation a set a.labelsExtracted = true "
+                + "where a.id = :id and a.labelsExtracted IS NULL"),
+        @NamedQuery(name = "Annotation.deleteAllOfTrack", query = "update Annotation a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.trackId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.deleteAllOfVideo", query = "update Annotation a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.trackId IN (select t.id from Track t where t.videoId = :id) and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Annotation.versionOfTrack", query = "select count(a), sum(a.revision), sum(a.id) from Annotation a where a.trackId = :id"),
+        @NamedQuery(name = "Annotation.versionOfVideo", query = "select count(a), sum(a.revision), sum(a.id) from Annotation a where "
+                + "a.trackId IN (select t.id from Track t where t.videoId = :id)"),
         @NamedQuery(name = "Annotation.clear", query = "delete from Annotation") })
 public class AnnotationDto extends AbstractResourceDto {
   @Id
@@ -79,6 +140,20 @@ public class AnnotationDto extends AbstractResourceDto {
   @Column(name = "track_id", nullable = false)
   private long trackId;
 
+  // The labels used in the content, so that they can be found without parsing it
+  @ElementCollection
+  @CollectionTable(name = "xannotations_annotation_label", joinColumns = @JoinColumn(name = "annotation_id"),
+          uniqueConstraints = @UniqueConstraint(name = "UNQ_xannotations_annotation_label",
+                  columnNames = { "annotation_id", "label_id", "scale_value_id" }),
+          indexes = {
+                  @Index(name = "IX_xannotations_annotation_label_annotation", columnList = "annotation_id"),
+                  @Index(name = "IX_xannotations_annotation_label_label", columnList = "label_id") })
+  private List<LabelReferenceDto> labelReferences = new ArrayList<>();
+
+  // Null for annotations stored before the label references were introduced, until they are backfilled
+  @Column(name = "labels_extracted")
+  private Boolean labelsExtracted;
+
   public static AnnotationDto create(long trackId, double start, Option<Double> duration, String content,
           long createdFromQuestionnaire, Option<String> settings, Resource resource) {
     final AnnotationDto dto = new AnnotationDto().update(start, duration, content, createdFromQuestionnaire,
@@ -90,7 +165,10 @@ public class AnnotationDto extends AbstractResourceDto {
   public AnnotationDto update(double start, Option<Double> duration, String content, long createdFromQuestionnaire,
           Option<String> settings, Resource resource) {
     super.update(resource);
-    this.content = content;
+    if (labelsExtracted == null || !content.equals(this.content)) {
+      this.content = content;
+      extractLabelReferences();
+    }
     this.start = start;
     this.duration = duration.getOrElseNull();
     this.createdFromQuestionnaire = createdFromQuestionnaire;
@@ -105,10 +183,29 @@ public class AnnotationDto extends AbstractResourceDto {
     return dto;
   }
 
+  /** Store the labels used in the content in the label references. */
+  void extractLabelReferences() {
+    labelReferences = parseLabelReferences(content);
+    labelsExtracted = true;
+  }
+
+  long getId() {
+    return id;
+  }
+
+  double getStart() {
+    return start;
+  }
+
+  /** Whether the label references are up to date, or the content has to be parsed to find the labels */
+  boolean isLabelsExtracted() {
+    return labelsExtracted != null;
+  }
+
   public Annotation toAnnotation() {
     return new AnnotationImpl(id, trackId, start, option(duration), content, createdFromQuestionnaire, option(settings),
             new ResourceImpl(option(access), option(createdBy), option(updatedBy),
-                    option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt), null));
+                    option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt), null, revision));
   }
 
   public static final Function<AnnotationDto, Annotation> toAnnotation = new Function<>() {
@@ -118,16 +215,61 @@ public class AnnotationDto extends AbstractResourceDto {
     }
   };
 
+  /** Get the ids of the labels used by the label and scaling items of the content of an annotation. */
+  static List<Long> getLabelIds(String content) {
+    return parseLabelReferences(content).stream().map(LabelReferenceDto::getLabelId).collect(Collectors.toList());
+  }
+
+  /**
+   * Find the labels used by the label and scaling items of the content of an annotation.
+   * Content that is no list of items does not use any labels. Labels used several times are only returned once.
+   */
+  private static List<LabelReferenceDto> parseLabelReferences(String content) {
+    final Set<LabelReferenceDto> references = new LinkedHashSet<>();
+    final Object items;
+    try {
+      items = new JSONParser().parse(content);
+    } catch (ParseException e) {
+      return new ArrayList<>();
+    }
+    if (!(items instanceof List)) {
+      return new ArrayList<>();
+    }
+    for (Object item : (List<?>) items) {
+      if (!(item instanceof Map)) {
+        continue;
+      }
+      final Object type = ((Map<?, ?>) item).get("type");
+      final Object value = ((Map<?, ?>) item).get("value");
+      if ("label".equals(type) && value instanceof Number) {
+        references.add(LabelReferenceDto.create(((Number) value).longValue(), null));
+      } else if ("scaling".equals(type) && value instanceof Map) {
+        final Object label = ((Map<?, ?>) value).get("label");
+        final Object scaleValue = ((Map<?, ?>) value).get("scaling");
+        if (label instanceof Number) {
+          references.add(LabelReferenceDto.create(((Number) label).longValue(),
+                  scaleValue instanceof Number ? ((Number) scaleValue).longValue() : null));
+        }
+      }
+    }
+    return new ArrayList<>(references);
+  }
+
   public static final Function2<ExtendedAnnotationService, Annotation, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService s, Annotation a) {
-      return conc(AbstractResourceDto.toJson.apply(s, a),
-          jO(p("id", a.getId()), p("start", a.getStart()), p("duration", a.getDuration()), p("content", a.getContent()),
-              p("createdFromQuestionnaire", a.getCreatedFromQuestionnaire()), p("settings", a.getSettings())));
+      return toJson(s, UserResolver.of(s), a);
     }
   };
 
-  public static JSONObject toJson(ExtendedAnnotationService s, Stream<Annotation> as) {
-    return jO(p("annotations", jA(as.map(a -> toJson.apply(s, a)).toArray())));
+  public static JSONObject toJson(ExtendedAnnotationService s, UserResolver users, Annotation a) {
+    return conc(AbstractResourceDto.toJson(users, a),
+        jO(p("id", a.getId()), p("start", a.getStart()), p("duration", a.getDuration()), p("content", a.getContent()),
+            p("createdFromQuestionnaire", a.getCreatedFromQuestionnaire()), p("settings", a.getSettings())));
+  }
+
+  /** Like {@link #toJson(ExtendedAnnotationService, UserResolver, Annotation)}, with the number of comments */
+  public static JSONObject toJson(ExtendedAnnotationService s, UserResolver users, Annotation a, long comments) {
+    return conc(toJson(s, users, a), jO(p("comment_count", comments)));
   }
 }
@@ -0,0 +1,203 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The time intervals of the annotations of a track, indexed to find the annotations overlapping a given interval
+ * in <code>O(log n + k)</code>, where <code>k</code> is the number of annotations found.
+ * <p>
+ * The annotations are kept sorted by their start time and id, which is also the order they are found in.
+ * This sorted array is the in-order traversal of an implicit balanced binary tree,
+ * whose nodes know the latest end of all the annotations in their subtree,
+ * so that subtrees ending before the interval can be skipped.
+ * <p>
+ * Indexes are immutable, so they can be shared between threads.
+ * Changing annotations creates a new index in <code>O(n)</code>, by merging the changes into copies of the arrays.
+ */
+final class AnnotationIntervals {
+  private final long[] ids;
+  private final double[] starts;
+  private final double[] ends;
+  // The latest end in the subtree rooted at each index
+  private final double[] maxEnds;
+
+  private AnnotationIntervals(long[] ids, double[] starts, double[] ends) {
+    this.ids = ids;
+    this.starts = starts;
+    this.ends = ends;
+    this.maxEnds = new double[ids.length];
+    computeMaxEnds(0, ids.length);
+  }
+
+  /**
+   * Index the given annotations.
+   *
+   * @param annotations
+   *          the id, start and optional duration of each annotation
+   */
+  static AnnotationIntervals of(List<Object[]> annotations) {
+    final Interval[] intervals = new Interval[annotations.size()];
+    for (int i = 0; i < intervals.length; i++) {
+      final Object[] annotation = annotations.get(i);
+      final double start = ((Number) annotation[1]).doubleValue();
+      final double duration = annotation[2] == null ? 0 : ((Number) annotation[2]).doubleValue();
+      intervals[i] = new Interval(((Number) annotation[0]).longValue(), start, start + duration);
+    }
+    Arrays.sort(intervals);
+    final long[] ids = new long[intervals.length];
+    final double[] starts = new double[intervals.length];
+    final double[] ends = new double[intervals.length];
+    for (int i = 0; i < intervals.length; i++) {
+      ids[i] = intervals[i].id;
+      starts[i] = intervals[i].start;
+      ends[i] = intervals[i].end;
+    }
+    return new AnnotationIntervals(ids, starts, ends);
+  }
+
+  int size() {
+    return ids.length;
+  }
+
+  /**
+   * Find the annotations overlapping the given interval, including those only touching it.
+   *
+   * @return the ids of the annotations, ordered by their start and id
+   */
+  List<Long> findOverlapping(double from, double to) {
+    final List<Long> found = new ArrayList<>();
+    findOverlapping(0, ids.length, from, to, found);
+    return found;
+  }
+
+  private void findOverlapping(int low, int high, double from, double to, List<Long> found) {
+    if (low >= high) {
+      return;
+    }
+    final int mid = (low + high) >>> 1;
+    if (maxEnds[mid] < from) {
+      // Everything in this subtree ends before the interval
+      return;
+    }
+    findOverlapping(low, mid, from, to, found);
+    if (starts[mid] > to) {
+      // This annotation and everything right of it start after the interval
+      return;
+    }
+    if (ends[mid] >= from) {
+      found.add(ids[mid]);
+    }
+    findOverlapping(mid + 1, high, from, to, found);
+  }
+
+  /** Return an index with the given annotation added, or moved if it is already contained. */
+  AnnotationIntervals put(long id, double start, double end) {
+    return change(List.of(), List.of(new Interval(id, start, end)));
+  }
+
+  /** Return an index without the given annotation. */
+  AnnotationIntervals remove(long id) {
+    return change(List.of(id), List.of());
+  }
+
+  /**
+   * Return an index with some annotations removed and others added, or moved if they are already contained.
+   * All changes are merged into the sorted arrays at once, in <code>O(n + m log m)</code> for <code>m</code> changes.
+   *
+   * @param removed
+   *          the ids of the annotations to remove
+   * @param put
+   *          the annotations to add or move, which are put even if their ids are removed as well
+   */
+  AnnotationIntervals change(Collection<Long> removed, List<Interval> put) {
+    final Interval[] added = put.toArray(new Interval[0]);
+    Arrays.sort(added);
+    final Set<Long> dropped = new HashSet<>(removed);
+    for (Interval interval : added) {
+      dropped.add(interval.id);
+    }
+    final long[] changedIds = new long[ids.length + added.length];
+    final double[] changedStarts = new double[changedIds.length];
+    final double[] changedEnds = new double[changedIds.length];
+    int size = 0;
+    int next = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if (dropped.contains(ids[i])) {
+        continue;
+      }
+      for (; next < added.length && added[next].compareTo(starts[i], ids[i]) < 0; next++, size++) {
+        changedIds[size] = added[next].id;
+        changedStarts[size] = added[next].start;
+        changedEnds[size] = added[next].end;
+      }
+      changedIds[size] = ids[i];
+      changedStarts[size] = starts[i];
+      changedEnds[size] = ends[i];
+      size++;
+    }
+    if (size == ids.length && added.length == 0) {
+      return this;
+    }
+    for (; next < added.length; next++, size++) {
+      changedIds[size] = added[next].id;
+      changedStarts[size] = added[next].start;
+      changedEnds[size] = added[next].end;
+    }
+    return new AnnotationIntervals(Arrays.copyOf(changedIds, size), Arrays.copyOf(changedStarts, size),
+            Arrays.copyOf(changedEnds, size));
+  }
+
+  private double computeMaxEnds(int low, int high) {
+    if (low >= high) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    final int mid = (low + high) >>> 1;
+    maxEnds[mid] = Math.max(ends[mid], Math.max(computeMaxEnds(low, mid), computeMaxEnds(mid + 1, high)));
+    return maxEnds[mid];
+  }
+
+  /**
+   * The interval of a single annotation, ordered by start and id
+   */
+  static final class Interval implements Comparable<Interval> {
+    private final long id;
+    private final double start;
+    private final double end;
+
+    Interval(long id, double start, double end) {
+      this.id = id;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public int compareTo(Interval other) {
+      return compareTo(other.start, other.id);
+    }
+
+    private int compareTo(double otherStart, long otherId) {
+      final int byStart = Double.compare(start, otherStart);
+      return byStart != 0 ? byStart : Long.compare(id, otherId);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl.persistence;
+
+import static org.opencast.annotation.impl.Jsons.jA;
+import static org.opencast.annotation.impl.Jsons.jO;
+import static org.opencast.annotation.impl.Jsons.p;
+import static org.opencastproject.util.data.Option.none;
+import static org.opencastproject.util.data.Option.option;
+import static org.opencastproject.util.data.Option.some;
+
+import org.opencast.annotation.api.AnnotationSummary;
+
+import org.opencastproject.util.data.Option;
+
+import org.json.simple.JSONObject;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of the constructor expressions selecting {@link AnnotationSummary annotation summaries}.
+ * Unlike {@link AnnotationDto} this is no entity, so the results are neither tracked by the entity manager
+ * nor copied into resources. The label ids are looked up separately, after the summaries have been selected.
+ */
+public final class AnnotationSummaryDto implements AnnotationSummary {
+  /** The names of the fields {@link #toJson(AnnotationSummary, Set)} can include */
+  public static final List<String> FIELDS = List.of("id", "start", "duration", "labels");
+
+  private final long id;
+  private final double start;
+  private final Option<Double> duration;
+  private final boolean labelsExtracted;
+  private List<Long> labelIds = List.of();
+
+  public AnnotationSummaryDto(long id, double start, Double duration, Boolean labelsExtracted) {
+    this.id = id;
+    this.start = start;
+    this.duration = option(duration);
+    this.labelsExtracted = labelsExtracted != null;
+  }
+
+  @Override
+  public long getId() {
+    return id;
+  }
+
+  @Override
+  public double getStart() {
+    return start;
+  }
+
+  @Override
+  public Option<Double> getDuration() {
+    return duration;
+  }
+
+  @Override
+  public List<Long> getLabelIds() {
+    return labelIds;
+  }
+
+  /** @see AnnotationDto#isLabelsExtracted() */
+  boolean isLabelsExtracted() {
+    return labelsExtracted;
+  }
+
+  void setLabelIds(List<Long> labelIds) {
+    this.labelIds = labelIds;
+  }
+
+  /**
+   * Serialize the given fields of a summary.
+   *
+   * @param fields
+   *          a subset of {@link #FIELDS}
+   */
+  public static JSONObject toJson(AnnotationSummary a, Set<String> fields) {
+    return jO(p("id", field(fields, "id", a.getId())), p("start", field(fields, "start", a.getStart())),
+            p("duration", fields.contains("duration") ? a.getDuration() : none()),
+            p("labels", field(fields, "labels", jA(a.getLabelIds().toArray()))));
+  }
+
+  private static <A> Option<A> field(Set<String> fields, String field, A value) {
+    return fields.contains(field) ? some(value) : none();
+  }
+}
@@ -16,10 +16,10 @@
 package org.opencast.annotation.impl.persistence;
 
 import static org.opencast.annotation.impl.Jsons.conc;
-import static org.opencast.annotation.impl.Jsons.jA;
 import static org.opencast.annotation.impl.Jsons.jO;
 import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.data.Option.option;
+import static org.opencastproject.util.data.Option.some;
 
 import org.opencast.annotation.api.Category;
 import org.opencast.annotation.api.ExtendedAnnotationService;
@@ -33,26 +33,43 @@ import org.opencastproject.util.data.Option;
 
 import org.json.simple.JSONObject;
 
-import java.util.stream.Stream;
+import java.util.Arrays;
+import java.util.List;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 /** JPA/JSON link to {@link Category}. */
 @Entity(name = "Category")
-@Table(name = "xannotations_category")
+@Cacheable
+@Table(name = "xannotations_category", indexes = {
+        @Index(name = "IX_xannotations_category_video", columnList = "video_id"),
+        @Index(name = "IX_xannotations_category_series", columnList = "series_extid, deleted_at"),
+        @Index(name = "IX_xannotations_category_series_category", columnList = "series_category_id, deleted_at") })
 @NamedQueries({
         @NamedQuery(name = "Category.findByIdIncludeDeleted", query = "select a from Category a where a.id = :id"),
         @NamedQuery(name = "Category.findById", query = "select a from Category a where a.id = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "Category.findAllOfExtSeries", query = "select a from Category a where a.seriesExtId = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "Category.findAllOfSeriesCategory", query = "select a from Category a where a.seriesCategoryId = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "Category.findAllOfVideo", query = "select a from Category a where a.videoId = :id"),
+        @NamedQuery(name = "Category.findAccessibleOfVideo", query = "select a from Category a where a.videoId = :id "
+                + "and " + AbstractResourceDto.ACCESSIBLE),
+        @NamedQuery(name = "Category.findIdsToDeleteWithVideo", query = "select a.id from Category a "
+                + "where a.deletedAt IS NULL and (a.videoId = :id or a.seriesCategoryId IN "
+                + "(select s.seriesCategoryId from Category s where s.videoId = :id and s.deletedAt IS NULL))"),
+        @NamedQuery(name = "Category.deleteAll", query = "update Category a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.id IN :ids and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Category.versionOfVideo", query = "select count(a), sum(a.revision), sum(a.id) from Category a where a.videoId = :id"),
+        @NamedQuery(name = "Category.versionOfExtSeries", query = "select count(a), sum(a.revision), sum(a.id) from Category a where a.seriesExtId = :id"),
         @NamedQuery(name = "Category.clear", query = "delete from Category") })
 public class CategoryDto extends AbstractResourceDto {
   @Id
@@ -82,6 +99,11 @@ public class CategoryDto extends AbstractResourceDto {
   @Column(name = "scale_id")
   private Long scaleId;
 
+  // Incremented whenever a master series category or its labels change.
+  // Copies store the version of their master they were last synchronized with.
+  @Column(name = "series_version")
+  private Long seriesVersion;
+
   public static CategoryDto create(Option<String> seriesExtId, Option<Long> seriesCategoryId, long videoId,
           Option<Long> scaleId, String name, Option<String> description, Option<String> settings, Resource resource) {
     CategoryDto dto = new CategoryDto().update(seriesExtId, seriesCategoryId, videoId, name, description, scaleId,
@@ -106,11 +128,50 @@ public class CategoryDto extends AbstractResourceDto {
     return this;
   }
 
+  /** Whether this is a master series category, i.e. the one the categories of the other videos are copied from. */
+  boolean isSeriesMaster() {
+    return seriesCategoryId != null && seriesCategoryId == id;
+  }
+
+  /** Whether this is a copy of a master series category in another video. */
+  boolean isSeriesCopy() {
+    return seriesCategoryId != null && seriesCategoryId != id;
+  }
+
+  long getSeriesVersion() {
+    return seriesVersion != null ? seriesVersion : 0;
+  }
+
+  /** Mark the copies of this master series category as out of date. */
+  void touchSeriesVersion() {
+    seriesVersion = getSeriesVersion() + 1;
+  }
+
+  /** Whether this copy reflects the current version of the given master series category. */
+  boolean isUpToDateWith(CategoryDto master) {
+    return seriesVersion != null && seriesVersion == master.getSeriesVersion();
+  }
+
+  /** Make this category a copy of the current version of the given master series category. */
+  void copyFrom(CategoryDto master) {
+    update(option(master.seriesExtId), some(master.id), videoId, master.name, option(master.description),
+            option(master.scaleId), option(master.settings), master.toCategory());
+    seriesVersion = master.getSeriesVersion();
+  }
+
+  /**
+   * The properties a category must share with a master series category
+   * to be turned into a copy of it instead of creating a new one.
+   */
+  List<Object> seriesMatchKey() {
+    return Arrays.asList(name, description, settings);
+  }
+
   public Category toCategory() {
     return new CategoryImpl(id, option(seriesExtId), option(seriesCategoryId), videoId, option(scaleId), name,
             option(description), option(settings), new ResourceImpl(option(access), option(createdBy),
                     option(updatedBy), option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt),
-                    null));
+                    null, revision));
   }
 
   public static final Function<CategoryDto, Category> toCategory = new Function<>() {
@@ -123,13 +184,13 @@ public class CategoryDto extends AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, Category, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService eas, Category s) {
-      return conc(AbstractResourceDto.toJson.apply(eas, s),
-          jO(p("id", s.getId()), p("series_extid", s.getSeriesExtId()), p("series_category_id", s.getSeriesCategoryId()), p("name", s.getName()),
-              p("description", s.getDescription()), p("settings", s.getSettings()), p("scale_id", s.getScaleId())));
+      return toJson(eas, UserResolver.of(eas), s);
     }
   };
 
-  public static JSONObject toJson(ExtendedAnnotationService eas, Stream<Category> categories) {
-    return jO(p("categories", jA(categories.map(c -> toJson.apply(eas, c)).toArray())));
+  public static JSONObject toJson(ExtendedAnnotationService eas, UserResolver users, Category s) {
+    return conc(AbstractResourceDto.toJson(users, s),
+        jO(p("id", s.getId()), p("series_extid", s.getSeriesExtId()), p("series_category_id", s.getSeriesCategoryId()), p("name", s.getName()),
+            p("description", s.getDescription()), p("settings", s.getSettings()), p("scale_id", s.getScaleId())));
   }
 }
@@ -16,7 +16,6 @@
 package org.opencast.annotation.impl.persistence;
 
 import static org.opencast.annotation.impl.Jsons.conc;
-import static org.opencast.annotation.impl.Jsons.jA;
 import static org.opencast.annotation.impl.Jsons.jO;
 import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.data.Option.option;
@@ -33,13 +32,12 @@ import org.opencastproject.util.data.Option;
 
 import org.json.simple.JSONObject;
 
-import java.util.stream.Stream;
-
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
@@ -47,11 +45,39 @@ import javax.persistence.Table;
 
 /** JPA/JSON link to {@link Comment}. */
 @Entity(name = "Comment")
-@Table(name = "xannotations_comment")
+@Table(name = "xannotations_comment", indexes = {
+        @Index(name = "IX_xannotations_comment_annotation", columnList = "annotation_id, reply_to_id, deleted_at"),
+        @Index(name = "IX_xannotations_comment_reply_to", columnList = "reply_to_id, deleted_at") })
 @NamedQueries({
         @NamedQuery(name = "Comment.findById", query = "select a from Comment a where a.id = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Comment.findByPath", query = "select a from Comment a, Annotation n, Track t where a.id = :id "
+                + "and a.annotationId = n.id and n.id = :annotationId and n.trackId = t.id and t.id = :trackId "
+                + "and t.videoId = :videoId and a.deletedAt IS NULL and n.deletedAt IS NULL and t.deletedAt IS NULL"),
         @NamedQuery(name = "Comment.findAllOfAnnotation", query = "select a from Comment a where a.annotationId = :id and a.deletedAt IS NULL AND a.replyToId IS NULL"),
         @NamedQuery(name = "Comment.findAllReplies", query = "select a from Comment a where a.replyToId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Comment.findDiscussionOfAnnotation", query = "select a from Comment a where a.annotationId = :id "
+                + "and a.deletedAt IS NULL order by a.id"),
+        @NamedQuery(name = "Comment.findThreadOfAnnotation", query = "select a from Comment a where a.annotationId = :id "
+                + "and a.replyToId IS NULL and a.id > :after and a.deletedAt IS NULL order by a.id"),
+        @NamedQuery(name = "Comment.findAllRepliesOf", query = "select a from Comment a where a.replyToId IN :ids "
+                + "and a.deletedAt IS NULL order by a.id"),
+        @NamedQuery(name = "Comment.findAllOfAnnotations", query = "select a from Comment a where a.annotationId IN :ids "
+                + "and a.deletedAt IS NULL order by a.annotationId, a.id"),
+        @NamedQuery(name = "Comment.countOfAnnotations", query = "select a.annotationId, count(a) from Comment a "
+                + "where a.annotationId IN :ids and a.deletedAt IS NULL group by a.annotationId"),
+        @NamedQuery(name = "Comment.deleteAllOfTrack", query = "update Comment a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.annotationId IN (select n.id from Annotation n where n.trackId = :id) "
+                + "and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Comment.deleteAllOfVideo", query = "update Comment a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.annotationId IN (select n.id from Annotation n, Track t "
+                + "where n.trackId = t.id and t.videoId = :id) and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Comment.versionOfAnnotation", query = "select count(a), sum(a.revision), sum(a.id) from Comment a where a.annotationId = :id"),
+        @NamedQuery(name = "Comment.versionOfTrack", query = "select count(a), sum(a.revision), sum(a.id) from Comment a where "
+                + "a.annotationId IN (select n.id from Annotation n where n.trackId = :id)"),
+        @NamedQuery(name = "Comment.versionOfVideo", query = "select count(a), sum(a.revision), sum(a.id) from Comment a where "
+                + "a.annotationId IN (select n.id from Annotation n, Track t where n.trackId = t.id and t.videoId = :id)"),
         @NamedQuery(name = "Comment.clear", query = "delete from Comment") })
 public class CommentDto extends AbstractResourceDto {
   @Id
@@ -83,10 +109,14 @@ public class CommentDto extends AbstractResourceDto {
     return this;
   }
 
+  long getId() {
+    return id;
+  }
+
   public Comment toComment() {
     return new CommentImpl(id, annotationId, text, option(replyToId), new ResourceImpl(option(access),
             option(createdBy), option(updatedBy), option(deletedBy), option(createdAt), option(updatedAt),
-            option(deletedAt), null));
+            option(deletedAt), null, revision));
   }
 
   public static final Function<CommentDto, Comment> toComment = new Function<>() {
@@ -99,11 +129,11 @@ public class CommentDto extends AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, Comment, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService s, Comment c) {
-      return conc(AbstractResourceDto.toJson.apply(s, c), jO(p("id", c.getId()), p("text", c.getText())));
+      return toJson(s, UserResolver.of(s), c);
     }
   };
 
-  public static JSONObject toJson(ExtendedAnnotationService s, Stream<Comment> cs) {
-    return jO(p("comments", jA(cs.map(c -> toJson.apply(s, c)).toArray())));
+  public static JSONObject toJson(ExtendedAnnotationService s, UserResolver users, Comment c) {
+    return conc(AbstractResourceDto.toJson(users, c), jO(p("id", c.getId()), p("text", c.getText())));
   }
 }
@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl.persistence;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * A cache holding at most a fixed number of entries, each of which expires a fixed time after it was loaded.
+ * When it is full, the least recently used entry is evicted.
+ * It counts its hits and misses, so that its effectiveness can be monitored.
+ */
+final class ExpiringCache<K, V> {
+  private final int maxSize;
+  private final long ttlNanos;
+  private final LongSupplier clock;
+  // In access order, so the first entry is the least recently used one
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  // Counts removals, so that values loaded before a removal are not cached afterwards
+  private long removals;
+
+  ExpiringCache(int maxSize, Duration ttl) {
+    this(maxSize, ttl, System::nanoTime);
+  }
+
+  /**
+   * @param clock
+   *          the source of the current time in nanoseconds
+   */
+  ExpiringCache(int maxSize, Duration ttl, LongSupplier clock) {
+    this.maxSize = maxSize;
+    this.ttlNanos = ttl.toNanos();
+    this.clock = clock;
+  }
+
+  /**
+   * Return the cached value of the given key, loading it if it is not cached or expired.
+   * The value is loaded without holding the lock of the cache,
+   * so concurrent misses of the same key might load it more than once.
+   * If entries are removed while the value is loaded, it is returned but not cached, since it might be outdated.
+   */
+  V get(K key, Function<? super K, ? extends V> load) {
+    final long now = clock.getAsLong();
+    final long removalsBefore;
+    synchronized (entries) {
+      final Entry<V> entry = entries.get(key);
+      if (entry != null && now - entry.loadedAt < ttlNanos) {
+        hits.incrementAndGet();
+        return entry.value;
+      }
+      removalsBefore = removals;
+    }
+    misses.incrementAndGet();
+    final V value = load.apply(key);
+    synchronized (entries) {
+      if (removals != removalsBefore) {
+        return value;
+      }
+      entries.put(key, new Entry<>(value, now));
+      if (entries.size() > maxSize) {
+        final Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        eldest.next();
+        eldest.remove();
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Replace the cached value of the given key with a changed one, if it is cached.
+   * The changed value expires when the original one would have.
+   * The change is computed without holding the lock of the cache. If the entry was replaced in the meantime,
+   * e.g. by a concurrent update, it is removed instead, since the change might be missing from it.
+   * Values being loaded concurrently are not cached, since they might miss the change.
+   */
+  void update(K key, UnaryOperator<V> change) {
+    final Entry<V> entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      removals++;
+    }
+    if (entry == null) {
+      return;
+    }
+    final Entry<V> changed = new Entry<>(change.apply(entry.value), entry.loadedAt);
+    synchronized (entries) {
+      if (entries.get(key) == entry) {
+        entries.put(key, changed);
+      } else {
+        entries.remove(key);
+      }
+    }
+  }
+
+  /** Forget the value of the given key, e.g. because it changed. */
+  void remove(K key) {
+    synchronized (entries) {
+      entries.remove(key);
+      removals++;
+    }
+  }
+
+  void clear() {
+    synchronized (entries) {
+      entries.clear();
+      removals++;
+    }
+  }
+
+  int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /** Number of lookups answered from the cache */
+  long getHits() {
+    return hits.get();
+  }
+
+  /** Number of lookups that had to load the value */
+  long getMisses() {
+    return misses.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d entries, %d hits, %d misses", size(), getHits(), getMisses());
+  }
+
+  private static final class Entry<V> {
+    private final V value;
+    private final long loadedAt;
+
+    Entry(V value, long loadedAt) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+  }
+}
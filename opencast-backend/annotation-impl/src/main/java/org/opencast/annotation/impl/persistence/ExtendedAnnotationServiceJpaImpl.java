@@ -31,20 +31,27 @@ import static org.opencastproject.util.data.Option.none;
 import static org.opencastproject.util.data.Option.option;
 import static org.opencastproject.util.data.Option.some;
 
+import org.opencast.annotation.api.Agreement;
 import org.opencast.annotation.api.Annotation;
+import org.opencast.annotation.api.AnnotationOperation;
+import org.opencast.annotation.api.AnnotationSummary;
 import org.opencast.annotation.api.Category;
 import org.opencast.annotation.api.Comment;
 import org.opencast.annotation.api.ExtendedAnnotationException;
 import org.opencast.annotation.api.ExtendedAnnotationException.Cause;
 import org.opencast.annotation.api.ExtendedAnnotationService;
 import org.opencast.annotation.api.Label;
+import org.opencast.annotation.api.LabelUsage;
 import org.opencast.annotation.api.Questionnaire;
 import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.api.ResourceCollection;
 import org.opencast.annotation.api.Scale;
 import org.opencast.annotation.api.ScaleValue;
 import org.opencast.annotation.api.Track;
+import org.opencast.annotation.api.UnitOfWork;
 import org.opencast.annotation.api.User;
 import org.opencast.annotation.api.Video;
+import org.opencast.annotation.impl.AgreementImpl;
 import org.opencast.annotation.impl.AnnotationImpl;
 import org.opencast.annotation.impl.CategoryImpl;
 import org.opencast.annotation.impl.CommentImpl;
@@ -53,15 +60,14 @@ import org.opencast.annotation.impl.QuestionnaireImpl;
 import org.opencast.annotation.impl.ResourceImpl;
 import org.opencast.annotation.impl.ScaleImpl;
 import org.opencast.annotation.impl.ScaleValueImpl;
-import org.opencast.annotation.impl.TrackImpl;
 import org.opencast.annotation.impl.UserImpl;
-import org.opencast.annotation.impl.VideoImpl;
 
 import org.opencastproject.db.DBSession;
 import org.opencastproject.db.DBSessionFactory;
 import org.opencastproject.mediapackage.MediaPackage;
 import org.opencastproject.search.api.SearchService;
 import org.opencastproject.security.api.AuthorizationService;
+import org.opencastproject.security.api.Role;
 import org.opencastproject.security.api.SecurityConstants;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.UnauthorizedException;
@@ -70,29 +76,51 @@ import org.opencastproject.util.data.Effect;
 import org.opencastproject.util.data.Function;
 import org.opencastproject.util.data.Function0;
 import org.opencastproject.util.data.Option;
-import org.opencastproject.util.data.Option.Match;
 import org.opencastproject.util.data.Predicate;
 
 import org.apache.commons.lang3.tuple.Pair;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.Session;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.persistence.Cache;
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.CacheStoreMode;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
 import javax.persistence.NoResultException;
+import javax.persistence.PersistenceException;
 import javax.persistence.RollbackException;
 import javax.persistence.TypedQuery;
 
@@ -102,23 +130,178 @@ import javax.persistence.TypedQuery;
 @Component
 public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotationService {
 
+  private static final Logger logger = LoggerFactory.getLogger(ExtendedAnnotationServiceJpaImpl.class);
+
+  /**
+   * Configuration key for the number of seconds access decisions are reused.
+   * Changes to the permissions of a media package take up to this long to affect resources shared with admins.
+   */
+  public static final String ACCESS_CACHE_TTL_KEY = "access.cache.ttl";
+
+  /** Configuration key for the number of access decisions, resource videos and user ids each kept at most */
+  public static final String ACCESS_CACHE_SIZE_KEY = "access.cache.size";
+
+  private static final Duration DEFAULT_ACCESS_CACHE_TTL = Duration.ofMinutes(1);
+  private static final int DEFAULT_ACCESS_CACHE_SIZE = 10000;
+
+  /** How often the hits and misses of the caches are logged at debug level */
+  private static final Duration CACHE_STATISTICS_INTERVAL = Duration.ofMinutes(5);
+
+  /**
+   * How long the label usage of a video is reused if no annotation of the video is changed.
+   * This bounds how long changes made on another node go unnoticed.
+   */
+  private static final Duration LABEL_USAGE_CACHE_TTL = Duration.ofMinutes(10);
+  private static final int LABEL_USAGE_CACHE_SIZE = 1000;
+
+  /**
+   * How long the index of the annotation intervals of a track is reused.
+   * Changes of annotations on this node update it; this bounds how long changes made on another node go unnoticed.
+   */
+  private static final Duration ANNOTATION_INTERVALS_CACHE_TTL = Duration.ofMinutes(1);
+  private static final int ANNOTATION_INTERVALS_CACHE_SIZE = 100;
+
+  /**
+   * Configuration key for whether the entities marked as {@link javax.persistence.Cacheable} are kept
+   * in the shared cache of EclipseLink. Off by default, since the cache is not shared between the nodes
+   * of a cluster, so changes made on one node are only noticed by the others once the entities expire.
+   */
+  public static final String SHARED_CACHE_ENABLED_KEY = "shared.cache.enabled";
+
+  /** Configuration key for the number of seconds after which entities expire from the shared cache */
+  public static final String SHARED_CACHE_EXPIRY_KEY = "shared.cache.expiry";
+
+  private static final Duration DEFAULT_SHARED_CACHE_EXPIRY = Duration.ofMinutes(10);
+
+  /** The entities marked as {@link javax.persistence.Cacheable} */
+  private static final List<Class<?>> CACHEABLE_ENTITIES = List.of(VideoDto.class, UserDto.class, CategoryDto.class,
+          LabelDto.class, ScaleDto.class, ScaleValueDto.class);
+
+  /** How many resources are loaded at once by the methods streaming them */
+  private static final int STREAM_PAGE_SIZE = 1000;
+
+  /** Whether a user may administrate the annotations of a media package, by organization, user, media package and action */
+  private ExpiringCache<List<String>, Boolean> annotateAdminDecisions;
+  /** The video id of the parents of resources that only know their video through them, by parent type and id */
+  private ExpiringCache<List<Object>, Option<Long>> parentVideoIds;
+  /** The annotation tool user id of Opencast users, by organization and user name */
+  private ExpiringCache<List<String>, Option<Long>> userIds;
+  /** The usage of the labels in the annotations of a video by all users, by video id */
+  private final ExpiringCache<Long, List<LabelUsageDto>> labelUsage = new ExpiringCache<>(LABEL_USAGE_CACHE_SIZE,
+          LABEL_USAGE_CACHE_TTL);
+  /** The time intervals of the annotations of a track, by track id */
+  private final ExpiringCache<Long, AnnotationIntervals> annotationIntervals = new ExpiringCache<>(
+          ANNOTATION_INTERVALS_CACHE_SIZE, ANNOTATION_INTERVALS_CACHE_TTL);
+
+  /** The entity manager of the unit of work begun on the current thread, if any */
+  private final ThreadLocal<OpenUnitOfWork> unitOfWork = new ThreadLocal<>();
+
   private EntityManagerFactory entityManagerFactory;
+  private boolean sharedCache;
   private DBSessionFactory dbSessionFactory;
   private DBSession db;
+  private ExecutorService labelReferencesBackfill;
+  private ScheduledExecutorService cacheStatistics;
   private SecurityService securityService;
   private AuthorizationService authorizationService;
   private SearchService searchService;
 
   @Activate
-  public void activate() {
+  public void activate(Map<String, Object> properties) {
+    sharedCache = Boolean.parseBoolean(Objects.toString(properties.get(SHARED_CACHE_ENABLED_KEY), "false"));
+    if (sharedCache) {
+      final Duration expiry = getSeconds(properties, SHARED_CACHE_EXPIRY_KEY, DEFAULT_SHARED_CACHE_EXPIRY);
+      configureSharedCache(expiry);
+      logger.info("Using the shared cache with an expiry of {}", expiry);
+    }
+    // Entities cached by an earlier activation might be outdated by now
+    entityManagerFactory.getCache().evictAll();
+    final Duration accessCacheTtl = getSeconds(properties, ACCESS_CACHE_TTL_KEY, DEFAULT_ACCESS_CACHE_TTL);
+    final int accessCacheSize = getInt(properties, ACCESS_CACHE_SIZE_KEY, DEFAULT_ACCESS_CACHE_SIZE);
+    annotateAdminDecisions = new ExpiringCache<>(accessCacheSize, accessCacheTtl);
+    parentVideoIds = new ExpiringCache<>(accessCacheSize, accessCacheTtl);
+    userIds = new ExpiringCache<>(accessCacheSize, accessCacheTtl);
     db = dbSessionFactory.createSession(entityManagerFactory);
+    labelReferencesBackfill = Executors.newSingleThreadExecutor();
+    labelReferencesBackfill.execute(this::backfillLabelReferences);
+    cacheStatistics = Executors.newSingleThreadScheduledExecutor();
+    cacheStatistics.scheduleAtFixedRate(() -> {
+      if (logger.isDebugEnabled()) {
+        logCacheStatistics();
+      }
+    }, CACHE_STATISTICS_INTERVAL.toMillis(), CACHE_STATISTICS_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
   }
 
   @Deactivate
   public synchronized void deactivate() {
+    cacheStatistics.shutdownNow();
+    logCacheStatistics();
+    labelReferencesBackfill.shutdownNow();
     db.close();
   }
 
+  /** Log the hits and misses of the caches, at debug level unless the service is shutting down. */
+  private void logCacheStatistics() {
+    final boolean shutdown = cacheStatistics.isShutdown();
+    final String message = "Access caches: annotate admin decisions: {}; resource videos: {}; user ids: {}; "
+            + "label usage cache: {}; annotation intervals cache: {}";
+    final Object[] caches = { annotateAdminDecisions, parentVideoIds, userIds, labelUsage, annotationIntervals };
+    if (shutdown) {
+      logger.info(message, caches);
+    } else {
+      logger.debug(message, caches);
+    }
+  }
+
+  /** Get a configuration value given in seconds, or the default if it is not configured. */
+  private static Duration getSeconds(Map<String, Object> properties, String key, Duration defaultValue) {
+    final Object value = properties.get(key);
+    if (value == null || value.toString().isBlank()) {
+      return defaultValue;
+    }
+    try {
+      return Duration.ofSeconds(Long.parseLong(value.toString().trim()));
+    } catch (NumberFormatException e) {
+      logger.warn("Ignoring invalid value {} of {}, using {}", value, key, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /** Get an integer configuration value, or the default if it is not configured. */
+  private static int getInt(Map<String, Object> properties, String key, int defaultValue) {
+    final Object value = properties.get(key);
+    if (value == null || value.toString().isBlank()) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.toString().trim());
+    } catch (NumberFormatException e) {
+      logger.warn("Ignoring invalid value {} of {}, using {}", value, key, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Let the cached entities expire after the given time.
+   * The expiry in <code>eclipselink-orm.xml</code> only serves as a fallback.
+   */
+  private void configureSharedCache(Duration expiry) {
+    final Session session = entityManagerFactory.unwrap(JpaEntityManagerFactory.class).getServerSession();
+    for (Class<?> type : CACHEABLE_ENTITIES) {
+      session.getDescriptor(type).setCacheInvalidationPolicy(
+              new TimeToLiveCacheInvalidationPolicy(expiry.toMillis()));
+    }
+  }
+
+  /** Keep an entity manager away from the shared cache, unless it is enabled. */
+  private EntityManager withCacheMode(EntityManager em) {
+    if (!sharedCache) {
+      em.setProperty("javax.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS);
+      em.setProperty("javax.persistence.cache.storeMode", CacheStoreMode.BYPASS);
+    }
+    return em;
+  }
+
   @Reference(target = "(osgi.unit.name=org.opencast.annotation.impl.persistence)")
   public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
     this.entityManagerFactory = entityManagerFactory;
@@ -146,28 +329,150 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   /**
    * Run <code>f</code> inside a transaction with exception handling applied.
+   * Inside a unit of work, this is the transaction of the unit of work.
    */
   private <A> A tx(java.util.function.Function<EntityManager, A> f) {
+    final OpenUnitOfWork work = unitOfWork.get();
+    final EntityManager em = work != null ? work.em : null;
     try {
-      return db.execTx(f);
+      if (em == null) {
+        return db.execTx(txEm -> f.apply(withCacheMode(txEm)));
+      }
+      final A result = f.apply(em);
+      // Make constraint violations surface here, like they do when committing a transaction of its own
+      em.flush();
+      return result;
     } catch (NoResultException e) {
       throw new ExtendedAnnotationException(Cause.NOT_FOUND);
     } catch (RollbackException e) {
-      Throwable cause = e.getCause();
-      String message = cause.getMessage().toLowerCase();
-      if (message.contains("unique") || message.contains("duplicate")) {
-        throw new ExtendedAnnotationException(Cause.DUPLICATE);
+      throw persistenceError(e);
+    } catch (PersistenceException e) {
+      if (em == null) {
+        throw new ExtendedAnnotationException(Cause.SERVER_ERROR, e);
       }
+      throw persistenceError(e);
+    } catch (RuntimeException e) {
+      throw new ExtendedAnnotationException(Cause.SERVER_ERROR, e);
+    }
+  }
+
+  private static ExtendedAnnotationException persistenceError(PersistenceException e) {
+    final Throwable cause = e.getCause() != null ? e.getCause() : e;
+    final String message = String.valueOf(cause.getMessage()).toLowerCase();
+    if (message.contains("unique") || message.contains("duplicate")) {
+      return new ExtendedAnnotationException(Cause.DUPLICATE);
+    }
+    return new ExtendedAnnotationException(Cause.SERVER_ERROR, e);
+  }
+
+  /**
+   * Run an action that brings the caches up to date with changes once these are committed:
+   * at the end of the current unit of work, or right away outside of one.
+   * The actions of a unit of work that is rolled back are dropped.
+   */
+  private void afterCommit(Runnable action) {
+    final OpenUnitOfWork work = unitOfWork.get();
+    if (work == null) {
+      action.run();
+    } else {
+      work.afterCommit.add(action);
+    }
+  }
+
+  /**
+   * Let the current unit of work forget entities that are only read, so that paging through
+   * long lists does not keep every page in memory until it ends.
+   * Their changes, if any, have already been flushed by {@link #tx}.
+   */
+  private void detach(List<?> entities) {
+    final OpenUnitOfWork work = unitOfWork.get();
+    if (work != null) {
+      entities.forEach(work.em::detach);
+    }
+  }
+
+  /** Whether the current unit of work changed something that the caches do not reflect yet */
+  private boolean hasUncommittedChanges() {
+    final OpenUnitOfWork work = unitOfWork.get();
+    return work != null && !work.afterCommit.isEmpty();
+  }
+
+  @Override
+  public UnitOfWork beginUnitOfWork() {
+    final OpenUnitOfWork previous = unitOfWork.get();
+    if (previous != null) {
+      logger.warn("Rolling back a unit of work that has not been ended");
+      endUnitOfWork(previous, false);
+    }
+    final EntityManager em = withCacheMode(entityManagerFactory.createEntityManager());
+    try {
+      em.getTransaction().begin();
+    } catch (RuntimeException e) {
+      em.close();
       throw new ExtendedAnnotationException(Cause.SERVER_ERROR, e);
+    }
+    final OpenUnitOfWork work = new OpenUnitOfWork(em);
+    unitOfWork.set(work);
+    return new UnitOfWork() {
+      @Override
+      public void commit() {
+        endUnitOfWork(work, true);
+      }
+
+      @Override
+      public void rollback() {
+        endUnitOfWork(work, false);
+      }
+    };
+  }
+
+  private void endUnitOfWork(OpenUnitOfWork work, boolean commit) {
+    if (unitOfWork.get() == work) {
+      unitOfWork.remove();
+    }
+    final EntityManager em = work.em;
+    if (!em.isOpen()) {
+      return;
+    }
+    boolean committed = false;
+    try {
+      final EntityTransaction transaction = em.getTransaction();
+      if (transaction.isActive()) {
+        if (commit && !transaction.getRollbackOnly()) {
+          transaction.commit();
+          committed = true;
+        } else {
+          transaction.rollback();
+        }
+      }
+    } catch (RollbackException e) {
+      throw persistenceError(e);
     } catch (RuntimeException e) {
       throw new ExtendedAnnotationException(Cause.SERVER_ERROR, e);
+    } finally {
+      em.close();
+    }
+    if (committed) {
+      work.afterCommit.forEach(Runnable::run);
+    }
+  }
+
+  /** The transaction of a unit of work, and what to do once it is committed */
+  private static final class OpenUnitOfWork {
+    private final EntityManager em;
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    private OpenUnitOfWork(EntityManager em) {
+      this.em = em;
     }
   }
 
   @Override
   public User createUser(String extId, String nickname, Option<String> email, Resource resource) {
     final UserDto dto = UserDto.create(extId, nickname, email, resource);
-    return tx(namedQuery.persist(dto)).toUser();
+    final User user = tx(namedQuery.persist(dto)).toUser();
+    afterCommit(userIds::clear);
+    return user;
   }
 
   @Override
@@ -178,6 +483,8 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
         dto.update(u.getExtId(), u.getNickname(), u.getEmail(), u);
       }
     });
+    // the external id might have changed, or the user might have been deleted
+    afterCommit(userIds::clear);
   }
 
   @Override
@@ -190,7 +497,8 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   @Override
   public boolean clearDatabase() throws ExtendedAnnotationException {
-    return tx(em -> {
+    tx(em -> {
+      em.createNativeQuery("DELETE FROM xannotations_annotation_label").executeUpdate();
       namedQuery.update("Annotation.clear").apply(em);
       namedQuery.update("Track.clear").apply(em);
       namedQuery.update("User.clear").apply(em);
@@ -208,11 +516,28 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
       namedQuery.update("Comment.clear").apply(em);
       return true;
     });
+    // the bulk deletes bypass the shared cache
+    afterCommit(() -> {
+      entityManagerFactory.getCache().evictAll();
+      parentVideoIds.clear();
+      userIds.clear();
+      labelUsage.clear();
+      annotationIntervals.clear();
+    });
+    return true;
   }
 
   @Override
   public Option<User> getUser(final long id) {
-    return findById(toUser, "User.findById", id, UserDto.class);
+    return findCached(toUser, UserDto.class, id, false);
+  }
+
+  @Override
+  public Stream<User> getUsers(final Collection<Long> ids) {
+    if (ids.isEmpty())
+      return Stream.empty();
+    return findAll(UserDto.class, "User.findAllById", Pair.of("ids", ids)).stream()
+            .map(UserDto::toUser);
   }
 
   @Override
@@ -238,21 +563,47 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   @Override
   public boolean deleteVideo(Video video) throws ExtendedAnnotationException {
-    Resource deleteResource = deleteResource(video);
-    final Video updated = new VideoImpl(video.getId(), video.getExtId(), deleteResource);
-    updateVideo(updated);
-
-    getTracks(video.getId()).forEach(this::deleteTrack);
-
-    getCategories(none(), video.getId()).forEach(this::deleteCategory);
-
-    getScales(video.getId()).forEach(this::deleteScale);
+    final Date deletedAt = new Date();
+    final Option<Long> deletedBy = getCurrentUserId();
+    // Soft delete the video and everything belonging to it with a fixed number of statements,
+    // independent of the amount of annotations.
+    final int deleted = tx(em -> {
+      if (softDelete(em, "Video.delete", deletedAt, deletedBy, id(video.getId())) == 0) {
+        return 0;
+      }
+      softDelete(em, "Comment.deleteAllOfVideo", deletedAt, deletedBy, id(video.getId()));
+      softDelete(em, "Annotation.deleteAllOfVideo", deletedAt, deletedBy, id(video.getId()));
+      softDelete(em, "Track.deleteAllOfVideo", deletedAt, deletedBy, id(video.getId()));
+      // Deleting a series category deletes it in all videos of the series, see deleteCategory
+      final List<Long> categoryIds = em.createNamedQuery("Category.findIdsToDeleteWithVideo", Long.class)
+              .setParameter("id", video.getId()).getResultList();
+      if (!categoryIds.isEmpty()) {
+        softDelete(em, "Label.deleteAllOfCategories", deletedAt, deletedBy, Pair.of("ids", categoryIds));
+        softDelete(em, "Category.deleteAll", deletedAt, deletedBy, Pair.of("ids", categoryIds));
+      }
+      softDelete(em, "ScaleValue.deleteAllOfVideo", deletedAt, deletedBy, id(video.getId()));
+      softDelete(em, "Scale.deleteAllOfVideo", deletedAt, deletedBy, id(video.getId()));
+      return 1;
+    });
+    if (deleted == 0) {
+      throw notFound;
+    }
+    // the bulk updates bypass the shared cache
+    afterCommit(() -> {
+      final Cache cache = entityManagerFactory.getCache();
+      cache.evict(VideoDto.class, video.getId());
+      cache.evict(CategoryDto.class);
+      cache.evict(LabelDto.class);
+      cache.evict(ScaleDto.class);
+      cache.evict(ScaleValueDto.class);
+      labelUsage.remove(video.getId());
+    });
     return true;
   }
 
   @Override
   public Option<Video> getVideo(final long id) throws ExtendedAnnotationException {
-    return findById(toVideo, "Video.findById", id, VideoDto.class);
+    return findCached(toVideo, VideoDto.class, id, false);
   }
 
   @Override
@@ -273,12 +624,23 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   @Override
   public boolean deleteTrack(Track t) throws ExtendedAnnotationException {
-    Resource deleteResource = deleteResource(t);
-    final Track updated = new TrackImpl(t.getId(), t.getVideoId(), t.getName(), t.getDescription(), t.getSettings(),
-            deleteResource);
-    updateTrack(updated);
-
-    getAnnotations(t.getId()).forEach(this::deleteAnnotation);
+    final Date deletedAt = new Date();
+    final Option<Long> deletedBy = getCurrentUserId();
+    final int deleted = tx(em -> {
+      if (softDelete(em, "Track.delete", deletedAt, deletedBy, id(t.getId())) == 0) {
+        return 0;
+      }
+      softDelete(em, "Comment.deleteAllOfTrack", deletedAt, deletedBy, id(t.getId()));
+      softDelete(em, "Annotation.deleteAllOfTrack", deletedAt, deletedBy, id(t.getId()));
+      return 1;
+    });
+    if (deleted == 0) {
+      throw notFound;
+    }
+    afterCommit(() -> {
+      labelUsage.remove(t.getVideoId());
+      annotationIntervals.remove(t.getId());
+    });
     return true;
   }
 
@@ -287,12 +649,19 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
     return findById(toTrack, "Track.findById", trackId, TrackDto.class);
   }
 
+  @Override
+  public Option<Track> getTrack(final long videoId, final long trackId) throws ExtendedAnnotationException {
+    return findByPath(toTrack, "Track.findByPath", TrackDto.class, id(trackId), Pair.of("videoId", videoId));
+  }
+
   @Override
   public Stream<Track> getTracks(final long videoId)
           throws ExtendedAnnotationException {
-    return findAll(TrackDto.class, "Track.findAllOfVideo", id(videoId)).stream()
+    final Option<Long> userId = getCurrentUserId();
+    return findAccessible(TrackDto.class, "Track.findAllOfVideo", "Track.findAccessibleOfVideo", videoId, userId)
+        .stream()
         .map(TrackDto::toTrack)
-        .filter(this::hasResourceAccess);
+        .filter(track -> hasResourceAccess(track, userId));
   }
 
   @Override
@@ -309,32 +678,147 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
   public Annotation createAnnotation(final long trackId, final double start, final Option<Double> duration,
           final String content, final long createdFromQuestionnaire, final Option<String> settings, final Resource resource)
           throws ExtendedAnnotationException {
-    if (getTrack(trackId).isSome()) {
+    for (Track track : getTrack(trackId)) {
       final AnnotationDto dto = AnnotationDto.create(trackId, start, duration, content, createdFromQuestionnaire,
               settings, resource);
-      return tx(namedQuery.persist(dto)).toAnnotation();
-    } else {
-      throw notFound;
+      final Annotation annotation = tx(namedQuery.persist(dto)).toAnnotation();
+      afterCommit(() -> labelUsage.remove(track.getVideoId()));
+      intervalsChanged(trackId, List.of(annotation));
+      return annotation;
     }
+    throw notFound;
   }
 
   @Override
   public Annotation createAnnotation(final Annotation annotation) throws ExtendedAnnotationException {
-    if (getTrack(annotation.getTrackId()).isSome()) {
-      return tx(namedQuery.persist(AnnotationDto.fromAnnotation(annotation))).toAnnotation();
-    } else {
-      throw notFound;
+    for (Track track : getTrack(annotation.getTrackId())) {
+      final Annotation created = tx(namedQuery.persist(AnnotationDto.fromAnnotation(annotation))).toAnnotation();
+      afterCommit(() -> labelUsage.remove(track.getVideoId()));
+      intervalsChanged(track.getId(), List.of(created));
+      return created;
     }
+    throw notFound;
   }
 
   @Override
   public void updateAnnotation(final Annotation a) throws ExtendedAnnotationException {
-    update(AnnotationDto.class, "Annotation.findById", a.getId(), new Effect<>() {
-      @Override
-      protected void run(AnnotationDto dto) {
-        dto.update(a.getStart(), a.getDuration(), a.getContent(), a.getCreatedFromQuestionnaire(), a.getSettings(), a);
-      }
+    final Annotation updated = tx(em -> {
+      final AnnotationDto dto = namedQuery.find("Annotation.findById", AnnotationDto.class, id(a.getId())).apply(em);
+      dto.update(a.getStart(), a.getDuration(), a.getContent(), a.getCreatedFromQuestionnaire(), a.getSettings(), a);
+      return dto.toAnnotation();
     });
+    annotationsChanged(updated.getTrackId());
+    intervalsChanged(updated.getTrackId(), List.of(updated));
+  }
+
+  /** Forget the label usage of the video of a track after its annotations changed. */
+  private void annotationsChanged(long trackId) {
+    final Option<Long> videoId = parentVideoIds.get(Arrays.asList("track", trackId), key -> {
+      final Option<Track> track = getTrack(trackId);
+      return track.isSome() ? some(track.get().getVideoId()) : none();
+    });
+    for (long id : videoId) {
+      afterCommit(() -> labelUsage.remove(id));
+    }
+  }
+
+  /** Update the index of the annotation intervals of a track after some of its annotations changed. */
+  private void intervalsChanged(long trackId, List<Annotation> annotations) {
+    // Only the last change of an annotation counts
+    final Map<Long, Annotation> latest = new LinkedHashMap<>();
+    for (Annotation a : annotations) {
+      latest.put(a.getId(), a);
+    }
+    final List<Long> removed = new ArrayList<>();
+    final List<AnnotationIntervals.Interval> put = new ArrayList<>();
+    for (Annotation a : latest.values()) {
+      if (a.getDeletedAt().isSome()) {
+        removed.add(a.getId());
+      } else {
+        put.add(new AnnotationIntervals.Interval(a.getId(), a.getStart(),
+                a.getStart() + a.getDuration().getOrElse(0D)));
+      }
+    }
+    afterCommit(() -> annotationIntervals.update(trackId, intervals -> intervals.change(removed, put)));
+  }
+
+  /**
+   * Find the ids of the annotations of a track overlapping an interval, using the index of the track.
+   * The index is built on the first query of the track.
+   *
+   * @return the ids ordered by the start of the annotations
+   */
+  private List<Long> findAnnotationIdsInInterval(long trackId, Option<Double> from, Option<Double> to) {
+    final java.util.function.Function<Long, AnnotationIntervals> load = id -> AnnotationIntervals.of(
+            findAll(Object[].class, "Annotation.findIntervalsOfTrack", id(id)));
+    // The cached index does not know about changes that are not committed yet
+    final AnnotationIntervals intervals = hasUncommittedChanges() ? load.apply(trackId)
+            : annotationIntervals.get(trackId, load);
+    return intervals.findOverlapping(from.getOrElse(0D), to.getOrElse(Double.MAX_VALUE));
+  }
+
+  /**
+   * Load the annotations of a track displayed in a time window, or their summaries, ordered by their start.
+   * They are loaded page by page while the pages are consumed: without a window by paging through the track
+   * in the database, otherwise by loading the ids found in the index of the track in chunks.
+   *
+   * @param afterQuery
+   *          the query for the annotations of a track ordered by their start and id,
+   *          following the <code>start</code> and id (<code>after</code>) given as parameters
+   * @param byIdQuery
+   *          the query for the annotations of a track with the given <code>ids</code>
+   */
+  private <A> Stream<List<A>> findAnnotationPages(Class<A> type, String afterQuery, String byIdQuery, long trackId,
+          Option<Double> from, Option<Double> to, ToLongFunction<A> getId, ToDoubleFunction<A> getStart) {
+    if (from.isSome() || to.isSome()) {
+      return chunks(findAnnotationIdsInInterval(trackId, from, to)).stream()
+              .map(ids -> findAnnotationsById(type, byIdQuery, trackId, ids, getId));
+    }
+    return pages(last -> findAll(type, afterQuery, none(), some(STREAM_PAGE_SIZE), id(trackId),
+            Pair.of("start", last.map(getStart::applyAsDouble).orElse(-Double.MAX_VALUE)),
+            Pair.of("after", last.map(getId::applyAsLong).orElse(0L))));
+  }
+
+  /**
+   * Load pages of results one after another, while they are consumed.
+   * Each page is loaded given the last result of the previous one; a short page is the last one.
+   */
+  private static <A> Stream<List<A>> pages(java.util.function.Function<Optional<A>, List<A>> after) {
+    return Stream.iterate(after.apply(Optional.empty()), page -> !page.isEmpty(),
+            page -> page.size() < STREAM_PAGE_SIZE
+                    ? Collections.emptyList()
+                    : after.apply(Optional.of(page.get(page.size() - 1))));
+  }
+
+  /** Skip and limit resources, once those the current user has no access to are filtered out. */
+  private static <A> Stream<A> page(Stream<A> resources, Option<Integer> offset, Option<Integer> limit) {
+    final Stream<A> skipped = resources.skip(offset.getOrElse(0));
+    return limit.isSome() ? skipped.limit(limit.get()) : skipped;
+  }
+
+  /** Load the annotations of a track, or their summaries, with the given ids in the order of the ids. */
+  private <A> List<A> findAnnotationsById(Class<A> type, String q, long trackId, List<Long> ids,
+          ToLongFunction<A> getId) {
+    final Map<Long, A> found = new HashMap<>();
+    for (A a : findAll(type, q, id(trackId), Pair.of("ids", ids))) {
+      found.put(getId.applyAsLong(a), a);
+    }
+    return ids.stream().filter(found::containsKey).map(found::get).collect(Collectors.toList());
+  }
+
+  /**
+   * Soft delete all the resources matched by the given bulk update query.
+   * The query has to set <code>deletedAt</code> and <code>deletedBy</code> from the parameters of the same name.
+   *
+   * @return the number of deleted resources
+   */
+  private static int softDelete(EntityManager em, String q, Date deletedAt, Option<Long> deletedBy,
+          Pair<String, ?> param) {
+    return em.createNamedQuery(q)
+            .setParameter("deletedAt", deletedAt)
+            .setParameter("deletedBy", deletedBy.getOrElseNull())
+            .setParameter(param.getKey(), param.getValue())
+            .executeUpdate();
   }
 
   /** Generic update method. */
@@ -361,14 +845,345 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
     return findById(toAnnotation, "Annotation.findById", id, AnnotationDto.class);
   }
 
+  @Override
+  public Option<Annotation> getAnnotation(long videoId, long trackId, long id) throws ExtendedAnnotationException {
+    return findByPath(toAnnotation, "Annotation.findByPath", AnnotationDto.class, id(id),
+            Pair.of("trackId", trackId), Pair.of("videoId", videoId));
+  }
+
   @Override
   public Stream<Annotation> getAnnotations(final long trackId)
           throws ExtendedAnnotationException {
 
-    return findAll(AnnotationDto.class, "Annotation.findAllOfTrack", id(trackId))
-            .stream()
+    return filterByCategoryAccess(findAll(AnnotationDto.class, "Annotation.findAllOfTrack", id(trackId)),
+            new CategoryAccessEvaluator());
+  }
+
+  @Override
+  public Stream<Annotation> getAnnotations(final long trackId, final Option<Double> from, final Option<Double> to,
+          final Option<Integer> offset, final Option<Integer> limit) throws ExtendedAnnotationException {
+    final CategoryAccessEvaluator categoryAccess = new CategoryAccessEvaluator();
+    return page(findAnnotationPages(AnnotationDto.class, "Annotation.findAllOfTrackAfter",
+            "Annotation.findAllOfTrackById", trackId, from, to, AnnotationDto::getId, AnnotationDto::getStart)
+            .flatMap(annotations -> filterByCategoryAccess(annotations, categoryAccess)), offset, limit);
+  }
+
+  @Override
+  public Stream<AnnotationSummary> getAnnotationSummaries(final long trackId, final Option<Double> from,
+          final Option<Double> to, final Option<Integer> offset, final Option<Integer> limit)
+          throws ExtendedAnnotationException {
+    final CategoryAccessEvaluator categoryAccess = new CategoryAccessEvaluator();
+    return page(findAnnotationPages(AnnotationSummaryDto.class, "Annotation.findSummariesOfTrackAfter",
+            "Annotation.findSummariesOfTrackById", trackId, from, to, AnnotationSummaryDto::getId,
+            AnnotationSummaryDto::getStart)
+            .flatMap(summaries -> {
+              setLabelIds(summaries);
+              return summaries.stream().filter(summary -> categoryAccess.hasAccess(summary.getLabelIds()));
+            })
+            .map(AnnotationSummary.class::cast), offset, limit);
+  }
+
+  /** Look up the labels used by annotation summaries. */
+  private void setLabelIds(List<AnnotationSummaryDto> summaries) {
+    final Map<Long, List<Long>> labelIds = findLabelIds(summaries.stream()
+            .filter(AnnotationSummaryDto::isLabelsExtracted)
+            .map(AnnotationSummaryDto::getId)
+            .collect(Collectors.toList()));
+    // Only annotations which have not been backfilled yet need their content
+    labelIds.putAll(findContentLabelIds(summaries.stream()
+            .filter(summary -> !summary.isLabelsExtracted())
+            .map(AnnotationSummaryDto::getId)
+            .collect(Collectors.toList())));
+    for (AnnotationSummaryDto summary : summaries) {
+      summary.setLabelIds(labelIds.getOrDefault(summary.getId(), List.of()));
+    }
+  }
+
+  @Override
+  public List<AnnotationOperation.Result> applyAnnotationOperations(final long trackId,
+          final List<AnnotationOperation> operations) throws ExtendedAnnotationException {
+    final Option<Track> track = getTrack(trackId);
+    if (track.isNone()) {
+      throw notFound;
+    }
+    final Option<Long> userId = getCurrentUserId();
+    // All the annotations belong to the video of the track. Whether the user administrates it is decided
+    // up front, since this might look up the video in a transaction of its own.
+    final boolean annotateAdmin = operations.stream()
+            .anyMatch(operation -> operation.getType() != AnnotationOperation.Type.CREATE)
+            && isAnnotateAdmin(getVideo(track.get().getVideoId()));
+    final List<AnnotationOperation.Result> applied = tx(em -> {
+      // Load all the annotations to update or delete at once
+      final List<Long> ids = operations.stream()
+              .filter(operation -> operation.getType() != AnnotationOperation.Type.CREATE)
+              .map(AnnotationOperation::getId)
+              .distinct()
+              .collect(Collectors.toList());
+      final Map<Long, AnnotationDto> existing = new HashMap<>();
+      if (!ids.isEmpty()) {
+        for (AnnotationDto dto : em.createNamedQuery("Annotation.findAllById", AnnotationDto.class)
+                .setParameter("ids", ids).getResultList()) {
+          existing.put(dto.toAnnotation().getId(), dto);
+        }
+      }
+
+      // The ids of created annotations are only known after flushing,
+      // so the results are only assembled afterwards.
+      final List<Supplier<AnnotationOperation.Result>> results = new ArrayList<>();
+      for (AnnotationOperation operation : operations) {
+        if (operation.getType() == AnnotationOperation.Type.CREATE) {
+          final Annotation a = operation.getAnnotation().get();
+          final AnnotationDto dto = AnnotationDto.create(trackId, a.getStart(), a.getDuration(), a.getContent(),
+                  a.getCreatedFromQuestionnaire(), a.getSettings(), a);
+          em.persist(dto);
+          results.add(() -> AnnotationOperation.Result.success(dto.toAnnotation()));
+          continue;
+        }
+
+        final AnnotationDto dto = existing.get(operation.getId());
+        final Annotation current = dto == null ? null : dto.toAnnotation();
+        if (current == null || current.getTrackId() != trackId || current.getDeletedAt().isSome()) {
+          results.add(() -> AnnotationOperation.Result.failure(Cause.NOT_FOUND));
+        } else if (!hasResourceAccess(current, userId, () -> annotateAdmin)) {
+          results.add(() -> AnnotationOperation.Result.failure(Cause.UNAUTHORIZED));
+        } else {
+          if (operation.getType() == AnnotationOperation.Type.UPDATE) {
+            final Annotation a = operation.getAnnotation().get();
+            dto.update(a.getStart(), a.getDuration(), a.getContent(), a.getCreatedFromQuestionnaire(),
+                    a.getSettings(), updateResource(current, none(), userId));
+          } else {
+            dto.update(current.getStart(), current.getDuration(), current.getContent(),
+                    current.getCreatedFromQuestionnaire(), current.getSettings(), deleteResource(current, userId));
+          }
+          results.add(() -> AnnotationOperation.Result.success(dto.toAnnotation()));
+        }
+      }
+      em.flush();
+      return results.stream().map(Supplier::get).collect(Collectors.toList());
+    });
+    annotationsChanged(trackId);
+    final List<Annotation> changed = new ArrayList<>();
+    for (AnnotationOperation.Result result : applied) {
+      for (Annotation a : result.getAnnotation()) {
+        changed.add(a);
+      }
+    }
+    intervalsChanged(trackId, changed);
+    return applied;
+  }
+
+  @Override
+  public Stream<Annotation> getVideoAnnotations(final long videoId) throws ExtendedAnnotationException {
+    return filterByCategoryAccess(findAll(AnnotationDto.class, "Annotation.findAllOfVideo", id(videoId)),
+            new CategoryAccessEvaluator());
+  }
+
+  @Override
+  public Stream<Annotation> streamVideoAnnotations(final long videoId) throws ExtendedAnnotationException {
+    final CategoryAccessEvaluator categoryAccess = new CategoryAccessEvaluator();
+    // Pages are chained by the id of their last annotation
+    return pages(last -> getVideoAnnotationsAfter(videoId, last.map(AnnotationDto::getId).orElse(0L)))
+            .flatMap(page -> filterByCategoryAccess(page, categoryAccess));
+  }
+
+  private List<AnnotationDto> getVideoAnnotationsAfter(long videoId, long afterId) {
+    return findAll(AnnotationDto.class, "Annotation.findAllOfVideoAfter", none(), some(STREAM_PAGE_SIZE),
+            id(videoId), Pair.of("after", afterId));
+  }
+
+  @Override
+  public Stream<LabelUsage> getLabelUsage(final long videoId) throws ExtendedAnnotationException {
+    final java.util.function.Function<Long, List<LabelUsageDto>> load = id -> findAll(LabelUsageDto.class,
+            "Annotation.countLabelUsageOfVideo", id(id));
+    // The cached usage does not know about changes that are not committed yet
+    final List<LabelUsageDto> usage = hasUncommittedChanges() ? load.apply(videoId) : labelUsage.get(videoId, load);
+    final Set<Long> trackIds = getTracks(videoId).map(Track::getId).collect(Collectors.toSet());
+    final CategoryAccessEvaluator categoryAccess = new CategoryAccessEvaluator();
+    return usage.stream()
+            .filter(u -> trackIds.contains(u.getTrackId()))
+            .filter(u -> categoryAccess.hasAccess(List.of(u.getLabelId())))
+            .map(LabelUsage.class::cast);
+  }
+
+  @Override
+  public Agreement getAgreement(final long videoId, final List<Long> trackIds) throws ExtendedAnnotationException {
+    final Set<Long> tracksOfVideo = getTracks(videoId).map(Track::getId).collect(Collectors.toSet());
+    if (!tracksOfVideo.containsAll(trackIds)) {
+      throw notFound;
+    }
+    final List<List<AnnotationSummary>> annotations = new ArrayList<>();
+    for (long trackId : trackIds) {
+      annotations.add(getAnnotationSummaries(trackId, none(), none(), none(), none())
+              .collect(Collectors.toList()));
+    }
+    return AgreementImpl.of(trackIds, annotations);
+  }
+
+  @Override
+  public String getVersion(final ResourceCollection collection, final Object id) throws ExtendedAnnotationException {
+    return version(tx(em -> em.createNamedQuery(versionQuery(collection), Object[].class)
+            .setParameter("id", id).getSingleResult()));
+  }
+
+  private static String versionQuery(ResourceCollection collection) {
+    switch (collection) {
+      case TRACKS_OF_VIDEO:
+        return "Track.versionOfVideo";
+      case ANNOTATIONS_OF_TRACK:
+        return "Annotation.versionOfTrack";
+      case ANNOTATIONS_OF_VIDEO:
+        return "Annotation.versionOfVideo";
+      case CATEGORIES_OF_VIDEO:
+        return "Category.versionOfVideo";
+      case CATEGORIES_OF_SERIES:
+        return "Category.versionOfExtSeries";
+      case LABELS_OF_CATEGORY:
+        return "Label.versionOfCategory";
+      case LABELS_OF_VIDEO:
+        return "Label.versionOfVideo";
+      case SCALES_OF_VIDEO:
+        return "Scale.versionOfVideo";
+      case SCALE_VALUES_OF_SCALE:
+        return "ScaleValue.versionOfScale";
+      case SCALE_VALUES_OF_VIDEO:
+        return "ScaleValue.versionOfVideo";
+      case QUESTIONNAIRES_OF_VIDEO:
+        return "Questionnaire.versionOfVideo";
+      case COMMENTS_OF_ANNOTATION:
+        return "Comment.versionOfAnnotation";
+      case COMMENTS_OF_TRACK:
+        return "Comment.versionOfTrack";
+      case COMMENTS_OF_VIDEO:
+        return "Comment.versionOfVideo";
+      default:
+        throw new IllegalArgumentException("Unknown collection " + collection);
+    }
+  }
+
+  @Override
+  public String getUsersVersion() throws ExtendedAnnotationException {
+    return version(tx(em -> em.createNamedQuery("User.version", Object[].class).getSingleResult()));
+  }
+
+  /**
+   * Turn the row count and the sums of the revisions and ids of a version query into a version.
+   * Every change of a resource counts up its revision, and deleted resources are still counted,
+   * so the version changes with every change.
+   */
+  private static String version(Object[] aggregates) {
+    return Arrays.stream(aggregates).map(String::valueOf).collect(Collectors.joining(":"));
+  }
+
+  @Override
+  public String getAccessVersion(final Option<Long> videoId) {
+    final org.opencastproject.security.api.User user = securityService.getUser();
+    final boolean annotateAdmin = videoId.isSome() && isAnnotateAdmin(getVideo(videoId.get()));
+    return String.join(":", securityService.getOrganization().getId(), user.getUsername(),
+            user.getRoles().stream().map(Role::getName).sorted().collect(Collectors.joining(",")),
+            String.valueOf(annotateAdmin));
+  }
+
+  /**
+   * Filter out the annotations using labels of categories the current user has no access to.
+   * The labels are found by joining the label references; only the content of annotations
+   * which have not been backfilled yet is parsed.
+   */
+  private Stream<Annotation> filterByCategoryAccess(List<AnnotationDto> annotations,
+          CategoryAccessEvaluator categoryAccess) {
+    final Map<Long, List<Long>> labelIds = findLabelIds(annotations.stream()
+            .filter(AnnotationDto::isLabelsExtracted)
+            .map(AnnotationDto::getId)
+            .collect(Collectors.toList()));
+    detach(annotations);
+    return annotations.stream()
             .map(AnnotationDto::toAnnotation)
-            .filter(this::hasCategoryAccess);
+            .filter(a -> categoryAccess.hasAccess(labelIds.containsKey(a.getId())
+                    ? labelIds.get(a.getId())
+                    : AnnotationDto.getLabelIds(a.getContent())));
+  }
+
+  /** Look up the labels used by annotations in their label references. */
+  private Map<Long, List<Long>> findLabelIds(List<Long> annotationIds) {
+    final Map<Long, List<Long>> labelIds = new HashMap<>();
+    for (long id : annotationIds) {
+      labelIds.put(id, new ArrayList<>());
+    }
+    for (List<Long> ids : chunks(annotationIds)) {
+      for (Object[] row : findAll(Object[].class, "Annotation.findLabelIds", Pair.of("ids", ids))) {
+        labelIds.get((Long) row[0]).add((Long) row[1]);
+      }
+    }
+    return labelIds;
+  }
+
+  /** Find the labels used by annotations by loading and parsing their content. */
+  private Map<Long, List<Long>> findContentLabelIds(List<Long> annotationIds) {
+    final Map<Long, List<Long>> labelIds = new HashMap<>();
+    for (List<Long> ids : chunks(annotationIds)) {
+      for (Object[] row : findAll(Object[].class, "Annotation.findContents", Pair.of("ids", ids))) {
+        labelIds.put((Long) row[0], AnnotationDto.getLabelIds((String) row[1]));
+      }
+    }
+    return labelIds;
+  }
+
+  /** Split a list of ids into lists small enough to be used as query parameters. */
+  private static List<List<Long>> chunks(List<Long> ids) {
+    final List<List<Long>> chunks = new ArrayList<>();
+    for (int i = 0; i < ids.size(); i += STREAM_PAGE_SIZE) {
+      chunks.add(ids.subList(i, Math.min(ids.size(), i + STREAM_PAGE_SIZE)));
+    }
+    return chunks;
+  }
+
+  /**
+   * Extract the label references of the annotations stored before they were introduced, page by page.
+   * Until then, the content of these annotations is parsed whenever the labels are needed.
+   */
+  void backfillLabelReferences() {
+    long after = 0;
+    int total = 0;
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        final long pageAfter = after;
+        final List<Long> page = tx(em -> em.createNamedQuery("Annotation.findWithoutLabelReferences", Long.class)
+                .setParameter("after", pageAfter).setMaxResults(STREAM_PAGE_SIZE).getResultList());
+        if (page.isEmpty()) {
+          break;
+        }
+        for (long id : page) {
+          if (tx(em -> extractLabelReferences(em, id))) {
+            total++;
+          }
+        }
+        after = page.get(page.size() - 1);
+      }
+    } catch (RuntimeException e) {
+      logger.warn("Extracting the label references of annotations failed after {} annotations", total, e);
+      return;
+    }
+    if (total > 0) {
+      logger.info("Extracted the label references of {} annotations", total);
+      labelUsage.clear();
+    }
+  }
+
+  /**
+   * Extract the label references of a single annotation, unless another node or an update of the annotation
+   * did so already. Claiming the annotation first locks it, so that its content cannot change in the meantime.
+   *
+   * @return whether the references were extracted
+   */
+  private static boolean extractLabelReferences(EntityManager em, long id) {
+    if (em.createNamedQuery("Annotation.claimLabelReferences").setParameter("id", id).executeUpdate() == 0) {
+      return false;
+    }
+    final AnnotationDto annotation = em.find(AnnotationDto.class, id);
+    if (annotation == null) {
+      return false;
+    }
+    annotation.extractLabelReferences();
+    return true;
   }
 
   @Override
@@ -384,13 +1199,7 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   @Override
   public Option<Scale> getScale(long id, boolean includeDeleted) throws ExtendedAnnotationException {
-    final Option<Scale> scale;
-    if (includeDeleted) {
-      scale = findById(toScale, "Scale.findByIdIncludeDeleted", id, ScaleDto.class);
-    } else {
-      scale = findById(toScale, "Scale.findById", id, ScaleDto.class);
-    }
-    return scale;
+    return findCached(toScale, ScaleDto.class, id, includeDeleted);
   }
 
   @Override
@@ -415,6 +1224,13 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
             .map(ScaleValueDto::toScaleValue);
   }
 
+  @Override
+  public Stream<ScaleValue> getVideoScaleValues(final long videoId) throws ExtendedAnnotationException {
+    return findAll(ScaleValueDto.class, "ScaleValue.findAllOfVideo", id(videoId))
+            .stream()
+            .map(ScaleValueDto::toScaleValue);
+  }
+
   @Override
   public void updateScale(final Scale s) throws ExtendedAnnotationException {
     update(ScaleDto.class, "Scale.findByIdIncludeDeleted", s.getId(), new Effect<>() {
@@ -447,11 +1263,7 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   @Override
   public Option<ScaleValue> getScaleValue(long id, boolean includeDeleted) throws ExtendedAnnotationException {
-    if (includeDeleted) {
-      return findById(toScaleValue, "ScaleValue.findByIdIncludeDeleted", id, ScaleValueDto.class);
-    } else {
-      return findById(toScaleValue, "ScaleValue.findById", id, ScaleValueDto.class);
-    }
+    return findCached(toScaleValue, ScaleValueDto.class, id, includeDeleted);
   }
 
   @Override
@@ -488,13 +1300,25 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   @Override
   public void updateCategory(final Category c) throws ExtendedAnnotationException {
-    update(CategoryDto.class, "Category.findByIdIncludeDeleted", c.getId(), new Effect<>() {
-      @Override
-      public void run(CategoryDto dto) {
-        dto.update(c.getSeriesExtId(), c.getSeriesCategoryId(), c.getVideoId(), c.getName(), c.getDescription(),
-                c.getScaleId(), c.getSettings(), c);
+    final long previousVideoId = tx(em -> {
+      final CategoryDto dto = namedQuery.find("Category.findByIdIncludeDeleted", CategoryDto.class, id(c.getId()))
+              .apply(em);
+      final long videoId = dto.toCategory().getVideoId();
+      dto.update(c.getSeriesExtId(), c.getSeriesCategoryId(), c.getVideoId(), c.getName(), c.getDescription(),
+              c.getScaleId(), c.getSettings(), c);
+      if (dto.isSeriesMaster()) {
+        dto.touchSeriesVersion();
       }
+      return videoId;
     });
+    if (previousVideoId != c.getVideoId()) {
+      // The labels of the category moved to another video along with it
+      afterCommit(() -> {
+        parentVideoIds.remove(Arrays.asList("category", c.getId()));
+        labelUsage.remove(previousVideoId);
+        labelUsage.remove(c.getVideoId());
+      });
+    }
   }
 
   @Override
@@ -525,101 +1349,106 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   @Override
   public Option<Category> getCategory(long id, boolean includeDeleted) throws ExtendedAnnotationException {
-    Option<Category> category;
-    if (includeDeleted) {
-      category = findById(toCategory, "Category.findByIdIncludeDeleted", id, CategoryDto.class);
-    } else {
-      category = findById(toCategory, "Category.findById", id, CategoryDto.class);
-    }
-    return category;
+    return findCached(toCategory, CategoryDto.class, id, includeDeleted);
   }
 
   @Override
   public Stream<Category> getCategories(final Option<String> seriesExtId, final long videoId)
           throws ExtendedAnnotationException {
-    List<Category> categories = findAll(CategoryDto.class, "Category.findAllOfVideo", id(videoId))
-        .stream()
-        .map(CategoryDto::toCategory)
-        .filter(this::hasResourceAccess)
-        .collect(Collectors.toList());
-
-    if (seriesExtId.isSome()) {
-      // Make categories editable
-      List<Category> allCategories = new ArrayList<>(categories);
-
-      List<Category> createdCategories = new ArrayList<>();
-      // Grab the categories with seriesExtId.
-      List<CategoryDto> categoryDtos = findAll(CategoryDto.class, "Category.findAllOfExtSeries", id(seriesExtId.get()));
-
-      // Grab all master series categories by removing every category that is not referencing itself
-      List<Category> seriesCategories = categoryDtos.stream()
-              .map(CategoryDto::toCategory)
-              .filter(category -> Option.some(category.getId()).equals(category.getSeriesCategoryId()))
-              .collect(Collectors.toList());
+    final Option<Long> userId = getCurrentUserId();
+    // Synchronizing the series categories needs all categories of the video anyway
+    final List<CategoryDto> categories = seriesExtId.isSome()
+            ? syncSeriesCategories(seriesExtId.get(), videoId)
+            : findAccessible(CategoryDto.class, "Category.findAllOfVideo", "Category.findAccessibleOfVideo", videoId,
+                    userId);
+    return categories.stream()
+            .map(CategoryDto::toCategory)
+            .filter(category -> hasResourceAccess(category, userId));
+  }
 
-      // Link a category to a master series category if they are "sufficiently" equal
-      for (Category videoCategory : allCategories) {
-        for (Category seriesCategory: seriesCategories) {
-          if (categoriesSufficientlyEqual(videoCategory, seriesCategory)) {
-            Category update = new CategoryImpl(videoCategory.getId(), seriesCategory.getSeriesExtId(),
-                    option(seriesCategory.getId()), videoCategory.getVideoId(), seriesCategory.getScaleId(),
-                    seriesCategory.getName(), seriesCategory.getDescription(), seriesCategory.getSettings(),
-                    new ResourceImpl(option(seriesCategory.getAccess()), seriesCategory.getCreatedBy(),
-                            seriesCategory.getUpdatedBy(), seriesCategory.getDeletedBy(), seriesCategory.getCreatedAt(),
-                            seriesCategory.getUpdatedAt(), seriesCategory.getDeletedAt(), seriesCategory.getTags()));
-            updateCategory(update);
-            allCategories.set(allCategories.indexOf(videoCategory), update);
-          }
+  /**
+   * Make sure the given video has an up to date copy of every master series category of the given series.
+   * Copies remember which version of their master they reflect, so they are only written when the master changed.
+   *
+   * @return all categories of the video, including the copies
+   */
+  private List<CategoryDto> syncSeriesCategories(final String seriesExtId, final long videoId) {
+    return tx(em -> {
+      final List<CategoryDto> categories = new ArrayList<>(
+              em.createNamedQuery("Category.findAllOfVideo", CategoryDto.class)
+                      .setParameter("id", videoId).getResultList());
+      final Map<Long, CategoryDto> copies = new HashMap<>();
+      final Map<List<Object>, CategoryDto> unlinked = new HashMap<>();
+      for (CategoryDto category : categories) {
+        final Option<Long> seriesCategoryId = category.toCategory().getSeriesCategoryId();
+        if (seriesCategoryId.isSome()) {
+          copies.putIfAbsent(seriesCategoryId.get(), category);
+        } else {
+          unlinked.putIfAbsent(category.seriesMatchKey(), category);
         }
       }
 
-      // Check for every master series category if a local copy needs to be created or updated
-      for (Category seriesCategory : seriesCategories) {
-        boolean alreadyExists = false;
-        Category existingCategory = null;
-
-        // Check if we already have video category corresponding to the series category
-        for (Category videoCategory : allCategories) {
-          // If we have, update the existing video category
-          if (videoCategory.getSeriesCategoryId().isSome() && videoCategory.getSeriesCategoryId().get() == seriesCategory.getId()) {
-            alreadyExists = true;
-            existingCategory = videoCategory;
-            break;  // Don't need to continue the loop
-          }
+      for (CategoryDto master : em.createNamedQuery("Category.findAllOfExtSeries", CategoryDto.class)
+              .setParameter("id", seriesExtId).getResultList()) {
+        if (!master.isSeriesMaster()) {
+          continue;
         }
-        // If we have, update the existing video category
-        if (alreadyExists) {
-          Category update = new CategoryImpl(existingCategory.getId(), seriesCategory.getSeriesExtId(),
-                  option(seriesCategory.getId()), videoId, seriesCategory.getScaleId(), seriesCategory.getName(),
-                  seriesCategory.getDescription(), seriesCategory.getSettings(),
-                  new ResourceImpl(option(seriesCategory.getAccess()), seriesCategory.getCreatedBy(),
-                          seriesCategory.getUpdatedBy(), seriesCategory.getDeletedBy(), seriesCategory.getCreatedAt(),
-                          seriesCategory.getUpdatedAt(), seriesCategory.getDeletedAt(), seriesCategory.getTags()));
-          updateCategory(update);
-          allCategories.set(allCategories.indexOf(existingCategory), update);
-          // If we don't have, create a new video category
-        } else {
-          Category newCategory;
-          newCategory = createCategory(seriesCategory.getSeriesExtId(), option(seriesCategory.getId()), videoId,
-                  seriesCategory.getScaleId(), seriesCategory.getName(), seriesCategory.getDescription(),
-                  seriesCategory.getSettings(), new ResourceImpl(option(seriesCategory.getAccess()),
-                          seriesCategory.getCreatedBy(), seriesCategory.getUpdatedBy(), seriesCategory.getDeletedBy(),
-                          seriesCategory.getCreatedAt(), seriesCategory.getUpdatedAt(), seriesCategory.getDeletedAt(),
-                          seriesCategory.getTags()));
-          createdCategories.add(newCategory);
+        final long masterId = master.toCategory().getId();
+        // A category of this video that looks like the master becomes its copy
+        CategoryDto copy = copies.containsKey(masterId)
+                ? copies.get(masterId)
+                : unlinked.remove(master.seriesMatchKey());
+        if (copy == master || copy != null && copy.isUpToDateWith(master)) {
+          continue;
+        }
+        if (copy == null) {
+          copy = CategoryDto.create(none(), none(), videoId, none(), "", none(), none(), master.toCategory());
+          em.persist(copy);
+          categories.add(copy);
         }
+        copy.copyFrom(master);
+        copySeriesLabels(em, master, copy);
       }
+      return categories;
+    });
+  }
 
-      allCategories.addAll(createdCategories);
-      categories = allCategories;
+  /**
+   * Bring the labels of a copy of a master series category up to date with the labels of the master.
+   * Labels of the copy that were not copied from the master are kept, since annotations might still use them.
+   */
+  private static void copySeriesLabels(EntityManager em, CategoryDto master, CategoryDto copy) {
+    final long copyId = copy.toCategory().getId();
+    final Map<Long, LabelDto> copiedLabels = new HashMap<>();
+    for (LabelDto label : labelsOfCategory(em, copyId)) {
+      for (Long seriesLabelId : label.toLabel().getSeriesLabelId()) {
+        copiedLabels.put(seriesLabelId, label);
+      }
     }
+    for (LabelDto dto : labelsOfCategory(em, master.toCategory().getId())) {
+      final Label label = dto.toLabel();
+      final LabelDto copied = copiedLabels.get(label.getId());
+      if (copied != null) {
+        copied.update(some(label.getId()), label.getValue(), label.getAbbreviation(), label.getDescription(),
+                label.getSettings(), label);
+      } else if (label.getDeletedAt().isNone()) {
+        em.persist(LabelDto.create(some(label.getId()), copyId, label.getValue(), label.getAbbreviation(),
+                label.getDescription(), label.getSettings(), label));
+      }
+    }
+  }
 
-    return categories.stream();
+  private static List<LabelDto> labelsOfCategory(EntityManager em, long categoryId) {
+    return em.createNamedQuery("Label.findAllOfCategory", LabelDto.class)
+            .setParameter("id", categoryId).getResultList();
   }
 
-  private boolean categoriesSufficientlyEqual(Category a, Category b) {
-    return a.getName().equals(b.getName()) && a.getDescription().equals(b.getDescription())
-            && a.getSettings().equals(b.getSettings()) && a.getTags().equals(b.getTags());
+  /** Let the copies of the given category know that they are out of date, if it is a master series category. */
+  private static void touchSeriesCategory(EntityManager em, long categoryId) {
+    final CategoryDto category = em.find(CategoryDto.class, categoryId);
+    if (category != null && category.isSeriesMaster()) {
+      category.touchSeriesVersion();
+    }
   }
 
   @Override
@@ -660,23 +1489,25 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
           Option<String> settings, Resource resource) throws ExtendedAnnotationException {
     // Handle series categories
     // If the category belongs to a series, create the label on the series category instead
+    long labelCategoryId = categoryId;
     Option<Category> category = getCategory(categoryId, false);
-    Option<Category> seriesCategory;
     // If the category belongs to a series
     if (category.isSome() && category.get().getSeriesCategoryId().isSome()) {
       Long categorySeriesCategoryId = category.get().getSeriesCategoryId().get();
-      seriesCategory = getCategory(categorySeriesCategoryId, false);
       // And the category is not itself (aka the master series category)
-      if (seriesCategory.isSome() && categoryId != (seriesCategory.get().getId())) {
-        final LabelDto dto = LabelDto.create(none(), categorySeriesCategoryId, value, abbreviation, description,
-                settings, resource);
-        return tx(namedQuery.persist(dto)).toLabel();
+      if (categoryId != categorySeriesCategoryId && getCategory(categorySeriesCategoryId, false).isSome()) {
+        labelCategoryId = categorySeriesCategoryId;
       }
     }
 
-    // Normal Create
-    final LabelDto dto = LabelDto.create(none(), categoryId, value, abbreviation, description, settings, resource);
-    return tx(namedQuery.persist(dto)).toLabel();
+    final LabelDto dto = LabelDto.create(none(), labelCategoryId, value, abbreviation, description, settings,
+            resource);
+    final long finalLabelCategoryId = labelCategoryId;
+    return tx(em -> {
+      namedQuery.persist(dto).apply(em);
+      touchSeriesCategory(em, finalLabelCategoryId);
+      return dto;
+    }).toLabel();
   }
 
   @Override
@@ -688,81 +1519,58 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
       updateLabelId = l.getSeriesLabelId().get();
     }
 
-    update(LabelDto.class, "Label.findByIdIncludeDeleted", updateLabelId, new Effect<>() {
-      @Override
-      protected void run(LabelDto dto) {
-        dto.update(l.getSeriesLabelId(), l.getValue(), l.getAbbreviation(), l.getDescription(), l.getSettings(), l);
-      }
+    final long finalUpdateLabelId = updateLabelId;
+    tx(em -> {
+      final LabelDto dto = namedQuery.find("Label.findByIdIncludeDeleted", LabelDto.class, id(finalUpdateLabelId))
+              .apply(em);
+      dto.update(l.getSeriesLabelId(), l.getValue(), l.getAbbreviation(), l.getDescription(), l.getSettings(), l);
+      touchSeriesCategory(em, dto.toLabel().getCategoryId());
+      return dto;
     });
   }
 
   @Override
   public Option<Label> getLabel(long id, boolean includeDeleted) throws ExtendedAnnotationException {
-    Option<Label> label;
-    if (includeDeleted) {
-      label = findById(toLabel, "Label.findByIdIncludeDeleted", id, LabelDto.class);
-    } else {
-      label = findById(toLabel, "Label.findById", id, LabelDto.class);
-    }
-    return label;
+    return findCached(toLabel, LabelDto.class, id, includeDeleted);
   }
 
   @Override
   public Stream<Label> getLabels(final long categoryId)
           throws ExtendedAnnotationException {
+    // Copies of series categories are usually brought up to date when the categories of a video are listed,
+    // but their master might have changed since.
+    tx(em -> {
+      final CategoryDto category = em.find(CategoryDto.class, categoryId);
+      if (category != null) {
+        updateSeriesCopy(em, category);
+      }
+      return category;
+    });
+    return getLabelsByCategoryId(categoryId);
+  }
 
-    List<Label> labels;
-
-    List<LabelDto> labelDtos = findAll(LabelDto.class, "Label.findAllOfCategory", id(categoryId));
-    labels = labelDtos.stream().map(LabelDto::toLabel).collect(Collectors.toList());
-
-    // Handle series categories
-    // Series categories initially do not have any labels of themselves, so we need to generate them in case they
-    // ever turn into back into normal categories
-    Option<Category> category = getCategory(categoryId, false);
-    Option<Category> seriesCategory;
-    // If the category belongs to a series
-    if (category.isSome() && category.get().getSeriesCategoryId().isSome()) {
-      Long categorySeriesCategoryId = category.get().getSeriesCategoryId().get();
-      seriesCategory = getCategory(categorySeriesCategoryId, false);
-      // And the category is not itself (aka the master series category)
-      if (seriesCategory.isSome() && categoryId != (seriesCategory.get().getId())) {
-        // Get labels from the master series category
-        List<Label> seriesCategoryLabels = getLabels(seriesCategory.get().getId()).collect(Collectors.toList());
-
-        // Update our labels with the labels from the master series category
-        // Note: Maybe do an actual update instead of delete/create
-        for (Label label: labels) {
-          deleteLabel(label);
-        }
-        List<Label> newLabels = new ArrayList<>();
-        for (Label seriesLabel : seriesCategoryLabels) {
-          final LabelDto dto = LabelDto.create(some(seriesLabel.getId()), categoryId, seriesLabel.getValue(),
-                  seriesLabel.getAbbreviation(), seriesLabel.getDescription(), seriesLabel.getSettings(),
-                  new ResourceImpl(option(seriesLabel.getAccess()),
-                          seriesLabel.getCreatedBy(), seriesLabel.getUpdatedBy(), seriesLabel.getDeletedBy(),
-                          seriesLabel.getCreatedAt(), seriesLabel.getUpdatedAt(), seriesLabel.getDeletedAt(),
-                          seriesLabel.getTags()));
-          newLabels.add(tx(namedQuery.persist(dto)).toLabel());
-        }
-
-        // Return series labels, so that they are updated in the backend
-        // At some point you probably want to associated copied labels with their original, so they can be properly updated
-        // This will lose changes made on non-master category labels if the master then looses their series.
-        // But that is quite a rare scenario (hopefully) and I'm running out of time.
-
-        // @todo CC | Fix: 1) Series labels get infinitely duplicated on each HTTP request.
-        // @todo CC | Fix: 2) Overriding labels (like old code did) prevented accessing potentially deleted labels, breaking annotations that use it (= full app error).
-        // @todo CC | Fix: 3) Remove temporary workaround that simply merges old + new labels (just to get the app running until a fix is there)
-        List<Label> merged = new ArrayList<>();
-        merged.addAll(labels);
-        merged.addAll(newLabels);
-
-        labels = merged;
+  @Override
+  public Stream<Label> getVideoLabels(final long videoId) throws ExtendedAnnotationException {
+    return tx(em -> {
+      for (CategoryDto category : em.createNamedQuery("Category.findAllOfVideo", CategoryDto.class)
+              .setParameter("id", videoId).getResultList()) {
+        updateSeriesCopy(em, category);
       }
-    }
+      return em.createNamedQuery("Label.findAllOfVideo", LabelDto.class)
+              .setParameter("id", videoId).getResultList();
+    }).stream().map(LabelDto::toLabel);
+  }
 
-    return labels.stream();
+  /** Bring a copy of a master series category up to date with its master, if it changed. */
+  private static void updateSeriesCopy(EntityManager em, CategoryDto category) {
+    if (!category.isSeriesCopy()) {
+      return;
+    }
+    final CategoryDto master = em.find(CategoryDto.class, category.toCategory().getSeriesCategoryId().get());
+    if (master != null && master.isSeriesMaster() && !category.isUpToDateWith(master)) {
+      category.copyFrom(master);
+      copySeriesLabels(em, master, category);
+    }
   }
 
   private Stream<Label> getLabelsByCategoryId(final long categoryId) throws ExtendedAnnotationException {
@@ -790,6 +1598,12 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
     return findById(toComment, "Comment.findById", id, CommentDto.class);
   }
 
+  @Override
+  public Option<Comment> getComment(long videoId, long trackId, long annotationId, long id) {
+    return findByPath(toComment, "Comment.findByPath", CommentDto.class, id(id),
+            Pair.of("annotationId", annotationId), Pair.of("trackId", trackId), Pair.of("videoId", videoId));
+  }
+
   @Override
   public Stream<Comment> getComments(final long annotationId, final Option<Long> replyToId) {
     List<CommentDto> comments;
@@ -801,6 +1615,66 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
     return comments.stream().map(CommentDto::toComment);
   }
 
+  @Override
+  public Stream<Comment> getCommentThread(final long annotationId, final Option<Long> after,
+          final Option<Integer> limit) {
+    if (limit.isNone()) {
+      // The whole discussion is needed, so it is loaded at once and put together here
+      final Map<Long, List<Comment>> replies = new HashMap<>();
+      final List<Comment> thread = new ArrayList<>();
+      for (CommentDto dto : findAll(CommentDto.class, "Comment.findDiscussionOfAnnotation", id(annotationId))) {
+        final Comment comment = dto.toComment();
+        if (comment.getReplyToId().isSome()) {
+          replies.computeIfAbsent(comment.getReplyToId().get(), id -> new ArrayList<>()).add(comment);
+        } else if (comment.getId() > after.getOrElse(0L)) {
+          thread.add(comment);
+        }
+      }
+      // The replies of the comments, then the replies of those and so on, one level at a time
+      for (int i = 0; i < thread.size(); i++) {
+        thread.addAll(replies.getOrDefault(thread.get(i).getId(), List.of()));
+      }
+      return thread.stream();
+    }
+    return tx(em -> {
+      // One more, so that the caller knows whether there are more
+      final List<CommentDto> thread = new ArrayList<>(em
+              .createNamedQuery("Comment.findThreadOfAnnotation", CommentDto.class).setParameter("id", annotationId)
+              .setParameter("after", after.getOrElse(0L)).setMaxResults(limit.get() + 1).getResultList());
+      // Only the replies of this page are loaded, one level of the tree at a time
+      List<Long> ids = thread.stream().map(CommentDto::getId).collect(Collectors.toList());
+      while (!ids.isEmpty()) {
+        final List<CommentDto> replies = new ArrayList<>();
+        for (List<Long> chunk : chunks(ids)) {
+          replies.addAll(em.createNamedQuery("Comment.findAllRepliesOf", CommentDto.class)
+                  .setParameter("ids", chunk).getResultList());
+        }
+        thread.addAll(replies);
+        ids = replies.stream().map(CommentDto::getId).collect(Collectors.toList());
+      }
+      return thread;
+    }).stream().map(CommentDto::toComment);
+  }
+
+  @Override
+  public Stream<Comment> getComments(final Collection<Long> annotationIds) {
+    if (annotationIds.isEmpty())
+      return Stream.empty();
+    return findAll(CommentDto.class, "Comment.findAllOfAnnotations", Pair.of("ids", annotationIds)).stream()
+            .map(CommentDto::toComment);
+  }
+
+  @Override
+  public Map<Long, Long> countComments(final List<Long> annotationIds) {
+    final Map<Long, Long> counts = new HashMap<>();
+    for (List<Long> ids : chunks(annotationIds)) {
+      for (Object[] row : findAll(Object[].class, "Comment.countOfAnnotations", Pair.of("ids", ids))) {
+        counts.put((Long) row[0], (Long) row[1]);
+      }
+    }
+    return counts;
+  }
+
   @Override
   public void updateComment(final Comment comment) {
     update(CommentDto.class, "Comment.findById", comment.getId(), new Effect<>() {
@@ -844,9 +1718,11 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
   @Override
   public Stream<Questionnaire> getQuestionnaires(final long videoId)
           throws ExtendedAnnotationException {
-    return findAll(QuestionnaireDto.class, "Questionnaire.findAllOfVideo", id(videoId)).stream()
+    final Option<Long> userId = getCurrentUserId();
+    return findAccessible(QuestionnaireDto.class, "Questionnaire.findAllOfVideo",
+            "Questionnaire.findAccessibleOfVideo", videoId, userId).stream()
             .map(QuestionnaireDto::toQuestionnaire)
-            .filter(this::hasResourceAccess);
+            .filter(questionnaire -> hasResourceAccess(questionnaire, userId));
   }
 
   @Override
@@ -901,18 +1777,27 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   @Override
   public Resource updateResource(final Resource r, final Option<Map<String, String>> tags) {
+    return updateResource(r, tags, getCurrentUserId());
+  }
+
+  private static Resource updateResource(final Resource r, final Option<Map<String, String>> tags,
+          final Option<Long> userId) {
     Map<String, String> tagsMap;
     if (tags.isSome())
       tagsMap = tags.get();
     else
       tagsMap = new HashMap<>();
-    return new ResourceImpl(some(r.getAccess()), r.getCreatedBy(), getCurrentUserId(), r.getDeletedBy(),
+    return new ResourceImpl(some(r.getAccess()), r.getCreatedBy(), userId, r.getDeletedBy(),
             r.getCreatedAt(), some(new Date()), r.getDeletedAt(), tagsMap);
   }
 
   @Override
   public Resource deleteResource(final Resource r) {
-    return new ResourceImpl(option(r.getAccess()), r.getCreatedBy(), r.getUpdatedBy(), getCurrentUserId(),
+    return deleteResource(r, getCurrentUserId());
+  }
+
+  private static Resource deleteResource(final Resource r, final Option<Long> userId) {
+    return new ResourceImpl(option(r.getAccess()), r.getCreatedBy(), r.getUpdatedBy(), userId,
             r.getCreatedAt(), r.getUpdatedAt(), some(new Date()), r.getTags());
   }
 
@@ -934,22 +1819,66 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   /**
    * Get the ID of the current user. The current user is retrieved from the security service.
+   * The IDs are cached, since every check of a resource's access needs it.
    *
    * @return the created resource
    */
   private Option<Long> getCurrentUserId() {
-    return getUserId(securityService.getUser());
+    final org.opencastproject.security.api.User user = securityService.getUser();
+    // The cached ids do not know about users that are created or changed but not committed yet
+    if (hasUncommittedChanges()) {
+      return getUserId(user);
+    }
+    final List<String> key = Arrays.asList(securityService.getOrganization().getId(), user.getUsername());
+    return userIds.get(key, k -> getUserId(user));
   }
 
   @Override
   public boolean hasResourceAccess(Resource resource) {
+    return hasResourceAccess(resource, getCurrentUserId());
+  }
+
+  /**
+   * Like {@link #hasResourceAccess(Resource)}, but with the annotation tool user id of the current user
+   * already looked up
+   */
+  private boolean hasResourceAccess(Resource resource, Option<Long> userId) {
+    return hasResourceAccess(resource, userId, () -> isAnnotateAdmin(getResourceVideo(resource)));
+  }
+
+  /**
+   * Like {@link #hasResourceAccess(Resource, Option)}, but with a way to decide whether the current user
+   * administrates the video of the resource that is known in advance
+   */
+  private boolean hasResourceAccess(Resource resource, Option<Long> userId, BooleanSupplier annotateAdmin) {
     org.opencastproject.security.api.User opencastUser = securityService.getUser();
 
     return resource.getAccess() == Resource.PUBLIC
         || resource.getAccess() == Resource.SHARED_WITH_EVERYONE
-        || resource.getCreatedBy().equals(getUserId(opencastUser))
+        || resource.getCreatedBy().equals(userId)
         || isOpencastAdmin(opencastUser)
-        || resource.getAccess() == Resource.SHARED_WITH_ADMIN && isAnnotateAdmin(getResourceVideo(resource));
+        || resource.getAccess() == Resource.SHARED_WITH_ADMIN && annotateAdmin.getAsBoolean();
+  }
+
+  /**
+   * Find the resources of a video that the current user might have access to.
+   * Private resources of other users are already skipped by the query, unless the user is an Opencast admin,
+   * so that only resources shared with the admins of the video are left to {@link #hasResourceAccess(Resource)}.
+   *
+   * @param all
+   *          the query for all resources of the video
+   * @param accessible
+   *          the query for the resources of the video matching {@link AbstractResourceDto#ACCESSIBLE}
+   * @param userId
+   *          the annotation tool user id of the current user
+   */
+  private <A> List<A> findAccessible(Class<A> type, String all, String accessible, long videoId,
+          Option<Long> userId) {
+    if (isOpencastAdmin(securityService.getUser())) {
+      return findAll(type, all, id(videoId));
+    }
+    // Users without an id own nothing, and ids are never negative
+    return findAll(type, accessible, id(videoId), Pair.of("userId", userId.getOrElse(-1L)));
   }
 
   private boolean isOpencastAdmin(org.opencastproject.security.api.User user) {
@@ -958,20 +1887,17 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
   }
 
   private boolean isAnnotateAdmin(Option<Video> video) {
-
-    return video.fold(new Match<>() {
-      @Override
-      public Boolean some(Video video) {
-        for (MediaPackage mediaPackage : findMediaPackage(video.getExtId())) {
-          return hasVideoAccess(mediaPackage, ANNOTATE_ADMIN_ACTION);
-        }
-        return false;
-      }
-
-      @Override
-      public Boolean none() {
-        return false;
+    if (video.isNone()) {
+      return false;
+    }
+    final String mediaPackageId = video.get().getExtId();
+    final List<String> key = Arrays.asList(securityService.getOrganization().getId(),
+            securityService.getUser().getUsername(), mediaPackageId, ANNOTATE_ADMIN_ACTION);
+    return annotateAdminDecisions.get(key, k -> {
+      for (MediaPackage mediaPackage : findMediaPackage(mediaPackageId)) {
+        return hasVideoAccess(mediaPackage, ANNOTATE_ADMIN_ACTION);
       }
+      return false;
     });
   }
 
@@ -984,13 +1910,26 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
     }
   }
 
+  @Override
+  public List<MediaPackage> findSeriesMediaPackages(String seriesId) {
+    final String organizationId = securityService.getOrganization().getId();
+    return searchService.getSeries(seriesId).stream()
+            .filter(mediaPackage -> organizationId.equals(mediaPackage.getLeft().getId()))
+            .map(Pair::getRight)
+            .collect(Collectors.toList());
+  }
+
   @Override
   public boolean hasVideoAccess(MediaPackage mediaPackage, String access) {
     return isOpencastAdmin(securityService.getUser()) || authorizationService.hasPermission(mediaPackage, access);
   }
 
   private Option<Video> getResourceVideo(Resource resource) {
-    return resource.getVideo(this).bind(new Function<>() {
+    final Option<List<Object>> parent = getVideoParent(resource);
+    final Option<Long> videoId = parent.isSome()
+            ? parentVideoIds.get(parent.get(), k -> resource.getVideo(this))
+            : resource.getVideo(this);
+    return videoId.bind(new Function<>() {
       @Override
       public Option<Video> apply(Long videoId) {
         return getVideo(videoId);
@@ -998,6 +1937,23 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
     });
   }
 
+  /**
+   * Identify the parent of resources that have to look up their parents to find their video.
+   * All children of a parent share its video.
+   */
+  private static Option<List<Object>> getVideoParent(Resource resource) {
+    if (resource instanceof Annotation) {
+      return some(Arrays.asList("track", ((Annotation) resource).getTrackId()));
+    } else if (resource instanceof Comment) {
+      return some(Arrays.asList("annotation", ((Comment) resource).getAnnotationId()));
+    } else if (resource instanceof Label) {
+      return some(Arrays.asList("category", ((Label) resource).getCategoryId()));
+    } else if (resource instanceof ScaleValue) {
+      return some(Arrays.asList("scale", ((ScaleValue) resource).getScaleId()));
+    }
+    return none();
+  }
+
   private final Function<Resource, Boolean> hasResourceAccess = new Function<>() {
     @Override
     public Boolean apply(Resource resource) {
@@ -1007,41 +1963,35 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
 
   private static final boolean INCLUDE_DELETED = true;
 
-  private boolean hasCategoryAccess(Annotation annotation) {
-    try {
-      @SuppressWarnings("unchecked")
-      List<Map<String, Object>> content = (List<Map<String, Object>>) new JSONParser().parse(annotation.getContent());
-      for (Map<String, Object> contentItem : content) {
-        Object type = contentItem.get("type");
-        long labelId;
-        if ("label".equals(type)) {
-          labelId = (long) contentItem.get("value");
-        } else if ("scaling".equals(type)) {
-          @SuppressWarnings("unchecked")
-          Map<String, Long> value = (Map<String, Long>) contentItem.get("value");
-          labelId = value.get("label");
-        } else {
-          continue;
-        }
+  /**
+   * Checks whether the current user may see the categories of the labels an annotation references.
+   * Every distinct label and category is only looked up and checked once per evaluator,
+   * so use one instance to filter a whole list of annotations, but do not keep it around any longer than that.
+   */
+  private final class CategoryAccessEvaluator {
+    private final Map<Long, Long> labelCategories = new HashMap<>();
+    private final Map<Long, Boolean> categoryAccess = new HashMap<>();
 
-        Label label = getLabel(labelId, INCLUDE_DELETED).get();
-        Category category = getCategory(label.getCategoryId(), INCLUDE_DELETED).get();
-        if (!hasResourceAccess(category)) {
+    boolean hasAccess(Annotation annotation) {
+      return hasAccess(AnnotationDto.getLabelIds(annotation.getContent()));
+    }
+
+    boolean hasAccess(List<Long> labelIds) {
+      for (long labelId : labelIds) {
+        if (!hasLabelAccess(labelId)) {
           return false;
         }
       }
-    } catch (ParseException e) {
-      throw new RuntimeException(e);
+      return true;
     }
-    return true;
-  }
 
-  private final Function<Annotation, Boolean> hasCategoryAccess = new Function<>() {
-    @Override
-    public Boolean apply(Annotation annotation) {
-      return hasCategoryAccess(annotation);
+    private boolean hasLabelAccess(long labelId) {
+      long categoryId = labelCategories.computeIfAbsent(labelId,
+              id -> getLabel(id, INCLUDE_DELETED).get().getCategoryId());
+      return categoryAccess.computeIfAbsent(categoryId,
+              id -> hasResourceAccess(getCategory(id, INCLUDE_DELETED).get()));
     }
-  };
+  }
 
   private <T extends Resource> List<T> filterOrTags(List<T> originalList, Map<String, String> tags) {
     if (tags.size() < 1)
@@ -1068,7 +2018,8 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
   }
 
   private <T extends Annotation> List<T> filterByCategoryAccess(List<T> originalList) {
-    return mlist(originalList).filter(hasCategoryAccess).value();
+    final CategoryAccessEvaluator categoryAccess = new CategoryAccessEvaluator();
+    return originalList.stream().filter(categoryAccess::hasAccess).collect(Collectors.toList());
   }
 
   private <T extends Resource> List<T> filterAndTags(final List<T> originalList, final Map<String, String> tags) {
@@ -1107,9 +2058,37 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
   }
 
   /**
-   * Custom function for findAll functionality with offset and limit
-   * Would be nice if this could be replaced with something like `namedQuery.findAll`, but I couldn't
-   * figure out how to make offset and limit work with that
+   * Find an entity by its id together with the ids of its parents,
+   * so that a nested resource is validated against its whole path in a single query.
+   *
+   * @param path
+   *          the parameters of the named query, i.e. the ids as pairs of their names and values
+   */
+  private <A, B> Option<A> findByPath(final Function<B, A> toA, final String queryName, Class<B> type,
+          final Object... path) {
+    return option(tx(em -> namedQuery.findOpt(queryName, type, path).apply(em)).map(toA::apply).orElse(null));
+  }
+
+  /**
+   * Find an entity by its primary key. In contrast to the named queries used by {@link #findById}
+   * this is answered from the shared cache if the entity is {@link javax.persistence.Cacheable}
+   * and the shared cache is enabled.
+   * Do not nest inside a tx!
+   *
+   * @param includeDeleted
+   *          whether to return soft deleted entities, too
+   */
+  private <A, B extends AbstractResourceDto> Option<A> findCached(final Function<B, A> toA, Class<B> type, long id,
+          boolean includeDeleted) {
+    B result = tx(em -> em.find(type, id));
+    if (result == null || !includeDeleted && result.deletedAt != null) {
+      return none();
+    }
+    return some(toA.apply(result));
+  }
+
+  /**
+   * Custom function for findAll functionality
    *
    * @param <T>    Dto class
    * @param type   Dto class
@@ -1118,8 +2097,28 @@ public final class ExtendedAnnotationServiceJpaImpl implements ExtendedAnnotatio
    */
   @SafeVarargs
   private <T> List<T> findAll(Class<T> type, String q, Pair<String, Object>... params) {
+    return findAll(type, q, none(), none(), params);
+  }
+
+  /**
+   * Custom function for findAll functionality with offset and limit
+   *
+   * @param <T>    Dto class
+   * @param type   Dto class
+   * @param q      query
+   * @param offset the number of results to skip
+   * @param limit  the maximum number of results
+   * @param params arbitrary params
+   */
+  @SafeVarargs
+  private <T> List<T> findAll(Class<T> type, String q, Option<Integer> offset, Option<Integer> limit,
+          Pair<String, Object>... params) {
     return tx(em -> {
       TypedQuery<T> partial = configureQuery(em.createNamedQuery(q, type), params);
+      for (Integer o : offset)
+        partial.setFirstResult(o);
+      for (Integer l : limit)
+        partial.setMaxResults(l);
       return partial.getResultList();
     });
   }
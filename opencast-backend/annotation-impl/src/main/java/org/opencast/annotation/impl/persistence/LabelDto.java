@@ -16,7 +16,6 @@
 package org.opencast.annotation.impl.persistence;
 
 import static org.opencast.annotation.impl.Jsons.conc;
-import static org.opencast.annotation.impl.Jsons.jA;
 import static org.opencast.annotation.impl.Jsons.jO;
 import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.data.Option.option;
@@ -34,24 +33,35 @@ import org.opencastproject.util.data.Option;
 
 import org.json.simple.JSONObject;
 
-import java.util.stream.Stream;
-
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 /** JPA/JSON link to {@link Label}. */
 @Entity(name = "Label")
-@Table(name = "xannotations_label")
+@Cacheable
+@Table(name = "xannotations_label", indexes = {
+        @Index(name = "IX_xannotations_label_category", columnList = "category_id") })
 @NamedQueries({
         @NamedQuery(name = "Label.findByIdIncludeDeleted", query = "select a from Label a where a.id = :id"),
         @NamedQuery(name = "Label.findById", query = "select a from Label a where a.id = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "Label.findAllOfCategory", query = "select a from Label a where a.categoryId = :id"),
+        @NamedQuery(name = "Label.findAllOfVideo", query = "select a from Label a, Category c "
+                + "where a.categoryId = c.id and c.videoId = :id"),
+        @NamedQuery(name = "Label.deleteAllOfCategories", query = "update Label a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.categoryId IN :ids and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Label.versionOfCategory", query = "select count(a), sum(a.revision), sum(a.id) from Label a where "
+                + "a.categoryId = :id or a.categoryId IN (select c.seriesCategoryId from Category c where c.id = :id)"),
+        @NamedQuery(name = "Label.versionOfVideo", query = "select count(a), sum(a.revision), sum(a.id) from Label a where "
+                + "a.categoryId IN (select c.id from Category c where c.videoId = :id) or a.categoryId IN (select c.seriesCategoryId from Category c where c.videoId = :id)"),
         @NamedQuery(name = "Label.clear", query = "delete from Label") })
 public class LabelDto extends AbstractResourceDto {
   @Id
@@ -99,7 +109,7 @@ public class LabelDto extends AbstractResourceDto {
   public Label toLabel() {
     return new LabelImpl(id, option(seriesLabelId), categoryId, value, abbreviation, option(description),
             option(settings), new ResourceImpl(option(access), option(createdBy), option(updatedBy), option(deletedBy),
-                    option(createdAt), option(updatedAt), option(deletedAt), null));
+                    option(createdAt), option(updatedAt), option(deletedAt), null, revision));
   }
 
   public static final Function<LabelDto, Label> toLabel = new Function<>() {
@@ -112,15 +122,18 @@ public class LabelDto extends AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, Label, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService s, Label l) {
-      Category category = s.getCategory(l.getCategoryId(), true).get();
-
-      return conc(AbstractResourceDto.toJson.apply(s, l),
-          jO(p("id", l.getId()), p("value", l.getValue()), p("abbreviation", l.getAbbreviation()), p("description", l.getDescription()), p("settings", l.getSettings()),
-              p("category", CategoryDto.toJson.apply(s, category))));
+      return toJson(s, UserResolver.of(s), l);
     }
   };
 
-  public static JSONObject toJson(ExtendedAnnotationService s, Stream<Label> ls) {
-    return jO(p("labels", jA(ls.map(l -> toJson.apply(s, l)).toArray())));
+  public static JSONObject toJson(ExtendedAnnotationService s, UserResolver users, Label l) {
+    return toJson(s, users, l, s.getCategory(l.getCategoryId(), true).get());
+  }
+
+  /** Serialize a label whose category is already loaded. */
+  public static JSONObject toJson(ExtendedAnnotationService s, UserResolver users, Label l, Category category) {
+    return conc(AbstractResourceDto.toJson(users, l),
+        jO(p("id", l.getId()), p("value", l.getValue()), p("abbreviation", l.getAbbreviation()), p("description", l.getDescription()), p("settings", l.getSettings()),
+            p("category", CategoryDto.toJson(s, users, category))));
   }
 }
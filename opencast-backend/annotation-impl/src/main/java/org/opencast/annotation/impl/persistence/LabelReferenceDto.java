@@ -0,0 +1,61 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl.persistence;
+
+import java.util.Objects;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+/**
+ * A label, and the scale value it was rated with, used in the content of an {@link AnnotationDto annotation}.
+ */
+@Embeddable
+public class LabelReferenceDto {
+  @Column(name = "label_id", nullable = false)
+  private long labelId;
+
+  @Column(name = "scale_value_id")
+  private Long scaleValueId;
+
+  static LabelReferenceDto create(long labelId, Long scaleValueId) {
+    final LabelReferenceDto dto = new LabelReferenceDto();
+    dto.labelId = labelId;
+    dto.scaleValueId = scaleValueId;
+    return dto;
+  }
+
+  long getLabelId() {
+    return labelId;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof LabelReferenceDto)) {
+      return false;
+    }
+    final LabelReferenceDto that = (LabelReferenceDto) o;
+    return labelId == that.labelId && Objects.equals(scaleValueId, that.scaleValueId);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(labelId, scaleValueId);
+  }
+}
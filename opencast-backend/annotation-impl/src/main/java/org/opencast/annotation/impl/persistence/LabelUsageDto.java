@@ -0,0 +1,66 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl.persistence;
+
+import static org.opencastproject.util.data.Option.option;
+
+import org.opencast.annotation.api.LabelUsage;
+
+import org.opencastproject.util.data.Option;
+
+/**
+ * Result of the aggregate query counting the {@link LabelUsage usage of labels}.
+ */
+public final class LabelUsageDto implements LabelUsage {
+  private final long labelId;
+  private final long trackId;
+  private final Option<Long> userId;
+  private final long count;
+  private final double duration;
+
+  public LabelUsageDto(long labelId, long trackId, Long userId, Long count, Double duration) {
+    this.labelId = labelId;
+    this.trackId = trackId;
+    this.userId = option(userId);
+    this.count = count;
+    this.duration = duration != null ? duration : 0;
+  }
+
+  @Override
+  public long getLabelId() {
+    return labelId;
+  }
+
+  @Override
+  public long getTrackId() {
+    return trackId;
+  }
+
+  @Override
+  public Option<Long> getUserId() {
+    return userId;
+  }
+
+  @Override
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public double getDuration() {
+    return duration;
+  }
+}
@@ -1,7 +1,6 @@
 package org.opencast.annotation.impl.persistence;
 
 import static org.opencast.annotation.impl.Jsons.conc;
-import static org.opencast.annotation.impl.Jsons.jA;
 import static org.opencast.annotation.impl.Jsons.jO;
 import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.data.Option.option;
@@ -18,24 +17,27 @@ import org.opencastproject.util.data.Option;
 
 import org.json.simple.JSONObject;
 
-import java.util.stream.Stream;
-
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 @Entity(name = "Questionnaire")
-@Table(name = "xannotations_questionnaire")
+@Table(name = "xannotations_questionnaire", indexes = {
+        @Index(name = "IX_xannotations_questionnaire_video", columnList = "video_id") })
 @NamedQueries({
         @NamedQuery(name = "Questionnaire.findByIdIncludeDeleted", query = "select a from Questionnaire a where a.id = :id"),
         @NamedQuery(name = "Questionnaire.findById", query = "select a from Questionnaire a where a.id = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "Questionnaire.findAllOfVideo", query = "select a from Questionnaire a where a.videoId = :id"),
+        @NamedQuery(name = "Questionnaire.findAccessibleOfVideo", query = "select a from Questionnaire a "
+                + "where a.videoId = :id and " + AbstractResourceDto.ACCESSIBLE),
+        @NamedQuery(name = "Questionnaire.versionOfVideo", query = "select count(a), sum(a.revision), sum(a.id) from Questionnaire a where a.videoId = :id"),
         @NamedQuery(name = "Questionnaire.clear", query = "delete from Questionnaire") })
 public class QuestionnaireDto extends AbstractResourceDto {
   @Id
@@ -77,7 +79,7 @@ public class QuestionnaireDto extends AbstractResourceDto {
   public Questionnaire toQuestionnaire() {
     return new QuestionnaireImpl(id, videoId, title, content, option(settings),
         new ResourceImpl(option(access), option(createdBy), option(updatedBy), option(deletedBy),
-        option(createdAt), option(updatedAt), option(deletedAt), null));
+        option(createdAt), option(updatedAt), option(deletedAt), null, revision));
   }
 
   public static final Function<QuestionnaireDto, Questionnaire> toQuestionnaire = new Function<>() {
@@ -90,12 +92,12 @@ public class QuestionnaireDto extends AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, Questionnaire, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService eas, Questionnaire s) {
-      return conc(AbstractResourceDto.toJson.apply(eas, s),
-          jO(p("id", s.getId()), p("title", s.getTitle()), p("settings", s.getSettings()), p("content", s.getContent())));
+      return toJson(eas, UserResolver.of(eas), s);
     }
   };
 
-  public static JSONObject toJson(ExtendedAnnotationService eas, Stream<Questionnaire> questionnaires) {
-    return jO(p("questionnaires", jA(questionnaires.map(q -> toJson.apply(eas, q)).toArray())));
+  public static JSONObject toJson(ExtendedAnnotationService eas, UserResolver users, Questionnaire s) {
+    return conc(AbstractResourceDto.toJson(users, s),
+        jO(p("id", s.getId()), p("title", s.getTitle()), p("settings", s.getSettings()), p("content", s.getContent())));
   }
 }
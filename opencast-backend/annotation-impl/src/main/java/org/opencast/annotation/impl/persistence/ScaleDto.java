@@ -16,7 +16,6 @@
 package org.opencast.annotation.impl.persistence;
 
 import static org.opencast.annotation.impl.Jsons.conc;
-import static org.opencast.annotation.impl.Jsons.jA;
 import static org.opencast.annotation.impl.Jsons.jO;
 import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.data.Option.option;
@@ -33,24 +32,30 @@ import org.opencastproject.util.data.Option;
 
 import org.json.simple.JSONObject;
 
-import java.util.stream.Stream;
-
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 /** JPA/JSON link to {@link Scale}. */
 @Entity(name = "Scale")
-@Table(name = "xannotations_scale")
+@Cacheable
+@Table(name = "xannotations_scale", indexes = {
+        @Index(name = "IX_xannotations_scale_video", columnList = "video_id") })
 @NamedQueries({
         @NamedQuery(name = "Scale.findById", query = "select a from Scale a where a.id = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "Scale.findByIdIncludeDeleted", query = "select a from Scale a where a.id = :id"),
         @NamedQuery(name = "Scale.findAllOfVideo", query = "select a from Scale a where a.videoId = :id"),
+        @NamedQuery(name = "Scale.deleteAllOfVideo", query = "update Scale a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.videoId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Scale.versionOfVideo", query = "select count(a), sum(a.revision), sum(a.id) from Scale a where a.videoId = :id"),
         @NamedQuery(name = "Scale.clear", query = "delete from Scale") })
 public class ScaleDto extends AbstractResourceDto {
   @Id
@@ -84,7 +89,7 @@ public class ScaleDto extends AbstractResourceDto {
   public Scale toScale() {
     return new ScaleImpl(id, videoId, name, option(description), new ResourceImpl(option(access),
             option(createdBy), option(updatedBy), option(deletedBy), option(createdAt), option(updatedAt),
-            option(deletedAt), null));
+            option(deletedAt), null, revision));
   }
 
   public static final Function<ScaleDto, Scale> toScale = new Function<>() {
@@ -97,12 +102,12 @@ public class ScaleDto extends AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, Scale, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService eas, Scale s) {
-      return conc(AbstractResourceDto.toJson.apply(eas, s),
-          jO(p("id", s.getId()), p("name", s.getName()), p("description", s.getDescription())));
+      return toJson(eas, UserResolver.of(eas), s);
     }
   };
 
-  public static JSONObject toJson(ExtendedAnnotationService eas, Stream<Scale> scales) {
-    return jO(p("scales", jA(scales.map(s -> toJson.apply(eas, s)).toArray())));
+  public static JSONObject toJson(ExtendedAnnotationService eas, UserResolver users, Scale s) {
+    return conc(AbstractResourceDto.toJson(users, s),
+        jO(p("id", s.getId()), p("name", s.getName()), p("description", s.getDescription())));
   }
 }
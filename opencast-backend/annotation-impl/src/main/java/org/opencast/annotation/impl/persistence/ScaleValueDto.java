@@ -16,7 +16,6 @@
 package org.opencast.annotation.impl.persistence;
 
 import static org.opencast.annotation.impl.Jsons.conc;
-import static org.opencast.annotation.impl.Jsons.jA;
 import static org.opencast.annotation.impl.Jsons.jO;
 import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.data.Option.option;
@@ -33,24 +32,34 @@ import org.opencastproject.util.data.Function2;
 
 import org.json.simple.JSONObject;
 
-import java.util.stream.Stream;
-
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 /** JPA/JSON link to {@link ScaleValue}. */
 @Entity(name = "ScaleValue")
-@Table(name = "xannotations_scale_value")
+@Cacheable
+@Table(name = "xannotations_scale_value", indexes = {
+        @Index(name = "IX_xannotations_scale_value_scale", columnList = "scale_id") })
 @NamedQueries({
         @NamedQuery(name = "ScaleValue.findById", query = "select a from ScaleValue a where a.id = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "ScaleValue.findByIdIncludeDeleted", query = "select a from ScaleValue a where a.id = :id"),
         @NamedQuery(name = "ScaleValue.findAllOfScale", query = "select a from ScaleValue a where a.scaleId = :id"),
+        @NamedQuery(name = "ScaleValue.findAllOfVideo", query = "select a from ScaleValue a where a.scaleId IN "
+                + "(select s.id from Scale s where s.videoId = :id)"),
+        @NamedQuery(name = "ScaleValue.deleteAllOfVideo", query = "update ScaleValue a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.scaleId IN (select s.id from Scale s where s.videoId = :id) and a.deletedAt IS NULL"),
+        @NamedQuery(name = "ScaleValue.versionOfScale", query = "select count(a), sum(a.revision), sum(a.id) from ScaleValue a where a.scaleId = :id"),
+        @NamedQuery(name = "ScaleValue.versionOfVideo", query = "select count(a), sum(a.revision), sum(a.id) from ScaleValue a where "
+                + "a.scaleId IN (select s.id from Scale s where s.videoId = :id)"),
         @NamedQuery(name = "ScaleValue.clear", query = "delete from ScaleValue") })
 public class ScaleValueDto extends AbstractResourceDto {
   @Id
@@ -87,7 +96,8 @@ public class ScaleValueDto extends AbstractResourceDto {
 
   public ScaleValue toScaleValue() {
     return new ScaleValueImpl(id, scaleId, name, value, order, new ResourceImpl(option(access), option(createdBy),
-            option(updatedBy), option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt), null));
+            option(updatedBy), option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt), null,
+            revision));
   }
 
   public static final Function<ScaleValueDto, ScaleValue> toScaleValue = new Function<>() {
@@ -100,15 +110,18 @@ public class ScaleValueDto extends AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, ScaleValue, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService eas, ScaleValue s) {
-      Scale scale = eas.getScale(s.getScaleId(), true).get();
-
-      return conc(AbstractResourceDto.toJson.apply(eas, s),
-          jO(p("id", s.getId()), p("name", s.getName()), p("value", s.getValue()), p("order", s.getOrder()),
-              p("scale", ScaleDto.toJson.apply(eas, scale))));
+      return toJson(eas, UserResolver.of(eas), s);
     }
   };
 
-  public static JSONObject toJson(ExtendedAnnotationService s, Stream<ScaleValue> scaleValues) {
-    return jO(p("scaleValues", jA(scaleValues.map(sv -> toJson.apply(s, sv)).toArray())));
+  public static JSONObject toJson(ExtendedAnnotationService eas, UserResolver users, ScaleValue s) {
+    return toJson(eas, users, s, eas.getScale(s.getScaleId(), true).get());
+  }
+
+  /** Serialize a scale value whose scale is already loaded. */
+  public static JSONObject toJson(ExtendedAnnotationService eas, UserResolver users, ScaleValue s, Scale scale) {
+    return conc(AbstractResourceDto.toJson(users, s),
+        jO(p("id", s.getId()), p("name", s.getName()), p("value", s.getValue()), p("order", s.getOrder()),
+            p("scale", ScaleDto.toJson(eas, users, scale))));
   }
 }
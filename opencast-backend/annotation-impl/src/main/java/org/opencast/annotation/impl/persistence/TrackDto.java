@@ -16,7 +16,6 @@
 package org.opencast.annotation.impl.persistence;
 
 import static org.opencast.annotation.impl.Jsons.conc;
-import static org.opencast.annotation.impl.Jsons.jA;
 import static org.opencast.annotation.impl.Jsons.jO;
 import static org.opencast.annotation.impl.Jsons.p;
 import static org.opencastproject.util.data.Option.option;
@@ -33,23 +32,34 @@ import org.opencastproject.util.data.Option;
 
 import org.json.simple.JSONObject;
 
-import java.util.stream.Stream;
-
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 /** JPA/JSON link to {@link org.opencast.annotation.api.Track}. */
 @Entity(name = "Track")
-@Table(name = "xannotations_track")
+@Table(name = "xannotations_track", indexes = {
+        @Index(name = "IX_xannotations_track_video", columnList = "video_id, deleted_at") })
 @NamedQueries({
         @NamedQuery(name = "Track.findById", query = "select a from Track a where a.id = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Track.findByPath", query = "select a from Track a where a.id = :id and a.videoId = :videoId "
+                + "and a.deletedAt IS NULL"),
         @NamedQuery(name = "Track.findAllOfVideo", query = "select a from Track a where a.videoId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Track.findAccessibleOfVideo", query = "select a from Track a where a.videoId = :id "
+                + "and a.deletedAt IS NULL and " + AbstractResourceDto.ACCESSIBLE),
+        @NamedQuery(name = "Track.delete", query = "update Track a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.id = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Track.deleteAllOfVideo", query = "update Track a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.videoId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Track.versionOfVideo", query = "select count(a), sum(a.revision), sum(a.id) from Track a where a.videoId = :id"),
         @NamedQuery(name = "Track.clear", query = "delete from Track") })
 public class TrackDto extends AbstractResourceDto {
   @Id
@@ -90,7 +100,7 @@ public class TrackDto extends AbstractResourceDto {
   public Track toTrack() {
     return new TrackImpl(id, videoId, name, option(description), option(settings), new ResourceImpl(option(access),
             option(createdBy), option(updatedBy), option(deletedBy), option(createdAt), option(updatedAt),
-            option(deletedAt), null));
+            option(deletedAt), null, revision));
   }
 
   public static final Function<TrackDto, Track> toTrack = new Function<>() {
@@ -103,12 +113,12 @@ public class TrackDto extends AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, Track, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService s, Track t) {
-      return conc(AbstractResourceDto.toJson.apply(s, t),
-          jO(p("id", t.getId()), p("name", t.getName()), p("description", t.getDescription()), p("settings", t.getSettings())));
+      return toJson(s, UserResolver.of(s), t);
     }
   };
 
-  public static JSONObject toJson(ExtendedAnnotationService eas, Stream<Track> ts) {
-    return jO(p("tracks", jA(ts.map(t -> toJson.apply(eas, t)).toArray())));
+  public static JSONObject toJson(ExtendedAnnotationService s, UserResolver users, Track t) {
+    return conc(AbstractResourceDto.toJson(users, t),
+        jO(p("id", t.getId()), p("name", t.getName()), p("description", t.getDescription()), p("settings", t.getSettings())));
   }
 }
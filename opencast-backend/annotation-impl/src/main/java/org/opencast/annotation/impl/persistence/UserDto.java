@@ -32,6 +32,7 @@ import org.opencastproject.util.data.Option;
 
 import org.json.simple.JSONObject;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -43,10 +44,13 @@ import javax.persistence.Table;
 
 /** JPA/JSON link to {@link User}. */
 @Entity(name = "User")
+@Cacheable
 @Table(name = "xannotations_user")
 @NamedQueries({
         @NamedQuery(name = "User.findById", query = "select a from User a where a.id = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "User.findAllById", query = "select a from User a where a.id IN :ids and a.deletedAt IS NULL"),
         @NamedQuery(name = "User.findByUserId", query = "select a from User a where a.userId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "User.version", query = "select count(a), sum(a.revision), sum(a.id) from User a"),
         @NamedQuery(name = "User.clear", query = "delete from User") })
 public class UserDto extends AbstractResourceDto {
   @Id
@@ -77,7 +81,8 @@ public class UserDto extends AbstractResourceDto {
 
   public User toUser() {
     return new UserImpl(id, userId, nickname, option(email), new ResourceImpl(option(access), option(createdBy),
-            option(updatedBy), option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt), null));
+            option(updatedBy), option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt), null,
+            revision));
   }
 
   public static final Function<UserDto, User> toUser = new Function<>() {
@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl.persistence;
+
+import static org.opencastproject.util.data.Option.none;
+import static org.opencastproject.util.data.Option.some;
+
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.api.User;
+
+import org.opencastproject.util.data.Option;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the users referenced by the audit fields of resources while serializing them.
+ * Users are looked up at most once; {@link #of(ExtendedAnnotationService, Collection)}
+ * fetches all users of a list of resources with a single query up front.
+ */
+public final class UserResolver {
+  private final ExtendedAnnotationService eas;
+  private final Map<Long, Option<User>> users = new HashMap<>();
+
+  private UserResolver(ExtendedAnnotationService eas) {
+    this.eas = eas;
+  }
+
+  /** Create a resolver which looks up users lazily. */
+  public static UserResolver of(ExtendedAnnotationService eas) {
+    return new UserResolver(eas);
+  }
+
+  /** Create a resolver with all users referenced by the given resources already loaded. */
+  public static UserResolver of(ExtendedAnnotationService eas, Collection<? extends Resource> resources) {
+    final UserResolver resolver = new UserResolver(eas);
+    final Set<Long> ids = new HashSet<>();
+    for (Resource resource : resources) {
+      for (Long id : resource.getCreatedBy())
+        ids.add(id);
+      for (Long id : resource.getUpdatedBy())
+        ids.add(id);
+      for (Long id : resource.getDeletedBy())
+        ids.add(id);
+    }
+    if (!ids.isEmpty()) {
+      for (Long id : ids) {
+        resolver.users.put(id, none());
+      }
+      eas.getUsers(ids).forEach(user -> resolver.users.put(user.getId(), some(user)));
+    }
+    return resolver;
+  }
+
+  public Option<User> getUser(long id) {
+    return users.computeIfAbsent(id, eas::getUser);
+  }
+}
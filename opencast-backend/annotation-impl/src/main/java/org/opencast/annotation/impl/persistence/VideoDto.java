@@ -31,6 +31,7 @@ import org.opencastproject.util.data.Function2;
 
 import org.json.simple.JSONObject;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -42,10 +43,14 @@ import javax.persistence.Table;
 
 /** JPA/JSON link to {@link org.opencast.annotation.api.Video}. */
 @Entity(name = "Video")
+@Cacheable
 @Table(name = "xannotations_video")
 @NamedQueries({
         @NamedQuery(name = "Video.findById", query = "select a from Video a where a.id = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "Video.findByExtId", query = "select a from Video a where a.extId = :id and a.deletedAt IS NULL"),
+        @NamedQuery(name = "Video.delete", query = "update Video a set a.deletedAt = :deletedAt, a.deletedBy = :deletedBy, "
+                + "a.revision = a.revision + 1 "
+                + "where a.id = :id and a.deletedAt IS NULL"),
         @NamedQuery(name = "Video.clear", query = "delete from Video") })
 public final class VideoDto extends AbstractResourceDto {
 
@@ -69,7 +74,7 @@ public final class VideoDto extends AbstractResourceDto {
 
   public Video toVideo() {
     return new VideoImpl(id, extId, new ResourceImpl(option(access), option(createdBy), option(updatedBy),
-            option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt), null));
+            option(deletedBy), option(createdAt), option(updatedAt), option(deletedAt), null, revision));
   }
 
   public static final Function<VideoDto, Video> toVideo = new Function<>() {
@@ -82,7 +87,11 @@ public final class VideoDto extends AbstractResourceDto {
   public static final Function2<ExtendedAnnotationService, Video, JSONObject> toJson = new Function2<>() {
     @Override
     public JSONObject apply(ExtendedAnnotationService s, Video v) {
-      return conc(AbstractResourceDto.toJson.apply(s, v), jO(p("id", v.getId()), p("video_extid", v.getExtId())));
+      return toJson(s, UserResolver.of(s), v);
     }
   };
+
+  public static JSONObject toJson(ExtendedAnnotationService s, UserResolver users, Video v) {
+    return conc(AbstractResourceDto.toJson(users, v), jO(p("id", v.getId()), p("video_extid", v.getExtId())));
+  }
 }
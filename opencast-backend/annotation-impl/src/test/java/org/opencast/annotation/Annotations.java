@@ -29,6 +29,10 @@ public final class Annotations {
     return pack("text", text);
   }
 
+  public static String labelAnnotation(long labelId) {
+    return pack("label", labelId);
+  }
+
   public static String scalingAnnotation(long labelId, long scalingId) {
     @SuppressWarnings("unchecked")
     Map<String, Long> value = new JSONObject();
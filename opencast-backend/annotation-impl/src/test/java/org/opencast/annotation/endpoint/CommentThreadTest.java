@@ -0,0 +1,78 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.opencastproject.util.data.Option.none;
+import static org.opencastproject.util.data.Option.some;
+
+import org.opencast.annotation.api.Comment;
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.impl.CommentImpl;
+import org.opencast.annotation.impl.ResourceImpl;
+
+import org.opencastproject.util.data.Option;
+
+import org.easymock.EasyMock;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+public class CommentThreadTest {
+  private final ExtendedAnnotationService eas = EasyMock.createNiceMock(ExtendedAnnotationService.class);
+  private final Resource resource = new ResourceImpl(some(Resource.PUBLIC), none(), none(), none(), none(), none(),
+          none(), new HashMap<>());
+
+  @Test
+  public void testRepliesWithSmallerIds() throws Exception {
+    // ids are not necessarily increasing, so replies can have smaller ids than the comments they reply to
+    final JSONObject json = toJson(CommentThread.of(eas, List.of(comment(10, none()), comment(20, none()),
+            comment(5, some(10L)), comment(3, some(5L)), comment(15, some(20L))), none()));
+    final JSONArray comments = (JSONArray) json.get("comments");
+    assertEquals(2, comments.size());
+    final JSONObject first = (JSONObject) comments.get(0);
+    assertEquals(10L, first.get("id"));
+    final JSONObject reply = (JSONObject) ((JSONArray) first.get("replies")).get(0);
+    assertEquals(5L, reply.get("id"));
+    assertEquals(3L, ((JSONObject) ((JSONArray) reply.get("replies")).get(0)).get("id"));
+    assertEquals(15L, ((JSONObject) ((JSONArray) ((JSONObject) comments.get(1)).get("replies")).get(0)).get("id"));
+    assertNull(json.get("next"));
+  }
+
+  @Test
+  public void testLimit() throws Exception {
+    final JSONObject json = toJson(CommentThread.of(eas, List.of(comment(1, none()), comment(2, none()),
+            comment(3, some(2L)), comment(4, some(1L))), some(1)));
+    final JSONArray comments = (JSONArray) json.get("comments");
+    assertEquals(1, comments.size());
+    assertEquals(1, ((JSONArray) ((JSONObject) comments.get(0)).get("replies")).size());
+    assertEquals(1L, json.get("next"));
+  }
+
+  private Comment comment(long id, Option<Long> replyToId) {
+    return new CommentImpl(id, 1, "comment " + id, replyToId, resource);
+  }
+
+  private static JSONObject toJson(CommentThread thread) throws Exception {
+    return (JSONObject) new JSONParser().parse(thread.toJson().toJSONString());
+  }
+}
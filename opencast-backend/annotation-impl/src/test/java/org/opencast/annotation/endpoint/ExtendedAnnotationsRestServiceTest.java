@@ -18,9 +18,12 @@ package org.opencast.annotation.endpoint;
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.iterableWithSize;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.opencast.annotation.Annotations.labelAnnotation;
 import static org.opencast.annotation.Annotations.scalingAnnotation;
 import static org.opencast.annotation.Annotations.textAnnotation;
 import static org.opencast.annotation.endpoint.ExtendedAnnotationsRestServiceTest.RegexMatcher.regex;
@@ -32,6 +35,9 @@ import org.opencast.annotation.api.Annotation;
 import org.opencast.annotation.api.Resource;
 import org.opencast.annotation.impl.AnnotationImpl;
 import org.opencast.annotation.impl.ResourceImpl;
+import org.opencast.annotation.impl.persistence.CategoryDto;
+import org.opencast.annotation.impl.persistence.LabelDto;
+import org.opencast.annotation.impl.persistence.ScaleDto;
 
 import org.opencastproject.test.rest.RestServiceTestEnv;
 
@@ -43,9 +49,14 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import javax.ws.rs.core.Response;
 
@@ -57,6 +68,7 @@ public class ExtendedAnnotationsRestServiceTest {
   private static final int NOT_FOUND = Response.Status.NOT_FOUND.getStatusCode();
   private static final int NO_CONTENT = Response.Status.NO_CONTENT.getStatusCode();
   private static final int CONFLICT = Response.Status.CONFLICT.getStatusCode();
+  private static final int NOT_MODIFIED = Response.Status.NOT_MODIFIED.getStatusCode();
   private static final String LOCATION = "Location";
 
   @After
@@ -213,6 +225,38 @@ public class ExtendedAnnotationsRestServiceTest {
     given().pathParam("videoId", videoId).pathParam("trackId", trackId).expect().statusCode(OK)
             .body("annotations", iterableWithSize(2)).when()
             .get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    // get all/time window and pagination
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).queryParam("start", 45).expect()
+            .statusCode(OK).body("annotations", iterableWithSize(1)).body("annotations[0].start", equalTo(50.0F))
+            .when().get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).queryParam("offset", 1)
+            .queryParam("limit", -1).expect().statusCode(OK).body("annotations", iterableWithSize(1)).when()
+            .get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).queryParam("at", 50).expect()
+            .statusCode(OK).body("annotations", iterableWithSize(1)).body("annotations[0].start", equalTo(50.0F))
+            .when().get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).queryParam("at", 50)
+            .queryParam("start", 45).expect().statusCode(BAD_REQUEST).when()
+            .get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).queryParam("limit", -2).expect()
+            .statusCode(BAD_REQUEST).when().get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    // get all/only some fields
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).queryParam("fields", "id,start,labels")
+            .queryParam("start", 45).expect().statusCode(OK).body("annotations", iterableWithSize(1))
+            .body("annotations[0].start", equalTo(50.0F)).body("annotations[0].labels", iterableWithSize(0))
+            .body("annotations[0].content", nullValue()).body("annotations[0].created_by", nullValue()).when()
+            .get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).queryParam("fields", "id,content").expect()
+            .statusCode(BAD_REQUEST).when().get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", 12345).expect().statusCode(BAD_REQUEST).when()
+            .get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    // an annotation can only be reached through its own track
+    final String otherTrackId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "other")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+    given().pathParam("videoId", videoId).pathParam("trackId", otherTrackId).pathParam("id", id).expect()
+            .statusCode(NOT_FOUND).when().get(host("/videos/{videoId}/tracks/{trackId}/annotations/{id}"));
+    given().pathParam("videoId", videoId).pathParam("trackId", otherTrackId).pathParam("id", id).expect()
+            .statusCode(NOT_FOUND).when().delete(host("/videos/{videoId}/tracks/{trackId}/annotations/{id}"));
     // delete
     given().pathParam("videoId", 12345).pathParam("trackId", 12345).pathParam("id", 12345).expect()
             .statusCode(BAD_REQUEST).when().delete(host("/videos/{videoId}/tracks/{trackId}/annotations/{id}"));
@@ -228,6 +272,323 @@ public class ExtendedAnnotationsRestServiceTest {
             .statusCode(NOT_FOUND).when().get(host("/videos/{videoId}/tracks/{trackId}/annotations/{id}"));
   }
 
+  @Test
+  public void testAnnotationBatch() {
+    given().formParam("user_extid", "admin").formParam("nickname", "klausi").expect()
+            .body("user_extid", equalTo("admin")).when().put(host("/users"));
+    final String videoId = extractLocationId(given().formParam("video_extid", "lecture5").expect().statusCode(CREATED)
+            .header(LOCATION, startsWith(host("/videos/"))).when().put(host("/videos")));
+    final String trackId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "track")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+    final String id = extractLocationId(given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .formParam("content", textAnnotation("cool video")).formParam("start", 40).expect().statusCode(CREATED)
+            .when().post(host("/videos/{videoId}/tracks/{trackId}/annotations")));
+    // malformed
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).contentType(ContentType.JSON)
+            .body("[{\"action\":\"create\"}]").expect().statusCode(BAD_REQUEST).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations/batch"));
+    given().pathParam("videoId", videoId).pathParam("trackId", 12345).contentType(ContentType.JSON)
+            .body("[]").expect().statusCode(BAD_REQUEST).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations/batch"));
+    // create, update and delete at once
+    final String batch = "[{\"action\":\"create\",\"start\":10,\"content\":" + textAnnotation("new") + "},"
+            + "{\"action\":\"update\",\"id\":" + id + ",\"start\":20},"
+            + "{\"action\":\"delete\",\"id\":12345}]";
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).contentType(ContentType.JSON).body(batch)
+            .expect().statusCode(OK).body("results", iterableWithSize(3))
+            .body("results[0].status", equalTo(CREATED)).body("results[0].annotation.start", equalTo(10.0F))
+            .body("results[1].status", equalTo(OK)).body("results[1].annotation.start", equalTo(20.0F))
+            .body("results[2].status", equalTo(NOT_FOUND)).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations/batch"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).expect().statusCode(OK)
+            .body("annotations", iterableWithSize(2)).when()
+            .get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).contentType(ContentType.JSON)
+            .body("[{\"action\":\"delete\",\"id\":" + id + "}]").expect().statusCode(OK)
+            .body("results[0].status", equalTo(NO_CONTENT)).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations/batch"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("id", id).expect()
+            .statusCode(NOT_FOUND).when().get(host("/videos/{videoId}/tracks/{trackId}/annotations/{id}"));
+  }
+
+  @Test
+  public void testExport() throws Exception {
+    given().formParam("user_extid", "admin").formParam("nickname", "klausi").expect().when().put(host("/users"));
+    final String videoId = extractLocationId(given().formParam("video_extid", "lecture6").expect().statusCode(CREATED)
+            .when().put(host("/videos")));
+    final String trackId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "track")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+    final String categoryId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "Behavior")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/categories")));
+    final String labelId = extractLocationId(given().pathParam("videoId", videoId).pathParam("categoryId", categoryId)
+            .formParam("value", "Laughing").formParam("abbreviation", "LOL").expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/categories/{categoryId}/labels")));
+    final String annotationId = extractLocationId(given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .formParam("content", labelAnnotation(Long.parseLong(labelId))).formParam("start", 3661)
+            .formParam("duration", 2).expect().statusCode(CREATED)
+            .when().post(host("/videos/{videoId}/tracks/{trackId}/annotations")));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .formParam("content", textAnnotation("free, \"quoted\" text")).formParam("start", 5).expect()
+            .statusCode(CREATED).when().post(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("annotationId", annotationId)
+            .formParam("text", "funny").expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations/{annotationId}/comments"));
+
+    final String[] csv = given().pathParam("videoId", videoId).expect().statusCode(OK)
+            .header("Content-Disposition", "attachment; filename=\"export.csv\"").when()
+            .get(host("/videos/{videoId}/export.csv")).asString().split("\r\n");
+    assertEquals(4, csv.length);
+    assertTrue(csv[0].startsWith("ID,Creation date,"));
+    assertTrue(csv[1].contains(",track,1:01:01,1:01:03,0:00:02,Laughing,Behavior,Laughing,LOL,"));
+    assertTrue(csv[1].endsWith(",content"));
+    assertTrue(csv[2].contains(",funny,,comment"));
+    assertTrue(csv[3].contains(",\"free, \"\"quoted\"\" text\",,"));
+    // filtered by category and free text
+    assertEquals(1, given().pathParam("videoId", videoId).queryParam("categories", "").queryParam("freetext", false)
+            .expect().statusCode(OK).when().get(host("/videos/{videoId}/export.csv")).asString().split("\r\n").length);
+    given().pathParam("videoId", videoId).queryParam("tracks", "abc").expect().statusCode(BAD_REQUEST).when()
+            .get(host("/videos/{videoId}/export.csv"));
+
+    final byte[] xlsx = given().pathParam("videoId", videoId).expect().statusCode(OK).when()
+            .get(host("/videos/{videoId}/export.xlsx")).asByteArray();
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(xlsx))) {
+      ZipEntry entry;
+      do {
+        entry = zip.getNextEntry();
+      } while (!entry.getName().equals("xl/worksheets/sheet1.xml"));
+      final String sheet = new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+      assertTrue(sheet.contains("<row r=\"4\">"));
+      assertTrue(sheet.contains("<t xml:space=\"preserve\">free, \"quoted\" text</t>"));
+    }
+  }
+
+  @Test
+  public void testExportJob() throws Exception {
+    given().formParam("user_extid", "admin").formParam("nickname", "klausi").expect().when().put(host("/users"));
+    for (String extId : new String[] { "lecture7", "lecture8" }) {
+      final String videoId = extractLocationId(given().formParam("video_extid", extId).expect().statusCode(CREATED)
+              .when().put(host("/videos")));
+      final String trackId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "track")
+              .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+      given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+              .formParam("content", textAnnotation("in " + extId)).formParam("start", 5).expect()
+              .statusCode(CREATED).when().post(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    }
+    given().expect().statusCode(BAD_REQUEST).when().post(host("/exports"));
+    given().expect().statusCode(NOT_FOUND).when().get(host("/exports/12345"));
+
+    // videos that are not annotated yet are skipped
+    final String id = extractLocationId(given().formParam("video_extid", "lecture7", "lecture8", "unknown")
+            .expect().statusCode(Response.Status.ACCEPTED.getStatusCode()).body("videos", equalTo(2))
+            .header(LOCATION, startsWith(host("/exports/"))).when().post(host("/exports")));
+    String status = "queued";
+    for (int i = 0; i < 100 && !"finished".equals(status); i++) {
+      Thread.sleep(100);
+      status = given().pathParam("id", id).expect().statusCode(OK).when().get(host("/exports/{id}"))
+              .path("status");
+    }
+    assertEquals("finished", status);
+    given().pathParam("id", id).expect().body("exported", equalTo(2)).when().get(host("/exports/{id}"));
+
+    final byte[] export = given().pathParam("id", id).expect().statusCode(OK).when()
+            .get(host("/exports/{id}/file")).asByteArray();
+    final Map<String, String> files = new HashMap<>();
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(export))) {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        files.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+      }
+    }
+    assertEquals(3, files.size());
+    assertTrue(files.get("videos.json").contains("\"video_extid\":\"lecture8\""));
+    assertTrue(files.values().stream().anyMatch(file -> file.contains(",in lecture7,")));
+  }
+
+  @Test
+  public void testStatistics() throws Exception {
+    given().formParam("user_extid", "admin").formParam("nickname", "klausi").expect().when().put(host("/users"));
+    final String videoId = extractLocationId(given().formParam("video_extid", "lecture9").expect().statusCode(CREATED)
+            .when().put(host("/videos")));
+    final String trackId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "track")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+    final String categoryId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "Behavior")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/categories")));
+    final String labelId = extractLocationId(given().pathParam("videoId", videoId).pathParam("categoryId", categoryId)
+            .formParam("value", "Laughing").formParam("abbreviation", "LOL").expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/categories/{categoryId}/labels")));
+    for (int duration : new int[] { 2, 3 }) {
+      given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+              .formParam("content", labelAnnotation(Long.parseLong(labelId))).formParam("start", 5)
+              .formParam("duration", duration).expect().statusCode(CREATED)
+              .when().post(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    }
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .formParam("content", textAnnotation("not counted")).formParam("start", 5).expect()
+            .statusCode(CREATED).when().post(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+
+    given().pathParam("videoId", videoId).expect().statusCode(OK)
+            .body("labels", iterableWithSize(1))
+            .body("labels[0].id", equalTo(Integer.parseInt(labelId)))
+            .body("labels[0].category", equalTo("Behavior"))
+            .body("labels[0].count", equalTo(2))
+            .body("labels[0].duration", equalTo(5.0F))
+            .body("labels[0].tracks[0].id", equalTo(Integer.parseInt(trackId)))
+            .body("labels[0].users[0].nickname", equalTo("klausi"))
+            .body("labels[0].videos", nullValue())
+            .when().get(host("/videos/{videoId}/statistics"));
+    // the labels and categories are loaded along with the others of the video, not one by one
+    TestRestService.queries.reset();
+    given().pathParam("videoId", videoId).expect().statusCode(OK).when().get(host("/videos/{videoId}/statistics"));
+    assertEquals(0, TestRestService.queries.finds(LabelDto.class));
+    assertEquals(0, TestRestService.queries.finds(CategoryDto.class));
+    given().expect().statusCode(NOT_FOUND).when().get(host("/videos/12345/statistics"));
+
+    given().expect().statusCode(OK)
+            .body("labels[0].count", equalTo(2))
+            .body("labels[0].videos[0].video_extid", equalTo("lecture9"))
+            .when().get(host("/series/series1/statistics"));
+    given().expect().statusCode(OK).body("labels", iterableWithSize(0))
+            .when().get(host("/series/series2/statistics"));
+  }
+
+  @Test
+  public void testAgreement() throws Exception {
+    given().formParam("user_extid", "admin").formParam("nickname", "klausi").expect().when().put(host("/users"));
+    final String videoId = extractLocationId(given().formParam("video_extid", "lecture10").expect()
+            .statusCode(CREATED).when().put(host("/videos")));
+    final String categoryId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "Behavior")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/categories")));
+    final long[] labelIds = new long[2];
+    for (int i = 0; i < labelIds.length; i++) {
+      labelIds[i] = Long.parseLong(extractLocationId(given().pathParam("videoId", videoId)
+              .pathParam("categoryId", categoryId).formParam("value", "label" + i).formParam("abbreviation", "l" + i)
+              .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/categories/{categoryId}/labels"))));
+    }
+    final String[] trackIds = new String[2];
+    final int[][] annotations = { { 0, 10, 0 }, { 10, 10, 1 }, { 0, 15, 0 }, { 15, 5, 1 } };
+    for (int i = 0; i < annotations.length; i++) {
+      if (i % 2 == 0) {
+        trackIds[i / 2] = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "coder" + i)
+                .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+      }
+      given().pathParam("videoId", videoId).pathParam("trackId", trackIds[i / 2])
+              .formParam("content", labelAnnotation(labelIds[annotations[i][2]]))
+              .formParam("start", annotations[i][0]).formParam("duration", annotations[i][1])
+              .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    }
+
+    given().pathParam("videoId", videoId).queryParam("tracks", trackIds[0] + "," + trackIds[1]).expect()
+            .statusCode(OK)
+            .body("tracks", iterableWithSize(2))
+            .body("duration", equalTo(20.0F))
+            .body("observed_agreement", equalTo(0.75F))
+            .body("cohens_kappa", equalTo(0.5F))
+            .when().get(host("/videos/{videoId}/agreement"));
+    given().pathParam("videoId", videoId).queryParam("tracks", trackIds[0]).expect().statusCode(BAD_REQUEST)
+            .when().get(host("/videos/{videoId}/agreement"));
+    given().pathParam("videoId", videoId).queryParam("tracks", trackIds[0] + ",12345").expect()
+            .statusCode(NOT_FOUND).when().get(host("/videos/{videoId}/agreement"));
+  }
+
+  @Test
+  public void testConditionalGet() throws Exception {
+    given().formParam("user_extid", "admin").formParam("nickname", "klausi").expect().when().put(host("/users"));
+    final String videoId = extractLocationId(given().formParam("video_extid", "lecture").expect().statusCode(CREATED)
+            .when().put(host("/videos")));
+    final String trackId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "track")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+    final String annotationId = extractLocationId(given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .formParam("content", textAnnotation("first")).formParam("start", 1).expect().statusCode(CREATED)
+            .when().post(host("/videos/{videoId}/tracks/{trackId}/annotations")));
+
+    final String annotations = "/videos/{videoId}/tracks/{trackId}/annotations";
+    final String tag = given().pathParam("videoId", videoId).pathParam("trackId", trackId).expect().statusCode(OK)
+            .header("Cache-Control", equalTo("private, no-cache"))
+            .when().get(host(annotations)).getHeader("ETag");
+    assertTrue(tag.startsWith("\""));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).header("If-None-Match", tag).expect()
+            .statusCode(NOT_MODIFIED).header("ETag", equalTo(tag)).when().get(host(annotations));
+    // Other resources have their own tags
+    given().pathParam("videoId", videoId).header("If-None-Match", tag).expect().statusCode(OK)
+            .when().get(host("/videos/{videoId}/tracks"));
+
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("id", annotationId)
+            .formParam("content", textAnnotation("changed")).formParam("start", 1).expect().statusCode(OK)
+            .when().put(host(annotations + "/{id}"));
+    final String changed = given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .header("If-None-Match", tag).expect().statusCode(OK)
+            .when().get(host(annotations)).getHeader("ETag");
+    assertNotEquals(tag, changed);
+
+    final String annotationTag = given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .pathParam("id", annotationId).expect().statusCode(OK).when().get(host(annotations + "/{id}"))
+            .getHeader("ETag");
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("id", annotationId)
+            .header("If-None-Match", annotationTag).expect().statusCode(NOT_MODIFIED)
+            .when().get(host(annotations + "/{id}"));
+
+    // Changes right after each other, within the same second, change the tags, too
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("id", annotationId)
+            .formParam("content", textAnnotation("changed again")).formParam("start", 1).expect().statusCode(OK)
+            .when().put(host(annotations + "/{id}"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).header("If-None-Match", changed).expect()
+            .statusCode(OK).when().get(host(annotations));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("id", annotationId)
+            .header("If-None-Match", annotationTag).expect().statusCode(OK)
+            .when().get(host(annotations + "/{id}"));
+    final String comments = annotations + "/{id}/comments";
+    final String commentsTag = given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .pathParam("id", annotationId).expect().statusCode(OK).when().get(host(comments)).getHeader("ETag");
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("id", annotationId)
+            .formParam("text", "comment").expect().statusCode(CREATED).when().post(host(comments));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("id", annotationId)
+            .header("If-None-Match", commentsTag).expect().statusCode(OK).body("comments", iterableWithSize(1))
+            .when().get(host(comments));
+  }
+
+  @Test
+  public void testOneEntityManagerPerRequest() {
+    given().formParam("user_extid", "admin").formParam("nickname", "klausi").expect().when().put(host("/users"));
+    final String videoId = extractLocationId(given().formParam("video_extid", "lecture7").expect().statusCode(CREATED)
+            .when().put(host("/videos")));
+    final String trackId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "track")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+    final String categoryId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "Behavior")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/categories")));
+    final String labelId = extractLocationId(given().pathParam("videoId", videoId).pathParam("categoryId", categoryId)
+            .formParam("value", "Laughing").formParam("abbreviation", "LOL").expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/categories/{categoryId}/labels")));
+    final String annotationId = extractLocationId(given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .formParam("content", labelAnnotation(Long.parseLong(labelId))).formParam("start", 10).expect()
+            .statusCode(CREATED).when().post(host("/videos/{videoId}/tracks/{trackId}/annotations")));
+
+    // Each of these requests makes many calls to the service, but they all share one entity manager
+    assertEquals(1, entityManagers(() -> given().pathParam("videoId", videoId).pathParam("categoryId", categoryId)
+            .formParam("name", "Behaviour").expect().statusCode(OK).when()
+            .put(host("/videos/{videoId}/categories/{categoryId}"))));
+    assertEquals(1, entityManagers(() -> given().pathParam("videoId", videoId).pathParam("categoryId", categoryId)
+            .expect().statusCode(OK).body("labels", iterableWithSize(1)).when()
+            .get(host("/videos/{videoId}/categories/{categoryId}/labels"))));
+    assertEquals(1, entityManagers(() -> given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .expect().statusCode(OK).body("annotations", iterableWithSize(1)).when()
+            .get(host("/videos/{videoId}/tracks/{trackId}/annotations"))));
+    assertEquals(1, entityManagers(() -> given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .pathParam("annotationId", annotationId).formParam("text", "funny").expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations/{annotationId}/comments"))));
+    assertEquals(1, entityManagers(() -> given().pathParam("videoId", videoId).expect().statusCode(OK).when()
+            .get(host("/videos/{videoId}/bundle"))));
+    // including requests that fail
+    assertEquals(1, entityManagers(() -> given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .pathParam("id", 12345).expect().statusCode(NOT_FOUND).when()
+            .get(host("/videos/{videoId}/tracks/{trackId}/annotations/{id}"))));
+  }
+
+  /** Count the entity managers, and thus database connections, taken to answer a request. */
+  private static int entityManagers(Runnable request) {
+    TestRestService.queries.reset();
+    request.run();
+    return TestRestService.queries.entityManagers();
+  }
+
   @Test
   public void testCategory() {
     // create user and video
@@ -334,6 +695,16 @@ public class ExtendedAnnotationsRestServiceTest {
     given().pathParam("videoId", videoId).pathParam("scaleId", scaleId).expect().statusCode(OK)
             .body("scaleValues", iterableWithSize(1)).when()
             .get(host("/videos/{videoId}/scales/{scaleId}/scalevalues"));
+    // a scale value can only be reached through its own video and scale
+    final String otherVideoId = extractLocationId(given().formParam("video_extid", "other").expect()
+            .statusCode(CREATED).when().post(host("/videos")));
+    final String otherScaleId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "other")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/scales")));
+    given().pathParam("videoId", otherVideoId).pathParam("scaleId", scaleId).expect().statusCode(BAD_REQUEST)
+            .when().get(host("/videos/{videoId}/scales/{scaleId}/scalevalues"));
+    given().pathParam("videoId", videoId).pathParam("scaleId", otherScaleId).pathParam("scaleValueId", id)
+            .expect().statusCode(NOT_FOUND).when()
+            .get(host("/videos/{videoId}/scales/{scaleId}/scalevalues/{scaleValueId}"));
     // delete
     given().pathParam("videoId", "3290").pathParam("scaleId", scaleId).pathParam("scaleValueId", id).expect()
             .statusCode(BAD_REQUEST).when()
@@ -388,6 +759,18 @@ public class ExtendedAnnotationsRestServiceTest {
     given().pathParam("videoId", videoId).pathParam("categoryId", categoryId).expect().statusCode(OK)
             .body("labels", iterableWithSize(1)).when()
             .get(host("/videos/{videoId}/categories/{categoryId}/labels"));
+    // a label can only be reached through its own video and category
+    final String otherVideoId = extractLocationId(given().formParam("video_extid", "other").expect()
+            .statusCode(CREATED).when().post(host("/videos")));
+    final String otherCategoryId = extractLocationId(given().pathParam("videoId", videoId)
+            .formParam("name", "other").expect().statusCode(CREATED).when().post(host("/videos/{videoId}/categories")));
+    given().pathParam("videoId", otherVideoId).pathParam("categoryId", categoryId).expect()
+            .statusCode(BAD_REQUEST).when().get(host("/videos/{videoId}/categories/{categoryId}/labels"));
+    given().pathParam("videoId", otherVideoId).pathParam("categoryId", categoryId).pathParam("labelId", id).expect()
+            .statusCode(BAD_REQUEST).when().get(host("/videos/{videoId}/categories/{categoryId}/labels/{labelId}"));
+    given().pathParam("videoId", videoId).pathParam("categoryId", otherCategoryId).pathParam("labelId", id)
+            .expect().statusCode(NOT_FOUND).when()
+            .get(host("/videos/{videoId}/categories/{categoryId}/labels/{labelId}"));
     // delete
     given().pathParam("videoId", "3290").pathParam("categoryId", categoryId).pathParam("labelId", id).expect()
             .statusCode(BAD_REQUEST).when().delete(host("/videos/{videoId}/categories/{categoryId}/labels/{labelId}"));
@@ -524,6 +907,60 @@ public class ExtendedAnnotationsRestServiceTest {
             .when().post(host("/videos/{videoId}/tracks/{trackId}/annotations"));
   }
 
+  @Test
+  public void testVideoBundle() {
+    given().formParam("user_extid", "admin").formParam("nickname", "klausi").expect().when().put(host("/users"));
+    final String videoId = extractLocationId(given().formParam("video_extid", "lecture").expect().statusCode(CREATED)
+            .when().post(host("/videos")));
+    final String trackId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "track")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/tracks")));
+    given().pathParam("videoId", videoId).formParam("name", "empty track").expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/tracks"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).formParam("content", textAnnotation("one"))
+            .formParam("start", 10).expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).formParam("content", textAnnotation("two"))
+            .formParam("start", 20).expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    final String categoryId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "categoryName")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/categories")));
+    given().pathParam("videoId", videoId).pathParam("categoryId", categoryId).formParam("value", "testValue")
+            .formParam("abbreviation", "testAbbreviation").expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/categories/{categoryId}/labels"));
+    final String scaleId = extractLocationId(given().pathParam("videoId", videoId).formParam("name", "scaleName")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/scales")));
+    given().pathParam("videoId", videoId).pathParam("scaleId", scaleId).formParam("name", "scaleValueName")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/scales/{scaleId}/scalevalues"));
+
+    // get
+    given().pathParam("videoId", 12345).expect().statusCode(NOT_FOUND).when().get(host("/videos/{videoId}/bundle"));
+    given().pathParam("videoId", videoId).expect().statusCode(OK)
+            .body("video.video_extid", equalTo("lecture"))
+            .body("tracks", iterableWithSize(2))
+            .body("tracks.find { it.name == 'track' }.annotations", iterableWithSize(2))
+            .body("tracks.find { it.name == 'empty track' }.annotations", iterableWithSize(0))
+            .body("categories", iterableWithSize(1))
+            .body("categories[0].labels[0].abbreviation", equalTo("testAbbreviation"))
+            .body("scales", iterableWithSize(1))
+            .body("scales[0].scaleValues[0].name", equalTo("scaleValueName"))
+            .body("questionnaires", iterableWithSize(0))
+            .when().get(host("/videos/{videoId}/bundle"));
+
+    // the labels and scale values are serialized with the categories and scales loaded for the bundle
+    given().pathParam("videoId", videoId).pathParam("categoryId", categoryId).formParam("value", "otherValue")
+            .formParam("abbreviation", "otherAbbreviation").expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/categories/{categoryId}/labels"));
+    given().pathParam("videoId", videoId).pathParam("scaleId", scaleId).formParam("name", "otherScaleValueName")
+            .expect().statusCode(CREATED).when().post(host("/videos/{videoId}/scales/{scaleId}/scalevalues"));
+    TestRestService.queries.reset();
+    given().pathParam("videoId", videoId).expect().statusCode(OK)
+            .body("categories[0].labels", iterableWithSize(2))
+            .body("scales[0].scaleValues", iterableWithSize(2))
+            .when().get(host("/videos/{videoId}/bundle"));
+    assertEquals(0, TestRestService.queries.finds(CategoryDto.class));
+    assertEquals(0, TestRestService.queries.finds(ScaleDto.class));
+  }
+
   @Test
   public void testReply() {
     // create user, video, annotation and comment
@@ -629,6 +1066,48 @@ public class ExtendedAnnotationsRestServiceTest {
             .body("comments", iterableWithSize(1)).when()
             .get(host("/videos/{videoId}/tracks/{trackId}/annotations/{annotationId}/comments/{commentId}/replies"));
 
+    // annotations come with the number of their comments and replies
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).expect().statusCode(OK)
+            .body("annotations[0].comment_count", equalTo(5))
+            .when().get(host("/videos/{videoId}/tracks/{trackId}/annotations"));
+    given().pathParam("videoId", videoId).expect().statusCode(OK)
+            .body("tracks[0].annotations[0].comment_count", equalTo(5))
+            .when().get(host("/videos/{videoId}/bundle"));
+
+    // get the whole discussion at once
+    final String nestedId = extractLocationId(given().pathParam("videoId", videoId).pathParam("trackId", trackId)
+            .pathParam("annotationId", annotationId).pathParam("commentId", id).formParam("text", "Reply to reply")
+            .expect().statusCode(CREATED).when()
+            .post(host("/videos/{videoId}/tracks/{trackId}/annotations/{annotationId}/comments/{commentId}/replies")));
+    final String comments = "/videos/{videoId}/tracks/{trackId}/annotations/{annotationId}/comments";
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("annotationId", annotationId)
+            .queryParam("thread", "full").expect().statusCode(OK)
+            .body("comments", iterableWithSize(2))
+            .body("comments[0].id", equalTo(Integer.parseInt(commentId)))
+            .body("comments[0].replies", iterableWithSize(2))
+            .body("comments[0].replies[0].text", equalTo("Updated reply"))
+            .body("comments[0].replies[0].replies[0].id", equalTo(Integer.parseInt(nestedId)))
+            .body("comments[0].replies[1].replies", iterableWithSize(0))
+            .body("comments[1].replies", iterableWithSize(1))
+            .body("next", nullValue())
+            .when().get(host(comments));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("annotationId", annotationId)
+            .queryParam("thread", "full").queryParam("limit", 1).expect().statusCode(OK)
+            .body("comments", iterableWithSize(1))
+            .body("comments[0].replies", iterableWithSize(2))
+            .body("next", equalTo(Integer.parseInt(commentId)))
+            .when().get(host(comments));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("annotationId", annotationId)
+            .queryParam("thread", "full").queryParam("after", commentId).queryParam("limit", 1).expect()
+            .statusCode(OK)
+            .body("comments", iterableWithSize(1))
+            .body("comments[0].id", equalTo(Integer.parseInt(commentId2)))
+            .body("comments[0].replies", iterableWithSize(1))
+            .body("next", nullValue())
+            .when().get(host(comments));
+    given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("annotationId", annotationId)
+            .queryParam("thread", "partial").expect().statusCode(BAD_REQUEST).when().get(host(comments));
+
     // delete
     given().pathParam("videoId", videoId).pathParam("trackId", trackId).pathParam("annotationId", annotationId)
             .pathParam("commentId", 42323).expect().statusCode(NOT_FOUND).when()
@@ -649,7 +1128,8 @@ public class ExtendedAnnotationsRestServiceTest {
 
   // --
 
-  static final RestServiceTestEnv rt = testEnvForClasses(TestRestService.class);
+  static final RestServiceTestEnv rt = testEnvForClasses(TestRestService.class,
+          TestRestService.TestUnitOfWorkFilter.class);
 
   @BeforeClass
   public static void setUp() {
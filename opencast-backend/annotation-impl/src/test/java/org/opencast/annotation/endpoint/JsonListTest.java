@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.opencastproject.util.data.Option.none;
+import static org.opencastproject.util.data.Option.some;
+
+import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.api.Track;
+import org.opencast.annotation.impl.ResourceImpl;
+import org.opencast.annotation.impl.TrackImpl;
+import org.opencast.annotation.impl.persistence.TrackDto;
+import org.opencast.annotation.impl.persistence.UserResolver;
+
+import org.easymock.EasyMock;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+public class JsonListTest {
+  private final ExtendedAnnotationService eas = EasyMock.createNiceMock(ExtendedAnnotationService.class);
+  private final Resource resource = new ResourceImpl(some(Resource.PRIVATE), none(), none(), none(), none(), none(),
+          none(), new HashMap<>());
+
+  @Test
+  public void testWrite() throws Exception {
+    JSONObject json = write(JsonList.of(eas, "tracks",
+            LongStream.range(0, 3).mapToObj(id -> track(id, "track \"" + id + "\"")),
+            (users, t) -> TrackDto.toJson(eas, users, t)));
+    JSONArray tracks = (JSONArray) json.get("tracks");
+    assertEquals(3, tracks.size());
+    assertEquals("track \"2\"", ((JSONObject) tracks.get(2)).get("name"));
+  }
+
+  @Test
+  public void testWriteEmpty() throws Exception {
+    JSONObject json = write(JsonList.of(eas, "tracks", Stream.<Track> empty(),
+            (users, t) -> TrackDto.toJson(eas, users, t)));
+    assertEquals(0, ((JSONArray) json.get("tracks")).size());
+  }
+
+  @Test
+  public void testWriteStreamedInChunks() throws Exception {
+    final List<Integer> chunkSizes = new ArrayList<>();
+    final AtomicInteger loaded = new AtomicInteger();
+    final int size = 2 * JsonList.CHUNK_SIZE + 1;
+    JSONObject json = write(JsonList.streamed("tracks",
+            IntStream.range(0, size).peek(id -> loaded.incrementAndGet()).mapToObj(id -> track(id, "track " + id)),
+            chunk -> {
+              // only the chunk about to be written has been loaded
+              chunkSizes.add(chunk.size());
+              assertEquals(chunkSizes.stream().mapToInt(Integer::intValue).sum(), loaded.get());
+              UserResolver users = UserResolver.of(eas, chunk);
+              return t -> TrackDto.toJson(eas, users, t);
+            }));
+    assertEquals(List.of(JsonList.CHUNK_SIZE, JsonList.CHUNK_SIZE, 1), chunkSizes);
+    JSONArray tracks = (JSONArray) json.get("tracks");
+    assertEquals(size, tracks.size());
+    assertEquals("track " + (size - 1), ((JSONObject) tracks.get(size - 1)).get("name"));
+  }
+
+  private Track track(long id, String name) {
+    return new TrackImpl(id, 1, name, none(), none(), resource);
+  }
+
+  private static JSONObject write(JsonList<?> list) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    list.write(out);
+    return (JSONObject) new JSONParser().parse(out.toString(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class SpreadsheetTest {
+
+  @Test
+  public void testCsv() throws Exception {
+    assertEquals("1,1.5,NaN,\"a,b\",\r\n",
+            new String(write(Spreadsheet.Format.CSV, Arrays.asList(1.0D, 1.5D, Double.NaN, "a,b", null)),
+                    StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testXlsxNonFiniteNumbers() throws Exception {
+    final String sheet = sheet(write(Spreadsheet.Format.XLSX,
+            Arrays.asList(1.0D, Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY)));
+    assertTrue(sheet, sheet.contains("<c r=\"A1\"><v>1</v></c>"));
+    // numbers spreadsheets cannot represent are written as text
+    assertTrue(sheet, sheet.contains("<c r=\"B1\" t=\"inlineStr\"><is><t xml:space=\"preserve\">NaN</t></is></c>"));
+    assertTrue(sheet, sheet.contains("<t xml:space=\"preserve\">Infinity</t>"));
+    assertTrue(sheet, sheet.contains("<t xml:space=\"preserve\">-Infinity</t>"));
+  }
+
+  private static byte[] write(Spreadsheet.Format format, List<?> row) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final Spreadsheet spreadsheet = Spreadsheet.open(format, out);
+    spreadsheet.writeRow(row);
+    spreadsheet.finish();
+    return out.toByteArray();
+  }
+
+  private static String sheet(byte[] xlsx) throws Exception {
+    try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(xlsx))) {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        if (entry.getName().equals("xl/worksheets/sheet1.xml")) {
+          return new String(zip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+      }
+    }
+    throw new AssertionError("The workbook has no sheet");
+  }
+}
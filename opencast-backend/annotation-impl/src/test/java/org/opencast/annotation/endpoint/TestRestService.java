@@ -19,9 +19,11 @@ import static org.opencastproject.db.DBTestEnv.getDbSessionFactory;
 import static org.opencastproject.db.DBTestEnv.newEntityManagerFactory;
 
 import org.opencast.annotation.api.ExtendedAnnotationService;
+import org.opencast.annotation.impl.QueryCounter;
 import org.opencast.annotation.impl.persistence.ExtendedAnnotationServiceJpaImpl;
 
 import org.opencastproject.mediapackage.MediaPackage;
+import org.opencastproject.mediapackage.identifier.IdImpl;
 import org.opencastproject.search.api.SearchService;
 import org.opencastproject.security.api.AuthorizationService;
 import org.opencastproject.security.api.DefaultOrganization;
@@ -31,12 +33,21 @@ import org.opencastproject.security.api.User;
 import org.opencastproject.security.util.SecurityUtil;
 import org.opencastproject.util.NotFoundException;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.easymock.EasyMock;
 import org.junit.Ignore;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
 import javax.ws.rs.DELETE;
 import javax.ws.rs.Path;
+import javax.ws.rs.container.PreMatching;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
 
 @Path("/")
 // put @Ignore here to prevent maven surefire from complaining about missing test methods
@@ -46,14 +57,26 @@ public class TestRestService extends AbstractExtendedAnnotationsRestService {
   // Haven't found out who's responsible forf this but that's the way it is.
   public static final ExtendedAnnotationServiceJpaImpl extendedAnnotationService =
           new ExtendedAnnotationServiceJpaImpl();
+  /** Counts the entity managers, and thus database connections, the requests take */
+  public static final QueryCounter queries = new QueryCounter(
+          newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
   static {
     extendedAnnotationService.setSearchService(getSearchService());
     extendedAnnotationService.setSecurityService(getSecurityService());
     extendedAnnotationService.setAuthorizationService(getAuthorizationService());
-    extendedAnnotationService.setEntityManagerFactory(
-            newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    extendedAnnotationService.setEntityManagerFactory(queries.getEntityManagerFactory());
     extendedAnnotationService.setDBSessionFactory(getDbSessionFactory());
-    extendedAnnotationService.activate();
+    extendedAnnotationService.activate(Map.of());
+  }
+
+  private static final ExportJobs exportJobs;
+  static {
+    try {
+      exportJobs = new ExportJobs(getSecurityService(), extendedAnnotationService,
+              Files.createTempDirectory("annotation-tool-exports"), 2);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   @Override
@@ -88,8 +111,16 @@ public class TestRestService extends AbstractExtendedAnnotationsRestService {
 
   private static SearchService getSearchService() {
     MediaPackage mediaPackage = EasyMock.createNiceMock(MediaPackage.class);
+    // The media package of the only video in series1
+    MediaPackage seriesMediaPackage = EasyMock.createNiceMock(MediaPackage.class);
+    EasyMock.expect(seriesMediaPackage.getIdentifier()).andReturn(new IdImpl("lecture9")).anyTimes();
+    EasyMock.replay(seriesMediaPackage);
 
     SearchService searchService = EasyMock.createNiceMock(SearchService.class);
+    EasyMock.expect(searchService.getSeries("series1"))
+            .andReturn(List.of(Pair.of(new DefaultOrganization(), seriesMediaPackage))).anyTimes();
+    EasyMock.expect(searchService.getSeries(EasyMock.anyObject(String.class)))
+            .andReturn(List.of()).anyTimes();
     try {
       EasyMock.expect(searchService.get(EasyMock.anyObject(String.class))).andReturn(mediaPackage).anyTimes();
     } catch (UnauthorizedException | NotFoundException e) {
@@ -99,6 +130,22 @@ public class TestRestService extends AbstractExtendedAnnotationsRestService {
     return searchService;
   }
 
+  /**
+   * Handles the test requests in units of work of the test service.
+   */
+  @Provider
+  @PreMatching
+  public static class TestUnitOfWorkFilter extends UnitOfWorkFilter {
+    public TestUnitOfWorkFilter() {
+      super(extendedAnnotationService);
+    }
+  }
+
+  @Override
+  protected ExportJobs getExportJobs() {
+    return exportJobs;
+  }
+
   @Override
   protected String getEndpointBaseUrl() {
     return ExtendedAnnotationsRestServiceTest.rt.host("/");
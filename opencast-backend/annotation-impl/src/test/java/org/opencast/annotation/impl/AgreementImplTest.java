@@ -0,0 +1,109 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.opencast.annotation.api.Agreement;
+import org.opencast.annotation.api.AnnotationSummary;
+
+import org.opencastproject.util.data.Option;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class AgreementImplTest {
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void testTwoTracks() {
+    // label 1 is agreed on for 10 seconds and label 2 for 5, they disagree for 5 seconds in between
+    final Agreement agreement = AgreementImpl.of(List.of(1L, 2L), List.of(
+            List.of(annotation(0, 10, 1L), annotation(10, 10, 2L)),
+            List.of(annotation(0, 15, 1L), annotation(15, 5, 2L))));
+    assertEquals(20, agreement.getDuration(), DELTA);
+    assertEquals(0.75, agreement.getObservedAgreement().get(), DELTA);
+    assertEquals(0.5, agreement.getCohensKappa().get(), DELTA);
+    assertEquals(0.21875 / 0.46875, agreement.getFleissKappa().get(), DELTA);
+    assertEquals(0.48, agreement.getKrippendorffsAlpha().get(), DELTA);
+  }
+
+  @Test
+  public void testUnlabelledTimeIsIgnored() {
+    // the gap between 10 and 100 and the annotations without labels or duration do not count
+    final Agreement agreement = AgreementImpl.of(List.of(1L, 2L), List.of(
+            List.of(annotation(0, 10, 1L), annotation(100, 10, 2L), annotation(50, 10)),
+            List.of(annotation(0, 10, 1L), annotation(100, 10, 2L), annotation(50, 0, 1L))));
+    assertEquals(20, agreement.getDuration(), DELTA);
+    assertEquals(1, agreement.getObservedAgreement().get(), DELTA);
+    assertEquals(1, agreement.getCohensKappa().get(), DELTA);
+  }
+
+  @Test
+  public void testOverlappingAnnotations() {
+    // between 5 and 10 the first track assigns both labels, which the second track does not
+    final Agreement agreement = AgreementImpl.of(List.of(1L, 2L, 3L), List.of(
+            List.of(annotation(0, 10, 1L), annotation(5, 10, 2L)),
+            List.of(annotation(0, 5, 1L), annotation(5, 10, 2L)),
+            List.of(annotation(0, 5, 1L), annotation(5, 10, 2L))));
+    assertEquals(15, agreement.getDuration(), DELTA);
+    assertEquals(10.0 / 15, agreement.getObservedAgreement().get(), DELTA);
+    assertTrue(agreement.getCohensKappa().isNone());
+    assertTrue(agreement.getFleissKappa().get() < 1);
+  }
+
+  @Test
+  public void testUndefined() {
+    // everybody always assigns the same label, so there is no chance agreement to correct for
+    final Agreement same = AgreementImpl.of(List.of(1L, 2L), List.of(
+            List.of(annotation(0, 10, 1L)), List.of(annotation(0, 10, 1L))));
+    assertEquals(1, same.getObservedAgreement().get(), DELTA);
+    assertTrue(same.getCohensKappa().isNone());
+    assertTrue(same.getFleissKappa().isNone());
+    assertTrue(same.getKrippendorffsAlpha().isNone());
+    // nothing to compare at all
+    final Agreement empty = AgreementImpl.of(List.of(1L, 2L), List.of(List.of(), List.of()));
+    assertEquals(0, empty.getDuration(), DELTA);
+    assertTrue(empty.getObservedAgreement().isNone());
+  }
+
+  private static AnnotationSummary annotation(double start, double duration, Long... labelIds) {
+    return new AnnotationSummary() {
+      @Override
+      public long getId() {
+        return 0;
+      }
+
+      @Override
+      public double getStart() {
+        return start;
+      }
+
+      @Override
+      public Option<Double> getDuration() {
+        return Option.some(duration);
+      }
+
+      @Override
+      public List<Long> getLabelIds() {
+        return Arrays.asList(labelIds);
+      }
+    };
+  }
+}
@@ -19,27 +19,43 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.opencast.annotation.Annotations.labelAnnotation;
+import static org.opencast.annotation.Annotations.scalingAnnotation;
 import static org.opencast.annotation.Annotations.textAnnotation;
+import static org.opencast.annotation.api.ExtendedAnnotationService.ANNOTATE_ADMIN_ACTION;
 import static org.opencastproject.db.DBTestEnv.getDbSessionFactory;
 import static org.opencastproject.db.DBTestEnv.newEntityManagerFactory;
 import static org.opencastproject.util.data.Option.none;
 import static org.opencastproject.util.data.Option.some;
 
 import org.opencast.annotation.api.Annotation;
+import org.opencast.annotation.api.AnnotationOperation;
+import org.opencast.annotation.api.AnnotationSummary;
 import org.opencast.annotation.api.Category;
 import org.opencast.annotation.api.Comment;
 import org.opencast.annotation.api.ExtendedAnnotationException;
 import org.opencast.annotation.api.ExtendedAnnotationException.Cause;
 import org.opencast.annotation.api.ExtendedAnnotationService;
 import org.opencast.annotation.api.Label;
+import org.opencast.annotation.api.LabelUsage;
+import org.opencast.annotation.api.Questionnaire;
 import org.opencast.annotation.api.Resource;
+import org.opencast.annotation.api.ResourceCollection;
 import org.opencast.annotation.api.Scale;
 import org.opencast.annotation.api.ScaleValue;
 import org.opencast.annotation.api.Track;
+import org.opencast.annotation.api.UnitOfWork;
 import org.opencast.annotation.api.User;
 import org.opencast.annotation.api.Video;
+import org.opencast.annotation.impl.persistence.AnnotationDto;
+import org.opencast.annotation.impl.persistence.AnnotationSummaryDto;
+import org.opencast.annotation.impl.persistence.CategoryDto;
 import org.opencast.annotation.impl.persistence.ExtendedAnnotationServiceJpaImpl;
+import org.opencast.annotation.impl.persistence.LabelDto;
+import org.opencast.annotation.impl.persistence.UserResolver;
+import org.opencast.annotation.impl.persistence.VideoDto;
 
+import org.opencastproject.mediapackage.MediaPackage;
 import org.opencastproject.search.api.SearchService;
 import org.opencastproject.security.api.AuthorizationService;
 import org.opencastproject.security.api.DefaultOrganization;
@@ -51,8 +67,20 @@ import org.opencastproject.util.data.Option;
 import org.easymock.EasyMock;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
 public class ExtendedAnnotationServiceJpaImplTest {
 
@@ -122,6 +150,129 @@ public class ExtendedAnnotationServiceJpaImplTest {
     assertTrue(eas.getUser(u.getId()).isNone());
   }
 
+  @Test
+  public void testCurrentUserIdIsCached() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    for (int i = 0; i < 1000; i++) {
+      eas.createTrack(v.getId(), "track " + i, none(), none(), resource);
+    }
+    final User u = eas.createUser("admin", "Administrator", none(), resource);
+
+    queries.reset();
+    assertEquals(1000, eas.getTracks(v.getId()).count());
+    assertEquals(1, queries.count("User.findByUserId"));
+
+    // changes to users are picked up
+    eas.deleteUser(u);
+    queries.reset();
+    assertEquals(1000, eas.getTracks(v.getId()).count());
+    assertEquals(1, queries.count("User.findByUserId"));
+  }
+
+  @Test
+  public void testCurrentUserIdOfUncommittedUser() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    assertTrue(eas.createResource().getCreatedBy().isNone());
+
+    // users that are rolled back do not end up in the cache
+    UnitOfWork unitOfWork = eas.beginUnitOfWork();
+    final User rolledBack = eas.createUser("admin", "Administrator", none(), eas.createResource());
+    assertEquals(some(rolledBack.getId()), eas.createResource().getCreatedBy());
+    unitOfWork.rollback();
+    assertTrue(eas.createResource().getCreatedBy().isNone());
+
+    unitOfWork = eas.beginUnitOfWork();
+    final User committed = eas.createUser("admin", "Administrator", none(), eas.createResource());
+    unitOfWork.commit();
+    assertEquals(some(committed.getId()), eas.createResource().getCreatedBy());
+  }
+
+  @Test
+  public void testUnitOfWork() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Annotation a = eas.createAnnotation(t.getId(), 10.0D, none(), textAnnotation("cool video"), 0, none(),
+            resource);
+
+    // without a unit of work, every call takes an entity manager of its own
+    queries.reset();
+    loadAnnotation(eas, v, t, a);
+    assertTrue(queries.entityManagers() > 1);
+
+    queries.reset();
+    UnitOfWork unitOfWork = eas.beginUnitOfWork();
+    loadAnnotation(eas, v, t, a);
+    final Comment c = eas.createComment(a.getId(), none(), "comment", resource);
+    unitOfWork.commit();
+    assertEquals(1, queries.entityManagers());
+    assertTrue(eas.getComment(c.getId()).isSome());
+
+    // rolled back changes are discarded
+    unitOfWork = eas.beginUnitOfWork();
+    final Comment discarded = eas.createComment(a.getId(), none(), "discarded", resource);
+    unitOfWork.rollback();
+    assertTrue(eas.getComment(discarded.getId()).isNone());
+
+    // the caches only learn about changes once they are committed
+    assertEquals(List.of(a.getId()), annotationIds(eas.getAnnotations(t.getId(), some(10.0D), some(10.0D), none(),
+            none())));
+    unitOfWork = eas.beginUnitOfWork();
+    final Annotation rolledBack = eas.createAnnotation(t.getId(), 10.0D, none(), textAnnotation("rolled back"), 0,
+            none(), resource);
+    assertEquals(List.of(a.getId(), rolledBack.getId()), annotationIds(eas.getAnnotations(t.getId(), some(10.0D),
+            some(10.0D), none(), none())));
+    unitOfWork.rollback();
+    assertEquals(List.of(a.getId()), annotationIds(eas.getAnnotations(t.getId(), some(10.0D), some(10.0D), none(),
+            none())));
+    unitOfWork = eas.beginUnitOfWork();
+    final Annotation committed = eas.createAnnotation(t.getId(), 10.0D, none(), textAnnotation("committed"), 0,
+            none(), resource);
+    unitOfWork.commit();
+    assertEquals(List.of(a.getId(), committed.getId()), annotationIds(eas.getAnnotations(t.getId(), some(10.0D),
+            some(10.0D), none(), none())));
+
+    // errors surface at the call causing them
+    eas.createUser("jsbach", "J.S. Bach", none(), resource);
+    unitOfWork = eas.beginUnitOfWork();
+    expectCause(Cause.DUPLICATE, new Effect0() {
+      @Override
+      protected void run() {
+        eas.createUser("jsbach", "J.S. Bach", none(), resource);
+      }
+    });
+    unitOfWork.commit();
+    assertTrue(eas.getUserByExtId("jsbach").isSome());
+  }
+
+  /** The calls to the service made to answer a request for an annotation */
+  private static void loadAnnotation(ExtendedAnnotationService eas, Video v, Track t, Annotation a) {
+    assertTrue(eas.getVideo(v.getId()).isSome());
+    assertTrue(eas.getAnnotation(v.getId(), t.getId(), a.getId()).isSome());
+    eas.getVersion(ResourceCollection.CATEGORIES_OF_VIDEO, v.getId());
+    eas.getUsersVersion();
+  }
+
+  @Test
+  public void testGetUsers() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    final Resource resource = eas.createResource();
+    final User u1 = eas.createUser("user1", "User 1", none(), resource);
+    final User u2 = eas.createUser("user2", "User 2", none(), resource);
+    final User u3 = eas.createUser("user3", "User 3", none(), resource);
+    eas.deleteUser(u3);
+
+    List<String> nicknames = eas.getUsers(List.of(u1.getId(), u2.getId(), u3.getId(), 999L))
+            .map(User::getNickname).sorted().collect(Collectors.toList());
+    assertEquals(List.of("User 1", "User 2"), nicknames);
+    assertEquals(0, eas.getUsers(List.of()).count());
+  }
+
   @Test
   public void testCreateFindAndDeleteVideo() {
     ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -133,6 +284,53 @@ public class ExtendedAnnotationServiceJpaImplTest {
     assertTrue(eas.getUserByExtId("lecture1").isNone());
   }
 
+  @Test
+  public void testStreamVideoAnnotations() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t1 = eas.createTrack(v.getId(), "track 1", none(), none(), resource);
+    final Track t2 = eas.createTrack(v.getId(), "track 2", none(), none(), resource);
+    for (int i = 0; i < 1200; i++) {
+      eas.createAnnotation(i % 2 == 0 ? t1.getId() : t2.getId(), i, none(), textAnnotation("a"), 0, none(),
+              resource);
+    }
+
+    queries.reset();
+    final List<Long> ids = eas.streamVideoAnnotations(v.getId()).map(Annotation::getId).collect(Collectors.toList());
+    assertEquals(1200, ids.size());
+    assertEquals(ids.stream().sorted().collect(Collectors.toList()), ids);
+    // two pages
+    assertEquals(2, queries.count("Annotation.findAllOfVideoAfter"));
+    // pages are only loaded when they are needed
+    queries.reset();
+    assertEquals(10, eas.streamVideoAnnotations(v.getId()).limit(10).count());
+    assertEquals(1, queries.count("Annotation.findAllOfVideoAfter"));
+  }
+
+  @Test
+  public void testDeleteVideoCascades() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video other = eas.createVideo("other", resource);
+    final Track otherTrack = eas.createTrack(other.getId(), "track", none(), none(), resource);
+    // the number of statements does not depend on the amount of data
+    assertEquals(deleteVideoOfSize(eas, queries, "small", 1), deleteVideoOfSize(eas, queries, "large", 10));
+    assertTrue(eas.getVideo(other.getId()).isSome());
+    assertTrue(eas.getTrack(otherTrack.getId()).isSome());
+    // deleted videos cannot be deleted again
+    final Video v = eas.createVideo("lecture", resource);
+    eas.deleteVideo(v);
+    expectCause(Cause.NOT_FOUND, new Effect0() {
+      @Override
+      protected void run() {
+        eas.deleteVideo(v);
+      }
+    });
+  }
+
   @Test
   public void testCreateDuplicateVideo() {
     final ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -158,6 +356,47 @@ public class ExtendedAnnotationServiceJpaImplTest {
     assertEquals("talk", eas.getVideo(v.getId()).get().getExtId());
   }
 
+  @Test
+  public void testSharedCache() {
+    final EntityManagerFactory emf = newEntityManagerFactory("org.opencast.annotation.impl.persistence");
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(emf,
+            Map.of(ExtendedAnnotationServiceJpaImpl.SHARED_CACHE_ENABLED_KEY, "true"));
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Category c = eas.createCategory(none(), none(), v.getId(), none(), "c", none(), none(), resource);
+    final Label l = eas.createLabel(c.getId(), "l", "l", none(), none(), resource);
+    assertEquals("lecture", eas.getVideo(v.getId()).get().getExtId());
+    assertEquals("l", eas.getLabel(l.getId(), false).get().getValue());
+
+    // the cached entities are used ...
+    execute(emf, "UPDATE xannotations_video SET extid = 'changed elsewhere'");
+    assertEquals("lecture", eas.getVideo(v.getId()).get().getExtId());
+
+    // ... but updates through the service are visible immediately
+    eas.updateVideo(new VideoImpl(v.getId(), "talk", resource));
+    assertEquals("talk", eas.getVideo(v.getId()).get().getExtId());
+    eas.updateLabel(new LabelImpl(l.getId(), none(), c.getId(), "updated", "u", none(), none(), resource));
+    assertEquals("updated", eas.getLabel(l.getId(), false).get().getValue());
+    eas.deleteCategory(c);
+    assertTrue(eas.getCategory(c.getId(), false).isNone());
+    assertTrue(eas.getLabel(l.getId(), false).isNone());
+    eas.deleteVideo(eas.getVideo(v.getId()).get());
+    assertTrue(eas.getVideo(v.getId()).isNone());
+  }
+
+  @Test
+  public void testSharedCacheIsOptIn() {
+    final EntityManagerFactory emf = newEntityManagerFactory("org.opencast.annotation.impl.persistence");
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(emf);
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    assertEquals("lecture", eas.getVideo(v.getId()).get().getExtId());
+
+    // changes made by other nodes are visible immediately
+    execute(emf, "UPDATE xannotations_video SET extid = 'changed elsewhere'");
+    assertEquals("changed elsewhere", eas.getVideo(v.getId()).get().getExtId());
+  }
+
   @Test
   public void testUpdateNonExistingVideo() {
     final ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -246,6 +485,393 @@ public class ExtendedAnnotationServiceJpaImplTest {
             eas.getAnnotations(t.getId()).count());
   }
 
+  @Test
+  public void testGetByPath() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    final Resource resource = eas.createResource(some(Resource.PUBLIC), none());
+    final Video v = eas.createVideo("lecture", resource);
+    final Video other = eas.createVideo("other", resource);
+    final Track t = eas.createTrack(v.getId(), "track1", none(), none(), resource);
+    final Track t2 = eas.createTrack(v.getId(), "track2", none(), none(), resource);
+    final Annotation a = eas.createAnnotation(t.getId(), 20.0D, some(10.0D), textAnnotation("cool video"),
+            0, none(), resource);
+    final Annotation a2 = eas.createAnnotation(t.getId(), 30.0D, none(), textAnnotation("nice!"), 0, none(),
+            resource);
+    final Comment c = eas.createComment(a.getId(), none(), "comment", resource);
+    // tracks
+    assertEquals(t, eas.getTrack(v.getId(), t.getId()).get());
+    assertTrue(eas.getTrack(other.getId(), t.getId()).isNone());
+    // annotations
+    assertEquals(a, eas.getAnnotation(v.getId(), t.getId(), a.getId()).get());
+    assertTrue(eas.getAnnotation(v.getId(), t2.getId(), a.getId()).isNone());
+    assertTrue(eas.getAnnotation(other.getId(), t.getId(), a.getId()).isNone());
+    // comments
+    assertEquals(c, eas.getComment(v.getId(), t.getId(), a.getId(), c.getId()).get());
+    assertTrue(eas.getComment(v.getId(), t.getId(), a2.getId(), c.getId()).isNone());
+    assertTrue(eas.getComment(v.getId(), t2.getId(), a.getId(), c.getId()).isNone());
+    assertTrue(eas.getComment(other.getId(), t.getId(), a.getId(), c.getId()).isNone());
+    // deleted parents hide their children
+    eas.deleteTrack(t);
+    assertTrue(eas.getAnnotation(v.getId(), t.getId(), a.getId()).isNone());
+    assertTrue(eas.getComment(v.getId(), t.getId(), a.getId(), c.getId()).isNone());
+  }
+
+  @Test
+  public void testGetAnnotationsInInterval() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    final Resource resource = eas.createResource(some(Resource.PUBLIC), none());
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track1", none(), none(), resource);
+    final Annotation a = eas.createAnnotation(t.getId(), 40.0D, some(5.0D), textAnnotation("a"), 0, none(), resource);
+    final Annotation b = eas.createAnnotation(t.getId(), 10.0D, none(), textAnnotation("b"), 0, none(), resource);
+    final Annotation c = eas.createAnnotation(t.getId(), 20.0D, some(10.0D), textAnnotation("c"), 0, none(),
+            resource);
+    // everything, sorted by start
+    assertEquals(List.of(b.getId(), c.getId(), a.getId()),
+            annotationIds(eas.getAnnotations(t.getId(), none(), none(), none(), none())));
+    // annotations still being displayed at the start of the window are included
+    assertEquals(List.of(c.getId(), a.getId()),
+            annotationIds(eas.getAnnotations(t.getId(), some(25.0D), none(), none(), none())));
+    // annotations without a duration are only displayed at their start
+    assertEquals(List.of(b.getId()),
+            annotationIds(eas.getAnnotations(t.getId(), some(10.0D), some(15.0D), none(), none())));
+    assertEquals(List.of(),
+            annotationIds(eas.getAnnotations(t.getId(), some(31.0D), some(39.0D), none(), none())));
+    // pagination
+    assertEquals(List.of(c.getId()),
+            annotationIds(eas.getAnnotations(t.getId(), none(), none(), some(1), some(1))));
+    assertEquals(List.of(c.getId(), a.getId()),
+            annotationIds(eas.getAnnotations(t.getId(), none(), none(), some(1), none())));
+    // deleted annotations are never returned
+    eas.deleteAnnotation(c);
+    assertEquals(List.of(b.getId(), a.getId()),
+            annotationIds(eas.getAnnotations(t.getId(), none(), some(100.0D), none(), some(10))));
+  }
+
+  @Test
+  public void testAnnotationIntervalsAreIndexed() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource(some(Resource.PUBLIC), none());
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Annotation a = eas.createAnnotation(t.getId(), 10.0D, some(10.0D), textAnnotation("a"), 0, none(),
+            resource);
+    final Annotation b = eas.createAnnotation(t.getId(), 15.0D, none(), textAnnotation("b"), 0, none(), resource);
+
+    queries.reset();
+    assertEquals(List.of(a.getId(), b.getId()),
+            annotationIds(eas.getAnnotations(t.getId(), some(15.0D), some(15.0D), none(), none())));
+    assertEquals(1, queries.count("Annotation.findIntervalsOfTrack"));
+    // changes update the index instead of rebuilding it
+    final Annotation c = eas.createAnnotation(t.getId(), 12.0D, some(1.0D), textAnnotation("c"), 0, none(),
+            resource);
+    eas.updateAnnotation(new AnnotationImpl(a.getId(), t.getId(), 30.0D, some(10.0D), textAnnotation("a"), 0,
+            none(), a));
+    eas.deleteAnnotation(b);
+    assertEquals(List.of(c.getId()),
+            annotationIds(eas.getAnnotations(t.getId(), some(12.5D), some(15.0D), none(), none())));
+    assertEquals(List.of(a.getId()), eas.getAnnotationSummaries(t.getId(), some(35.0D), some(35.0D), none(), none())
+            .map(AnnotationSummary::getId).collect(Collectors.toList()));
+    eas.applyAnnotationOperations(t.getId(), List.of(AnnotationOperation.delete(c.getId())));
+    assertEquals(List.of(), annotationIds(eas.getAnnotations(t.getId(), some(12.5D), some(12.5D), none(), none())));
+    assertEquals(1, queries.count("Annotation.findIntervalsOfTrack"));
+  }
+
+  /**
+   * Look up the annotations active at some time in a large track, as the player does while playing.
+   * The index has to find the same annotations as querying the database for the annotations in the interval,
+   * without querying the track again: each lookup only loads the annotations it found, by their ids.
+   */
+  @Test
+  public void testAnnotationIntervalsOfLargeTrack() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final EntityManagerFactory emf = queries.getEntityManagerFactory();
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(emf);
+    final Resource resource = eas.createResource(some(Resource.PUBLIC), none());
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Random random = new Random(42);
+    final double length = 4 * 60 * 60;
+    final int size = 100_000;
+    for (int batch = 0; batch < size / 10_000; batch++) {
+      final List<AnnotationOperation> creates = new ArrayList<>();
+      for (int i = 0; i < 10_000; i++) {
+        creates.add(AnnotationOperation.create(new AnnotationImpl(0, t.getId(), random.nextDouble() * length,
+                random.nextBoolean() ? none() : some(random.nextDouble() * 10), textAnnotation("a"), 0, none(),
+                resource)));
+      }
+      eas.applyAnnotationOperations(t.getId(), creates);
+    }
+    final double[] times = random.doubles(100, 0, length).toArray();
+    final EntityManager em = emf.createEntityManager();
+    try {
+      for (double time : times) {
+        final List<Long> expected = em.createNamedQuery("Annotation.findAllOfTrackInInterval", AnnotationDto.class)
+                .setParameter("id", t.getId()).setParameter("from", time).setParameter("to", time).getResultList()
+                .stream().map(a -> a.toAnnotation().getId()).collect(Collectors.toList());
+        queries.reset();
+        assertEquals(expected, annotationIds(eas.getAnnotations(t.getId(), some(time), some(time), none(), none())));
+        assertEquals(expected.isEmpty() ? 0 : 1, queries.count("Annotation.findAllOfTrackById"));
+        assertEquals(0, queries.count("Annotation.findAllOfTrackAfter"));
+      }
+      // the intervals of the track are only loaded once
+      queries.reset();
+      eas.getAnnotations(t.getId(), some(0.0D), some(0.0D), none(), none()).count();
+      assertEquals(0, queries.count("Annotation.findIntervalsOfTrack"));
+    } finally {
+      em.close();
+    }
+  }
+
+  @Test
+  public void testGetAnnotationSummaries() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    final Resource resource = eas.createResource(some(Resource.PUBLIC), none());
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track1", none(), none(), resource);
+    final Category c = eas.createCategory(none(), none(), v.getId(), none(), "c", none(), none(), resource);
+    final Label l = eas.createLabel(c.getId(), "l", "l", none(), none(), resource);
+    final Annotation a = eas.createAnnotation(t.getId(), 40.0D, some(5.0D), labelAnnotation(l.getId()), 0, none(),
+            resource);
+    final Annotation b = eas.createAnnotation(t.getId(), 10.0D, none(), textAnnotation("b"), 0, none(), resource);
+    final Annotation d = eas.createAnnotation(t.getId(), 20.0D, some(10.0D), scalingAnnotation(l.getId(), 1), 0,
+            none(), resource);
+    // the same annotations as the full query
+    final List<AnnotationSummary> summaries = eas.getAnnotationSummaries(t.getId(), none(), none(), none(), none())
+            .collect(Collectors.toList());
+    assertEquals(List.of(b.getId(), d.getId(), a.getId()),
+            summaries.stream().map(AnnotationSummary::getId).collect(Collectors.toList()));
+    assertEquals(List.of(), summaries.get(0).getLabelIds());
+    assertTrue(summaries.get(0).getDuration().isNone());
+    assertEquals(List.of(l.getId()), summaries.get(1).getLabelIds());
+    assertEquals(20.0D, summaries.get(1).getStart(), 0);
+    assertEquals(some(10.0D), summaries.get(1).getDuration());
+    assertEquals(List.of(l.getId()), summaries.get(2).getLabelIds());
+    // time window and pagination
+    assertEquals(List.of(d.getId()), eas.getAnnotationSummaries(t.getId(), some(25.0D), some(35.0D), none(), none())
+            .map(AnnotationSummary::getId).collect(Collectors.toList()));
+    assertEquals(List.of(a.getId()), eas.getAnnotationSummaries(t.getId(), none(), none(), some(2), some(1))
+            .map(AnnotationSummary::getId).collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testPagesOnlyCountAccessibleAnnotations() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final org.opencastproject.security.api.User user = EasyMock.createNiceMock(
+            org.opencastproject.security.api.User.class);
+    EasyMock.expect(user.getUsername()).andReturn("annotator").anyTimes();
+    EasyMock.replay(user);
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory(), user,
+            EasyMock.createNiceMock(SearchService.class), EasyMock.createNiceMock(AuthorizationService.class));
+    eas.createUser("annotator", "Annotator", none(), eas.createResource());
+    final Resource resource = eas.createResource(some(Resource.PUBLIC), none());
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Category hidden = eas.createCategory(none(), none(), v.getId(), none(), "private", none(), none(),
+            othersResource(Resource.PRIVATE));
+    final Label l = eas.createLabel(hidden.getId(), "l", "l", none(), none(), othersResource(Resource.PRIVATE));
+    // every other annotation uses a label the user may not see, spread over several pages of the database
+    final List<AnnotationOperation> creates = new ArrayList<>();
+    for (int i = 0; i < 2500; i++) {
+      creates.add(AnnotationOperation.create(new AnnotationImpl(0, t.getId(), i, none(),
+              i % 2 == 0 ? textAnnotation("visible") : labelAnnotation(l.getId()), 0, none(), resource)));
+    }
+    final List<Long> visible = eas.applyAnnotationOperations(t.getId(), creates).stream()
+            .map(result -> result.getAnnotation().get())
+            .filter(a -> a.getStart() % 2 == 0)
+            .map(Annotation::getId)
+            .collect(Collectors.toList());
+
+    // pages are full until the last one
+    assertEquals(visible.subList(1000, 1100),
+            annotationIds(eas.getAnnotations(t.getId(), none(), none(), some(1000), some(100))));
+    assertEquals(visible.subList(1200, 1250),
+            annotationIds(eas.getAnnotations(t.getId(), none(), none(), some(1200), some(100))));
+    assertEquals(visible.subList(1000, 1100),
+            annotationIds(eas.getAnnotations(t.getId(), some(0.0D), none(), some(1000), some(100))));
+    assertEquals(visible.subList(1000, 1100), eas.getAnnotationSummaries(t.getId(), none(), none(), some(1000),
+            some(100)).map(AnnotationSummary::getId).collect(Collectors.toList()));
+    assertEquals(visible.subList(1000, 1100), eas.getAnnotationSummaries(t.getId(), some(0.0D), none(), some(1000),
+            some(100)).map(AnnotationSummary::getId).collect(Collectors.toList()));
+    // only as many annotations are loaded as it takes to fill a page
+    queries.reset();
+    assertEquals(visible.subList(0, 10), annotationIds(eas.getAnnotations(t.getId(), none(), none(), none(),
+            some(10))));
+    assertEquals(1, queries.count("Annotation.findAllOfTrackAfter"));
+  }
+
+  @Test
+  public void testLabelReferences() throws Exception {
+    final EntityManagerFactory emf = newEntityManagerFactory("org.opencast.annotation.impl.persistence");
+    final QueryCounter queries = new QueryCounter(emf);
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Category c = eas.createCategory(none(), none(), v.getId(), none(), "c", none(), none(), resource);
+    final Label l = eas.createLabel(c.getId(), "l", "l", none(), none(), resource);
+    final Annotation a = eas.createAnnotation(t.getId(), 1, none(), labelAnnotation(l.getId()), 0, none(), resource);
+    final Annotation b = eas.createAnnotation(t.getId(), 2, none(), scalingAnnotation(l.getId(), 7), 0, none(),
+            resource);
+    final Annotation d = eas.createAnnotation(t.getId(), 3, none(), textAnnotation("d"), 0, none(), resource);
+    // the references are extracted when annotations are stored
+    assertEquals(List.of(l.getId() + ":null"), labelReferences(emf, a));
+    assertEquals(List.of(l.getId() + ":7"), labelReferences(emf, b));
+    assertEquals(List.of(), labelReferences(emf, d));
+    // labels used several times are referenced once
+    final String twice = "[{\"type\":\"label\",\"value\":" + l.getId() + "},{\"type\":\"label\",\"value\":"
+            + l.getId() + "}]";
+    final Annotation e = eas.createAnnotation(t.getId(), 4, none(), twice, 0, none(), resource);
+    assertEquals(List.of(l.getId() + ":null"), labelReferences(emf, e));
+    eas.deleteAnnotation(e);
+    eas.updateAnnotation(new AnnotationImpl(a.getId(), t.getId(), 1, none(), textAnnotation("a"), 0, none(), a));
+    assertEquals(List.of(), labelReferences(emf, a));
+    // and used instead of the content
+    queries.reset();
+    assertEquals(List.of(List.of(), List.of(l.getId()), List.of()), eas.getAnnotationSummaries(t.getId(), none(),
+            none(), none(), none()).map(AnnotationSummary::getLabelIds).collect(Collectors.toList()));
+    assertEquals(1, queries.count("Annotation.findLabelIds"));
+    assertEquals(0, queries.count("Annotation.findContents"));
+
+    // annotations of older versions are backfilled
+    execute(emf, "DELETE FROM xannotations_annotation_label");
+    execute(emf, "UPDATE xannotations_annotation SET labels_extracted = NULL");
+    queries.reset();
+    assertEquals(List.of(List.of(), List.of(l.getId()), List.of()), eas.getAnnotationSummaries(t.getId(), none(),
+            none(), none(), none()).map(AnnotationSummary::getLabelIds).collect(Collectors.toList()));
+    assertEquals(1, queries.count("Annotation.findContents"));
+    assertEquals(3, eas.getAnnotations(t.getId()).count());
+    // every node backfills, without extracting the references of an annotation twice
+    newExtendedAnnotationService(emf);
+    newExtendedAnnotationService(emf);
+    for (int i = 0; i < 100 && !labelReferences(emf, b).equals(List.of(l.getId() + ":7")); i++) {
+      Thread.sleep(100);
+    }
+    assertEquals(List.of(l.getId() + ":7"), labelReferences(emf, b));
+    queries.reset();
+    assertEquals(3, eas.getAnnotationSummaries(t.getId(), none(), none(), none(), none()).count());
+    assertEquals(0, queries.count("Annotation.findContents"));
+  }
+
+  @Test
+  public void testLabelUsage() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t1 = eas.createTrack(v.getId(), "track1", none(), none(), resource);
+    final Track t2 = eas.createTrack(v.getId(), "track2", none(), none(), resource);
+    final Category c = eas.createCategory(none(), none(), v.getId(), none(), "c", none(), none(), resource);
+    final Label l1 = eas.createLabel(c.getId(), "l1", "l1", none(), none(), resource);
+    final Label l2 = eas.createLabel(c.getId(), "l2", "l2", none(), none(), resource);
+    eas.createAnnotation(t1.getId(), 1, some(2.0D), labelAnnotation(l1.getId()), 0, none(), resource);
+    eas.createAnnotation(t1.getId(), 5, some(3.0D), scalingAnnotation(l1.getId(), 1), 0, none(), resource);
+    final Annotation a = eas.createAnnotation(t2.getId(), 1, none(), labelAnnotation(l2.getId()), 0, none(),
+            resource);
+    eas.createAnnotation(t2.getId(), 1, some(4.0D), textAnnotation("not counted"), 0, none(), resource);
+
+    queries.reset();
+    final List<LabelUsage> usage = eas.getLabelUsage(v.getId())
+            .sorted(Comparator.comparing(LabelUsage::getLabelId)).collect(Collectors.toList());
+    assertEquals(2, usage.size());
+    assertEquals(l1.getId(), usage.get(0).getLabelId());
+    assertEquals(t1.getId(), usage.get(0).getTrackId());
+    assertEquals(2, usage.get(0).getCount());
+    assertEquals(5.0D, usage.get(0).getDuration(), 0);
+    assertEquals(l2.getId(), usage.get(1).getLabelId());
+    assertEquals(1, usage.get(1).getCount());
+    assertEquals(0.0D, usage.get(1).getDuration(), 0);
+    assertEquals(1, queries.count("Annotation.countLabelUsageOfVideo"));
+    // the usage is cached until the annotations of the video change
+    assertEquals(2, eas.getLabelUsage(v.getId()).count());
+    assertEquals(1, queries.count("Annotation.countLabelUsageOfVideo"));
+    eas.deleteAnnotation(a);
+    assertEquals(List.of(l1.getId()), eas.getLabelUsage(v.getId()).map(LabelUsage::getLabelId)
+            .collect(Collectors.toList()));
+    assertEquals(2, queries.count("Annotation.countLabelUsageOfVideo"));
+    eas.createAnnotation(t2.getId(), 1, some(1.0D), labelAnnotation(l1.getId()), 0, none(), resource);
+    assertEquals(3, eas.getLabelUsage(v.getId()).mapToLong(LabelUsage::getCount).sum());
+  }
+
+  /**
+   * Compare the memory allocated while loading and serializing the annotations of a large track
+   * as summaries and as full annotations.
+   */
+  @Test
+  public void testAnnotationSummariesAllocateLess() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Category c = eas.createCategory(none(), none(), v.getId(), none(), "c", none(), none(), resource);
+    final Label l = eas.createLabel(c.getId(), "l", "l", none(), none(), resource);
+    for (int i = 0; i < 2000; i++) {
+      eas.createAnnotation(t.getId(), i, some(1.0D), labelAnnotation(l.getId()), 0, some("{\"color\":\"red\"}"),
+              resource);
+    }
+    final Set<String> fields = new HashSet<>(AnnotationSummaryDto.FIELDS);
+    final Runnable full = () -> {
+      final List<Annotation> annotations = eas.getAnnotations(t.getId(), none(), none(), none(), none())
+              .collect(Collectors.toList());
+      final UserResolver users = UserResolver.of(eas, annotations);
+      annotations.forEach(a -> AnnotationDto.toJson(eas, users, a).toJSONString());
+    };
+    final Runnable summaries = () -> eas.getAnnotationSummaries(t.getId(), none(), none(), none(), none())
+            .forEach(a -> AnnotationSummaryDto.toJson(a, fields).toJSONString());
+
+    // warm up
+    for (int i = 0; i < 3; i++) {
+      full.run();
+      summaries.run();
+    }
+    final long[] fullCost = measure(full);
+    final long[] summariesCost = measure(summaries);
+    final String report = String.format("full: %d bytes in %d ms, summaries: %d bytes in %d ms",
+            fullCost[0], fullCost[1], summariesCost[0], summariesCost[1]);
+    assertTrue(report, summariesCost[0] < fullCost[0]);
+  }
+
+  /**
+   * Compare the memory allocated per annotation while streaming the annotations of a small and a large track
+   * inside a unit of work, the way the REST endpoint writes them. Pages that stay in the unit of work
+   * make every later page cost more, so the large track would allocate more per annotation.
+   */
+  @Test
+  public void testStreamedAnnotationsAllocateLinearly() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track small = eas.createTrack(v.getId(), "small", none(), none(), resource);
+    final Track large = eas.createTrack(v.getId(), "large", none(), none(), resource);
+    final int smallSize = 1000;
+    final int largeSize = 5000;
+    for (int i = 0; i < largeSize; i++) {
+      if (i < smallSize) {
+        eas.createAnnotation(small.getId(), i, some(1.0D), textAnnotation("annotation " + i), 0, none(), resource);
+      }
+      eas.createAnnotation(large.getId(), i, some(1.0D), textAnnotation("annotation " + i), 0, none(), resource);
+    }
+    final Function<Track, Runnable> stream = t -> () -> {
+      final UnitOfWork unitOfWork = eas.beginUnitOfWork();
+      final UserResolver users = UserResolver.of(eas);
+      eas.getAnnotations(t.getId(), none(), none(), none(), none())
+              .forEach(a -> AnnotationDto.toJson(eas, users, a).toJSONString());
+      unitOfWork.rollback();
+    };
+
+    // warm up
+    for (int i = 0; i < 3; i++) {
+      stream.apply(small).run();
+      stream.apply(large).run();
+    }
+    final long[] smallCost = measure(stream.apply(small));
+    final long[] largeCost = measure(stream.apply(large));
+    final String report = String.format("%d annotations: %d bytes in %d ms, %d annotations: %d bytes in %d ms",
+            smallSize, smallCost[0], smallCost[1], largeSize, largeCost[0], largeCost[1]);
+    assertTrue(report, largeCost[0] / largeSize < 2 * smallCost[0] / smallSize);
+  }
+
   @Test
   public void testUpdateAnnotation() {
     final ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -270,6 +896,28 @@ public class ExtendedAnnotationServiceJpaImplTest {
     assertEquals(textAnnotation("not cool"), eas.getAnnotation(a.getId()).get().getContent());
   }
 
+  @Test
+  public void testVersionChangesWithEveryChange() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Annotation a = eas.createAnnotation(t.getId(), 20.0D, some(10.0D), textAnnotation("cool video"),
+            0, none(), resource);
+    final Set<String> versions = new HashSet<>();
+    assertTrue(versions.add(eas.getVersion(ResourceCollection.ANNOTATIONS_OF_TRACK, t.getId())));
+    // changes within the same second, which some databases store the update times with
+    for (int i = 0; i < 3; i++) {
+      final Annotation current = eas.getAnnotation(a.getId()).get();
+      eas.updateAnnotation(new AnnotationImpl(a.getId(), t.getId(), 20.0D, some(10.0D),
+              textAnnotation("change " + i), 0, none(), eas.updateResource(current, none())));
+      assertEquals(current.getRevision() + 1, eas.getAnnotation(a.getId()).get().getRevision());
+      assertTrue(versions.add(eas.getVersion(ResourceCollection.ANNOTATIONS_OF_TRACK, t.getId())));
+    }
+    eas.deleteTrack(t);
+    assertTrue(versions.add(eas.getVersion(ResourceCollection.ANNOTATIONS_OF_TRACK, t.getId())));
+  }
+
   @Test
   public void testDeleteAnnotation() {
     final ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -285,6 +933,145 @@ public class ExtendedAnnotationServiceJpaImplTest {
     assertTrue(eas.getAnnotation(a.getId()).isNone());
   }
 
+  @Test
+  public void testApplyAnnotationOperations() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Track other = eas.createTrack(v.getId(), "other", none(), none(), resource);
+    final Annotation a = eas.createAnnotation(t.getId(), 10.0D, none(), textAnnotation("a"), 0, none(), resource);
+    final Annotation b = eas.createAnnotation(t.getId(), 20.0D, none(), textAnnotation("b"), 0, none(), resource);
+    final Annotation c = eas.createAnnotation(other.getId(), 30.0D, none(), textAnnotation("c"), 0, none(),
+            resource);
+
+    queries.reset();
+    final List<AnnotationOperation.Result> results = eas.applyAnnotationOperations(t.getId(), List.of(
+            AnnotationOperation.create(new AnnotationImpl(0, t.getId(), 5.0D, some(1.0D), textAnnotation("new"), 0,
+                    none(), resource)),
+            AnnotationOperation.update(new AnnotationImpl(a.getId(), t.getId(), 15.0D, none(),
+                    textAnnotation("changed"), 0, none(), resource)),
+            AnnotationOperation.delete(b.getId()),
+            AnnotationOperation.delete(12345),
+            // annotations of other tracks cannot be touched
+            AnnotationOperation.delete(c.getId())));
+    // all existing annotations are loaded with a single query
+    assertEquals(1, queries.count("Annotation.findAllById"));
+    assertEquals(0, queries.finds(AnnotationDto.class));
+
+    assertEquals(5, results.size());
+    final Annotation created = results.get(0).getAnnotation().get();
+    assertEquals(some(created), eas.getAnnotation(created.getId()));
+    assertEquals(textAnnotation("changed"), eas.getAnnotation(a.getId()).get().getContent());
+    assertEquals(15.0D, eas.getAnnotation(a.getId()).get().getStart(), 0.0D);
+    assertTrue(results.get(2).getError().isNone());
+    assertTrue(eas.getAnnotation(b.getId()).isNone());
+    assertEquals(some(Cause.NOT_FOUND), results.get(3).getError());
+    assertEquals(some(Cause.NOT_FOUND), results.get(4).getError());
+    assertTrue(eas.getAnnotation(c.getId()).isSome());
+    // deleted annotations cannot be changed anymore
+    assertEquals(some(Cause.NOT_FOUND),
+            eas.applyAnnotationOperations(t.getId(), List.of(AnnotationOperation.delete(b.getId()))).get(0).getError());
+    // unknown tracks
+    expectCause(Cause.NOT_FOUND, new Effect0() {
+      @Override
+      protected void run() {
+        eas.applyAnnotationOperations(12345, List.of(AnnotationOperation.delete(a.getId())));
+      }
+    });
+  }
+
+  @Test
+  public void testAnnotateAdminAccessIsCached() throws Exception {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final org.opencastproject.security.api.User user = EasyMock.createNiceMock(
+            org.opencastproject.security.api.User.class);
+    EasyMock.expect(user.getUsername()).andReturn("annotator").anyTimes();
+    final MediaPackage mediaPackage = EasyMock.createNiceMock(MediaPackage.class);
+    final SearchService searchService = EasyMock.createMock(SearchService.class);
+    EasyMock.expect(searchService.get("lecture")).andReturn(mediaPackage).once();
+    final AuthorizationService authorizationService = EasyMock.createMock(AuthorizationService.class);
+    EasyMock.expect(authorizationService.hasPermission(mediaPackage, ANNOTATE_ADMIN_ACTION)).andReturn(true).once();
+    EasyMock.replay(user, mediaPackage, searchService, authorizationService);
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory(), user,
+            searchService, authorizationService);
+
+    // resources of somebody else, shared with the admins of the video
+    final Resource shared = new ResourceImpl(some(Resource.SHARED_WITH_ADMIN), some(12345L), none(), none(), none(),
+            none(), none(), null);
+    final Video v = eas.createVideo("lecture", shared);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), shared);
+    final List<Annotation> annotations = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      annotations.add(eas.createAnnotation(t.getId(), i, none(), textAnnotation("a"), 0, none(), shared));
+    }
+
+    queries.reset();
+    assertTrue(eas.hasResourceAccess(t));
+    assertTrue(annotations.stream().allMatch(eas::hasResourceAccess));
+    // the media package is only asked once and the track of the annotations is only looked up once
+    EasyMock.verify(searchService, authorizationService);
+    assertEquals(1, queries.count("Track.findById"));
+
+    // a batch looks up the video of its track once, before its transaction
+    queries.reset();
+    final List<AnnotationOperation.Result> results = eas.applyAnnotationOperations(t.getId(), annotations.stream()
+            .map(a -> AnnotationOperation.delete(a.getId())).collect(Collectors.toList()));
+    assertTrue(results.stream().allMatch(result -> result.getError().isNone()));
+    assertEquals(1, queries.finds(VideoDto.class));
+  }
+
+  @Test
+  public void testPrivateResourcesOfOthersAreNotLoaded() throws Exception {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final org.opencastproject.security.api.User user = EasyMock.createNiceMock(
+            org.opencastproject.security.api.User.class);
+    EasyMock.expect(user.getUsername()).andReturn("annotator").anyTimes();
+    final MediaPackage mediaPackage = EasyMock.createNiceMock(MediaPackage.class);
+    final SearchService searchService = EasyMock.createNiceMock(SearchService.class);
+    EasyMock.expect(searchService.get("lecture")).andReturn(mediaPackage).anyTimes();
+    final AuthorizationService authorizationService = EasyMock.createNiceMock(AuthorizationService.class);
+    EasyMock.expect(authorizationService.hasPermission(mediaPackage, ANNOTATE_ADMIN_ACTION)).andReturn(false)
+            .anyTimes();
+    EasyMock.replay(user, mediaPackage, searchService, authorizationService);
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory(), user,
+            searchService, authorizationService);
+    eas.createUser("annotator", "Annotator", none(), eas.createResource());
+
+    final Resource own = eas.createResource(some(Resource.PRIVATE), none());
+    final Video v = eas.createVideo("lecture", own);
+    eas.createTrack(v.getId(), "own", none(), none(), own);
+    eas.createTrack(v.getId(), "public", none(), none(), othersResource(Resource.PUBLIC));
+    eas.createTrack(v.getId(), "shared with admins", none(), none(), othersResource(Resource.SHARED_WITH_ADMIN));
+    for (int i = 0; i < 50; i++) {
+      eas.createTrack(v.getId(), "private " + i, none(), none(), othersResource(Resource.PRIVATE));
+    }
+    eas.createCategory(none(), none(), v.getId(), none(), "own", none(), none(), own);
+    eas.createCategory(none(), none(), v.getId(), none(), "private", none(), none(), othersResource(Resource.PRIVATE));
+    eas.createQuestionnaire(v.getId(), "own", "[]", none(), own);
+    eas.createQuestionnaire(v.getId(), "private", "[]", none(), othersResource(Resource.PRIVATE));
+
+    queries.reset();
+    assertEquals(List.of("own", "public"),
+            eas.getTracks(v.getId()).map(Track::getName).sorted().collect(Collectors.toList()));
+    assertEquals(List.of("own"),
+            eas.getCategories(none(), v.getId()).map(Category::getName).collect(Collectors.toList()));
+    assertEquals(List.of("own"),
+            eas.getQuestionnaires(v.getId()).map(Questionnaire::getTitle).collect(Collectors.toList()));
+    assertEquals(1, queries.count("Track.findAccessibleOfVideo"));
+    assertEquals(1, queries.count("Category.findAccessibleOfVideo"));
+    assertEquals(1, queries.count("Questionnaire.findAccessibleOfVideo"));
+
+    // Opencast admins see everything
+    final ExtendedAnnotationService admin = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    assertEquals(53, admin.getTracks(v.getId()).count());
+  }
+
+  private static Resource othersResource(int access) {
+    return new ResourceImpl(some(access), some(12345L), none(), none(), none(), none(), none(), null);
+  }
+
   @Test
   public void testCreateCategory() {
     final ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -337,6 +1124,112 @@ public class ExtendedAnnotationServiceJpaImplTest {
     assertEquals("name2", eas.getCategory(c.getId(), false).get().getName());
   }
 
+  @Test
+  public void testMoveCategory() throws Exception {
+    final org.opencastproject.security.api.User user = EasyMock.createNiceMock(
+            org.opencastproject.security.api.User.class);
+    EasyMock.expect(user.getUsername()).andReturn("annotator").anyTimes();
+    final MediaPackage lecture = EasyMock.createNiceMock(MediaPackage.class);
+    final MediaPackage administrated = EasyMock.createNiceMock(MediaPackage.class);
+    final SearchService searchService = EasyMock.createNiceMock(SearchService.class);
+    EasyMock.expect(searchService.get("lecture")).andReturn(lecture).anyTimes();
+    EasyMock.expect(searchService.get("administrated")).andReturn(administrated).anyTimes();
+    final AuthorizationService authorizationService = EasyMock.createNiceMock(AuthorizationService.class);
+    EasyMock.expect(authorizationService.hasPermission(administrated, ANNOTATE_ADMIN_ACTION)).andReturn(true)
+            .anyTimes();
+    EasyMock.replay(user, lecture, administrated, searchService, authorizationService);
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(
+            newEntityManagerFactory("org.opencast.annotation.impl.persistence"), user, searchService,
+            authorizationService);
+    final Resource shared = othersResource(Resource.SHARED_WITH_ADMIN);
+    final Video v = eas.createVideo("lecture", shared);
+    final Video other = eas.createVideo("administrated", shared);
+    final Category c = eas.createCategory(none(), none(), v.getId(), none(), "c", none(), none(), shared);
+    final Label l = eas.createLabel(c.getId(), "l", "l", none(), none(), shared);
+    assertFalse(eas.hasResourceAccess(l));
+
+    // the labels move along with their category
+    eas.updateCategory(new CategoryImpl(c.getId(), none(), none(), other.getId(), none(), "c", none(), none(),
+            shared));
+    assertTrue(eas.hasResourceAccess(l));
+  }
+
+  @Test
+  public void testSeriesCategories() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v1 = eas.createVideo("lecture1", resource);
+    final Video v2 = eas.createVideo("lecture2", resource);
+    // turn a category of the first video into a series category
+    final Category created = eas.createCategory(none(), none(), v1.getId(), none(), "category", none(), none(),
+            resource);
+    eas.updateCategory(new CategoryImpl(created.getId(), some("series"), some(created.getId()), v1.getId(), none(),
+            "category", none(), none(), resource));
+    final Label label = eas.createLabel(created.getId(), "label", "l", none(), none(), resource);
+
+    // the second video gets a copy of the category and its labels
+    final List<Category> categories = eas.getCategories(some("series"), v2.getId()).collect(Collectors.toList());
+    assertEquals(1, categories.size());
+    final Category copy = categories.get(0);
+    assertEquals(some(created.getId()), copy.getSeriesCategoryId());
+    assertEquals(v2.getId(), copy.getVideoId());
+    final List<Label> labels = eas.getLabels(copy.getId()).collect(Collectors.toList());
+    assertEquals(1, labels.size());
+    assertEquals(some(label.getId()), labels.get(0).getSeriesLabelId());
+
+    // as long as nothing changes, reading the categories and labels does not touch them
+    queries.reset();
+    assertEquals(List.of(copy.getId()),
+            eas.getCategories(some("series"), v2.getId()).map(Category::getId).collect(Collectors.toList()));
+    assertEquals(1, eas.getLabels(copy.getId()).count());
+    assertEquals(1, queries.count("Label.findAllOfCategory"));
+    assertEquals(List.of(created.getId()),
+            eas.getCategories(some("series"), v1.getId()).map(Category::getId).collect(Collectors.toList()));
+
+    // changes of the master and its labels are propagated
+    eas.updateCategory(new CategoryImpl(created.getId(), some("series"), some(created.getId()), v1.getId(), none(),
+            "renamed", none(), none(), resource));
+    eas.updateLabel(new LabelImpl(label.getId(), none(), created.getId(), "changed", "c", none(), none(), resource));
+    assertEquals("renamed", eas.getCategories(some("series"), v2.getId()).findFirst().get().getName());
+    assertEquals(List.of("changed"),
+            eas.getLabels(copy.getId()).map(Label::getValue).collect(Collectors.toList()));
+    eas.deleteLabel(eas.getLabel(label.getId(), false).get());
+    assertTrue(eas.getLabels(copy.getId()).allMatch(l -> l.getDeletedAt().isSome()));
+  }
+
+  @Test
+  public void testGetVideoLabels() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v1 = eas.createVideo("lecture1", resource);
+    final Video v2 = eas.createVideo("lecture2", resource);
+    final Category master = eas.createCategory(none(), none(), v1.getId(), none(), "master", none(), none(),
+            resource);
+    eas.updateCategory(new CategoryImpl(master.getId(), some("series"), some(master.getId()), v1.getId(), none(),
+            "master", none(), none(), resource));
+    final Label seriesLabel = eas.createLabel(master.getId(), "series", "s", none(), none(), resource);
+    final Category copy = eas.getCategories(some("series"), v2.getId()).findFirst().get();
+    final Category own = eas.createCategory(none(), none(), v2.getId(), none(), "own", none(), none(), resource);
+    for (int i = 0; i < 10; i++) {
+      eas.createLabel(own.getId(), "l" + i, "l" + i, none(), none(), resource);
+    }
+    eas.createLabel(master.getId(), "new", "n", none(), none(), resource);
+
+    // all labels are loaded with one query, and outdated series copies are brought up to date first
+    queries.reset();
+    final Map<Long, List<Label>> labels = eas.getVideoLabels(v2.getId())
+            .collect(Collectors.groupingBy(Label::getCategoryId));
+    assertEquals(1, queries.count("Label.findAllOfVideo"));
+    assertEquals(10, labels.get(own.getId()).size());
+    assertEquals(Set.of("series", "new"),
+            labels.get(copy.getId()).stream().map(Label::getValue).collect(Collectors.toSet()));
+    assertTrue(labels.get(copy.getId()).stream()
+            .anyMatch(l -> l.getSeriesLabelId().equals(some(seriesLabel.getId()))));
+    assertFalse(labels.containsKey(master.getId()));
+  }
+
   @Test
   public void testDeleteCategory() {
     final ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -351,6 +1244,33 @@ public class ExtendedAnnotationServiceJpaImplTest {
     assertTrue(eas.getAnnotation(c.getId()).isNone());
   }
 
+  @Test
+  public void testGetAnnotationsResolvesEachLabelOnce() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo("lecture", resource);
+    final Track t = eas.createTrack(v.getId(), "track", none(), none(), resource);
+    final Category c1 = eas.createCategory(none(), none(), v.getId(), none(), "c1", none(), none(), resource);
+    final Category c2 = eas.createCategory(none(), none(), v.getId(), none(), "c2", none(), none(), resource);
+    final Label[] labels = {
+            eas.createLabel(c1.getId(), "l1", "l1", none(), none(), resource),
+            eas.createLabel(c1.getId(), "l2", "l2", none(), none(), resource),
+            eas.createLabel(c2.getId(), "l3", "l3", none(), none(), resource) };
+    final int annotationCount = 300;
+    for (int i = 0; i < annotationCount; i++) {
+      Label label = labels[i % labels.length];
+      String content = i % 2 == 0 ? labelAnnotation(label.getId()) : scalingAnnotation(label.getId(), 1);
+      eas.createAnnotation(t.getId(), i, none(), content, 0, none(), resource);
+    }
+
+    queries.reset();
+    assertEquals(annotationCount, eas.getAnnotations(t.getId()).count());
+    // the number of lookups only depends on the number of distinct labels and categories
+    assertEquals(labels.length, queries.finds(LabelDto.class));
+    assertEquals(2, queries.finds(CategoryDto.class));
+  }
+
   @Test
   public void testCreateScale() {
     final ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -549,6 +1469,52 @@ public class ExtendedAnnotationServiceJpaImplTest {
     assertTrue(eas.getComment(c.getId()).isNone());
   }
 
+  @Test
+  public void testCountComments() {
+    final ExtendedAnnotationService eas = newExtendedAnnotationService();
+    final Resource resource = eas.createResource();
+    final Comment c = eas.createComment(32, none(), "comment", resource);
+    eas.createComment(32, some(c.getId()), "reply", resource);
+    eas.deleteComment(eas.createComment(32, none(), "deleted", resource));
+    eas.createComment(33, none(), "other", resource);
+
+    final Map<Long, Long> counts = eas.countComments(List.of(32L, 33L, 34L));
+    assertEquals(Map.of(32L, 2L, 33L, 1L), counts);
+    assertTrue(eas.countComments(List.of()).isEmpty());
+  }
+
+  @Test
+  public void testCommentThread() {
+    final QueryCounter queries = new QueryCounter(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    final ExtendedAnnotationService eas = newExtendedAnnotationService(queries.getEntityManagerFactory());
+    final Resource resource = eas.createResource();
+    final Comment first = eas.createComment(32, none(), "first", resource);
+    final Comment reply = eas.createComment(32, some(first.getId()), "reply", resource);
+    final Comment replyToReply = eas.createComment(32, some(reply.getId()), "reply to reply", resource);
+    final Comment second = eas.createComment(32, none(), "second", resource);
+    final Comment deleted = eas.createComment(32, none(), "deleted", resource);
+    eas.createComment(32, some(deleted.getId()), "reply to deleted", resource);
+    eas.deleteComment(deleted);
+    eas.createComment(33, none(), "other", resource);
+
+    queries.reset();
+    assertEquals(List.of(first.getId(), second.getId(), reply.getId(), replyToReply.getId()),
+            eas.getCommentThread(32, none(), none()).map(Comment::getId).collect(Collectors.toList()));
+    // The whole discussion is loaded at once
+    assertEquals(1, queries.count("Comment.findDiscussionOfAnnotation"));
+    assertEquals(0, queries.count("Comment.findAllRepliesOf"));
+    assertEquals(List.of(second.getId()),
+            eas.getCommentThread(32, some(first.getId()), none()).map(Comment::getId).collect(Collectors.toList()));
+
+    // A page only loads the replies of its comments
+    queries.reset();
+    assertEquals(List.of(first.getId(), second.getId(), reply.getId(), replyToReply.getId()),
+            eas.getCommentThread(32, none(), some(1)).map(Comment::getId).collect(Collectors.toList()));
+    assertEquals(List.of(second.getId()),
+            eas.getCommentThread(32, some(first.getId()), some(1)).map(Comment::getId).collect(Collectors.toList()));
+    assertEquals(0, queries.count("Comment.findDiscussionOfAnnotation"));
+  }
+
   @Test
   public void testClearTables() {
     final ExtendedAnnotationService eas = newExtendedAnnotationService();
@@ -583,23 +1549,135 @@ public class ExtendedAnnotationServiceJpaImplTest {
   }
 
   private static ExtendedAnnotationService newExtendedAnnotationService() {
+    return newExtendedAnnotationService(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+  }
+
+  private static ExtendedAnnotationService newExtendedAnnotationService(EntityManagerFactory entityManagerFactory) {
+    return newExtendedAnnotationService(entityManagerFactory, Map.of());
+  }
+
+  private static ExtendedAnnotationService newExtendedAnnotationService(EntityManagerFactory entityManagerFactory,
+          Map<String, Object> configuration) {
+    return newExtendedAnnotationService(entityManagerFactory,
+            SecurityUtil.createSystemUser("admin", new DefaultOrganization()),
+            EasyMock.createNiceMock(SearchService.class), EasyMock.createNiceMock(AuthorizationService.class),
+            configuration);
+  }
+
+  private static ExtendedAnnotationService newExtendedAnnotationService(EntityManagerFactory entityManagerFactory,
+          org.opencastproject.security.api.User user, SearchService searchService,
+          AuthorizationService authorizationService) {
+    return newExtendedAnnotationService(entityManagerFactory, user, searchService, authorizationService, Map.of());
+  }
+
+  private static ExtendedAnnotationService newExtendedAnnotationService(EntityManagerFactory entityManagerFactory,
+          org.opencastproject.security.api.User user, SearchService searchService,
+          AuthorizationService authorizationService, Map<String, Object> configuration) {
     SecurityService securityService = EasyMock.createNiceMock(SecurityService.class);
 
-    org.opencastproject.security.api.User user = SecurityUtil.createSystemUser("admin", new DefaultOrganization());
     EasyMock.expect(securityService.getOrganization()).andReturn(new DefaultOrganization()).anyTimes();
     EasyMock.expect(securityService.getUser()).andReturn(user).anyTimes();
     EasyMock.replay(securityService);
 
-    AuthorizationService authorizationService = EasyMock.createNiceMock(AuthorizationService.class);
-    SearchService searchService = EasyMock.createNiceMock(SearchService.class);
-
     ExtendedAnnotationServiceJpaImpl extendedAnnotationService = new ExtendedAnnotationServiceJpaImpl();
     extendedAnnotationService.setSecurityService(securityService);
     extendedAnnotationService.setSearchService(searchService);
     extendedAnnotationService.setAuthorizationService(authorizationService);
-    extendedAnnotationService.setEntityManagerFactory(newEntityManagerFactory("org.opencast.annotation.impl.persistence"));
+    extendedAnnotationService.setEntityManagerFactory(entityManagerFactory);
     extendedAnnotationService.setDBSessionFactory(getDbSessionFactory());
-    extendedAnnotationService.activate();
+    extendedAnnotationService.activate(configuration);
     return extendedAnnotationService;
   }
+
+  /**
+   * Delete a video with the given number of tracks, annotations per track, labels and scale values
+   * and check that all of them are deleted.
+   *
+   * @return the number of queries needed to delete the video
+   */
+  private static int deleteVideoOfSize(ExtendedAnnotationService eas, QueryCounter queries, String extId, int size) {
+    final Resource resource = eas.createResource();
+    final Video v = eas.createVideo(extId, resource);
+    final List<Track> tracks = new ArrayList<>();
+    final List<Annotation> annotations = new ArrayList<>();
+    final List<Comment> comments = new ArrayList<>();
+    final Category category = eas.createCategory(none(), none(), v.getId(), none(), "category", none(), none(),
+            resource);
+    final List<Label> labels = new ArrayList<>();
+    final Scale scale = eas.createScale(v.getId(), "scale", none(), resource);
+    final List<ScaleValue> scaleValues = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      final Track t = eas.createTrack(v.getId(), "track" + i, none(), none(), resource);
+      tracks.add(t);
+      for (int j = 0; j < size; j++) {
+        final Annotation a = eas.createAnnotation(t.getId(), j, none(), textAnnotation("a" + j), 0, none(),
+                resource);
+        annotations.add(a);
+        comments.add(eas.createComment(a.getId(), none(), "comment", resource));
+      }
+      labels.add(eas.createLabel(category.getId(), "l" + i, "l" + i, none(), none(), resource));
+      scaleValues.add(eas.createScaleValue(scale.getId(), "v" + i, i, i, resource));
+    }
+
+    queries.reset();
+    assertTrue(eas.deleteVideo(v));
+    final int count = queries.total();
+
+    assertTrue(eas.getVideo(v.getId()).isNone());
+    assertTrue(tracks.stream().allMatch(t -> eas.getTrack(t.getId()).isNone()));
+    assertTrue(annotations.stream().allMatch(a -> eas.getAnnotation(a.getId()).isNone()));
+    assertTrue(comments.stream().allMatch(c -> eas.getComment(c.getId()).isNone()));
+    assertTrue(eas.getCategory(category.getId(), false).isNone());
+    assertTrue(labels.stream().allMatch(l -> eas.getLabel(l.getId(), false).isNone()));
+    assertTrue(eas.getScale(scale.getId(), false).isNone());
+    assertTrue(scaleValues.stream().allMatch(sv -> eas.getScaleValue(sv.getId(), false).isNone()));
+    return count;
+  }
+
+  /** The label and scale value ids referenced by an annotation, as <code>label:scaleValue</code> */
+  private static List<String> labelReferences(EntityManagerFactory emf, Annotation a) {
+    final EntityManager em = emf.createEntityManager();
+    try {
+      @SuppressWarnings("unchecked")
+      final List<Object[]> rows = em.createNativeQuery("SELECT label_id, scale_value_id FROM "
+              + "xannotations_annotation_label WHERE annotation_id = ?1").setParameter(1, a.getId()).getResultList();
+      return rows.stream().map(row -> row[0] + ":" + row[1]).collect(Collectors.toList());
+    } finally {
+      em.close();
+    }
+  }
+
+  private static void execute(EntityManagerFactory emf, String statement) {
+    final EntityManager em = emf.createEntityManager();
+    try {
+      em.getTransaction().begin();
+      em.createNativeQuery(statement).executeUpdate();
+      em.getTransaction().commit();
+    } finally {
+      em.close();
+    }
+  }
+
+  /**
+   * Run an action a couple of times.
+   *
+   * @return the average number of bytes allocated by the current thread and the average time in milliseconds
+   */
+  private static long[] measure(Runnable action) {
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+    final long thread = Thread.currentThread().getId();
+    final int runs = 5;
+    final long bytes = threads.getThreadAllocatedBytes(thread);
+    final long time = System.nanoTime();
+    for (int i = 0; i < runs; i++) {
+      action.run();
+    }
+    return new long[] { (threads.getThreadAllocatedBytes(thread) - bytes) / runs,
+            (System.nanoTime() - time) / runs / 1_000_000 };
+  }
+
+  private static List<Long> annotationIds(Stream<Annotation> annotations) {
+    return annotations.map(Annotation::getId).collect(Collectors.toList());
+  }
 }
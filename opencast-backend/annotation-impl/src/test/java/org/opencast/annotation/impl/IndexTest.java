@@ -0,0 +1,112 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.opencastproject.db.DBTestEnv.newEntityManagerFactory;
+
+import org.eclipse.persistence.internal.helper.DatabaseField;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.jpa.JpaQuery;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.DatabaseRecord;
+import org.eclipse.persistence.sessions.Session;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/** Make sure the named list queries do not scan whole tables. */
+public class IndexTest {
+  private static EntityManagerFactory emf;
+
+  @BeforeClass
+  public static void setUp() {
+    emf = newEntityManagerFactory("org.opencast.annotation.impl.persistence");
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    emf.close();
+  }
+
+  @Test
+  public void testAnnotationsOfTrack() {
+    assertIndexUsed("Annotation.findAllOfTrack", "IX_XANNOTATIONS_ANNOTATION_TRACK", 1L);
+    assertIndexUsed("Annotation.findIntervalsOfTrack", "IX_XANNOTATIONS_ANNOTATION_TRACK", 1L);
+  }
+
+  @Test
+  public void testTracksOfVideo() {
+    assertIndexUsed("Track.findAllOfVideo", "IX_XANNOTATIONS_TRACK_VIDEO", 1L);
+  }
+
+  @Test
+  public void testCategories() {
+    assertIndexUsed("Category.findAllOfVideo", "IX_XANNOTATIONS_CATEGORY_VIDEO", 1L);
+    assertIndexUsed("Category.findAllOfExtSeries", "IX_XANNOTATIONS_CATEGORY_SERIES", "series");
+    assertIndexUsed("Category.findAllOfSeriesCategory", "IX_XANNOTATIONS_CATEGORY_SERIES_CATEGORY", 1L);
+  }
+
+  @Test
+  public void testLabelsOfCategory() {
+    assertIndexUsed("Label.findAllOfCategory", "IX_XANNOTATIONS_LABEL_CATEGORY", 1L);
+  }
+
+  @Test
+  public void testLabelReferences() {
+    assertIndexUsed("Annotation.countLabelUsageOfVideo", "IX_XANNOTATIONS_ANNOTATION_LABEL_ANNOTATION", 1L);
+  }
+
+  @Test
+  public void testComments() {
+    assertIndexUsed("Comment.findAllOfAnnotation", "IX_XANNOTATIONS_COMMENT_ANNOTATION", 1L);
+    assertIndexUsed("Comment.findDiscussionOfAnnotation", "IX_XANNOTATIONS_COMMENT_ANNOTATION", 1L);
+    assertIndexUsed("Comment.findAllReplies", "IX_XANNOTATIONS_COMMENT_REPLY_TO", 1L);
+  }
+
+  @Test
+  public void testScales() {
+    assertIndexUsed("Scale.findAllOfVideo", "IX_XANNOTATIONS_SCALE_VIDEO", 1L);
+    assertIndexUsed("ScaleValue.findAllOfScale", "IX_XANNOTATIONS_SCALE_VALUE_SCALE", 1L);
+  }
+
+  /**
+   * Check the plan of the SQL that EclipseLink generates for a named query,
+   * so that the test breaks when the queries and the indexes drift apart.
+   *
+   * @param id
+   *          the value of the <code>:id</code> parameter of the query
+   */
+  private static void assertIndexUsed(String queryName, String index, Object id) {
+    EntityManager em = emf.createEntityManager();
+    try {
+      Session session = em.unwrap(JpaEntityManager.class).getActiveSession();
+      DatabaseQuery query = em.createNamedQuery(queryName).unwrap(JpaQuery.class).getDatabaseQuery();
+      DatabaseRecord parameters = new DatabaseRecord();
+      parameters.add(new DatabaseField("id"), id);
+      query.prepareCall(session, parameters);
+      String sql = query.getTranslatedSQLString(session, parameters);
+      String plan = (String) em.createNativeQuery("EXPLAIN " + sql).getSingleResult();
+      assertThat(queryName + ": " + sql, plan, containsString(index));
+    } finally {
+      em.close();
+    }
+  }
+}
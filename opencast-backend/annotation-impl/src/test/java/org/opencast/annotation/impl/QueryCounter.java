@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Wraps an {@link EntityManagerFactory} to count how often each named query is created,
+ * how often entities are looked up by their primary key and how many entity managers are created.
+ * Every entity manager takes a database connection for its transaction.
+ */
+public final class QueryCounter {
+  private static final String ENTITY_MANAGERS = "entity managers";
+
+  private final Map<String, Integer> counts = new ConcurrentHashMap<>();
+  private final EntityManagerFactory entityManagerFactory;
+
+  public QueryCounter(EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = proxy(EntityManagerFactory.class, (method, args) -> {
+      Object result = method.invoke(entityManagerFactory, args);
+      if ("createEntityManager".equals(method.getName())) {
+        counts.merge(ENTITY_MANAGERS, 1, Integer::sum);
+        EntityManager em = (EntityManager) result;
+        return proxy(EntityManager.class, (emMethod, emArgs) -> {
+          if ("createNamedQuery".equals(emMethod.getName())) {
+            counts.merge((String) emArgs[0], 1, Integer::sum);
+          } else if ("find".equals(emMethod.getName())) {
+            counts.merge(findKey((Class<?>) emArgs[0]), 1, Integer::sum);
+          }
+          return emMethod.invoke(em, emArgs);
+        });
+      }
+      return result;
+    });
+  }
+
+  public EntityManagerFactory getEntityManagerFactory() {
+    return entityManagerFactory;
+  }
+
+  /** Number of times the given named query has been created since the last {@link #reset()}. */
+  int count(String queryName) {
+    return counts.getOrDefault(queryName, 0);
+  }
+
+  /** Number of primary key lookups of the given entity type since the last {@link #reset()}. */
+  public int finds(Class<?> type) {
+    return counts.getOrDefault(findKey(type), 0);
+  }
+
+  /** Number of named queries created and primary key lookups since the last {@link #reset()}. */
+  int total() {
+    return counts.entrySet().stream().filter(count -> !ENTITY_MANAGERS.equals(count.getKey()))
+            .mapToInt(Map.Entry::getValue).sum();
+  }
+
+  /** Number of entity managers created since the last {@link #reset()}. */
+  public int entityManagers() {
+    return counts.getOrDefault(ENTITY_MANAGERS, 0);
+  }
+
+  public void reset() {
+    counts.clear();
+  }
+
+  private static String findKey(Class<?> type) {
+    return "find " + type.getName();
+  }
+
+  private interface Invocation {
+    Object invoke(Method method, Object[] args) throws IllegalAccessException, InvocationTargetException;
+  }
+
+  private static <A> A proxy(Class<A> type, Invocation invocation) {
+    InvocationHandler handler = (proxy, method, args) -> {
+      try {
+        return invocation.invoke(method, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    };
+    return type.cast(Proxy.newProxyInstance(QueryCounter.class.getClassLoader(), new Class<?>[] { type }, handler));
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class AnnotationIntervalsTest {
+
+  @Test
+  public void testFindOverlapping() {
+    final AnnotationIntervals intervals = AnnotationIntervals.of(List.of(
+            new Object[] { 1L, 10.0D, 5.0D },
+            new Object[] { 2L, 0.0D, 100.0D },
+            new Object[] { 3L, 20.0D, null },
+            new Object[] { 4L, 10.0D, 1.0D }));
+    assertEquals(List.of(2L, 1L, 4L), intervals.findOverlapping(11, 11));
+    assertEquals(List.of(2L, 3L), intervals.findOverlapping(20, 20));
+    // touching counts as overlapping
+    assertEquals(List.of(2L, 1L), intervals.findOverlapping(15, 15));
+    assertEquals(List.of(2L, 1L, 4L, 3L), intervals.findOverlapping(0, 20));
+    assertEquals(List.of(), intervals.findOverlapping(101, 200));
+  }
+
+  @Test
+  public void testPutAndRemove() {
+    AnnotationIntervals intervals = AnnotationIntervals.of(List.of(
+            new Object[] { 1L, 10.0D, 5.0D },
+            new Object[] { 2L, 30.0D, 5.0D }));
+    intervals = intervals.put(3L, 20.0D, 25.0D);
+    assertEquals(List.of(1L, 3L, 2L), intervals.findOverlapping(0, 100));
+    // moving an annotation
+    intervals = intervals.put(1L, 40.0D, 41.0D);
+    assertEquals(List.of(3L, 2L, 1L), intervals.findOverlapping(0, 100));
+    assertEquals(List.of(), intervals.findOverlapping(12, 12));
+    intervals = intervals.remove(3L).remove(12345L);
+    assertEquals(List.of(2L, 1L), intervals.findOverlapping(0, 100));
+    assertEquals(2, intervals.size());
+  }
+
+  /** Changing many annotations at once has to result in the same index as building it from scratch. */
+  @Test
+  public void testChange() {
+    final Random random = new Random(42);
+    final Map<Long, Object[]> annotations = new HashMap<>();
+    for (long id = 0; id < 1000; id++) {
+      annotations.put(id, new Object[] { id, (double) random.nextInt(100), (double) random.nextInt(10) });
+    }
+    AnnotationIntervals intervals = AnnotationIntervals.of(new ArrayList<>(annotations.values()));
+    for (int batch = 0; batch < 20; batch++) {
+      final List<Long> removed = new ArrayList<>();
+      // by id, since only the last change of an annotation counts
+      final Map<Long, AnnotationIntervals.Interval> put = new HashMap<>();
+      for (int i = 0; i < 50; i++) {
+        final long id = random.nextInt(1100);
+        if (random.nextBoolean()) {
+          annotations.remove(id);
+          removed.add(id);
+          put.remove(id);
+        } else {
+          final double start = random.nextInt(100);
+          final double duration = random.nextInt(10);
+          annotations.put(id, new Object[] { id, start, duration });
+          put.put(id, new AnnotationIntervals.Interval(id, start, start + duration));
+        }
+      }
+      intervals = intervals.change(removed, new ArrayList<>(put.values()));
+      final AnnotationIntervals rebuilt = AnnotationIntervals.of(new ArrayList<>(annotations.values()));
+      assertEquals(rebuilt.size(), intervals.size());
+      for (double time = 0; time < 110; time += 0.5) {
+        assertEquals(rebuilt.findOverlapping(time, time), intervals.findOverlapping(time, time));
+      }
+    }
+  }
+
+  /**
+   * Compare the index to scanning all annotations of a large track for the annotations active at some time.
+   * How it compares to querying the database is measured in the tests of the service.
+   */
+  @Test
+  public void testMatchesScanning() {
+    final Random random = new Random(42);
+    final int size = 100_000;
+    final double length = 4 * 60 * 60;
+    final List<Object[]> annotations = new ArrayList<>(size);
+    for (long id = 0; id < size; id++) {
+      annotations.add(new Object[] { id, random.nextDouble() * length,
+          random.nextBoolean() ? null : random.nextDouble() * 10 });
+    }
+    final AnnotationIntervals intervals = AnnotationIntervals.of(annotations);
+    for (int i = 0; i < 1000; i++) {
+      final double time = random.nextDouble() * length;
+      final List<Long> scanned = scan(annotations, time);
+      final List<Long> found = intervals.findOverlapping(time, time);
+      assertEquals(scanned.size(), found.size());
+      assertTrue(found.containsAll(scanned));
+    }
+  }
+
+  private static List<Long> scan(List<Object[]> annotations, double time) {
+    final List<Long> found = new ArrayList<>();
+    for (Object[] annotation : annotations) {
+      final double start = (Double) annotation[1];
+      final double duration = annotation[2] == null ? 0 : (Double) annotation[2];
+      if (start <= time && start + duration >= time) {
+        found.add((Long) annotation[0]);
+      }
+    }
+    return found;
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ *  Copyright 2020, ELAN e.V., Germany
+ *  Licensed under the Educational Community License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *  http://www.osedu.org/licenses/ECL-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS"
+ *  BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ *  or implied. See the License for the specific language governing
+ *  permissions and limitations under the License.
+ *
+ */
+package org.opencast.annotation.impl.persistence;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ExpiringCacheTest {
+
+  @Test
+  public void testExpiry() {
+    final AtomicLong now = new AtomicLong();
+    final AtomicInteger loads = new AtomicInteger();
+    final ExpiringCache<String, Integer> cache = new ExpiringCache<>(10, Duration.ofSeconds(10), now::get);
+
+    assertEquals(1, (int) cache.get("a", key -> loads.incrementAndGet()));
+    now.addAndGet(Duration.ofSeconds(9).toNanos());
+    assertEquals(1, (int) cache.get("a", key -> loads.incrementAndGet()));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    // expired entries are loaded again
+    now.addAndGet(Duration.ofSeconds(1).toNanos());
+    assertEquals(2, (int) cache.get("a", key -> loads.incrementAndGet()));
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    final ExpiringCache<String, String> cache = new ExpiringCache<>(2, Duration.ofMinutes(1));
+    cache.get("a", key -> key);
+    cache.get("b", key -> key);
+    cache.get("a", key -> key);
+    cache.get("c", key -> key);
+    assertEquals(2, cache.size());
+
+    // "b" was evicted, "a" was not
+    assertEquals("a", cache.get("a", key -> "reloaded"));
+    assertEquals("reloaded", cache.get("b", key -> "reloaded"));
+    assertEquals(2, cache.getHits());
+    assertEquals(4, cache.getMisses());
+  }
+
+  @Test
+  public void testRemove() {
+    final ExpiringCache<String, String> cache = new ExpiringCache<>(10, Duration.ofMinutes(1));
+    cache.get("a", key -> "old");
+    cache.get("b", key -> "old");
+    cache.remove("a");
+    assertEquals("new", cache.get("a", key -> "new"));
+    assertEquals("old", cache.get("b", key -> "new"));
+
+    // values loaded while an entry is removed might be outdated and are not cached
+    assertEquals("loading", cache.get("c", key -> {
+      cache.remove("a");
+      return "loading";
+    }));
+    assertEquals("reloaded", cache.get("c", key -> "reloaded"));
+  }
+
+  @Test
+  public void testUpdate() {
+    final ExpiringCache<String, String> cache = new ExpiringCache<>(10, Duration.ofMinutes(1));
+    cache.get("a", key -> "old");
+    cache.update("a", value -> value + "+changed");
+    cache.update("b", value -> value + "+changed");
+    assertEquals("old+changed", cache.get("a", key -> "new"));
+    // values which are not cached are loaded as usual
+    assertEquals("new", cache.get("b", key -> "new"));
+
+    // entries updated concurrently might miss one of the changes and are removed
+    cache.update("a", value -> {
+      cache.update("a", other -> other + "+other");
+      return value + "+again";
+    });
+    assertEquals("reloaded", cache.get("a", key -> "reloaded"));
+  }
+}